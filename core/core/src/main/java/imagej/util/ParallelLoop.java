@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the iterations of a loop on several threads at once. Iterations are
+ * handed out one at a time from a shared counter so that threads which finish
+ * early pick up remaining work. The calling thread participates in the work and
+ * {@link #run} only returns once every iteration has completed.
+ * <p>
+ * The other threads come from a pool shared by all loops, whose idle threads
+ * exit after a minute. Loops may be nested: a worker not yet started when the
+ * calling thread runs out of iterations is cancelled rather than waited for.
+ * </p>
+ * <p>
+ * Any exception thrown by an iteration is rethrown on the calling thread once
+ * all worker threads have stopped.
+ * </p>
+ */
+public final class ParallelLoop {
+
+	/** The work done by one iteration of a {@link ParallelLoop}. */
+	public interface Body {
+
+		/** Executes iteration number i. May be called from any thread. */
+		void run(int i);
+	}
+
+	/** Seconds an idle pooled thread waits for work before exiting. */
+	private static final long KEEP_ALIVE = 60;
+
+	private static final ThreadPoolExecutor POOL = createPool();
+
+	private ParallelLoop() {
+		// utility class
+	}
+
+	// -- public interface --
+
+	/** Returns the number of threads used by default: one per processor. */
+	public static int defaultThreadCount() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Runs iterations 0 through count-1 of the given body using at most
+	 * {@link #defaultThreadCount()} threads.
+	 */
+	public static void run(final int count, final Body body) {
+		run(count, defaultThreadCount(), body);
+	}
+
+	/**
+	 * Runs iterations 0 through count-1 of the given body using at most
+	 * maxThreads threads (including the calling thread).
+	 */
+	public static void run(final int count, final int maxThreads,
+		final Body body)
+	{
+		if (count <= 0) return;
+		final int threadCount = Math.max(1, Math.min(count, maxThreads));
+		if (threadCount == 1) {
+			for (int i = 0; i < count; i++)
+				body.run(i);
+			return;
+		}
+		final AtomicInteger next = new AtomicInteger();
+		final Throwable[] failure = new Throwable[1];
+		final Runnable worker = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						synchronized (failure) {
+							if (failure[0] != null) return;
+						}
+						final int i = next.getAndIncrement();
+						if (i >= count) return;
+						body.run(i);
+					}
+				}
+				catch (final Throwable t) {
+					synchronized (failure) {
+						if (failure[0] == null) failure[0] = t;
+					}
+				}
+			}
+		};
+		final Future<?>[] workers = new Future<?>[threadCount - 1];
+		for (int t = 0; t < workers.length; t++) {
+			workers[t] = POOL.submit(worker);
+		}
+		worker.run();
+		boolean interrupted = false;
+		for (final Future<?> future : workers) {
+			// NB - a worker still queued has nothing left to do
+			if (future.cancel(false)) continue;
+			while (true) {
+				try {
+					future.get();
+					break;
+				}
+				catch (final InterruptedException e) {
+					interrupted = true;
+				}
+				catch (final CancellationException e) {
+					break;
+				}
+				catch (final ExecutionException e) {
+					// NB - the worker records its own failures
+					break;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		rethrow(failure[0]);
+	}
+
+	/**
+	 * Splits the range [0, total) into chunks of roughly equal size, at most one
+	 * chunk per thread times the given oversubscription factor, and returns the
+	 * chunk boundaries. Chunk c spans [bounds[c], bounds[c+1]).
+	 */
+	public static long[] chunkBounds(final long total, final int chunksPerThread)
+	{
+		final long maxChunks =
+			Math.max(1, (long) defaultThreadCount() * Math.max(1, chunksPerThread));
+		final int chunks = (int) Math.max(1, Math.min(total, maxChunks));
+		final long[] bounds = new long[chunks + 1];
+		for (int c = 0; c <= chunks; c++)
+			bounds[c] = total * c / chunks;
+		return bounds;
+	}
+
+	// -- private helpers --
+
+	private static ThreadPoolExecutor createPool() {
+		final int size = defaultThreadCount();
+		final AtomicInteger threadNumber = new AtomicInteger();
+		final ThreadPoolExecutor pool =
+			new ThreadPoolExecutor(size, size, KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						final int n = threadNumber.getAndIncrement();
+						final Thread thread = new Thread(r, "ParallelLoop-" + n);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	private static void rethrow(final Throwable t) {
+		if (t == null) return;
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		throw new IllegalStateException(t);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ParallelLoop}.
+ */
+public class ParallelLoopTest {
+
+	@Test
+	public void testEveryIterationRunsOnce() {
+		final int count = 1000;
+		final AtomicIntegerArray visits = new AtomicIntegerArray(count);
+		ParallelLoop.run(count, 4, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				visits.incrementAndGet(i);
+			}
+		});
+		for (int i = 0; i < count; i++)
+			assertEquals(1, visits.get(i));
+	}
+
+	@Test
+	public void testExceptionIsRethrown() {
+		try {
+			ParallelLoop.run(100, 4, new ParallelLoop.Body() {
+
+				@Override
+				public void run(final int i) {
+					if (i == 42) throw new IllegalStateException("iteration " + i);
+				}
+			});
+			fail("expected an exception");
+		}
+		catch (final IllegalStateException e) {
+			assertEquals("iteration 42", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNestedLoops() {
+		final int count = 4 * ParallelLoop.defaultThreadCount();
+		final AtomicIntegerArray visits = new AtomicIntegerArray(count * count);
+		ParallelLoop.run(count, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				ParallelLoop.run(count, new ParallelLoop.Body() {
+
+					@Override
+					public void run(final int j) {
+						visits.incrementAndGet(i * count + j);
+					}
+				});
+			}
+		});
+		for (int i = 0; i < count * count; i++)
+			assertEquals(1, visits.get(i));
+	}
+
+	@Test
+	public void testThreadsAreReused() {
+		final Set<Thread> first = workerThreads();
+		final Set<Thread> second = workerThreads();
+		final Set<Thread> all = new HashSet<Thread>(first);
+		all.addAll(second);
+		assertTrue(all.size() <= ParallelLoop.defaultThreadCount() + 1);
+	}
+
+	@Test
+	public void testChunkBounds() {
+		final long[] bounds = ParallelLoop.chunkBounds(10, 1000);
+		assertEquals(0, bounds[0]);
+		assertEquals(10, bounds[bounds.length - 1]);
+		for (int c = 1; c < bounds.length; c++) {
+			assertTrue(bounds[c] > bounds[c - 1]);
+		}
+	}
+
+	// -- helper methods --
+
+	private Set<Thread> workerThreads() {
+		final Set<Thread> threads =
+			Collections.synchronizedSet(new HashSet<Thread>());
+		ParallelLoop.run(64, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				threads.add(Thread.currentThread());
+				try {
+					Thread.sleep(1);
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		return threads;
+	}
+
+}
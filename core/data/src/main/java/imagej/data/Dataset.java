@@ -35,6 +35,7 @@
 
 package imagej.data;
 
+import net.imglib2.Interval;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.AxisType;
 import net.imglib2.meta.Metadata;
@@ -113,13 +114,21 @@ public interface Dataset extends Data, Metadata {
 	/** Gets the full string description of the dataset's pixel type. */
 	String getTypeLabelLong();
 
-	/** Creates a copy of the dataset. */
+	/**
+	 * Creates a copy of the dataset. Planar datasets share their planes with
+	 * the copy until either one writes to a plane, which then gets copied.
+	 * Planes whose arrays have been handed out (see {@link #getPlane(int)}) are
+	 * copied right away, since they may be written without the dataset.
+	 */
 	Dataset duplicate();
 
 	/** Creates a copy of the dataset, but without copying any pixel values. */
 	Dataset duplicateBlank();
 
-	/** Copies the dataset's pixels into the given target dataset. */
+	/**
+	 * Copies the dataset's pixels into the given target dataset. Planes are
+	 * shared copy-on-write when both datasets are planar and alike.
+	 */
 	void copyInto(Dataset target);
 
 	// TODO - eliminate legacy layer specific functionality in favor of a
@@ -168,6 +177,17 @@ public interface Dataset extends Data, Metadata {
 	@Override
 	void update();
 
+	/**
+	 * Informs interested parties that the samples in the given region of the
+	 * dataset changed. Unlike {@link #update()} the notification is not
+	 * immediate: it is published later on the dispatch thread, and updates made
+	 * until then are merged into a single
+	 * {@link imagej.data.event.DatasetUpdatedEvent} carrying the union of their
+	 * regions, so that listeners such as views need only revisit the changed
+	 * area.
+	 */
+	void update(Interval region);
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -35,6 +35,10 @@
 
 package imagej.data;
 
+import imagej.data.access.EmptyPlanarImgFactory;
+import imagej.data.access.MappedPlanarImg;
+import imagej.data.access.SharedPlanes;
+import imagej.data.access.VirtualPlanarImg;
 import imagej.data.event.DatasetCreatedEvent;
 import imagej.data.event.DatasetDeletedEvent;
 import imagej.data.event.DatasetRGBChangedEvent;
@@ -42,6 +46,8 @@
 import imagej.data.event.DatasetTypeChangedEvent;
 import imagej.data.event.DatasetUpdatedEvent;
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RealPositionable;
@@ -69,6 +75,7 @@
 
 import org.scijava.Context;
 import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
 
 /**
  * Default implementation of {@link Dataset}.
@@ -84,6 +91,12 @@ public class DefaultDataset extends AbstractData implements Dataset {
 	private boolean rgbMerged;
 	private boolean isDirty;
 
+	private final Object updateLock = new Object();
+
+	/** Union of the regions updated since the last event, or null if none. */
+	private long[] pendingMin, pendingMax;
+	private boolean updateScheduled;
+
 	public DefaultDataset(final Context context,
 		final ImgPlus<? extends RealType<?>> imgPlus)
 	{
@@ -104,6 +117,7 @@ protected void register() {
 	@Override
 	protected void delete() {
 		publish(new DatasetDeletedEvent(this));
+		disposeStorage();
 	}
 
 	// -- Dataset methods --
@@ -178,6 +192,10 @@ public Object getPlane(final int planeNumber) {
 	@Override
 	public Object getPlane(final int planeNumber, final boolean copyOK) {
 		final Img<? extends RealType<?>> img = imgPlus.getImg();
+		if (copiesPlanes(img)) {
+			// NB - mapped and virtual planes can only be read as copies
+			if (!copyOK) return null;
+		}
 		if (img instanceof PlanarAccess) {
 			final PlanarAccess<?> planarAccess = (PlanarAccess<?>) img;
 			final Object plane = planarAccess.getPlane(planeNumber);
@@ -200,6 +218,11 @@ public boolean setPlaneSilently(final int planeNum, final Object newPlane) {
 		// TODO - copy the plane if it cannot be set by reference
 		@SuppressWarnings("rawtypes")
 		final PlanarAccess planarAccess = (PlanarAccess) img;
+		if (copiesPlanes(img)) {
+			// the plane is copied into the image's file or cache
+			planarAccess.setPlane(planeNum, createArrayDataAccess(newPlane));
+			return true;
+		}
 		final ArrayDataAccess<?> arrayAccess =
 			(ArrayDataAccess<?>) planarAccess.getPlane(planeNum);
 		final Object currPlane = arrayAccess.getCurrentStorageArray();
@@ -253,8 +276,18 @@ public String getTypeLabelLong() {
 
 	@Override
 	public Dataset duplicate() {
-		ImgPlus<? extends RealType<?>> newImgPlus = imgPlus.copy();
-		return new DefaultDataset(getContext(), newImgPlus);
+		// share the planes copy-on-write when possible
+		if (SharedPlanes.canShare(imgPlus)) {
+			@SuppressWarnings("rawtypes")
+			final ImgPlus untypedImg = imgPlus;
+			@SuppressWarnings("unchecked")
+			final ImgPlus<? extends RealType<?>> newImgPlus =
+				createEmptyCopy(untypedImg);
+			if (sharePlanes(imgPlus, newImgPlus)) {
+				return new DefaultDataset(getContext(), newImgPlus);
+			}
+		}
+		return new DefaultDataset(getContext(), imgPlus.copy());
 		// OLD WAY
 		//final Dataset d = duplicateBlank();
 		//copyInto(d);
@@ -274,7 +307,9 @@ public Dataset duplicateBlank() {
 
 	@Override
 	public void copyInto(final Dataset target) {
-		copyDataValues(imgPlus, target.getImgPlus());
+		if (!sharePlanes(imgPlus, target.getImgPlus())) {
+			copyDataValues(imgPlus, target.getImgPlus());
+		}
 		target.update();
 	}
 
@@ -316,7 +351,9 @@ public void copyDataFrom(final Dataset other) {
 			factory.create(other.getDims(), other.getType());
 
 		// copy the data into the new img
-		copyDataValues(other.getImgPlus(), newImg);
+		if (!sharePlanes(other.getImgPlus(), newImg)) {
+			copyDataValues(other.getImgPlus(), newImg);
+		}
 
 		// create new imgplus to contain data using the current name
 		final double[] calib = new double[other.getDims().length];
@@ -336,6 +373,46 @@ public void update() {
 		update(false);
 	}
 
+	@Override
+	public void update(final Interval region) {
+		if (region.numDimensions() != numDimensions()) {
+			update();
+			return;
+		}
+		setDirty(true);
+		synchronized (updateLock) {
+			if (pendingMin == null) {
+				pendingMin = new long[region.numDimensions()];
+				pendingMax = new long[region.numDimensions()];
+				region.min(pendingMin);
+				region.max(pendingMax);
+			}
+			else {
+				for (int d = 0; d < pendingMin.length; d++) {
+					pendingMin[d] = Math.min(pendingMin[d], region.min(d));
+					pendingMax[d] = Math.max(pendingMax[d], region.max(d));
+				}
+			}
+			if (updateScheduled) return;
+			updateScheduled = true;
+		}
+		final ThreadService threadService =
+			getContext().getService(ThreadService.class);
+		if (threadService == null) {
+			publishPendingUpdate();
+			return;
+		}
+		// NB - publish on the dispatch thread, as for other display events;
+		// updates made until it gets to it are merged into the same event
+		threadService.queue(new Runnable() {
+
+			@Override
+			public void run() {
+				publishPendingUpdate();
+			}
+		});
+	}
+
 	@Override
 	public void rebuild() {
 		setDirty(true);
@@ -636,6 +713,51 @@ else if (newPlane instanceof double[]) {
 		return null;
 	}
 
+	/** Releases the files and cached planes of a mapped or virtual image. */
+	private void disposeStorage() {
+		final Img<?> img = imgPlus.getImg();
+		if (img instanceof MappedPlanarImg) {
+			((MappedPlanarImg<?, ?>) img).close();
+		}
+		else if (img instanceof VirtualPlanarImg) {
+			((VirtualPlanarImg<?, ?>) img).close();
+		}
+	}
+
+	/** Whether the image's storage arrays are copies of its planes. */
+	private static boolean copiesPlanes(final Img<?> img) {
+		return img instanceof MappedPlanarImg ||
+			img instanceof VirtualPlanarImg;
+	}
+
+	/**
+	 * Makes every plane of the output image share the storage of the matching
+	 * plane of the input image, copy-on-write. Returns false if the images
+	 * differ in dimensions or type or if their planes cannot be shared, in
+	 * which case the values must be copied instead.
+	 */
+	private boolean sharePlanes(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		if (input.numDimensions() != output.numDimensions()) return false;
+		if (input.numDimensions() < 2) return false;
+		final Class<?> inputType = input.firstElement().getClass();
+		if (inputType != output.firstElement().getClass()) return false;
+		long planeCount = 1;
+		for (int d = 0; d < input.numDimensions(); d++) {
+			if (input.dimension(d) != output.dimension(d)) return false;
+			if (d > 1) planeCount *= input.dimension(d);
+		}
+		if (planeCount > Integer.MAX_VALUE) return false;
+		for (int p = 0; p < planeCount; p++) {
+			if (!SharedPlanes.share(input, p, output, p)) {
+				// planes already shared are harmlessly overwritten by the copy
+				return false;
+			}
+		}
+		return true;
+	}
+
 	// NB - assumes the two images are of the exact same dimensions
 	private void copyDataValues(final Img<? extends RealType<?>> input,
 		final Img<? extends RealType<?>> output)
@@ -728,6 +850,22 @@ private static <T extends RealType<T>> ImgPlus<T> createBlankCopy(
 		return new ImgPlus<T>(blankImg, img);
 	}
 
+	/**
+	 * Creates a planar image like the given one whose planes are not allocated,
+	 * to be filled by {@link #sharePlanes}.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static <T extends RealType<T>> ImgPlus<T> createEmptyCopy(
+		final ImgPlus<T> img)
+	{
+		final long[] dimensions = new long[img.numDimensions()];
+		img.dimensions(dimensions);
+		final Img<T> emptyImg =
+			new EmptyPlanarImgFactory().create(dimensions, (NativeType) img
+				.firstElement());
+		return new ImgPlus<T>(emptyImg, img);
+	}
+
 	private <T extends RealType<?>> ImgPlus<T> wrapAsImgPlus(
 		final Img<T> newImg, final AxisType[] axes, final double[] calib)
 	{
@@ -736,9 +874,27 @@ private <T extends RealType<?>> ImgPlus<T> wrapAsImgPlus(
 
 	private void update(boolean metadataOnly) {
 		setDirty(true);
+		if (!metadataOnly) {
+			// a full update covers any pending regions
+			synchronized (updateLock) {
+				pendingMin = pendingMax = null;
+			}
+		}
 		publish(new DatasetUpdatedEvent(this, metadataOnly));
 	}
 
+	/** Publishes one event for the regions updated since the last one. */
+	private void publishPendingUpdate() {
+		final Interval region;
+		synchronized (updateLock) {
+			updateScheduled = false;
+			if (pendingMin == null) return; // covered by a full update
+			region = new FinalInterval(pendingMin, pendingMax);
+			pendingMin = pendingMax = null;
+		}
+		publish(new DatasetUpdatedEvent(this, false, region));
+	}
+
 	private boolean mergedColorCompatible() {
 		if (isSigned()) return false;
 		if (!isInteger()) return false;
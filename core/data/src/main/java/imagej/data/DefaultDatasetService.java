@@ -35,6 +35,7 @@
 
 package imagej.data;
 
+import imagej.data.access.SharedPlanes;
 import imagej.data.display.DataView;
 import imagej.data.display.ImageDisplay;
 
@@ -159,6 +160,8 @@ public <T extends RealType<T>> Dataset create(
 		final String name, final AxisType[] axes)
 	{
 		final Img<T> img = factory.create(dims, type);
+		// nothing else refers to the new planes yet
+		SharedPlanes.makeShareable(img);
 		final ImgPlus<T> imgPlus = new ImgPlus<T>(img, name, axes, null);
 		return create(imgPlus);
 	}
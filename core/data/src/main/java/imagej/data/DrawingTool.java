@@ -35,11 +35,14 @@
 
 package imagej.data;
 
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
 import imagej.render.RenderingService;
 import imagej.render.TextRenderer;
 import imagej.render.TextRenderer.FontFamily;
 import imagej.render.TextRenderer.FontStyle;
 import imagej.render.TextRenderer.TextJustification;
+import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.meta.Axes;
 import net.imglib2.type.numeric.RealType;
@@ -68,6 +71,7 @@ public class DrawingTool {
 	private int channelAxis;
 	private long preferredChannel;
 	private final RandomAccess<? extends RealType<?>> accessor;
+	private final PlaneAccess planeAccess;
 	private long lineWidth;
 	private long u0, v0;
 	private long maxU, maxV;
@@ -76,6 +80,9 @@ public class DrawingTool {
 
 	private TextRenderer textRenderer;
 
+	/** Bounds of the samples drawn since the last update, or null if none. */
+	private long[] dirtyMin, dirtyMax;
+
 	// -- constructor --
 
 	/**
@@ -87,6 +94,7 @@ public class DrawingTool {
 	public DrawingTool(final Dataset ds, RenderingService service) {
 		this.dataset = ds;
 		this.accessor = ds.getImgPlus().randomAccess();
+		this.planeAccess = PlaneAccess.create(ds);
 		this.channels = new ChannelCollection();
 		this.lineWidth = 1;
 		this.intensity = 1;
@@ -158,6 +166,12 @@ public int getVAxis() {
 	 */
 	public void setPosition(final long[] position) {
 		accessor.setPosition(position);
+		if (dirtyMin == null) return;
+		for (int d = 0; d < position.length; d++) {
+			if (d == uAxis || d == vAxis || d == channelAxis) continue;
+			dirtyMin[d] = Math.min(dirtyMin[d], position[d]);
+			dirtyMax[d] = Math.max(dirtyMax[d], position[d]);
+		}
 	}
 
 	/** Gets this DrawingHelper's current drawing position. */
@@ -288,6 +302,45 @@ public void drawPixel(final long u, final long v) {
 				accessor.get().setReal(value);
 			}
 		}
+		markDirty(u, u, v);
+		dataset.setDirty(true);
+	}
+
+	/**
+	 * Draws a horizontal run of pixels in the current UV plane from (u1,v) to
+	 * (u2,v) inclusive. Equivalent to calling {@link #drawPixel(long, long)} for
+	 * each pixel of the run but when U and V are the X and Y axes of a Dataset
+	 * whose planes are primitive arrays the run is written straight into the
+	 * plane of each channel.
+	 */
+	public void fillSpan(final long u1, final long u2, final long v) {
+		if (v < 0 || v > maxV) return;
+		final long uStart = Math.max(u1, 0);
+		final long uEnd = Math.min(u2, maxU);
+		if (uStart > uEnd) return;
+		if (planeAccess == null || uAxis != 0 || vAxis != 1) {
+			for (long u = uStart; u <= uEnd; u++)
+				drawPixel(u, v);
+			return;
+		}
+		final long[] position = new long[accessor.numDimensions()];
+		getPosition(position);
+		final long[] dims = planeAccess.getDims();
+		final int index = (int) v * planeAccess.getPlaneWidth() + (int) uStart;
+		final int count = (int) (uEnd - uStart + 1);
+		long firstChannel = 0, lastChannel = 0;
+		if (preferredChannel >= 0) {
+			firstChannel = lastChannel = preferredChannel;
+		}
+		else if (channelAxis != -1) lastChannel = dims[channelAxis] - 1;
+		for (long c = firstChannel; c <= lastChannel; c++) {
+			final double value = intensity * channels.getChannelValue(c);
+			if (channelAxis != -1) position[channelAxis] = c;
+			final int planeIndex = (int) PlaneAccess.planeIndex(dims, position);
+			final RealArray plane = planeAccess.getPlane(planeIndex);
+			plane.fill(index, count, value);
+		}
+		markDirty(uStart, uEnd, v);
 		dataset.setDirty(true);
 	}
 
@@ -397,10 +450,9 @@ public void drawRect(long uOrg, long vOrg, long w, long h) {
 	 * height, and origin.
 	 */
 	public void fillRect(long uOrigin, long vOrigin, long w, long h) {
-		for (long du = 0; du < w; du++) {
-			for (long dv = 0; dv < h; dv++) {
-				drawPixel(uOrigin+du, vOrigin+dv);
-			}
+		if (w <= 0) return;
+		for (long dv = 0; dv < h; dv++) {
+			fillSpan(uOrigin, uOrigin+w-1, vOrigin+dv);
 		}
 	}
 
@@ -474,8 +526,41 @@ public void drawText(final long anchorU, final long anchorV,
 		intensity = 1;
 	}
 
+	/**
+	 * Notifies interested parties that the region drawn since the last call
+	 * changed, by way of {@link Dataset#update(net.imglib2.Interval)}. Does
+	 * nothing if nothing was drawn. Call after each step of an interactive
+	 * drawing operation; bursts of updates are merged before displays react.
+	 */
+	public void update() {
+		if (dirtyMin == null) return;
+		final FinalInterval region = new FinalInterval(dirtyMin, dirtyMax);
+		dirtyMin = dirtyMax = null;
+		dataset.update(region);
+	}
+
 	// -- private helpers --
 
+	/** Adds the given run of the current UV plane to the drawn region. */
+	private void markDirty(final long u1, final long u2, final long v) {
+		if (dirtyMin == null) {
+			dirtyMin = new long[accessor.numDimensions()];
+			getPosition(dirtyMin);
+			dirtyMax = dirtyMin.clone();
+			dirtyMin[uAxis] = dirtyMax[uAxis] = u1;
+			dirtyMin[vAxis] = dirtyMax[vAxis] = v;
+			if (channelAxis != -1) {
+				// drawing may switch channels; cover them all
+				dirtyMin[channelAxis] = 0;
+				dirtyMax[channelAxis] = dataset.dimension(channelAxis) - 1;
+			}
+		}
+		if (u1 < dirtyMin[uAxis]) dirtyMin[uAxis] = u1;
+		if (u2 > dirtyMax[uAxis]) dirtyMax[uAxis] = u2;
+		if (v < dirtyMin[vAxis]) dirtyMin[vAxis] = v;
+		if (v > dirtyMax[vAxis]) dirtyMax[vAxis] = v;
+	}
+
 	private void initAxisVariables() {
 		channelAxis = dataset.getAxisIndex(Axes.CHANNEL);
 		uAxis = -1;
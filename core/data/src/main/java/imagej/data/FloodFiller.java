@@ -35,11 +35,11 @@
 
 package imagej.data;
 
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
 import imagej.util.RealRect;
 
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
 
 import net.imglib2.RandomAccess;
 import net.imglib2.meta.Axes;
@@ -52,18 +52,37 @@
  * particle analyzer. The Wikipedia article at
  * "http://en.wikipedia.org/wiki/Flood_fill" has a good description of the
  * algorithm used here as well as examples in C and Java.
+ * <p>
+ * Filling works a span at a time: each seed popped from the stack is grown
+ * into the full run of matching pixels on its line, the run is filled with
+ * {@link DrawingTool#fillSpan(long, long, long)} and one seed is pushed per
+ * matching run on the neighboring lines. When U and V are the X and Y axes of
+ * a Dataset whose planes are primitive arrays the pixels are tested straight
+ * from the planes rather than through a RandomAccess. The seed stack is kept
+ * per thread and reused by later fills.
  * 
  * @author Wayne Rasband
  * @author Barry DeZonia
  */
 public class FloodFiller {
 
+	// -- constants --
+
+	/** Initial capacity of a span stack (three longs per seed). */
+	private static final int INITIAL_STACK = 3 * 512;
+
+	/** Largest span stack kept around for reuse after a fill completes. */
+	private static final int MAX_POOLED_STACK = 3 * (1 << 18);
+
+	/** Span stacks kept between fills so repeated fills do not reallocate. */
+	private static final ThreadLocal<SpanStack> STACKS =
+		new ThreadLocal<SpanStack>();
+
+	// -- instance variables --
+
 	private final DrawingTool tool;
-	private int channelAxis;
-	private int uAxis;
-	private int vAxis;
-	private final StackOfLongs uStack;
-	private final StackOfLongs vStack;
+	private final int channelAxis;
+	private final PlaneAccess planeAccess;
 
 	/**
 	 * Constructs a FloodFiller from a given DrawingTool. The FloodFiller uses the
@@ -72,67 +91,19 @@ public class FloodFiller {
 	public FloodFiller(final DrawingTool tool) {
 		this.tool = tool;
 		this.channelAxis = tool.getDataset().getAxisIndex(Axes.CHANNEL);
-		this.uAxis = -1;
-		this.vAxis = -1;
-		this.uStack = new StackOfLongs();
-		this.vStack = new StackOfLongs();
+		this.planeAccess = PlaneAccess.create(tool.getDataset());
 	}
 
+	// -- public interface --
+
 	/**
 	 * Does a 4-connected flood fill using the current fill/draw value. Returns
 	 * true if any pixels actually changed and false otherwise.
 	 */
 	public boolean fill4(final long u0, final long v0, final long[] position) {
-		final Dataset ds = tool.getDataset();
-		final RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
-		accessor.setPosition(position);
-		uAxis = tool.getUAxis();
-		vAxis = tool.getVAxis();
-		final ChannelCollection fillValues = tool.getChannels();
-		// avoid degenerate case
-		if (matches(accessor,u0,v0,fillValues)) return false;
-		final ChannelCollection origValues = getValues(accessor, u0, v0);
-		final long maxU = ds.dimension(uAxis) - 1;
-		final long maxV = ds.dimension(vAxis) - 1;
-		clearUV();
-		pushUV(u0, v0);
-		while (!uStack.isEmpty()) {
-			final long u = popU();
-			final long v = popV();
-			if (!matches(accessor,u,v,origValues)) continue;
-			long u1 = u;
-			long u2 = u;
-			// find start of scan-line
-			while (u1>=0 && matches(accessor,u1,v,origValues)) u1--;
-			u1++;
-		  // find end of scan-line
-			while (u2<=maxU && matches(accessor,u2,v,origValues)) u2++;                 
-			u2--;
-			// fill scan-line
-			tool.drawLine(u1, v, u2, v);
-			// find scan-lines above this one
-			boolean inScanLine = false;
-			for (long i=u1; i<=u2; i++) {
-				if (!inScanLine && v>0 && matches(accessor,i,v-1,origValues))
-					{pushUV(i, v-1); inScanLine = true;}
-				else if (inScanLine && v>0 &&
-									!matches(accessor,i,v-1,origValues))
-					inScanLine = false;
-			}
-			// find scan-lines below this one
-			inScanLine = false;
-			for (long i=u1; i<=u2; i++) {
-				if (!inScanLine && v<maxV &&
-							matches(accessor,i,v+1,origValues))
-					{pushUV(i, v+1); inScanLine = true;}
-				else if (inScanLine && v<maxV &&
-									!matches(accessor,i,v+1,origValues))
-					inScanLine = false;
-			}
-		}
-		// System.out.println("Stack allocated (but not necessarily used) "+uStack.stack.length);
-		return true;
+		final Region region = region(position, -1);
+		region.matchValuesAt(u0, v0, 0);
+		return fill(region, u0, v0, 0, 0);
 	}
 
 	/**
@@ -140,84 +111,34 @@ else if (inScanLine && v<maxV &&
 	 * true if any pixels actually changed and false otherwise.
 	 */
 	public boolean fill8(final long u0, final long v0, final long[] position) {
+		final Region region = region(position, -1);
+		region.matchValuesAt(u0, v0, 0);
+		return fill(region, u0, v0, 0, 1);
+	}
+
+	/**
+	 * Does a 26-connected flood fill through the stack of UV planes along the
+	 * given W axis using the current fill/draw value. Pixels are connected when
+	 * they touch by a face, edge or corner in UVW space. Returns true if any
+	 * pixels actually changed and false otherwise.
+	 */
+	public boolean fill26(final long u0, final long v0, final long[] position,
+		final int wAxis)
+	{
 		final Dataset ds = tool.getDataset();
-		final RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
-		accessor.setPosition(position);
-		uAxis = tool.getUAxis();
-		vAxis = tool.getVAxis();
-		final ChannelCollection fillValues = tool.getChannels();
-		// avoid degenerate case
-		if (matches(accessor,u0,v0,fillValues)) return false;
-		final ChannelCollection origValues = getValues(accessor, u0, v0);
-		final long maxU = ds.dimension(uAxis) - 1;
-		final long maxV = ds.dimension(vAxis) - 1;
-		clearUV();
-		pushUV(u0, v0);
-		while(!uStack.isEmpty()) {
-			final long u = popU(); 
-			final long v = popV();
-			long u1 = u;
-			long u2 = u;
-			if (matches(accessor,u,v,origValues)) {
-				// find start of scan-line
-				while (u1>=0 && matches(accessor,u1,v,origValues)) u1--;
-				u1++;
-			  // find end of scan-line
-				while (u2<=maxU && matches(accessor,u2,v,origValues)) u2++;
-				u2--;
-				tool.drawLine(u1, v, u2, v); // fill scan-line
-			}
-			if (v > 0) {
-				if (u1 > 0) {
-					if (matches(accessor,u1-1,v-1,origValues)) {
-						pushUV(u1-1, v-1);
-					}
-				}
-				if (u2 < maxU) {
-					if (matches(accessor,u2+1,v-1,origValues)) {
-						pushUV(u2+1, v-1);
-					}
-				}
-			}
-			if (v < maxV) {
-				if (u1 > 0) {
-					if (matches(accessor,u1-1,v+1,origValues)) {
-						pushUV(u1-1, v+1);
-					}
-				}
-				if (u2 < maxU) {
-					if (matches(accessor,u2+1,v+1,origValues)) {
-						pushUV(u2+1, v+1);
-					}
-				}
-			}
-			// find scan-lines above this one
-			boolean inScanLine = false;
-			for (long i=u1; i<=u2; i++) {
-				if (!inScanLine && v>0 && matches(accessor,i,v-1,origValues))
-					{pushUV(i, v-1); inScanLine = true;}
-				else if (inScanLine && v>0 &&
-									!matches(accessor,i,v-1,origValues))
-					inScanLine = false;
-			}
-			// find scan-lines below this one
-			inScanLine = false;
-			for (long i=u1; i<=u2; i++) {
-				if (!inScanLine && v<maxV &&
-							matches(accessor,i,v+1,origValues))
-					{pushUV(i, v+1); inScanLine = true;}
-				else if (inScanLine && v<maxV &&
-									!matches(accessor,i,v+1,origValues))
-					inScanLine = false;
-			}
+		if (wAxis < 0 || wAxis >= ds.numDimensions() || wAxis == channelAxis ||
+			wAxis == tool.getUAxis() || wAxis == tool.getVAxis())
+		{
+			throw new IllegalArgumentException("invalid W axis: " + wAxis);
 		}
-		// System.out.println("Stack allocated (but not necessarily used) "+uStack.stack.length);
-		return true;
+		final Region region = region(position, wAxis);
+		final long w0 = position[wAxis];
+		region.matchValuesAt(u0, v0, w0);
+		return fill(region, u0, v0, w0, 1);
 	}
 
 	// NOTE - ported from IJ1 but not yet in use anywhere
-	
+
 	/**
 	 * In IJ1 this method is used by the particle analyzer to remove interior
 	 *  holes from particle masks.
@@ -228,191 +149,397 @@ public void particleAnalyzerFill(
 	{
 		final Dataset ds = tool.getDataset();
 		// TODO - is this a bogus limitation
-		if ((channelAxis != -1) || (ds.dimension(channelAxis) != 1)) {
+		if ((channelAxis != -1) && (ds.dimension(channelAxis) != 1)) {
 			throw new IllegalArgumentException(
 				"particle analyzer cannot support multiple channels");
 		}
-		final RandomAccess<? extends RealType<?>> acc =
-			ds.getImgPlus().randomAccess();
-		acc.setPosition(position);
-		uAxis = tool.getUAxis();
-		vAxis = tool.getVAxis();
-		long maxU = ds.dimension(uAxis) - 1;
-		long maxV = ds.dimension(vAxis) - 1;
-		long numChan = ds.dimension(channelAxis);
+		final Dataset maskDs = maskTool.getDataset();
+		final int maskChannelAxis = maskDs.getAxisIndex(Axes.CHANNEL);
+		long numChan = 1;
+		if (maskChannelAxis != -1) numChan = maskDs.dimension(maskChannelAxis);
 		setValues(maskTool, numChan, 0);
 		// FIXME TODO - fill plane or roi of plane of maskTool?
 		// Decide between fill() or fill(RealRect)
 		maskTool.fill();
 		setValues(maskTool, numChan, 255);
-		clearUV();
-		pushUV(u0, v0);
-		while(!uStack.isEmpty()) {   
-			long u = popU(); 
-			long v = popV();
-			if (!inParticle(acc,u,v,level1,level2)) continue;
-			long u1 = u;
-			long u2 = u;
-			// find start of scan-line
-			while (inParticle(acc,u1,v,level1,level2) && u1>=0) u1--;
-			u1++;
-		  // find end of scan-line
-			while (inParticle(acc,u2,v,level1,level2) && u2<=maxU) u2++;                 
-			u2--;
-			// fill scan-line in mask
-			maskTool.drawLine(
-				(long) (u1-bounds.x), (long) (v-bounds.y),
-				(long) (u2-bounds.x), (long) (v-bounds.y));
-			// fill scan-line in image
-			tool.drawLine(u1, v, u2, v);
-			boolean inScanLine = false;
-			if (u1>0) u1--;
-			if (u2<maxU) u2++;
-			for (long i=u1; i<=u2; i++) { // find scan-lines above this one
-				if (!inScanLine && v>0 && inParticle(acc,i,v-1,level1,level2))
-					{pushUV(i, v-1); inScanLine = true;}
-				else if (inScanLine && v>0 && !inParticle(acc,i,v-1,level1,level2))
-					inScanLine = false;
-			}
-			inScanLine = false;
-			for (long i=u1; i<=u2; i++) { // find scan-lines below this one
-				if (!inScanLine && v<maxV && inParticle(acc,i,v+1,level1,level2))
-					{pushUV(i, v+1); inScanLine = true;}
-				else if (inScanLine && v<maxV && !inParticle(acc,i,v+1,level1,level2))
-					inScanLine = false;
-			}
-		}        
+		final Region region = region(position, -1);
+		region.matchRange(level1, level2);
+		region.setMask(maskTool, (long) bounds.x, (long) bounds.y);
+		fill(region, u0, v0, 0, 1);
 	}
-	
+
 	// -- private helpers --
 
 	/**
-	 * Returns true if value of pixel is inside a given range
+	 * Fills the connected region containing (u0,v0,w0). A diagonal of 0 gives
+	 * 4-connectivity in the UV plane and 1 gives 8-connectivity (26 when the
+	 * region spans a W axis).
 	 */
-	private boolean inParticle(
-		RandomAccess<? extends RealType<?>> accessor, long u, long v,
-		double level1, double level2)
+	private boolean fill(final Region region, final long u0, final long v0,
+		final long w0, final int diagonal)
 	{
-		accessor.setPosition(u,uAxis);
-		accessor.setPosition(v,vAxis);
-		double val = accessor.get().getRealDouble();
-		return val>=level1 && val<=level2;
+		if (u0 < 0 || u0 > region.maxU || v0 < 0 || v0 > region.maxV) {
+			return false;
+		}
+		if (!region.matches(u0, v0, w0)) return false;
+		final SpanStack stack = SpanStack.acquire();
+		try {
+			boolean first = true;
+			stack.push(u0, v0, w0);
+			while (!stack.isEmpty()) {
+				final int top = stack.pop();
+				final long u = stack.data[top];
+				final long v = stack.data[top + 1];
+				final long w = stack.data[top + 2];
+				if (!region.matches(u, v, w)) continue;
+				final long u1 = region.scanLeft(u, 0, v, w);
+				final long u2 = region.scanRight(u, region.maxU, v, w);
+				region.fill(u1, u2, v, w);
+				if (first) {
+					// the fill value leaves the seed unchanged: nothing to do,
+					// and continuing would revisit the same spans forever
+					if (region.matches(u0, v0, w0)) return false;
+					first = false;
+				}
+				final long lo = Math.max(u1 - diagonal, 0);
+				final long hi = Math.min(u2 + diagonal, region.maxU);
+				final long vMin = Math.max(v - 1, 0);
+				final long vMax = Math.min(v + 1, region.maxV);
+				final long wMin = Math.max(w - 1, 0);
+				final long wMax = Math.min(w + 1, region.maxW);
+				for (long nw = wMin; nw <= wMax; nw++) {
+					for (long nv = vMin; nv <= vMax; nv++) {
+						if (nv == v && nw == w) continue;
+						pushRuns(region, stack, lo, hi, nv, nw);
+					}
+				}
+			}
+			return true;
+		}
+		finally {
+			region.restorePosition();
+			SpanStack.release(stack);
+		}
 	}
-	
+
+	/** Pushes one seed for every matching run of line (v,w) within [lo,hi]. */
+	private void pushRuns(final Region region, final SpanStack stack,
+		final long lo, final long hi, final long v, final long w)
+	{
+		long u = lo;
+		while (u <= hi) {
+			u = region.nextMatch(u, hi, v, w);
+			if (u < 0) return;
+			stack.push(u, v, w);
+			// the pixel after a run never matches so skip it too
+			u = region.scanRight(u, hi, v, w) + 2;
+		}
+	}
+
+	/**
+	 * Returns a Region reading the pixels of the plane (or the stack of planes
+	 * along the W axis) at the given position.
+	 */
+	private Region region(final long[] position, final int wAxis) {
+		final int uAxis = tool.getUAxis();
+		final int vAxis = tool.getVAxis();
+		if (planeAccess != null && uAxis == 0 && vAxis == 1) {
+			return new PlaneRegion(position, wAxis);
+		}
+		return new RandomAccessRegion(position, uAxis, vAxis, wAxis);
+	}
+
 	private void setValues(DrawingTool tool, long numChan, double value) {
-		final List<Double> values = new LinkedList<Double>();
-		for (long i = 0; i < numChan; i++)
-			values.add(value);
-		final ChannelCollection channels = new ChannelCollection(values);
+		final ChannelCollection channels =
+			new ChannelCollection(Collections.nCopies((int) numChan, value));
 		tool.setChannels(channels);
 	}
-	
+
+	// -- helper classes --
+
 	/**
-	 * Returns true if the current pixel located at the given (u,v) coordinates is
-	 * the same as the specified color or gray values.
+	 * The pixels a fill can reach: a UV plane or a stack of UV planes along a W
+	 * axis. Tests whether a pixel belongs to the region being filled and fills
+	 * spans of it through the DrawingTool.
 	 */
-	private boolean	matches(
-		final RandomAccess<? extends RealType<?>> accessor, final long u,
-		final long v, final ChannelCollection channels)
-	{
-		accessor.setPosition(u, uAxis);
-		accessor.setPosition(v, vAxis);
+	private abstract class Region {
 
-		// 0 channel image?
-		if (channelAxis == -1) {
-			final double val = accessor.get().getRealDouble();
-			return val == channels.getChannelValue(0);
+		protected final long[] position;
+		protected final int wAxis;
+		protected final long maxU, maxV, maxW;
+		protected final int numChannels;
+		private double[] values;
+		private double level1, level2;
+		private boolean ranged;
+		private DrawingTool maskTool;
+		private long maskU, maskV;
+		private final long startW;
+		private long toolW;
+
+		public Region(final long[] position, final int uAxis, final int vAxis,
+			final int wAxis)
+		{
+			final Dataset ds = tool.getDataset();
+			this.position = position.clone();
+			this.wAxis = wAxis;
+			maxU = ds.dimension(uAxis) - 1;
+			maxV = ds.dimension(vAxis) - 1;
+			maxW = wAxis < 0 ? 0 : ds.dimension(wAxis) - 1;
+			numChannels =
+				channelAxis < 0 ? 1 : (int) ds.dimension(channelAxis);
+			startW = wAxis < 0 ? 0 : position[wAxis];
+			toolW = startW;
 		}
 
-		// else image has 1 or more channels
-		long numChan = tool.getDataset().dimension(channelAxis);
-		for (long c = 0; c < numChan; c++) {
-			accessor.setPosition(c, channelAxis);
-			double value = accessor.get().getRealDouble();
-			// TODO - do we need a "near" rather than "equal" here?
-			if (value != channels.getChannelValue(c)) return false;
+		/** Returns the value of channel c of a pixel of the region. */
+		protected abstract double value(long u, long v, long w, int c);
+
+		/** Matches pixels equal in every channel to the given pixel. */
+		public void matchValuesAt(final long u, final long v, final long w) {
+			values = new double[numChannels];
+			if (u < 0 || u > maxU || v < 0 || v > maxV) return;
+			for (int c = 0; c < numChannels; c++)
+				values[c] = value(u, v, w, c);
 		}
-		
-		return true;
-	}
 
-	/**
-	 * Records the values of all the channels at a given (u,v) coord in a Dataset.
-	 * The non-UV coords must be set on the accessor before calling this method.
-	 */
-	private ChannelCollection getValues(
-		final RandomAccess<? extends RealType<?>> accessor,
-		final long u, final long v)
-	{
-		final List<Double> channels = new LinkedList<Double>();
-		accessor.setPosition(u, uAxis);
-		accessor.setPosition(v, vAxis);
-		long numChannels = 1;
-		if (channelAxis != -1)
-			numChannels = tool.getDataset().dimension(channelAxis);
-		for (long c = 0; c < numChannels; c++) {
-			if (channelAxis != -1) accessor.setPosition(c, channelAxis);
-			final double val = accessor.get().getRealDouble();
-			channels.add(val);
-		}
-		return new ChannelCollection(channels);
-	}
+		/** Matches pixels whose first channel lies within [min,max]. */
+		public void matchRange(final double min, final double max) {
+			ranged = true;
+			level1 = min;
+			level2 = max;
+		}
 
-	/**
-	 * Pushes the specified (u,v) point on the working stacks.
-	 */
-	private void pushUV(final long u, final long v) {
-		uStack.push(u);
-		vStack.push(v);
-	}
+		/** Also fills each span into a mask offset by (u,v). */
+		public void setMask(final DrawingTool mask, final long u, final long v)
+		{
+			maskTool = mask;
+			maskU = u;
+			maskV = v;
+		}
+
+		public boolean matches(final long u, final long v, final long w) {
+			if (testsOneChannel()) return accepts(value(u, v, w, 0));
+			for (int c = 0; c < numChannels; c++) {
+				// TODO - do we need a "near" rather than "equal" here?
+				if (value(u, v, w, c) != values[c]) return false;
+			}
+			return true;
+		}
+
+		/** Returns true if matching only looks at the first channel. */
+		protected boolean testsOneChannel() {
+			return ranged || numChannels == 1;
+		}
 
-	/** Pops a U value of the working U stack. */
-	private long popU() {
-		return uStack.pop();
+		/** Returns true if a first channel value belongs to the region. */
+		protected boolean accepts(final double val) {
+			if (ranged) return val >= level1 && val <= level2;
+			return val == values[0];
+		}
+
+		/** Returns the first matching u in [u,limit] or -1 if there is none. */
+		public long nextMatch(long u, final long limit, final long v,
+			final long w)
+		{
+			for (; u <= limit; u++)
+				if (matches(u, v, w)) return u;
+			return -1;
+		}
+
+		/** Returns the first u of the run of matches ending at u, >= limit. */
+		public long scanLeft(long u, final long limit, final long v,
+			final long w)
+		{
+			while (u > limit && matches(u - 1, v, w))
+				u--;
+			return u;
+		}
+
+		/** Returns the last u of the run of matches starting at u, <= limit. */
+		public long scanRight(long u, final long limit, final long v,
+			final long w)
+		{
+			while (u < limit && matches(u + 1, v, w))
+				u++;
+			return u;
+		}
+
+		/** Fills the span (u1..u2,v) of plane w with the DrawingTool. */
+		public void fill(final long u1, final long u2, final long v,
+			final long w)
+		{
+			if (wAxis >= 0 && w != toolW) {
+				position[wAxis] = w;
+				tool.setPosition(position);
+				toolW = w;
+			}
+			tool.fillSpan(u1, u2, v);
+			if (maskTool != null) {
+				maskTool.fillSpan(u1 - maskU, u2 - maskU, v - maskV);
+			}
+		}
+
+		/** Moves the DrawingTool back to the plane the fill started in. */
+		public void restorePosition() {
+			if (toolW == startW) return;
+			position[wAxis] = startW;
+			tool.setPosition(position);
+			toolW = startW;
+		}
 	}
 
-	/** Pops a V value of the working V stack. */
-	private long popV() {
-		return vStack.pop();
+	/** A Region whose pixels are read straight from primitive planes. */
+	private class PlaneRegion extends Region {
+
+		private final int width;
+		private final long[] dims;
+		private final long[] planePos;
+		private final RealArray[][] planes;
+
+		public PlaneRegion(final long[] position, final int wAxis) {
+			super(position, 0, 1, wAxis);
+			width = planeAccess.getPlaneWidth();
+			dims = planeAccess.getDims();
+			planePos = position.clone();
+			planes = new RealArray[(int) (maxW + 1)][];
+		}
+
+		@Override
+		protected double value(final long u, final long v, final long w,
+			final int c)
+		{
+			return planes(w)[c].getReal((int) v * width + (int) u);
+		}
+
+		@Override
+		public long nextMatch(long u, final long limit, final long v,
+			final long w)
+		{
+			if (!testsOneChannel()) return super.nextMatch(u, limit, v, w);
+			final RealArray plane = planes(w)[0];
+			final int row = (int) v * width;
+			for (; u <= limit; u++)
+				if (accepts(plane.getReal(row + (int) u))) return u;
+			return -1;
+		}
+
+		@Override
+		public long scanLeft(long u, final long limit, final long v,
+			final long w)
+		{
+			if (!testsOneChannel()) return super.scanLeft(u, limit, v, w);
+			final RealArray plane = planes(w)[0];
+			final int row = (int) v * width;
+			while (u > limit && accepts(plane.getReal(row + (int) u - 1)))
+				u--;
+			return u;
+		}
+
+		@Override
+		public long scanRight(long u, final long limit, final long v,
+			final long w)
+		{
+			if (!testsOneChannel()) return super.scanRight(u, limit, v, w);
+			final RealArray plane = planes(w)[0];
+			final int row = (int) v * width;
+			while (u < limit && accepts(plane.getReal(row + (int) u + 1)))
+				u++;
+			return u;
+		}
+
+		/** Returns the channel planes at position w of the W axis. */
+		private RealArray[] planes(final long w) {
+			RealArray[] p = planes[(int) w];
+			if (p == null) {
+				p = new RealArray[numChannels];
+				if (wAxis >= 0) planePos[wAxis] = w;
+				for (int c = 0; c < numChannels; c++) {
+					if (channelAxis >= 0) planePos[channelAxis] = c;
+					final long index = PlaneAccess.planeIndex(dims, planePos);
+					p[c] = planeAccess.getPlane((int) index);
+				}
+				planes[(int) w] = p;
+			}
+			return p;
+		}
 	}
 
-	/** Resets the U and V stacks, */
-	private void clearUV() {
-		uStack.clear();
-		vStack.clear();
+	/** A Region whose pixels are read through a RandomAccess. */
+	private class RandomAccessRegion extends Region {
+
+		private final RandomAccess<? extends RealType<?>> accessor;
+		private final int uAxis, vAxis;
+
+		public RandomAccessRegion(final long[] position, final int uAxis,
+			final int vAxis, final int wAxis)
+		{
+			super(position, uAxis, vAxis, wAxis);
+			this.uAxis = uAxis;
+			this.vAxis = vAxis;
+			accessor = tool.getDataset().getImgPlus().randomAccess();
+			accessor.setPosition(position);
+		}
+
+		@Override
+		protected double value(final long u, final long v, final long w,
+			final int c)
+		{
+			accessor.setPosition(u, uAxis);
+			accessor.setPosition(v, vAxis);
+			if (wAxis >= 0) accessor.setPosition(w, wAxis);
+			if (channelAxis >= 0) accessor.setPosition(c, channelAxis);
+			return accessor.get().getRealDouble();
+		}
 	}
-	
-	/** To minimize object creations/deletions we want a stack of primitives. */
-	private class StackOfLongs {
 
-		private int top;
-		private long[] stack;
+	/**
+	 * A stack of (u,v,w) seeds held in one primitive array. Stacks are pooled
+	 * per thread; one that grew beyond {@link #MAX_POOLED_STACK} is dropped
+	 * back to its initial size when released so the pool stays bounded.
+	 */
+	private static class SpanStack {
 
-		public StackOfLongs() {
-			top = -1;
-			stack = new long[400];
+		private long[] data = new long[INITIAL_STACK];
+		private int size;
+
+		public static SpanStack acquire() {
+			final SpanStack stack = STACKS.get();
+			if (stack == null) return new SpanStack();
+			// a nested fill on this thread gets its own stack
+			STACKS.set(null);
+			return stack;
 		}
 
-		public boolean isEmpty() {
-			return top < 0;
+		public static void release(final SpanStack stack) {
+			stack.size = 0;
+			if (stack.data.length > MAX_POOLED_STACK) {
+				stack.data = new long[INITIAL_STACK];
+			}
+			STACKS.set(stack);
 		}
 
-		public void clear() {
-			top = -1;
+		public boolean isEmpty() {
+			return size == 0;
 		}
 
-		public void push(final long value) {
-			if (top == stack.length - 1)
-				stack =	Arrays.copyOf(stack, stack.length * 2);
-			top++;
-			stack[top] = value;
+		public void push(final long u, final long v, final long w) {
+			if (size + 3 > data.length) {
+				final long[] grown = new long[data.length * 2];
+				System.arraycopy(data, 0, grown, 0, size);
+				data = grown;
+			}
+			data[size++] = u;
+			data[size++] = v;
+			data[size++] = w;
 		}
 
-		public long pop() {
-			if (top < 0) throw new IllegalArgumentException("can't pop empty stack");
-			final long value = stack[top];
-			top--;
-			return value;
+		/** Removes the top seed and returns the index of its u value. */
+		public int pop() {
+			if (size == 0) {
+				throw new IllegalArgumentException("can't pop empty stack");
+			}
+			size -= 3;
+			return size;
 		}
 	}
 
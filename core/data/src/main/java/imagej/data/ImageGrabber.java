@@ -35,7 +35,9 @@
 
 package imagej.data;
 
+import imagej.data.access.PlaneAccess;
 import imagej.data.display.DatasetView;
+import imagej.util.ParallelLoop;
 import net.imglib2.RandomAccess;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.img.ImgPlus;
@@ -71,18 +73,37 @@ public Dataset grab(DatasetView view, String outputName) {
 		dims[2] = 3;  // fill CHANNEL count
 		if (dims[0] * dims[1] > Integer.MAX_VALUE)
 			throw new IllegalArgumentException("image is too big to fit into memory");
-		int xSize = (int) dims[0];
-		int ySize = (int) dims[1];
-		int[] argbPixels = view.getScreenImage().getData();
+		int[] argbPixels = screenImage.getData();
 		Dataset dataset = 
 				service.create(new UnsignedByteType(), dims, outputName,
 												new Axes[]{Axes.X, Axes.Y, Axes.CHANNEL});
+		setRGB(dataset, argbPixels);
+		dataset.setRGBMerged(true);
+		return dataset;
+	}
+
+	/**
+	 * Sets the red, green and blue channels of a {@link Dataset} with axes X, Y
+	 * and CHANNEL from packed ARGB pixels stored in row order. Alpha is ignored.
+	 * Planar 8-bit Datasets are filled directly in their backing arrays, several
+	 * rows at a time in parallel.
+	 */
+	public static void setRGB(final Dataset dataset, final int[] argbPixels) {
+		final int xSize = (int) dataset.dimension(0);
+		final int ySize = (int) dataset.dimension(1);
+		final PlaneAccess planes = PlaneAccess.create(dataset);
+		if (planes != null && planes.getType() instanceof UnsignedByteType &&
+			planes.getPlaneCount() == 3 && planes.getPlaneSize() == argbPixels.length)
+		{
+			setRGB(planes, argbPixels, xSize, ySize);
+			return;
+		}
 		ImgPlus<? extends RealType<?>> imgPlus = dataset.getImgPlus();
 		RandomAccess<? extends RealType<?>> accessor = imgPlus.randomAccess();
-		for (int x = 0; x < xSize; x++) {
-			accessor.setPosition(x, 0);
-			for (int y = 0; y < ySize; y++) {
-				accessor.setPosition(y, 1);
+		for (int y = 0; y < ySize; y++) {
+			accessor.setPosition(y, 1);
+			for (int x = 0; x < xSize; x++) {
+				accessor.setPosition(x, 0);
 				int index = y*xSize + x; 
 				int pixel = argbPixels[index];
 				accessor.setPosition(0, 2);
@@ -93,7 +114,35 @@ public Dataset grab(DatasetView view, String outputName) {
 				accessor.get().setReal((pixel >>  0) & 0xff);
 			}
 		}
-		dataset.setRGBMerged(true);
-		return dataset;
+	}
+
+	// -- private helpers --
+
+	private static void setRGB(final PlaneAccess planes, final int[] argbPixels,
+		final int xSize, final int ySize)
+	{
+		final byte[][] channels = new byte[3][];
+		final int[] offsets = new int[3];
+		for (int c = 0; c < 3; c++) {
+			channels[c] = (byte[]) planes.getPlane(c).getStorageArray();
+			offsets[c] = planes.getPlane(c).offset();
+		}
+		final long[] bounds = ParallelLoop.chunkBounds(ySize, 4);
+		ParallelLoop.run(bounds.length - 1, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int chunk) {
+				final int start = (int) bounds[chunk] * xSize;
+				final int end = (int) bounds[chunk + 1] * xSize;
+				final byte[] r = channels[0], g = channels[1], b = channels[2];
+				final int ro = offsets[0], go = offsets[1], bo = offsets[2];
+				for (int i = start; i < end; i++) {
+					final int pixel = argbPixels[i];
+					r[ro + i] = (byte) (pixel >> 16);
+					g[go + i] = (byte) (pixel >> 8);
+					b[bo + i] = (byte) pixel;
+				}
+			}
+		});
 	}
 }
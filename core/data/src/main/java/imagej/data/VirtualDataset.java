@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import imagej.data.access.PlaneCache;
+import imagej.data.access.PlaneReader;
+import imagej.data.access.PlaneWriter;
+import imagej.data.access.VirtualPlanarImg;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+import org.scijava.Context;
+
+/**
+ * A {@link Dataset} whose planes are loaded on demand from a
+ * {@link PlaneReader}, such as a huge time series on disk, and held in a
+ * size-bounded {@link PlaneCache}. Browsing such a dataset needs no more
+ * memory than the cache's capacity, whatever the dataset's size.
+ * <p>
+ * Modified planes are written back to the source if the reader is a
+ * {@link PlaneWriter}, and spilled to a scratch file otherwise; see
+ * {@link VirtualPlanarImg}. The cache's hit, miss and eviction counts tell
+ * whether its capacity suits the way the dataset is browsed. Once the dataset
+ * is deleted its planes are saved or dropped and its files closed.
+ * </p>
+ */
+public class VirtualDataset extends DefaultDataset {
+
+	private final VirtualPlanarImg<?, ?> img;
+
+	/**
+	 * Creates a dataset reading its planes from the given reader, and caching
+	 * them in the given cache (such as {@link PlaneCache#getDefault()}).
+	 * 
+	 * @throws IllegalArgumentException if the type's samples are not bytes,
+	 *           shorts, ints, longs, floats or doubles.
+	 */
+	public <T extends RealType<T> & NativeType<T>> VirtualDataset(
+		final Context context, final T type, final long[] dims,
+		final String name, final AxisType[] axes, final PlaneReader reader,
+		final PlaneCache cache)
+	{
+		this(context, VirtualPlanarImg.create(dims, type, reader, cache), name,
+			axes);
+	}
+
+	private <T extends RealType<T> & NativeType<T>> VirtualDataset(
+		final Context context, final VirtualPlanarImg<T, ?> img,
+		final String name, final AxisType[] axes)
+	{
+		super(context, new ImgPlus<T>(img, name, axes, null));
+		this.img = img;
+	}
+
+	// -- VirtualDataset methods --
+
+	/** Gets the reader the dataset's planes are loaded from. */
+	public PlaneReader getPlaneReader() {
+		return img.getReader();
+	}
+
+	/** Gets the cache holding the dataset's loaded planes. */
+	public PlaneCache getPlaneCache() {
+		return img.getCache();
+	}
+
+	/**
+	 * Saves the modified planes currently cached, without waiting for their
+	 * eviction.
+	 */
+	public void flush() {
+		img.flush();
+	}
+
+}
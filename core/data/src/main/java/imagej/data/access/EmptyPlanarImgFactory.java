@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates {@link PlanarImg}s whose planes are not allocated, for callers that
+ * go on to set every plane themselves: sharing the planes of another image
+ * (see {@link SharedPlanes}), moving them over from an image being
+ * restructured, or allocating only the planes that are new. Until a plane is
+ * set it is null and must not be accessed, except through {@link PlaneAccess}
+ * which allocates it on demand; {@link #allocateMissingPlanes(Img)} allocates
+ * every plane still missing. Types whose samples are not bytes,
+ * shorts, ints, longs, floats or doubles (such as bit types) get allocated
+ * planes.
+ * <p>
+ * Images made by {@link PlanarImg#factory()} are allocated as usual.
+ * </p>
+ */
+public class EmptyPlanarImgFactory<T extends NativeType<T>> extends
+	PlanarImgFactory<T>
+{
+
+	// -- EmptyPlanarImgFactory methods --
+
+	/**
+	 * Allocates every plane that has not been set yet in an image made by this
+	 * factory, leaving its samples zero. Does nothing for other images.
+	 */
+	public static void allocateMissingPlanes(final Img<?> image) {
+		final Img<?> img = unwrap(image);
+		if (!(img instanceof EmptyPlanarImg)) return;
+		final EmptyPlanarImg<?, ?> empty = (EmptyPlanarImg<?, ?>) img;
+		for (int p = 0; p < empty.numSlices(); p++)
+			empty.allocatePlane(p);
+	}
+
+	/** Returns true if the given image was made by this factory. */
+	public static boolean isEmptyPlanar(final Img<?> image) {
+		return unwrap(image) instanceof EmptyPlanarImg;
+	}
+
+	// -- NativeImgFactory methods --
+
+	@Override
+	public PlanarImg<T, ByteArray> createByteInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, ByteArray>(dimensions, entitiesPerPixel,
+			new ByteArray(1));
+	}
+
+	@Override
+	public PlanarImg<T, ShortArray> createShortInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, ShortArray>(dimensions, entitiesPerPixel,
+			new ShortArray(1));
+	}
+
+	@Override
+	public PlanarImg<T, IntArray> createIntInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, IntArray>(dimensions, entitiesPerPixel,
+			new IntArray(1));
+	}
+
+	@Override
+	public PlanarImg<T, LongArray> createLongInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, LongArray>(dimensions, entitiesPerPixel,
+			new LongArray(1));
+	}
+
+	@Override
+	public PlanarImg<T, FloatArray> createFloatInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, FloatArray>(dimensions, entitiesPerPixel,
+			new FloatArray(1));
+	}
+
+	@Override
+	public PlanarImg<T, DoubleArray> createDoubleInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return new EmptyPlanarImg<T, DoubleArray>(dimensions, entitiesPerPixel,
+			new DoubleArray(1));
+	}
+
+	// -- package-private helpers --
+
+	/**
+	 * Allocates the given plane of an image made by this factory if it has not
+	 * been set yet.
+	 */
+	static void allocatePlane(final Img<?> image, final int plane) {
+		final Img<?> img = unwrap(image);
+		if (img instanceof EmptyPlanarImg) {
+			((EmptyPlanarImg<?, ?>) img).allocatePlane(plane);
+		}
+	}
+
+	// -- helper methods --
+
+	private static Img<?> unwrap(final Img<?> image) {
+		Img<?> img = image;
+		while (img instanceof ImgPlus) {
+			img = ((ImgPlus<?>) img).getImg();
+		}
+		return img;
+	}
+
+	// -- helper classes --
+
+	/** A planar image created without planes. */
+	private static class EmptyPlanarImg<T extends NativeType<T>,
+		A extends ArrayDataAccess<A>> extends PlanarImg<T, A>
+	{
+
+		/** An access of the plane type, used to create missing planes. */
+		private final A template;
+
+		/** Number of entities in a plane. */
+		private final int planeEntities;
+
+		public EmptyPlanarImg(final long[] dim, final int entitiesPerPixel,
+			final A template)
+		{
+			super(dim, entitiesPerPixel);
+			this.template = template;
+			final long planeSize = dim[0] * (dim.length > 1 ? dim[1] : 1);
+			planeEntities = (int) (planeSize * entitiesPerPixel);
+		}
+
+		public synchronized void allocatePlane(final int plane) {
+			if (getPlane(plane) != null) return;
+			setPlane(plane, template.createArray(planeEntities));
+		}
+	}
+
+}
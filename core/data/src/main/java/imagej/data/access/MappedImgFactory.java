@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates {@link MappedPlanarImg}s: planar images stored in memory-mapped raw
+ * files, for images larger than memory. Pass one to the
+ * {@link imagej.data.DatasetService} method creating a Dataset from an
+ * {@link ImgFactory} (or to a loader) to get a disk-backed Dataset.
+ * <p>
+ * A factory given a file stores its images there, reusing whatever data the
+ * file already holds; otherwise each image gets a temporary file, deleted
+ * when the image is {@link MappedPlanarImg#close() closed} (as happens when
+ * its Dataset is deleted) or on exit. Types whose samples are not bytes,
+ * shorts, ints, longs, floats or doubles (such as bit types) are kept on the
+ * heap.
+ * </p>
+ */
+public class MappedImgFactory<T extends NativeType<T>> extends
+	PlanarImgFactory<T>
+{
+
+	private final File file;
+	private final MappedRegionCache cache;
+
+	/** Creates a factory storing each image in a temporary file. */
+	public MappedImgFactory() {
+		this(null, MappedRegionCache.getDefault());
+	}
+
+	/** Creates a factory storing its images in the given file. */
+	public MappedImgFactory(final File file) {
+		this(file, MappedRegionCache.getDefault());
+	}
+
+	/**
+	 * Creates a factory storing its images in the given file (or temporary
+	 * files if null), mapped through the given cache.
+	 */
+	public MappedImgFactory(final File file, final MappedRegionCache cache) {
+		this.file = file;
+		this.cache = cache;
+	}
+
+	// -- NativeImgFactory methods --
+
+	@Override
+	public PlanarImg<T, ByteArray> createByteInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.BYTE, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, ShortArray> createShortInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.SHORT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, IntArray> createIntInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.INT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, LongArray> createLongInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.LONG, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, FloatArray> createFloatInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.FLOAT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, DoubleArray> createDoubleInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.DOUBLE, dimensions, entitiesPerPixel);
+	}
+
+	// -- ImgFactory methods --
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public <S> ImgFactory<S> imgFactory(final S type)
+		throws IncompatibleTypeException
+	{
+		if (!(type instanceof NativeType)) {
+			throw new IncompatibleTypeException(this, type.getClass()
+				.getCanonicalName() +
+				" does not implement NativeType.");
+		}
+		return new MappedImgFactory(file, cache);
+	}
+
+	// -- private helpers --
+
+	private <A extends ArrayDataAccess<A>> MappedPlanarImg<T, A> create(
+		final int kind, final long[] dimensions, final int entitiesPerPixel)
+	{
+		final MappedStorage storage =
+			new MappedStorage(storageFile(), file == null, cache, kind,
+				dimensions, entitiesPerPixel);
+		return new MappedPlanarImg<T, A>(storage, dimensions, entitiesPerPixel);
+	}
+
+	private File storageFile() {
+		if (file != null) return file;
+		try {
+			final File temp = File.createTempFile("imagej-", ".raw");
+			temp.deleteOnExit();
+			return temp;
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot create temporary file", e);
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.access.MappedStorage.MappedAccess;
+
+import java.io.File;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link PlanarImg} whose planes live in a memory-mapped raw file rather
+ * than on the heap, so that images larger than memory can be browsed and
+ * processed. Create one with a {@link MappedImgFactory}.
+ * <p>
+ * Samples are read and written through the mapping by the usual cursors and
+ * RandomAccesses. The storage array of a plane (as returned by
+ * {@link #getPlane(int)}) is a copy of the plane, and
+ * {@link #setPlane(int, ArrayDataAccess)} copies the given plane into the
+ * file instead of replacing the plane's storage. {@link PlaneAccess} is not
+ * available for these images, so code with a fast path for primitive planes
+ * takes its general path instead.
+ * </p>
+ */
+public class MappedPlanarImg<T extends NativeType<T>,
+	A extends ArrayDataAccess<A>> extends PlanarImg<T, A>
+{
+
+	private final MappedStorage storage;
+
+	@SuppressWarnings("unchecked")
+	MappedPlanarImg(final MappedStorage storage, final long[] dim,
+		final int entitiesPerPixel)
+	{
+		super(dim, entitiesPerPixel);
+		this.storage = storage;
+		for (int i = 0; i < numSlices(); i++) {
+			super.setPlane(i, (A) storage.createAccess(i));
+		}
+	}
+
+	// -- MappedPlanarImg methods --
+
+	/** Gets the raw file holding the planes. */
+	public File getFile() {
+		return storage.getFile();
+	}
+
+	/** Gets the cache bounding the address space used by the planes. */
+	public MappedRegionCache getCache() {
+		return storage.getCache();
+	}
+
+	/**
+	 * Releases the raw file: unmaps the planes, closes the file, and deletes it
+	 * if it is a temporary file. The image must not be used afterward.
+	 */
+	public void close() {
+		storage.close();
+	}
+
+	// -- PlanarAccess methods --
+
+	/** Copies the samples of the given plane into the file. */
+	@Override
+	public void setPlane(final int no, final A plane) {
+		final A current = getPlane(no);
+		if (current == plane) return;
+		if (!(current instanceof MappedAccess)) {
+			super.setPlane(no, plane);
+			return;
+		}
+		((MappedAccess) current).plane().write(plane.getCurrentStorageArray());
+	}
+
+	// -- Img methods --
+
+	/** Gets a factory for more images backed by (temporary) mapped files. */
+	@Override
+	public PlanarImgFactory<T> factory() {
+		return new MappedImgFactory<T>(null, storage.getCache());
+	}
+
+}
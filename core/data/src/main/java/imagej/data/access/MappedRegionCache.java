@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.access.MappedStorage.MappedPlane;
+
+import java.nio.Buffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounds the address space used by the planes of {@link MappedPlanarImg}s. A
+ * plane is mapped the first time it is accessed; once the mapped planes exceed
+ * the cache's capacity the least recently used ones (approximated with a
+ * clock: planes not accessed since the last sweep go first) are unmapped, to
+ * be mapped again on their next access. Unmapped regions are returned to the
+ * operating system when the garbage collector reclaims their buffers.
+ * <p>
+ * Images share {@link #getDefault()} unless created with a cache of their
+ * own.
+ * </p>
+ */
+public class MappedRegionCache {
+
+	// -- constants --
+
+	/** Capacity of the default cache, in bytes. */
+	public static final long DEFAULT_CAPACITY = 1L << 30;
+
+	private static final MappedRegionCache DEFAULT =
+		new MappedRegionCache(DEFAULT_CAPACITY);
+
+	// -- instance variables --
+
+	/** Mapped planes, in the order the clock hand visits them. */
+	private final ArrayDeque<MappedPlane> mapped =
+		new ArrayDeque<MappedPlane>();
+
+	private long capacity;
+	private long mappedBytes;
+
+	// -- constructor --
+
+	/** Creates a cache keeping at most the given number of bytes mapped. */
+	public MappedRegionCache(final long capacity) {
+		this.capacity = capacity;
+	}
+
+	// -- public interface --
+
+	/** Gets the cache shared by images not given one of their own. */
+	public static MappedRegionCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Sets the maximum number of bytes to keep mapped. The plane in use is
+	 * always kept, whatever its size.
+	 */
+	public synchronized void setCapacity(final long capacity) {
+		this.capacity = capacity;
+		trim(null);
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/** Gets the number of bytes currently mapped. */
+	public synchronized long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	// -- MappedRegionCache methods --
+
+	/** Maps the given plane, unmapping others as needed. */
+	synchronized Buffer map(final MappedPlane plane) {
+		Buffer view = plane.view;
+		if (view != null) return view; // mapped meanwhile by another thread
+		view = plane.map();
+		plane.view = view;
+		plane.referenced = true;
+		mapped.addLast(plane);
+		mappedBytes += plane.bytes();
+		trim(plane);
+		return view;
+	}
+
+	/** Unmaps the planes of the given storage, such as when it is closed. */
+	synchronized void purge(final MappedStorage storage) {
+		final Iterator<MappedPlane> iter = mapped.iterator();
+		while (iter.hasNext()) {
+			final MappedPlane plane = iter.next();
+			if (!plane.belongsTo(storage)) continue;
+			iter.remove();
+			plane.view = null;
+			mappedBytes -= plane.bytes();
+		}
+	}
+
+	// -- private helpers --
+
+	/** Unmaps planes, other than the given one, until within capacity. */
+	private void trim(final MappedPlane keep) {
+		int visits = 2 * mapped.size();
+		while (mappedBytes > capacity && visits-- > 0) {
+			final MappedPlane plane = mapped.pollFirst();
+			if (plane == keep || plane.referenced) {
+				// second chance
+				plane.referenced = false;
+				mapped.addLast(plane);
+				continue;
+			}
+			plane.view = null;
+			mappedBytes -= plane.bytes();
+		}
+	}
+
+}
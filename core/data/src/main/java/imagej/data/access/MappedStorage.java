@@ -0,0 +1,519 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+/**
+ * The raw file behind a {@link MappedPlanarImg}: its planes one after the
+ * other, samples in native byte order. Each plane is mapped into memory only
+ * while its {@link MappedRegionCache} keeps it mapped, and until the storage
+ * is {@link #close() closed}.
+ */
+final class MappedStorage {
+
+	// -- constants --
+
+	static final int BYTE = 0;
+	static final int SHORT = 1;
+	static final int INT = 2;
+	static final int LONG = 3;
+	static final int FLOAT = 4;
+	static final int DOUBLE = 5;
+
+	static final int[] SAMPLE_BYTES = { 1, 2, 4, 8, 4, 8 };
+
+	// -- instance variables --
+
+	private final File file;
+	private final boolean temporary;
+	private final FileChannel channel;
+	private final MappedRegionCache cache;
+	private final int kind;
+	private final int planeEntities;
+	private final int planeBytes;
+
+	// -- constructor --
+
+	/**
+	 * Opens (creating or growing it as needed) the raw file holding planes of
+	 * the given dimensions. Existing contents are kept, so a raw file written
+	 * earlier is read back as is. A temporary file is deleted when the storage
+	 * is closed.
+	 */
+	MappedStorage(final File file, final boolean temporary,
+		final MappedRegionCache cache, final int kind, final long[] dims,
+		final int entitiesPerPixel)
+	{
+		this.file = file;
+		this.temporary = temporary;
+		this.cache = cache;
+		this.kind = kind;
+		final long entities =
+			dims[0] * (dims.length > 1 ? dims[1] : 1) * entitiesPerPixel;
+		final long bytes = entities * SAMPLE_BYTES[kind];
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Planes of " + bytes +
+				" bytes cannot be mapped (MAX = " + Integer.MAX_VALUE + ")");
+		}
+		planeEntities = (int) entities;
+		planeBytes = (int) bytes;
+		long planeCount = 1;
+		for (int d = 2; d < dims.length; d++)
+			planeCount *= dims[d];
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			final long size = planeCount * planeBytes;
+			if (raf.length() < size) raf.setLength(size);
+			channel = raf.getChannel();
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot open " + file, e);
+		}
+	}
+
+	// -- MappedStorage methods --
+
+	File getFile() {
+		return file;
+	}
+
+	MappedRegionCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Unmaps the planes, closes the file and deletes it if temporary. Planes
+	 * cannot be mapped again afterward.
+	 */
+	void close() {
+		cache.purge(this);
+		try {
+			channel.close();
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot close " + file, e);
+		}
+		if (temporary) file.delete();
+	}
+
+	/** Creates the access for the given plane; nothing is mapped yet. */
+	ArrayDataAccess<?> createAccess(final int planeIndex) {
+		final MappedPlane plane =
+			new MappedPlane(this, (long) planeIndex * planeBytes);
+		switch (kind) {
+			case BYTE:
+				return new MappedByteArray(plane);
+			case SHORT:
+				return new MappedShortArray(plane);
+			case INT:
+				return new MappedIntArray(plane);
+			case LONG:
+				return new MappedLongArray(plane);
+			case FLOAT:
+				return new MappedFloatArray(plane);
+			default:
+				return new MappedDoubleArray(plane);
+		}
+	}
+
+	// -- helper classes --
+
+	/** One plane of the file, and its mapping while it has one. */
+	static final class MappedPlane {
+
+		private final MappedStorage storage;
+		private final long offset;
+
+		/** The typed view of the mapping, or null while unmapped. */
+		volatile Buffer view;
+
+		/** Set on each access; cleared by the cache to find idle planes. */
+		boolean referenced;
+
+		MappedPlane(final MappedStorage storage, final long offset) {
+			this.storage = storage;
+			this.offset = offset;
+		}
+
+		/** Gets the typed view of the plane, mapping it if necessary. */
+		Buffer view() {
+			Buffer v = view;
+			if (v == null) v = storage.cache.map(this);
+			referenced = true;
+			return v;
+		}
+
+		int bytes() {
+			return storage.planeBytes;
+		}
+
+		boolean belongsTo(final MappedStorage owner) {
+			return storage == owner;
+		}
+
+		/** Maps the plane and returns a view of its samples' type. */
+		Buffer map() {
+			final ByteBuffer bytes;
+			try {
+				bytes =
+					storage.channel.map(FileChannel.MapMode.READ_WRITE, offset,
+						storage.planeBytes);
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException("Cannot map plane of " +
+					storage.file, e);
+			}
+			bytes.order(ByteOrder.nativeOrder());
+			switch (storage.kind) {
+				case BYTE:
+					return bytes;
+				case SHORT:
+					return bytes.asShortBuffer();
+				case INT:
+					return bytes.asIntBuffer();
+				case LONG:
+					return bytes.asLongBuffer();
+				case FLOAT:
+					return bytes.asFloatBuffer();
+				default:
+					return bytes.asDoubleBuffer();
+			}
+		}
+
+		/** Reads the whole plane into a new primitive array. */
+		Object read() {
+			final Buffer v = view();
+			final int n = storage.planeEntities;
+			switch (storage.kind) {
+				case BYTE: {
+					final byte[] a = new byte[n];
+					((ByteBuffer) v).duplicate().get(a);
+					return a;
+				}
+				case SHORT: {
+					final short[] a = new short[n];
+					((ShortBuffer) v).duplicate().get(a);
+					return a;
+				}
+				case INT: {
+					final int[] a = new int[n];
+					((IntBuffer) v).duplicate().get(a);
+					return a;
+				}
+				case LONG: {
+					final long[] a = new long[n];
+					((LongBuffer) v).duplicate().get(a);
+					return a;
+				}
+				case FLOAT: {
+					final float[] a = new float[n];
+					((FloatBuffer) v).duplicate().get(a);
+					return a;
+				}
+				default: {
+					final double[] a = new double[n];
+					((DoubleBuffer) v).duplicate().get(a);
+					return a;
+				}
+			}
+		}
+
+		/** Writes a whole plane, given as a primitive array, to the file. */
+		void write(final Object array) {
+			final Buffer v = view();
+			switch (storage.kind) {
+				case BYTE:
+					((ByteBuffer) v).duplicate().put((byte[]) array);
+					break;
+				case SHORT:
+					((ShortBuffer) v).duplicate().put((short[]) array);
+					break;
+				case INT:
+					((IntBuffer) v).duplicate().put((int[]) array);
+					break;
+				case LONG:
+					((LongBuffer) v).duplicate().put((long[]) array);
+					break;
+				case FLOAT:
+					((FloatBuffer) v).duplicate().put((float[]) array);
+					break;
+				default:
+					((DoubleBuffer) v).duplicate().put((double[]) array);
+			}
+		}
+	}
+
+	/** A plane access whose samples live in the file. */
+	interface MappedAccess {
+
+		MappedPlane plane();
+	}
+
+	/**
+	 * A ByteArray reading and writing a plane of the file. Its storage array is
+	 * a copy of the plane.
+	 */
+	static final class MappedByteArray extends ByteArray implements
+		MappedAccess
+	{
+
+		private final MappedPlane plane;
+
+		public MappedByteArray(final MappedPlane plane) {
+			super(new byte[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public byte getValue(final int index) {
+			return ((ByteBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final byte value) {
+			((ByteBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public byte[] getCurrentStorageArray() {
+			return (byte[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A ShortArray reading and writing a plane of the file. Its storage array
+	 * is a copy of the plane.
+	 */
+	static final class MappedShortArray extends ShortArray implements
+		MappedAccess
+	{
+
+		private final MappedPlane plane;
+
+		public MappedShortArray(final MappedPlane plane) {
+			super(new short[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public short getValue(final int index) {
+			return ((ShortBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final short value) {
+			((ShortBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public short[] getCurrentStorageArray() {
+			return (short[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * An IntArray reading and writing a plane of the file. Its storage array is
+	 * a copy of the plane.
+	 */
+	static final class MappedIntArray extends IntArray implements MappedAccess {
+
+		private final MappedPlane plane;
+
+		public MappedIntArray(final MappedPlane plane) {
+			super(new int[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public int getValue(final int index) {
+			return ((IntBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final int value) {
+			((IntBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public int[] getCurrentStorageArray() {
+			return (int[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A LongArray reading and writing a plane of the file. Its storage array is
+	 * a copy of the plane.
+	 */
+	static final class MappedLongArray extends LongArray implements
+		MappedAccess
+	{
+
+		private final MappedPlane plane;
+
+		public MappedLongArray(final MappedPlane plane) {
+			super(new long[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public long getValue(final int index) {
+			return ((LongBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final long value) {
+			((LongBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public long[] getCurrentStorageArray() {
+			return (long[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A FloatArray reading and writing a plane of the file. Its storage array
+	 * is a copy of the plane.
+	 */
+	static final class MappedFloatArray extends FloatArray implements
+		MappedAccess
+	{
+
+		private final MappedPlane plane;
+
+		public MappedFloatArray(final MappedPlane plane) {
+			super(new float[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public float getValue(final int index) {
+			return ((FloatBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			((FloatBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public float[] getCurrentStorageArray() {
+			return (float[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A DoubleArray reading and writing a plane of the file. Its storage array
+	 * is a copy of the plane.
+	 */
+	static final class MappedDoubleArray extends DoubleArray implements
+		MappedAccess
+	{
+
+		private final MappedPlane plane;
+
+		public MappedDoubleArray(final MappedPlane plane) {
+			super(new double[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public double getValue(final int index) {
+			return ((DoubleBuffer) plane.view()).get(index);
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			((DoubleBuffer) plane.view()).put(index, value);
+		}
+
+		@Override
+		public double[] getCurrentStorageArray() {
+			return (double[]) plane.read();
+		}
+
+		@Override
+		public MappedPlane plane() {
+			return plane;
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.Dataset;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Gives direct, plane-by-plane access to the primitive arrays backing an
+ * {@link Img}. Planes are the XY planes of the image, numbered in the same
+ * raster order that {@link Dataset#getPlane(int)} uses (axis 2 varies
+ * fastest).
+ * <p>
+ * Both planar images (anything implementing {@link PlanarAccess}) and
+ * {@link ArrayImg}s are supported as long as their type can be handled by
+ * {@link RealArray}. For an ArrayImg each plane is a window onto the single
+ * backing array. Use {@link #create(Img)} which returns null for images that
+ * cannot be accessed this way; callers should then fall back to cursors and
+ * RandomAccesses.
+ * </p>
+ */
+public class PlaneAccess {
+
+	// -- instance variables --
+
+	private final Img<? extends RealType<?>> img;
+	private final RealType<?> type;
+	private final long[] dims;
+	private final int planeWidth;
+	private final int planeHeight;
+	private final int planeSize;
+	private final int planeCount;
+
+	// -- constructor --
+
+	private PlaneAccess(final Img<? extends RealType<?>> img,
+		final int planeWidth, final int planeHeight, final int planeCount)
+	{
+		this.img = img;
+		this.type = img.firstElement();
+		this.dims = new long[img.numDimensions()];
+		img.dimensions(dims);
+		this.planeWidth = planeWidth;
+		this.planeHeight = planeHeight;
+		this.planeSize = planeWidth * planeHeight;
+		this.planeCount = planeCount;
+	}
+
+	// -- static constructors --
+
+	/**
+	 * Returns a PlaneAccess for the pixels of the given Dataset or null if its
+	 * pixels cannot be accessed as primitive planes.
+	 */
+	public static PlaneAccess create(final Dataset dataset) {
+		return create(dataset.getImgPlus());
+	}
+
+	/**
+	 * Returns a PlaneAccess for the given Img or null if its pixels cannot be
+	 * accessed as primitive planes.
+	 */
+	public static PlaneAccess create(final Img<? extends RealType<?>> image) {
+		final Img<? extends RealType<?>> img = unwrap(image);
+		if (img == null || img.numDimensions() == 0) return null;
+		if (!RealArray.isSupported(img.firstElement())) return null;
+		final long w = img.dimension(0);
+		final long h = img.numDimensions() > 1 ? img.dimension(1) : 1;
+		if (w * h > Integer.MAX_VALUE) return null;
+		long count = 1;
+		for (int d = 2; d < img.numDimensions(); d++)
+			count *= img.dimension(d);
+		if (count > Integer.MAX_VALUE) return null;
+		// NB - the storage arrays of mapped and virtual planes are copies
+		if (img instanceof MappedPlanarImg) return null;
+		if (img instanceof VirtualPlanarImg) return null;
+		if (img instanceof PlanarAccess) {
+			final Object plane = ((PlanarAccess<?>) img).getPlane(0);
+			if (!(plane instanceof ArrayDataAccess) &&
+				!EmptyPlanarImgFactory.isEmptyPlanar(img))
+			{
+				return null;
+			}
+		}
+		else if (img instanceof ArrayImg) {
+			if (w * h * count > Integer.MAX_VALUE) return null;
+			if (!(((ArrayImg<?, ?>) img).update(null) instanceof ArrayDataAccess)) {
+				return null;
+			}
+		}
+		else return null;
+		return new PlaneAccess(img, (int) w, (int) h, (int) count);
+	}
+
+	/** Returns the underlying Img of a (possibly nested) ImgPlus. */
+	public static Img<? extends RealType<?>> unwrap(
+		final Img<? extends RealType<?>> image)
+	{
+		Img<? extends RealType<?>> img = image;
+		while (img instanceof ImgPlus) {
+			img = ((ImgPlus<? extends RealType<?>>) img).getImg();
+		}
+		return img;
+	}
+
+	/**
+	 * Returns the raster index of the plane containing the given position. Only
+	 * the position's values for axes 2 and higher are considered.
+	 */
+	public static long planeIndex(final long[] dims, final long[] position) {
+		long index = 0;
+		for (int d = dims.length - 1; d >= 2; d--)
+			index = index * dims[d] + position[d];
+		return index;
+	}
+
+	/**
+	 * Fills the given array (of length dims.length) with the position of the
+	 * origin of the given plane. Values for axes 0 and 1 are set to 0.
+	 */
+	public static void planePosition(final long[] dims, final long planeIndex,
+		final long[] position)
+	{
+		long index = planeIndex;
+		for (int d = 0; d < dims.length; d++) {
+			if (d < 2) position[d] = 0;
+			else {
+				position[d] = index % dims[d];
+				index /= dims[d];
+			}
+		}
+	}
+
+	// -- public interface --
+
+	/** Returns the image whose planes are being accessed. */
+	public Img<? extends RealType<?>> getImg() {
+		return img;
+	}
+
+	/** Returns a sample of the type stored in the image. */
+	public RealType<?> getType() {
+		return type;
+	}
+
+	/** Returns true if each plane is stored in its own primitive array. */
+	public boolean isPlanar() {
+		return img instanceof PlanarAccess;
+	}
+
+	/** Returns the dimensions of the underlying image. */
+	public long[] getDims() {
+		return dims.clone();
+	}
+
+	public int getPlaneWidth() {
+		return planeWidth;
+	}
+
+	public int getPlaneHeight() {
+		return planeHeight;
+	}
+
+	/** Returns the number of samples in one plane (width * height). */
+	public int getPlaneSize() {
+		return planeSize;
+	}
+
+	public int getPlaneCount() {
+		return planeCount;
+	}
+
+	/**
+	 * Returns a {@link RealArray} that views the samples of the given plane. The
+	 * returned window reflects the current storage of the plane; if a plane is
+	 * later replaced (see {@link Dataset#setPlane(int, Object)}) a new window
+	 * must be obtained. A plane not set yet in an image made by
+	 * {@link EmptyPlanarImgFactory} is allocated first.
+	 */
+	public RealArray getPlane(final int planeIndex) {
+		checkPlaneIndex(planeIndex);
+		if (img instanceof PlanarAccess) {
+			EmptyPlanarImgFactory.allocatePlane(img, planeIndex);
+			final ArrayDataAccess<?> access =
+				(ArrayDataAccess<?>) ((PlanarAccess<?>) img).getPlane(planeIndex);
+			return RealArray.wrap(access.getCurrentStorageArray(), type, 0,
+				planeSize);
+		}
+		final ArrayDataAccess<?> access =
+			(ArrayDataAccess<?>) ((ArrayImg<?, ?>) img).update(null);
+		return RealArray.wrap(access.getCurrentStorageArray(), type, planeIndex *
+			planeSize, planeSize);
+	}
+
+	/**
+	 * Returns a {@link RealArray} that views the samples of the given plane for
+	 * reading only. Unlike {@link #getPlane(int)} this does not give a plane
+	 * shared with another image (see {@link SharedPlanes}) its own copy, so
+	 * nothing must be written through the returned window.
+	 */
+	public RealArray getPlaneForReading(final int planeIndex) {
+		checkPlaneIndex(planeIndex);
+		if (!(img instanceof PlanarAccess)) return getPlane(planeIndex);
+		EmptyPlanarImgFactory.allocatePlane(img, planeIndex);
+		final ArrayDataAccess<?> access =
+			(ArrayDataAccess<?>) ((PlanarAccess<?>) img).getPlane(planeIndex);
+		return RealArray.wrap(SharedPlanes.getArrayForReading(access), type, 0,
+			planeSize);
+	}
+
+	// -- helper methods --
+
+	private void checkPlaneIndex(final int planeIndex) {
+		if (planeIndex < 0 || planeIndex >= planeCount) {
+			throw new IllegalArgumentException("plane index " + planeIndex +
+				" out of range [0," + planeCount + ")");
+		}
+	}
+
+}
@@ -0,0 +1,251 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.access.VirtualStorage.VirtualPlane;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Bounds the heap used by the planes of {@link VirtualPlanarImg}s. A plane is
+ * read the first time it is accessed; once the cached planes exceed the
+ * cache's capacity the least recently used ones (approximated with a clock:
+ * planes not accessed since the last sweep go first) are evicted, to be read
+ * again on their next access. Modified planes are saved before they are
+ * evicted. A plane being written by another thread is neither saved nor
+ * evicted until the write is done.
+ * <p>
+ * The cache counts its hits and misses (a plane being switched to by a cursor
+ * or RandomAccess, or requested as a whole, while it is or is not cached),
+ * evictions, and saved planes, so that its capacity can be tuned to the way
+ * images are browsed. Images share {@link #getDefault()} unless created with
+ * a cache of their own.
+ * </p>
+ */
+public class PlaneCache {
+
+	// -- constants --
+
+	/** Capacity of the default cache, in bytes: a quarter of the heap. */
+	public static final long DEFAULT_CAPACITY =
+		Runtime.getRuntime().maxMemory() / 4;
+
+	private static final PlaneCache DEFAULT = new PlaneCache(DEFAULT_CAPACITY);
+
+	// -- instance variables --
+
+	/** Cached planes, in the order the clock hand visits them. */
+	private final ArrayDeque<VirtualPlane> cached =
+		new ArrayDeque<VirtualPlane>();
+
+	private long capacity;
+	private long cachedBytes;
+
+	private long hits, misses, evictions, writeBacks, spills;
+
+	// -- constructor --
+
+	/** Creates a cache holding at most the given number of bytes. */
+	public PlaneCache(final long capacity) {
+		this.capacity = capacity;
+	}
+
+	// -- public interface --
+
+	/** Gets the cache shared by images not given one of their own. */
+	public static PlaneCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Sets the maximum number of bytes to hold. The plane in use is always
+	 * kept, whatever its size.
+	 */
+	public synchronized void setCapacity(final long capacity) {
+		this.capacity = capacity;
+		trim(null);
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	/** Gets the number of bytes currently held. */
+	public synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	/** Gets the number of planes currently held. */
+	public synchronized int getCachedPlanes() {
+		return cached.size();
+	}
+
+	/** Gets the number of requests for planes which were cached. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Gets the number of requests for planes which had to be read. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Gets the number of planes evicted to stay within capacity. */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/** Gets the number of modified planes written back to their source. */
+	public synchronized long getWriteBacks() {
+		return writeBacks;
+	}
+
+	/** Gets the number of modified planes spilled to a scratch file. */
+	public synchronized long getSpills() {
+		return spills;
+	}
+
+	/** Gets the fraction of requests which were hits (0 if none yet). */
+	public synchronized double getHitRatio() {
+		final long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/** Resets the hit, miss, eviction, write back and spill counts. */
+	public synchronized void resetStatistics() {
+		hits = misses = evictions = writeBacks = spills = 0;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public synchronized String toString() {
+		return "PlaneCache[" + cached.size() + " planes, " + cachedBytes + "/" +
+			capacity + " bytes, hits=" + hits + ", misses=" + misses +
+			", evictions=" + evictions + ", writeBacks=" + writeBacks +
+			", spills=" + spills + "]";
+	}
+
+	// -- PlaneCache methods --
+
+	/** Gets the samples of the given plane, reading it as needed. */
+	synchronized Object request(final VirtualPlane plane) {
+		Object data = plane.data;
+		plane.referenced = true;
+		if (data != null) {
+			hits++;
+			return data;
+		}
+		misses++;
+		data = plane.load();
+		plane.data = data;
+		cached.addLast(plane);
+		cachedBytes += plane.bytes();
+		trim(plane);
+		return data;
+	}
+
+	/** Saves the modified planes, among the cached ones, of the given image. */
+	synchronized void flush(final VirtualStorage storage) {
+		for (final VirtualPlane plane : cached) {
+			if (!plane.dirty || !plane.belongsTo(storage)) continue;
+			final Object data = detach(plane);
+			// NB - a plane being written is saved once it is evicted
+			if (data == null) continue;
+			save(plane, data);
+			plane.data = data;
+		}
+	}
+
+	/**
+	 * Drops the cached planes of the given image, such as when it is closed,
+	 * saving the modified ones first if requested.
+	 */
+	synchronized void purge(final VirtualStorage storage, final boolean save) {
+		final Iterator<VirtualPlane> iter = cached.iterator();
+		while (iter.hasNext()) {
+			final VirtualPlane plane = iter.next();
+			if (!plane.belongsTo(storage)) continue;
+			if (save && plane.dirty) save(plane, plane.data);
+			iter.remove();
+			plane.data = null;
+			plane.dirty = false;
+			cachedBytes -= plane.bytes();
+		}
+	}
+
+	// -- private helpers --
+
+	/** Evicts planes, other than the given one, until within capacity. */
+	private void trim(final VirtualPlane keep) {
+		int visits = 2 * cached.size();
+		while (cachedBytes > capacity && visits-- > 0) {
+			final VirtualPlane plane = cached.pollFirst();
+			final Object data =
+				plane == keep || plane.referenced ? null : detach(plane);
+			if (data == null) {
+				// second chance
+				plane.referenced = false;
+				cached.addLast(plane);
+				continue;
+			}
+			if (plane.dirty) save(plane, data);
+			cachedBytes -= plane.bytes();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Clears the samples of a cached plane, so that writes starting afterward
+	 * wait for the cache, and returns them; unless a write is in progress, in
+	 * which case they are put back and null is returned.
+	 */
+	private Object detach(final VirtualPlane plane) {
+		final Object data = plane.data;
+		plane.data = null;
+		if (!plane.isBeingWritten()) return data;
+		plane.data = data;
+		return null;
+	}
+
+	private void save(final VirtualPlane plane, final Object data) {
+		if (plane.save(data)) writeBacks++;
+		else spills++;
+		plane.dirty = false;
+	}
+
+}
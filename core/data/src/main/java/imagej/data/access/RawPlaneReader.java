@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads planes stored one after the other in a raw file, starting at a given
+ * offset (such as after a header), with the samples in a given byte order.
+ * The file is opened on the first read and kept open until {@link #close()}.
+ */
+public class RawPlaneReader implements PlaneReader, Closeable {
+
+	private final File file;
+	private final long offset;
+	private final ByteOrder order;
+
+	private FileChannel channel;
+
+	public RawPlaneReader(final File file, final long offset,
+		final ByteOrder order)
+	{
+		this.file = file;
+		this.offset = offset;
+		this.order = order;
+	}
+
+	// -- RawPlaneReader methods --
+
+	public File getFile() {
+		return file;
+	}
+
+	// -- Closeable methods --
+
+	/** Closes the file; it is opened again by the next read. */
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel == null) return;
+		channel.close();
+		channel = null;
+	}
+
+	// -- PlaneReader methods --
+
+	@Override
+	public synchronized void read(final int planeIndex, final Object plane)
+		throws IOException
+	{
+		final int bytes = sampleBytes(plane) * Array.getLength(plane);
+		final ByteBuffer buffer = ByteBuffer.allocate(bytes).order(order);
+		if (channel == null) {
+			channel = new RandomAccessFile(file, "r").getChannel();
+		}
+		long position = offset + (long) planeIndex * bytes;
+		while (buffer.hasRemaining()) {
+			final int n = channel.read(buffer, position);
+			if (n < 0) throw new IOException("Unexpected end of " + file);
+			position += n;
+		}
+		buffer.flip();
+		if (plane instanceof byte[]) buffer.get((byte[]) plane);
+		else if (plane instanceof short[]) {
+			buffer.asShortBuffer().get((short[]) plane);
+		}
+		else if (plane instanceof int[]) {
+			buffer.asIntBuffer().get((int[]) plane);
+		}
+		else if (plane instanceof long[]) {
+			buffer.asLongBuffer().get((long[]) plane);
+		}
+		else if (plane instanceof float[]) {
+			buffer.asFloatBuffer().get((float[]) plane);
+		}
+		else buffer.asDoubleBuffer().get((double[]) plane);
+	}
+
+	// -- private helpers --
+
+	private int sampleBytes(final Object plane) {
+		if (plane instanceof byte[]) return 1;
+		if (plane instanceof short[]) return 2;
+		if (plane instanceof int[] || plane instanceof float[]) return 4;
+		if (plane instanceof long[] || plane instanceof double[]) return 8;
+		throw new IllegalArgumentException("Unsupported plane: " + plane);
+	}
+
+}
@@ -0,0 +1,777 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+
+/**
+ * A window onto a primitive array that stores the samples of a
+ * {@link RealType}. A RealArray reads and writes samples as doubles but keeps
+ * the tight, type-specific loops (sign handling, rounding) in one place so that
+ * pixel engines can work on whole rows at a time instead of going through a
+ * RandomAccess for every pixel.
+ * <p>
+ * Values written through a RealArray are coded exactly as the corresponding
+ * ImgLib type's setReal() would code them: integer types are rounded and then
+ * truncated to the storage width without clamping. Callers that need clamping
+ * must do it themselves.
+ * </p>
+ * <p>
+ * Only byte, short, int, long, float and double backed types are supported.
+ * Bit packed types such as BitType and Unsigned12BitType are not; use
+ * {@link #isSupported(RealType)} to check.
+ * </p>
+ */
+public abstract class RealArray {
+
+	// -- instance variables --
+
+	protected final int offset;
+	protected final int length;
+
+	// -- constructor --
+
+	protected RealArray(final int offset, final int length) {
+		this.offset = offset;
+		this.length = length;
+	}
+
+	// -- public interface --
+
+	/** Returns the primitive array this RealArray is a window onto. */
+	public abstract Object getStorageArray();
+
+	/** Returns the number of samples visible through this window. */
+	public int size() {
+		return length;
+	}
+
+	/** Returns the index within the storage array of this window's sample 0. */
+	public int offset() {
+		return offset;
+	}
+
+	/** Gets the value of sample i of this window. */
+	public abstract double getReal(int i);
+
+	/** Sets the value of sample i of this window. */
+	public abstract void setReal(int i, double value);
+
+	/**
+	 * Reads count samples starting at sample i of this window into the given
+	 * double array starting at destPos.
+	 */
+	public abstract void get(int i, double[] dest, int destPos, int count);
+
+	/**
+	 * Writes count values taken from the given double array starting at srcPos
+	 * into this window starting at sample i.
+	 */
+	public abstract void set(int i, double[] src, int srcPos, int count);
+
+	/** Returns a window onto a subrange of this window's samples. */
+	public RealArray slice(final int from, final int count) {
+		if (from < 0 || count < 0 || from + count > length) {
+			throw new IllegalArgumentException("slice [" + from + "," +
+				(from + count) + ") out of bounds for size " + length);
+		}
+		return create(offset + from, count);
+	}
+
+	/**
+	 * Copies count samples starting at sample srcPos of this window into the
+	 * given window starting at dstPos. When both windows have the same storage
+	 * representation the copy is done with System.arraycopy().
+	 */
+	public void copyTo(final int srcPos, final RealArray dest, final int dstPos,
+		final int count)
+	{
+		if (dest.getClass() == getClass()) {
+			System.arraycopy(getStorageArray(), offset + srcPos, dest
+				.getStorageArray(), dest.offset + dstPos, count);
+			return;
+		}
+		final double[] buffer = new double[Math.min(count, 4096)];
+		int done = 0;
+		while (done < count) {
+			final int n = Math.min(buffer.length, count - done);
+			get(srcPos + done, buffer, 0, n);
+			dest.set(dstPos + done, buffer, 0, n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Sets count samples starting at sample i of this window to the given value.
+	 * The value is coded once and then replicated with Arrays.fill().
+	 */
+	public void fill(final int i, final int count, final double value) {
+		if (count <= 0) return;
+		setReal(i, value);
+		final Object storage = getStorageArray();
+		final int from = offset + i;
+		final int to = from + count;
+		if (storage instanceof byte[]) {
+			final byte[] a = (byte[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+		else if (storage instanceof short[]) {
+			final short[] a = (short[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+		else if (storage instanceof int[]) {
+			final int[] a = (int[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+		else if (storage instanceof long[]) {
+			final long[] a = (long[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+		else if (storage instanceof float[]) {
+			final float[] a = (float[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+		else {
+			final double[] a = (double[]) storage;
+			Arrays.fill(a, from + 1, to, a[from]);
+		}
+	}
+
+	// -- static utility methods --
+
+	/**
+	 * Returns true if samples of the given type can be accessed through a
+	 * RealArray.
+	 */
+	public static boolean isSupported(final RealType<?> type) {
+		return storageClass(type) != null;
+	}
+
+	/**
+	 * Returns the class of primitive array that holds samples of the given type
+	 * (such as byte[].class) or null if the type is not supported.
+	 */
+	public static Class<?> storageClass(final RealType<?> type) {
+		if (type instanceof UnsignedByteType) return byte[].class;
+		if (type instanceof ByteType) return byte[].class;
+		if (type instanceof UnsignedShortType) return short[].class;
+		if (type instanceof ShortType) return short[].class;
+		if (type instanceof UnsignedIntType) return int[].class;
+		if (type instanceof IntType) return int[].class;
+		if (type instanceof LongType) return long[].class;
+		if (type instanceof FloatType) return float[].class;
+		if (type instanceof DoubleType) return double[].class;
+		return null;
+	}
+
+	/**
+	 * Allocates a new primitive array capable of holding the given number of
+	 * samples of the given type. Returns null if the type is not supported.
+	 */
+	public static Object allocate(final RealType<?> type, final int size) {
+		final Class<?> c = storageClass(type);
+		if (c == byte[].class) return new byte[size];
+		if (c == short[].class) return new short[size];
+		if (c == int[].class) return new int[size];
+		if (c == long[].class) return new long[size];
+		if (c == float[].class) return new float[size];
+		if (c == double[].class) return new double[size];
+		return null;
+	}
+
+	/**
+	 * Wraps a whole primitive array holding samples of the given type. Returns
+	 * null if the type is unsupported or the array is of the wrong kind.
+	 */
+	public static RealArray wrap(final Object storage, final RealType<?> type) {
+		if (storage == null) return null;
+		return wrap(storage, type, 0, Array.getLength(storage));
+	}
+
+	/**
+	 * Wraps a range of a primitive array holding samples of the given type.
+	 * Returns null if the type is unsupported or the array is of the wrong kind.
+	 */
+	public static RealArray wrap(final Object storage, final RealType<?> type,
+		final int offset, final int length)
+	{
+		if (storage == null) return null;
+		if (storage.getClass() != storageClass(type)) return null;
+		if (type instanceof UnsignedByteType) {
+			return new UnsignedByteSamples((byte[]) storage, offset, length);
+		}
+		if (type instanceof ByteType) {
+			return new ByteSamples((byte[]) storage, offset, length);
+		}
+		if (type instanceof UnsignedShortType) {
+			return new UnsignedShortSamples((short[]) storage, offset, length);
+		}
+		if (type instanceof ShortType) {
+			return new ShortSamples((short[]) storage, offset, length);
+		}
+		if (type instanceof UnsignedIntType) {
+			return new UnsignedIntSamples((int[]) storage, offset, length);
+		}
+		if (type instanceof IntType) {
+			return new IntSamples((int[]) storage, offset, length);
+		}
+		if (type instanceof LongType) {
+			return new LongSamples((long[]) storage, offset, length);
+		}
+		if (type instanceof FloatType) {
+			return new FloatSamples((float[]) storage, offset, length);
+		}
+		if (type instanceof DoubleType) {
+			return new DoubleSamples((double[]) storage, offset, length);
+		}
+		return null;
+	}
+
+	// -- protected interface --
+
+	/** Creates a window of the same kind onto the same storage array. */
+	protected abstract RealArray create(int newOffset, int newLength);
+
+	// -- implementations --
+
+	private static final class UnsignedByteSamples extends RealArray {
+
+		private final byte[] a;
+
+		public UnsignedByteSamples(final byte[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p] & 0xff;
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (byte) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p] & 0xff;
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (byte) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new UnsignedByteSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class ByteSamples extends RealArray {
+
+		private final byte[] a;
+
+		public ByteSamples(final byte[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (byte) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (byte) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new ByteSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class UnsignedShortSamples extends RealArray {
+
+		private final short[] a;
+
+		public UnsignedShortSamples(final short[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p] & 0xffff;
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (short) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p] & 0xffff;
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (short) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new UnsignedShortSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class ShortSamples extends RealArray {
+
+		private final short[] a;
+
+		public ShortSamples(final short[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (short) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (short) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new ShortSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class UnsignedIntSamples extends RealArray {
+
+		private final int[] a;
+
+		public UnsignedIntSamples(final int[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p] & 0xffffffffL;
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (int) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p] & 0xffffffffL;
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (int) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new UnsignedIntSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class IntSamples extends RealArray {
+
+		private final int[] a;
+
+		public IntSamples(final int[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (int) Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (int) Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new IntSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class LongSamples extends RealArray {
+
+		private final long[] a;
+
+		public LongSamples(final long[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = Util.round(v);
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = Util.round(v);
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new LongSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class FloatSamples extends RealArray {
+
+		private final float[] a;
+
+		public FloatSamples(final float[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = (float) v;
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = (float) v;
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new FloatSamples(a, newOffset, newLength);
+		}
+	}
+
+	private static final class DoubleSamples extends RealArray {
+
+		private final double[] a;
+
+		public DoubleSamples(final double[] a, final int offset,
+			final int length)
+		{
+			super(offset, length);
+			this.a = a;
+		}
+
+		@Override
+		public Object getStorageArray() {
+			return a;
+		}
+
+		@Override
+		public double getReal(final int i) {
+			final int p = offset + i;
+			return a[p];
+		}
+
+		@Override
+		public void setReal(final int i, final double v) {
+			a[offset + i] = v;
+		}
+
+		@Override
+		public void get(final int i, final double[] dest, final int destPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final int p = base + k;
+				dest[destPos + k] = a[p];
+			}
+		}
+
+		@Override
+		public void set(final int i, final double[] src, final int srcPos,
+			final int count)
+		{
+			final int base = offset + i;
+			for (int k = 0; k < count; k++) {
+				final double v = src[srcPos + k];
+				a[base + k] = v;
+			}
+		}
+
+		@Override
+		protected RealArray create(final int newOffset, final int newLength) {
+			return new DoubleSamples(a, newOffset, newLength);
+		}
+	}
+}
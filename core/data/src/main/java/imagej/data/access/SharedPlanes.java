@@ -0,0 +1,637 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+/**
+ * Shares the primitive plane arrays of planar images between images with
+ * copy-on-write semantics. A shared plane is backed by one array until either
+ * image writes to it: the first sample written through the image's types, or
+ * the first request for the raw array (e.g. {@link PlaneAccess#getPlane(int)}
+ * or {@link imagej.data.Dataset#getPlane(int)}), gives that image its own
+ * copy of the plane while the other images keep the original. Code that only
+ * reads samples should use {@link PlaneAccess#getPlaneForReading(int)}, which
+ * leaves shared planes shared.
+ * <p>
+ * A plane's array can only be shared while nothing outside its image refers
+ * to it. Once the raw array has been handed out (for instance to a legacy
+ * ImagePlus) it may be written at any time without going through the image,
+ * so {@link #share} gives the other image a copy of such planes instead. The
+ * same goes for planes of images that were not prepared with
+ * {@link #makeShareable} when they were allocated, since cursors,
+ * RandomAccesses and plane arrays obtained before may still be in use.
+ * </p>
+ * <p>
+ * Only the storage classes imglib2 uses for planar images of the primitive
+ * types (ByteArray, ShortArray, IntArray, LongArray, FloatArray and
+ * DoubleArray) can be shared.
+ * </p>
+ */
+public final class SharedPlanes {
+
+	private SharedPlanes() {
+		// utility class
+	}
+
+	// -- public interface --
+
+	/**
+	 * Prepares the planes of a newly allocated planar image to be shared
+	 * without copying. Call this only while nothing outside the image refers
+	 * to its planes: no plane arrays handed out and no cursors or
+	 * RandomAccesses still in use. Does nothing for other images.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static void makeShareable(final Img<?> img) {
+		final Img<?> planar = unwrap(img);
+		final long planeCount = planeCount(planar);
+		if (planeCount < 0) return;
+		final PlanarAccess planes = (PlanarAccess) planar;
+		for (int p = 0; p < planeCount; p++) {
+			final Object access = planes.getPlane(p);
+			final SharedAccess shared = wrap(access);
+			if (shared != null && shared != access) {
+				planes.setPlane(p, (ArrayDataAccess) shared);
+			}
+		}
+	}
+
+	/**
+	 * Makes plane dstPlane of the dst image share the storage of plane srcPlane
+	 * of the src image. If the source array may be referenced outside its image
+	 * (see above) the dst image gets a copy of the plane instead. Returns
+	 * false, leaving both images unchanged, if either image is not planar or
+	 * the plane's storage is not of a shareable class; callers should then copy
+	 * the plane some other way.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static boolean share(final Img<?> src, final int srcPlane,
+		final Img<?> dst, final int dstPlane)
+	{
+		final Img<?> srcImg = unwrap(src);
+		final Img<?> dstImg = unwrap(dst);
+		if (!(srcImg instanceof PlanarAccess)) return false;
+		if (!(dstImg instanceof PlanarAccess)) return false;
+		final Object access = ((PlanarAccess) srcImg).getPlane(srcPlane);
+		final SharedAccess shared = wrap(access);
+		if (shared == null) return false;
+		// NB - a plain access may have handed out its array already
+		final ArrayDataAccess<?> dstAccess =
+			shared == access ? shared.share() : shared.copy();
+		((PlanarAccess) dstImg).setPlane(dstPlane, dstAccess);
+		return true;
+	}
+
+	/**
+	 * Returns true if every plane of the given image could be shared with
+	 * another planar image of the same type, so that callers can tell whether
+	 * to allocate a destination for {@link #share} or to copy instead.
+	 */
+	public static boolean canShare(final Img<?> img) {
+		final Img<?> planar = unwrap(img);
+		final long planeCount = planeCount(planar);
+		if (planeCount < 0) return false;
+		final PlanarAccess<?> planes = (PlanarAccess<?>) planar;
+		for (int p = 0; p < planeCount; p++) {
+			if (!isShareable(planes.getPlane(p))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the given plane of a planar image currently shares its
+	 * storage with another image.
+	 */
+	public static boolean isShared(final Img<?> img, final int plane) {
+		final Img<?> planar = unwrap(img);
+		if (!(planar instanceof PlanarAccess)) return false;
+		final Object access = ((PlanarAccess<?>) planar).getPlane(plane);
+		return access instanceof SharedAccess &&
+			((SharedAccess) access).isShared();
+	}
+
+	// -- package-private helpers --
+
+	/**
+	 * Returns the current storage array of a plane access. Unlike
+	 * {@link ArrayDataAccess#getCurrentStorageArray()} this does not give a
+	 * shared plane its own copy, so the array must only be read.
+	 */
+	static Object getArrayForReading(final ArrayDataAccess<?> access) {
+		if (access instanceof SharedAccess) {
+			return ((SharedAccess) access).peek();
+		}
+		return access.getCurrentStorageArray();
+	}
+
+	// -- private helpers --
+
+	private static Img<?> unwrap(final Img<?> image) {
+		Img<?> img = image;
+		while (img instanceof ImgPlus) {
+			img = ((ImgPlus<?>) img).getImg();
+		}
+		return img;
+	}
+
+	/**
+	 * Returns the number of planes of a planar image or -1 if the image is not
+	 * planar or has too many planes.
+	 */
+	private static long planeCount(final Img<?> img) {
+		if (!(img instanceof PlanarAccess)) return -1;
+		if (img.numDimensions() < 2) return -1;
+		long planeCount = 1;
+		for (int d = 2; d < img.numDimensions(); d++) {
+			planeCount *= img.dimension(d);
+		}
+		return planeCount > Integer.MAX_VALUE ? -1 : planeCount;
+	}
+
+	/** Returns true if the given plane access is of a shareable class. */
+	private static boolean isShareable(final Object access) {
+		if (access instanceof SharedAccess) return true;
+		if (access == null) return false;
+		final Class<?> c = access.getClass();
+		return c == ByteArray.class || c == ShortArray.class ||
+			c == IntArray.class || c == LongArray.class ||
+			c == FloatArray.class || c == DoubleArray.class;
+	}
+
+	/**
+	 * Returns a shareable access onto the same array as the given plane access
+	 * or null if the access is not of a shareable class.
+	 */
+	private static SharedAccess wrap(final Object access) {
+		if (access instanceof SharedAccess) return (SharedAccess) access;
+		if (access == null) return null;
+		final Class<?> c = access.getClass();
+		if (c == ByteArray.class) {
+			final byte[] data = ((ByteArray) access).getCurrentStorageArray();
+			return new SharedByteArray(data, null);
+		}
+		if (c == ShortArray.class) {
+			final short[] data = ((ShortArray) access).getCurrentStorageArray();
+			return new SharedShortArray(data, null);
+		}
+		if (c == IntArray.class) {
+			final int[] data = ((IntArray) access).getCurrentStorageArray();
+			return new SharedIntArray(data, null);
+		}
+		if (c == LongArray.class) {
+			final long[] data = ((LongArray) access).getCurrentStorageArray();
+			return new SharedLongArray(data, null);
+		}
+		if (c == FloatArray.class) {
+			final float[] data = ((FloatArray) access).getCurrentStorageArray();
+			return new SharedFloatArray(data, null);
+		}
+		if (c == DoubleArray.class) {
+			final double[] data =
+				((DoubleArray) access).getCurrentStorageArray();
+			return new SharedDoubleArray(data, null);
+		}
+		return null;
+	}
+
+	// -- helper classes --
+
+	/** Counts the plane accesses holding one shared array. */
+	private static final class Sharing {
+
+		private int holders = 1;
+
+		public synchronized void add() {
+			holders++;
+		}
+
+		/**
+		 * Drops one holder and returns true if others still hold the array. A
+		 * holder that copies the array in that case must do so while holding
+		 * this lock, since the last holder detaches without copying.
+		 */
+		public synchronized boolean release() {
+			return --holders > 0;
+		}
+	}
+
+	/**
+	 * A plane access whose array may be shared. Once its array has been handed
+	 * out by getCurrentStorageArray() it is never shared again.
+	 */
+	private interface SharedAccess {
+
+		/**
+		 * Returns a new access holding this access' array, or a copy of it if
+		 * the array has been handed out.
+		 */
+		ArrayDataAccess<?> share();
+
+		/** Returns a new access holding a copy of this access' array. */
+		ArrayDataAccess<?> copy();
+
+		/** Returns true while the array may be held by other accesses. */
+		boolean isShared();
+
+		/** Returns the current array without detaching it. */
+		Object peek();
+	}
+
+	/** A ByteArray whose array may be shared with other images. */
+	private static final class SharedByteArray extends ByteArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedByteArray(final byte[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final byte value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized byte[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedByteArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedByteArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+	/** A ShortArray whose array may be shared with other images. */
+	private static final class SharedShortArray extends ShortArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedShortArray(final short[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final short value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized short[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedShortArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedShortArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+	/** A IntArray whose array may be shared with other images. */
+	private static final class SharedIntArray extends IntArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedIntArray(final int[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final int value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized int[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedIntArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedIntArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+	/** A LongArray whose array may be shared with other images. */
+	private static final class SharedLongArray extends LongArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedLongArray(final long[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final long value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized long[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedLongArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedLongArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+	/** A FloatArray whose array may be shared with other images. */
+	private static final class SharedFloatArray extends FloatArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedFloatArray(final float[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized float[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedFloatArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedFloatArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+	/** A DoubleArray whose array may be shared with other images. */
+	private static final class SharedDoubleArray extends DoubleArray implements
+		SharedAccess
+	{
+
+		private volatile Sharing sharing;
+		private boolean exposed;
+
+		public SharedDoubleArray(final double[] data, final Sharing sharing) {
+			super(data);
+			this.sharing = sharing;
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			if (sharing != null) detach();
+			data[index] = value;
+		}
+
+		@Override
+		public synchronized double[] getCurrentStorageArray() {
+			if (sharing != null) detach();
+			exposed = true;
+			return data;
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> share() {
+			if (exposed) return copy();
+			if (sharing == null) sharing = new Sharing();
+			sharing.add();
+			return new SharedDoubleArray(data, sharing);
+		}
+
+		@Override
+		public synchronized ArrayDataAccess<?> copy() {
+			return new SharedDoubleArray(data.clone(), null);
+		}
+
+		@Override
+		public boolean isShared() {
+			return sharing != null;
+		}
+
+		@Override
+		public synchronized Object peek() {
+			return data;
+		}
+
+		private synchronized void detach() {
+			if (sharing == null) return;
+			// copy before the last other holder may write to the array
+			synchronized (sharing) {
+				if (sharing.release()) data = data.clone();
+			}
+			sharing = null;
+		}
+	}
+
+}
@@ -0,0 +1,443 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.util.ParallelLoop;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Copies the samples of one image into another image of a (usually) different
+ * type, mapping values into the range of the output type.
+ * <p>
+ * Images whose planes are primitive arrays are converted a row at a time: each
+ * row is decoded by a type specific {@link RealArray} loop, mapped, and encoded
+ * by the output's loop, with rows of different planes converted in parallel.
+ * Rows of the same type are copied with System.arraycopy(). Other images (such
+ * as bit or 12-bit images) are converted by walking rows with RandomAccesses;
+ * bit packed outputs are written by a single thread.
+ * </p>
+ * <p>
+ * A converter may be reused but must not run two conversions at once.
+ * </p>
+ */
+public class TypeConverter {
+
+	/** How input values are mapped into the range of the output type. */
+	public enum Scaling {
+
+		/**
+		 * Values are kept as they are but clamped to the output type's range.
+		 * Nonzero values of 1-bit inputs become the output type's maximum.
+		 */
+		CLAMP,
+
+		/**
+		 * The range of the input data is stretched to the full range of an
+		 * integer output type. Floating point outputs are only clamped.
+		 */
+		RESCALE_FULL,
+
+		/**
+		 * The display range (see {@link TypeConverter#setDisplayRange}) is
+		 * stretched to the full range of an integer output type; values
+		 * outside the display range are clamped. Floating point outputs are
+		 * only clamped.
+		 */
+		RESCALE_DISPLAY
+	}
+
+	// -- instance variables --
+
+	private final Scaling scaling;
+	private double displayMin = Double.NaN;
+	private double displayMax = Double.NaN;
+
+	// per conversion mapping state
+	private double outMin, outMax;
+	private double srcMin, scale;
+	private boolean rescale, bitToMax;
+
+	// -- constructors --
+
+	/** Creates a converter that clamps values to the output type's range. */
+	public TypeConverter() {
+		this(Scaling.CLAMP);
+	}
+
+	public TypeConverter(final Scaling scaling) {
+		this.scaling = scaling;
+	}
+
+	// -- public interface --
+
+	public Scaling getScaling() {
+		return scaling;
+	}
+
+	/**
+	 * Sets the range of input values mapped to the full range of the output
+	 * type when scaling is {@link Scaling#RESCALE_DISPLAY}.
+	 */
+	public void setDisplayRange(final double min, final double max) {
+		displayMin = min;
+		displayMax = max;
+	}
+
+	/**
+	 * Converts the samples of the input image into the output image. Both
+	 * images must have the same dimensions.
+	 */
+	public void convert(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		prepare(input, output);
+		final PlaneAccess in = PlaneAccess.create(input);
+		final PlaneAccess out = PlaneAccess.create(output);
+		final long[] dims = new long[input.numDimensions()];
+		input.dimensions(dims);
+		if (in != null && out != null) {
+			final boolean copy =
+				!rescale && !bitToMax &&
+					in.getType().getClass() == out.getType().getClass();
+			forEachRowChunk(dims, output, new RowBody() {
+
+				@Override
+				public void run(final long fromRow, final long toRow) {
+					convertRows(in, out, dims, fromRow, toRow, copy);
+				}
+			});
+		}
+		else {
+			forEachRowChunk(dims, output, new RowBody() {
+
+				@Override
+				public void run(final long fromRow, final long toRow) {
+					convertRows(input, output, dims, fromRow, toRow);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Converts the average of the channels of the input image into the output
+	 * image. The output image must have the dimensions of the input image with
+	 * the channel axis (given by its index) removed. An image without a channel
+	 * axis (index -1) is simply converted.
+	 */
+	public void convertAverage(final Img<? extends RealType<?>> input,
+		final int chIndex, final Img<? extends RealType<?>> output)
+	{
+		if (chIndex < 0) {
+			convert(input, output);
+			return;
+		}
+		prepare(input, output);
+		final PlaneAccess in = PlaneAccess.create(input);
+		final PlaneAccess out = PlaneAccess.create(output);
+		final long[] inDims = new long[input.numDimensions()];
+		input.dimensions(inDims);
+		final long[] outDims = new long[output.numDimensions()];
+		output.dimensions(outDims);
+		if (in != null && out != null && chIndex >= 2) {
+			forEachRowChunk(outDims, output, new RowBody() {
+
+				@Override
+				public void run(final long fromRow, final long toRow) {
+					averageRows(in, out, inDims, outDims, chIndex, fromRow,
+						toRow);
+				}
+			});
+		}
+		else {
+			forEachRowChunk(outDims, output, new RowBody() {
+
+				@Override
+				public void run(final long fromRow, final long toRow) {
+					averageRows(input, output, inDims, outDims, chIndex,
+						fromRow, toRow);
+				}
+			});
+		}
+	}
+
+	// -- private helpers --
+
+	private interface RowBody {
+
+		void run(long fromRow, long toRow);
+	}
+
+	/** Sets up the value mapping for a conversion between two images. */
+	private void prepare(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output)
+	{
+		final RealType<?> outType = output.firstElement();
+		outMin = outType.getMinValue();
+		outMax = outType.getMaxValue();
+		bitToMax = input.firstElement().getBitsPerPixel() == 1;
+		final boolean floatOutput =
+			outType instanceof FloatType || outType instanceof DoubleType;
+		rescale = scaling != Scaling.CLAMP && !floatOutput;
+		if (!rescale) return;
+		bitToMax = false;
+		double min, max;
+		if (scaling == Scaling.RESCALE_DISPLAY && displayMin < displayMax) {
+			min = displayMin;
+			max = displayMax;
+		}
+		else {
+			final double[] range = dataRange(input);
+			min = range[0];
+			max = range[1];
+		}
+		srcMin = min;
+		scale = (max > min) ? (outMax - outMin) / (max - min) : 0;
+	}
+
+	/** Maps count values in place into the output range. */
+	private void map(final double[] values, final int count) {
+		for (int i = 0; i < count; i++) {
+			double value = values[i];
+			if (rescale) value = outMin + (value - srcMin) * scale;
+			if (value < outMin) value = outMin;
+			if (value > outMax) value = outMax;
+			if (bitToMax && value > 0) value = outMax;
+			values[i] = value;
+		}
+	}
+
+	/**
+	 * Runs the given body over chunks of the rows of an image of the given
+	 * dimensions. Row r is row (r % height) of plane (r / height).
+	 */
+	private void forEachRowChunk(final long[] dims,
+		final Img<? extends RealType<?>> output, final RowBody body)
+	{
+		final long height = dims.length > 1 ? dims[1] : 1;
+		final long rows = height * planeCount(dims);
+		final long[] bounds = ParallelLoop.chunkBounds(rows, 4);
+		// bit packed samples of different rows may share a storage word
+		final int bits = output.firstElement().getBitsPerPixel();
+		final int threads =
+			bits % 8 != 0 ? 1 : ParallelLoop.defaultThreadCount();
+		ParallelLoop.run(bounds.length - 1, threads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int c) {
+				body.run(bounds[c], bounds[c + 1]);
+			}
+		});
+	}
+
+	private void convertRows(final PlaneAccess in, final PlaneAccess out,
+		final long[] dims, final long fromRow, final long toRow,
+		final boolean copy)
+	{
+		final int w = in.getPlaneWidth();
+		final int h = in.getPlaneHeight();
+		final double[] row = new double[w];
+		int current = -1;
+		RealArray src = null, dst = null;
+		for (long r = fromRow; r < toRow; r++) {
+			final int p = (int) (r / h);
+			if (p != current) {
+				src = in.getPlaneForReading(p);
+				dst = out.getPlane(p);
+				current = p;
+			}
+			final int offset = (int) (r % h) * w;
+			if (copy) {
+				src.copyTo(offset, dst, offset, w);
+				continue;
+			}
+			src.get(offset, row, 0, w);
+			map(row, w);
+			dst.set(offset, row, 0, w);
+		}
+	}
+
+	private void convertRows(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output, final long[] dims,
+		final long fromRow, final long toRow)
+	{
+		final RandomAccess<? extends RealType<?>> src = input.randomAccess();
+		final RandomAccess<? extends RealType<?>> dst = output.randomAccess();
+		final long height = dims.length > 1 ? dims[1] : 1;
+		final long[] pos = new long[dims.length];
+		final double[] value = new double[1];
+		for (long r = fromRow; r < toRow; r++) {
+			PlaneAccess.planePosition(dims, r / height, pos);
+			if (dims.length > 1) pos[1] = r % height;
+			src.setPosition(pos);
+			dst.setPosition(pos);
+			for (long x = 0; x < dims[0]; x++) {
+				value[0] = src.get().getRealDouble();
+				map(value, 1);
+				dst.get().setReal(value[0]);
+				src.fwd(0);
+				dst.fwd(0);
+			}
+		}
+	}
+
+	private void averageRows(final PlaneAccess in, final PlaneAccess out,
+		final long[] inDims, final long[] outDims, final int chIndex,
+		final long fromRow, final long toRow)
+	{
+		final int w = out.getPlaneWidth();
+		final int h = out.getPlaneHeight();
+		final long channels = inDims[chIndex];
+		final double[] row = new double[w];
+		final double[] sum = new double[w];
+		final long[] outPos = new long[outDims.length];
+		final long[] inPos = new long[inDims.length];
+		for (long r = fromRow; r < toRow; r++) {
+			final int offset = (int) (r % h) * w;
+			PlaneAccess.planePosition(outDims, r / h, outPos);
+			insertChannel(outPos, chIndex, 0, inPos);
+			for (int x = 0; x < w; x++)
+				sum[x] = 0;
+			for (long c = 0; c < channels; c++) {
+				inPos[chIndex] = c;
+				final int p = (int) PlaneAccess.planeIndex(inDims, inPos);
+				in.getPlaneForReading(p).get(offset, row, 0, w);
+				for (int x = 0; x < w; x++)
+					sum[x] += row[x];
+			}
+			for (int x = 0; x < w; x++)
+				sum[x] /= channels;
+			map(sum, w);
+			out.getPlane((int) (r / h)).set(offset, sum, 0, w);
+		}
+	}
+
+	private void averageRows(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output, final long[] inDims,
+		final long[] outDims, final int chIndex, final long fromRow,
+		final long toRow)
+	{
+		final RandomAccess<? extends RealType<?>> src = input.randomAccess();
+		final RandomAccess<? extends RealType<?>> dst = output.randomAccess();
+		final long height = outDims.length > 1 ? outDims[1] : 1;
+		final long channels = inDims[chIndex];
+		final long[] outPos = new long[outDims.length];
+		final long[] inPos = new long[inDims.length];
+		final double[] value = new double[1];
+		for (long r = fromRow; r < toRow; r++) {
+			PlaneAccess.planePosition(outDims, r / height, outPos);
+			if (outDims.length > 1) outPos[1] = r % height;
+			dst.setPosition(outPos);
+			for (long x = 0; x < outDims[0]; x++) {
+				outPos[0] = x;
+				insertChannel(outPos, chIndex, 0, inPos);
+				double sum = 0;
+				for (long c = 0; c < channels; c++) {
+					inPos[chIndex] = c;
+					src.setPosition(inPos);
+					sum += src.get().getRealDouble();
+				}
+				value[0] = sum / channels;
+				map(value, 1);
+				dst.get().setReal(value[0]);
+				dst.fwd(0);
+			}
+		}
+	}
+
+	/** Computes the {min, max} of the non-NaN samples of an image. */
+	private static double[] dataRange(final Img<? extends RealType<?>> img) {
+		final PlaneAccess access = PlaneAccess.create(img);
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		if (access == null) {
+			final Cursor<? extends RealType<?>> cursor = img.cursor();
+			while (cursor.hasNext()) {
+				final double value = cursor.next().getRealDouble();
+				if (value < min) min = value;
+				if (value > max) max = value;
+			}
+			return new double[] { min, max };
+		}
+		final int count = access.getPlaneCount();
+		final double[][] ranges = new double[count][];
+		ParallelLoop.run(count, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int p) {
+				final RealArray plane = access.getPlaneForReading(p);
+				final double[] row = new double[access.getPlaneWidth()];
+				double lo = Double.POSITIVE_INFINITY;
+				double hi = Double.NEGATIVE_INFINITY;
+				for (int y = 0; y < access.getPlaneHeight(); y++) {
+					plane.get(y * row.length, row, 0, row.length);
+					for (final double value : row) {
+						if (value < lo) lo = value;
+						if (value > hi) hi = value;
+					}
+				}
+				ranges[p] = new double[] { lo, hi };
+			}
+		});
+		for (final double[] range : ranges) {
+			if (range[0] < min) min = range[0];
+			if (range[1] > max) max = range[1];
+		}
+		return new double[] { min, max };
+	}
+
+	private static long planeCount(final long[] dims) {
+		long count = 1;
+		for (int d = 2; d < dims.length; d++)
+			count *= dims[d];
+		return count;
+	}
+
+	/** Fills inPos with outPos plus the given channel inserted at chIndex. */
+	private static void insertChannel(final long[] outPos, final int chIndex,
+		final long channel, final long[] inPos)
+	{
+		int o = 0;
+		for (int i = 0; i < inPos.length; i++) {
+			inPos[i] = (i == chIndex) ? channel : outPos[o++];
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Creates the {@link VirtualPlanarImg} of a {@link PlaneReader}, with
+ * {@link VirtualPlanarImg#create}. Types whose samples are not bytes, shorts,
+ * ints, longs, floats or doubles get an ordinary planar image, which
+ * {@link VirtualPlanarImg#create} rejects.
+ */
+class VirtualImgFactory<T extends NativeType<T>> extends PlanarImgFactory<T>
+{
+
+	private final PlaneReader reader;
+	private final PlaneCache cache;
+
+	VirtualImgFactory(final PlaneReader reader, final PlaneCache cache) {
+		this.reader = reader;
+		this.cache = cache;
+	}
+
+	// -- NativeImgFactory methods --
+
+	@Override
+	public PlanarImg<T, ByteArray> createByteInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.BYTE, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, ShortArray> createShortInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.SHORT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, IntArray> createIntInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.INT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, LongArray> createLongInstance(final long[] dimensions,
+		final int entitiesPerPixel)
+	{
+		return create(MappedStorage.LONG, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, FloatArray> createFloatInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.FLOAT, dimensions, entitiesPerPixel);
+	}
+
+	@Override
+	public PlanarImg<T, DoubleArray> createDoubleInstance(
+		final long[] dimensions, final int entitiesPerPixel)
+	{
+		return create(MappedStorage.DOUBLE, dimensions, entitiesPerPixel);
+	}
+
+	// -- ImgFactory methods --
+
+	/** Images of other types cannot share the reader; they are mapped. */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@Override
+	public <S> ImgFactory<S> imgFactory(final S type)
+		throws IncompatibleTypeException
+	{
+		if (!(type instanceof NativeType)) {
+			throw new IncompatibleTypeException(this, type.getClass()
+				.getCanonicalName() +
+				" does not implement NativeType.");
+		}
+		return new MappedImgFactory();
+	}
+
+	// -- private helpers --
+
+	private <A extends ArrayDataAccess<A>> VirtualPlanarImg<T, A> create(
+		final int kind, final long[] dimensions, final int entitiesPerPixel)
+	{
+		final VirtualStorage storage =
+			new VirtualStorage(reader, cache, kind, dimensions,
+				entitiesPerPixel);
+		return new VirtualPlanarImg<T, A>(storage, dimensions,
+			entitiesPerPixel);
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.access.VirtualStorage.VirtualAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link PlanarImg} whose planes are read from a {@link PlaneReader} when
+ * they are accessed, and held in a size-bounded {@link PlaneCache} rather than
+ * all at once, so that huge stacks can be browsed within a fixed memory
+ * budget.
+ * <p>
+ * Samples are read and written by the usual cursors and RandomAccesses.
+ * Modified planes are written back to the source when the reader is a
+ * {@link PlaneWriter}, and spilled to a scratch file otherwise, when they are
+ * evicted or on {@link #flush()}. A sample written by one thread while
+ * another evicts its plane may be lost, so concurrent writers should use a
+ * cache holding the planes they write at once.
+ * </p>
+ * <p>
+ * As for {@link MappedPlanarImg}, the storage array of a plane is a copy of
+ * the plane, {@link #setPlane(int, ArrayDataAccess)} copies the given plane
+ * in, and {@link PlaneAccess} is not available. Only byte, short, int, long,
+ * float and double samples are supported.
+ * </p>
+ */
+public class VirtualPlanarImg<T extends NativeType<T>,
+	A extends ArrayDataAccess<A>> extends PlanarImg<T, A>
+{
+
+	private final VirtualStorage storage;
+
+	@SuppressWarnings("unchecked")
+	VirtualPlanarImg(final VirtualStorage storage, final long[] dim,
+		final int entitiesPerPixel)
+	{
+		super(dim, entitiesPerPixel);
+		this.storage = storage;
+		for (int i = 0; i < numSlices(); i++) {
+			super.setPlane(i, (A) storage.createAccess(i));
+		}
+	}
+
+	// -- VirtualPlanarImg methods --
+
+	/**
+	 * Creates a virtual image of the given dimensions and type, reading its
+	 * planes from the given reader and caching them in the given cache.
+	 * 
+	 * @throws IllegalArgumentException if the type's samples are not bytes,
+	 *           shorts, ints, longs, floats or doubles, or a plane is larger
+	 *           than 2 GB.
+	 */
+	public static <T extends NativeType<T>> VirtualPlanarImg<T, ?> create(
+		final long[] dims, final T type, final PlaneReader reader,
+		final PlaneCache cache)
+	{
+		final Img<T> img =
+			new VirtualImgFactory<T>(reader, cache).create(dims, type);
+		if (!(img instanceof VirtualPlanarImg)) {
+			throw new IllegalArgumentException("Unsupported type for a " +
+				"virtual image: " + type.getClass().getName());
+		}
+		return (VirtualPlanarImg<T, ?>) img;
+	}
+
+	/** Gets the reader of the planes. */
+	public PlaneReader getReader() {
+		return storage.getReader();
+	}
+
+	/** Gets the cache bounding the heap used by the planes. */
+	public PlaneCache getCache() {
+		return storage.getCache();
+	}
+
+	/**
+	 * Saves the modified planes currently cached: back to the source if the
+	 * reader is a {@link PlaneWriter}, to the scratch file otherwise.
+	 */
+	public void flush() {
+		storage.flush();
+	}
+
+	/**
+	 * Releases the image's resources: saves the modified planes if the reader
+	 * is a {@link PlaneWriter}, drops the planes from the cache, deletes the
+	 * scratch file and closes the reader if it is {@link java.io.Closeable}.
+	 * The image must not be used afterward.
+	 */
+	public void close() {
+		storage.close();
+	}
+
+	// -- NativeImg methods --
+
+	/** Notes each switch of a cursor or RandomAccess to a plane. */
+	@Override
+	public A update(final Object updater) {
+		final A access = super.update(updater);
+		((VirtualAccess) access).plane().request();
+		return access;
+	}
+
+	// -- PlanarAccess methods --
+
+	/** Copies the samples of the given plane into the cached plane. */
+	@Override
+	public void setPlane(final int no, final A plane) {
+		final A current = getPlane(no);
+		if (current == plane) return;
+		((VirtualAccess) current).plane().write(plane.getCurrentStorageArray());
+	}
+
+	// -- Img methods --
+
+	/**
+	 * Gets a factory for more images of this size, backed by temporary mapped
+	 * files rather than the reader.
+	 */
+	@Override
+	public PlanarImgFactory<T> factory() {
+		return new MappedImgFactory<T>();
+	}
+
+}
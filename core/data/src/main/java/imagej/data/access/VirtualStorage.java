@@ -0,0 +1,587 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import imagej.data.access.MappedStorage.MappedAccess;
+import imagej.data.access.MappedStorage.MappedPlane;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+
+/**
+ * The planes of a {@link VirtualPlanarImg}: each is read from the image's
+ * {@link PlaneReader} when first accessed and held on the heap while its
+ * {@link PlaneCache} keeps it. Evicted planes that were modified are written
+ * back if the reader is also a {@link PlaneWriter}, and spilled to a scratch
+ * file otherwise.
+ */
+final class VirtualStorage {
+
+	// -- instance variables --
+
+	private final PlaneReader reader;
+	private final PlaneCache cache;
+	private final int kind;
+	private final long[] dims;
+	private final int entitiesPerPixel;
+	private final int planeEntities;
+	private final int planeBytes;
+
+	/** Raw file receiving modified planes, created on the first spill. */
+	private MappedStorage scratch;
+
+	// -- constructor --
+
+	VirtualStorage(final PlaneReader reader, final PlaneCache cache,
+		final int kind, final long[] dims, final int entitiesPerPixel)
+	{
+		this.reader = reader;
+		this.cache = cache;
+		this.kind = kind;
+		this.dims = dims.clone();
+		this.entitiesPerPixel = entitiesPerPixel;
+		final long entities =
+			dims[0] * (dims.length > 1 ? dims[1] : 1) * entitiesPerPixel;
+		final long bytes = entities * MappedStorage.SAMPLE_BYTES[kind];
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Planes of " + bytes +
+				" bytes cannot be cached (MAX = " + Integer.MAX_VALUE + ")");
+		}
+		planeEntities = (int) entities;
+		planeBytes = (int) bytes;
+	}
+
+	// -- VirtualStorage methods --
+
+	PlaneReader getReader() {
+		return reader;
+	}
+
+	PlaneCache getCache() {
+		return cache;
+	}
+
+	/** Saves those modified planes which are cached. */
+	void flush() {
+		cache.flush(this);
+	}
+
+	/**
+	 * Writes the modified planes back to the source if it is a
+	 * {@link PlaneWriter}, drops the cached planes, deletes the scratch file
+	 * and closes the reader if it is {@link Closeable}.
+	 */
+	void close() {
+		cache.purge(this, reader instanceof PlaneWriter);
+		synchronized (this) {
+			if (scratch != null) scratch.close();
+			scratch = null;
+		}
+		if (!(reader instanceof Closeable)) return;
+		try {
+			((Closeable) reader).close();
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Cannot close " + reader, e);
+		}
+	}
+
+	/** Creates the access for the given plane; nothing is read yet. */
+	ArrayDataAccess<?> createAccess(final int planeIndex) {
+		final VirtualPlane plane = new VirtualPlane(this, planeIndex);
+		switch (kind) {
+			case MappedStorage.BYTE:
+				return new VirtualByteArray(plane);
+			case MappedStorage.SHORT:
+				return new VirtualShortArray(plane);
+			case MappedStorage.INT:
+				return new VirtualIntArray(plane);
+			case MappedStorage.LONG:
+				return new VirtualLongArray(plane);
+			case MappedStorage.FLOAT:
+				return new VirtualFloatArray(plane);
+			default:
+				return new VirtualDoubleArray(plane);
+		}
+	}
+
+	// -- helper methods --
+
+	private Object newArray() {
+		switch (kind) {
+			case MappedStorage.BYTE:
+				return new byte[planeEntities];
+			case MappedStorage.SHORT:
+				return new short[planeEntities];
+			case MappedStorage.INT:
+				return new int[planeEntities];
+			case MappedStorage.LONG:
+				return new long[planeEntities];
+			case MappedStorage.FLOAT:
+				return new float[planeEntities];
+			default:
+				return new double[planeEntities];
+		}
+	}
+
+	private synchronized MappedPlane scratchPlane(final int planeIndex) {
+		if (scratch == null) {
+			final File file;
+			try {
+				file = File.createTempFile("imagej-", ".spill");
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException("Cannot create a scratch file",
+					e);
+			}
+			file.deleteOnExit();
+			// NB - keep no more than the plane being copied mapped
+			scratch =
+				new MappedStorage(file, true, new MappedRegionCache(planeBytes),
+					kind, dims, entitiesPerPixel);
+		}
+		return ((MappedAccess) scratch.createAccess(planeIndex)).plane();
+	}
+
+	// -- helper classes --
+
+	/** One plane of the image, and its samples while they are cached. */
+	static final class VirtualPlane {
+
+		private final VirtualStorage storage;
+		private final int index;
+
+		/** The plane's samples, or null while not cached. */
+		volatile Object data;
+
+		/** Set on each access; cleared by the cache to find idle planes. */
+		boolean referenced;
+
+		/** Whether the cached samples differ from the source's. */
+		boolean dirty;
+
+		/** Whether the current samples are in the scratch file. */
+		boolean spilled;
+
+		/** Number of writes in progress; see {@link #beginWrite()}. */
+		private final AtomicInteger writers = new AtomicInteger();
+
+		VirtualPlane(final VirtualStorage storage, final int index) {
+			this.storage = storage;
+			this.index = index;
+		}
+
+		/** Gets the plane's samples, reading them if necessary. */
+		Object data() {
+			Object d = data;
+			if (d == null) d = storage.cache.request(this);
+			referenced = true;
+			return d;
+		}
+
+		/**
+		 * Gets the plane's samples for writing. Until the matching
+		 * {@link #endWrite()} the cache neither saves nor evicts the plane, so
+		 * that stores into the returned array are not lost to another thread
+		 * trimming the cache.
+		 */
+		Object beginWrite() {
+			writers.incrementAndGet();
+			Object d = data;
+			while (d == null) {
+				// NB - being read, saved or evicted: let the cache finish first
+				writers.decrementAndGet();
+				storage.cache.request(this);
+				writers.incrementAndGet();
+				d = data;
+			}
+			referenced = true;
+			dirty = true;
+			return d;
+		}
+
+		/** Ends a write started by {@link #beginWrite()}. */
+		void endWrite() {
+			writers.decrementAndGet();
+		}
+
+		/**
+		 * Whether a write is in progress. The cache clears {@link #data} before
+		 * asking, so writes starting afterward wait for it.
+		 */
+		boolean isBeingWritten() {
+			return writers.get() > 0;
+		}
+
+		/** Notes that the plane is about to be used; reads it if necessary. */
+		void request() {
+			storage.cache.request(this);
+		}
+
+		int bytes() {
+			return storage.planeBytes;
+		}
+
+		boolean belongsTo(final VirtualStorage owner) {
+			return storage == owner;
+		}
+
+		/** Reads the plane's samples from the scratch file or the source. */
+		Object load() {
+			if (spilled) return storage.scratchPlane(index).read();
+			final Object array = storage.newArray();
+			try {
+				storage.reader.read(index, array);
+			}
+			catch (final IOException e) {
+				throw new IllegalStateException("Cannot read plane " + index,
+					e);
+			}
+			return array;
+		}
+
+		/**
+		 * Saves the plane's modified samples: back to the source if possible,
+		 * to the scratch file otherwise.
+		 * 
+		 * @return true if the samples were written back to the source
+		 */
+		boolean save(final Object array) {
+			if (storage.reader instanceof PlaneWriter) {
+				try {
+					((PlaneWriter) storage.reader).write(index, array);
+				}
+				catch (final IOException e) {
+					throw new IllegalStateException("Cannot write plane " +
+						index, e);
+				}
+				spilled = false;
+				return true;
+			}
+			storage.scratchPlane(index).write(array);
+			spilled = true;
+			return false;
+		}
+
+		/** Gets a copy of the plane's samples. */
+		Object copy() {
+			final Object d = data();
+			final Object array = storage.newArray();
+			System.arraycopy(d, 0, array, 0, storage.planeEntities);
+			return array;
+		}
+
+		/** Replaces the plane's samples with those of the given array. */
+		void write(final Object array) {
+			final Object d = beginWrite();
+			try {
+				System.arraycopy(array, 0, d, 0, storage.planeEntities);
+			}
+			finally {
+				endWrite();
+			}
+		}
+	}
+
+	/** A plane access whose samples are read on demand. */
+	interface VirtualAccess {
+
+		VirtualPlane plane();
+	}
+
+	/**
+	 * A ByteArray reading a plane on demand. Its storage array is a copy of the
+	 * plane.
+	 */
+	static final class VirtualByteArray extends ByteArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualByteArray(final VirtualPlane plane) {
+			super(new byte[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public byte getValue(final int index) {
+			return ((byte[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final byte value) {
+			final byte[] d = (byte[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public byte[] getCurrentStorageArray() {
+			return (byte[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A ShortArray reading a plane on demand. Its storage array is a copy of
+	 * the plane.
+	 */
+	static final class VirtualShortArray extends ShortArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualShortArray(final VirtualPlane plane) {
+			super(new short[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public short getValue(final int index) {
+			return ((short[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final short value) {
+			final short[] d = (short[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public short[] getCurrentStorageArray() {
+			return (short[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * An IntArray reading a plane on demand. Its storage array is a copy of the
+	 * plane.
+	 */
+	static final class VirtualIntArray extends IntArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualIntArray(final VirtualPlane plane) {
+			super(new int[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public int getValue(final int index) {
+			return ((int[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final int value) {
+			final int[] d = (int[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public int[] getCurrentStorageArray() {
+			return (int[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A LongArray reading a plane on demand. Its storage array is a copy of the
+	 * plane.
+	 */
+	static final class VirtualLongArray extends LongArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualLongArray(final VirtualPlane plane) {
+			super(new long[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public long getValue(final int index) {
+			return ((long[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final long value) {
+			final long[] d = (long[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public long[] getCurrentStorageArray() {
+			return (long[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A FloatArray reading a plane on demand. Its storage array is a copy of
+	 * the plane.
+	 */
+	static final class VirtualFloatArray extends FloatArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualFloatArray(final VirtualPlane plane) {
+			super(new float[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public float getValue(final int index) {
+			return ((float[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final float value) {
+			final float[] d = (float[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public float[] getCurrentStorageArray() {
+			return (float[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+	/**
+	 * A DoubleArray reading a plane on demand. Its storage array is a copy of
+	 * the plane.
+	 */
+	static final class VirtualDoubleArray extends DoubleArray implements
+		VirtualAccess
+	{
+
+		private final VirtualPlane plane;
+
+		public VirtualDoubleArray(final VirtualPlane plane) {
+			super(new double[0]);
+			this.plane = plane;
+		}
+
+		@Override
+		public double getValue(final int index) {
+			return ((double[]) plane.data())[index];
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			final double[] d = (double[]) plane.beginWrite();
+			try {
+				d[index] = value;
+			}
+			finally {
+				plane.endWrite();
+			}
+		}
+
+		@Override
+		public double[] getCurrentStorageArray() {
+			return (double[]) plane.copy();
+		}
+
+		@Override
+		public VirtualPlane plane() {
+			return plane;
+		}
+	}
+
+}
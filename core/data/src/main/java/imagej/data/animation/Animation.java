@@ -35,7 +35,11 @@
 
 package imagej.data.animation;
 
+import imagej.data.display.DataView;
+import imagej.data.display.DatasetView;
 import imagej.data.display.ImageDisplay;
+import imagej.data.display.TiledCompositeXYProjector;
+import net.imglib2.display.CompositeXYProjector;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
 
@@ -45,6 +49,13 @@
  * The Animation class takes care of running an animation along an axis.
  * Multiple animations can be running concurrently. Each animation runs in its
  * own thread.
+ * <p>
+ * Playback keeps to the requested frame rate: while one frame is shown, the
+ * next ones along the animation axis are projected in the background, and
+ * frames whose time has already passed are skipped rather than shown late. The
+ * achieved frame rate and the number of skipped frames are available from
+ * {@link #getAchievedFPS()} and {@link #getDroppedFrames()}.
+ * </p>
  * 
  * @author Barry DeZonia
  * @author Curtis Rueden
@@ -64,8 +75,19 @@ public class Animation implements Runnable {
 	private boolean backAndForth;
 
 	private long increment = 1;
-	private long delta = 1;
-	private boolean isRelative = true;
+	private int lookahead = 16;
+
+	private volatile double achievedFPS;
+	private volatile long droppedFrames;
+
+	/** When the next frame is due, in nanoseconds. */
+	private long due;
+
+	/** When the current frame rate measurement began, in nanoseconds. */
+	private long windowStart;
+
+	/** Frames shown since {@link #windowStart}. */
+	private int windowFrames;
 
 	/** Creates an animation for the given {@link ImageDisplay}. */
 	public Animation(final ImageDisplay display) {
@@ -97,6 +119,8 @@ else if (display.getAxisIndex(Axes.Z) >= 0) {
 	public void start() {
 		if (axis == null) return; // no axis over which to animate
 		active = true;
+		achievedFPS = 0;
+		droppedFrames = 0;
 		if (thread == null) {
 			thread = new Thread(this);
 			thread.start();
@@ -171,14 +195,45 @@ public void setBackAndForth(final boolean backAndForth) {
 		this.backAndForth = backAndForth;
 	}
 
+	/** Gets the number of upcoming frames to project ahead of time. */
+	public int getLookahead() {
+		return lookahead;
+	}
+
+	/**
+	 * Sets the number of upcoming frames to project ahead of time. Fewer are
+	 * projected if the display's projection cache cannot hold them all.
+	 */
+	public void setLookahead(final int lookahead) {
+		this.lookahead = lookahead;
+	}
+
+	/**
+	 * Gets the frame rate achieved over the last second of playback, or 0 if
+	 * the animation has not run that long.
+	 */
+	public double getAchievedFPS() {
+		return achievedFPS;
+	}
+
+	/**
+	 * Gets the number of frames skipped, to keep to the requested frame rate,
+	 * since the animation was started.
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
 	// -- Runnable methods --
 
 	@Override
 	public void run() {
+		begin(System.nanoTime());
 		while (active) {
-			updatePosition();
+			final long wait = advance(System.nanoTime());
+			if (wait <= 0) continue;
 			try {
-				Thread.sleep((long) (1000 / fps));
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
 			}
 			catch (final InterruptedException e) {
 				// do nothing
@@ -186,54 +241,104 @@ public void run() {
 		}
 	}
 
+	// -- Internal methods --
+
+	/** Restarts the playback clock, with the first frame due at now. */
+	void begin(final long now) {
+		due = now;
+		windowStart = now;
+		windowFrames = 0;
+	}
+
+	/**
+	 * Shows the frame due by the given time (in nanoseconds), skipping the
+	 * frames whose time already passed. Returns how long to wait until the next
+	 * frame is due, or 0 if a frame was shown.
+	 */
+	long advance(final long now) {
+		if (now < due) return due - now;
+
+		// measure the frames shown before this one
+		if (now - windowStart >= 1000000000L) {
+			achievedFPS = windowFrames * 1e9 / (now - windowStart);
+			windowStart = now;
+			windowFrames = 0;
+		}
+		windowFrames++;
+
+		// skip frames whose time already passed instead of falling behind
+		final long period = (long) (1e9 / (fps > 0 ? fps : 1));
+		final long skipped = (now - due) / period;
+		droppedFrames += skipped;
+		due += (skipped + 1) * period;
+		updatePosition(skipped + 1);
+		return 0;
+	}
+
 	// -- Helper methods --
 
-	private synchronized void updatePosition() {
-		long currPos = display.getLongPosition(axis);
+	/**
+	 * Advances the animation by the given number of frames, after asking the
+	 * display's views to project the frames that follow.
+	 */
+	private synchronized void updatePosition(final long steps) {
+		long pos = display.getLongPosition(axis);
+
+		// a skipped full cycle ends where it started
+		final long span = last - first;
+		final long cycle = backAndForth ? 2 * span : span + 1;
+		long count = steps;
+		if (cycle > 0 && count > 2 * cycle) count = count % cycle + cycle;
+		for (long i = 0; i < count; i++) {
+			final long p = pos;
+			pos = nextPosition(p, increment);
+			increment = nextIncrement(p, increment);
+		}
 
-		// reached right end
-		if (increment > 0 && currPos == last) {
-			if (!backAndForth) {
-				isRelative = false;
-				delta = first;
-				currPos = first;
-			}
-			else {
-				increment = -increment;
-				isRelative = true;
-				delta = -1;
-				currPos--;
-			}
+		prefetch(pos);
+		display.setPosition(pos, axis);
+	}
+
+	/** Asks each dataset view to project the frames following pos. */
+	private void prefetch(final long pos) {
+		if (lookahead <= 0) return;
+		final long[] upcoming = new long[lookahead];
+		long p = pos, inc = increment;
+		for (int i = 0; i < upcoming.length; i++) {
+			final long current = p;
+			p = nextPosition(current, inc);
+			inc = nextIncrement(current, inc);
+			upcoming[i] = p;
 		}
-		// reached left end
-		else if (increment < 0 && currPos == first) {
-			if (!backAndForth) {
-				isRelative = false;
-				delta = last;
-				currPos = last;
-			}
-			else {
-				increment = -increment;
-				isRelative = true;
-				delta = +1;
-				currPos++;
-			}
+		for (final DataView view : display) {
+			if (!(view instanceof DatasetView)) continue;
+			final DatasetView datasetView = (DatasetView) view;
+			final CompositeXYProjector<?> projector =
+				datasetView.getProjector();
+			if (!(projector instanceof TiledCompositeXYProjector)) continue;
+			final int dim = datasetView.getData().getAxisIndex(axis);
+			if (dim < 0) continue;
+			((TiledCompositeXYProjector<?>) projector).prefetch(dim, upcoming);
 		}
-		else { // somewhere in the middle
-			isRelative = true;
-			if (increment > 0) {
-				delta = +1;
-				currPos++;
-			}
-			else { // increment < 0
-				delta = -1;
-				currPos--;
-			}
+	}
+
+	/** Gets the position one frame after pos, moving in the given direction. */
+	private long nextPosition(final long pos, final long inc) {
+		if (pos < first || pos > last) return first;
+		if (inc > 0 && pos == last) {
+			return backAndForth ? Math.max(first, last - 1) : first;
+		}
+		if (inc < 0 && pos == first) {
+			return backAndForth ? Math.min(last, first + 1) : last;
 		}
+		return pos + inc;
+	}
 
-		final long pos =
-			isRelative ? display.getLongPosition(axis) + delta : delta;
-		display.setPosition(pos, axis);
+	/** Gets the direction of travel after the frame at pos. */
+	private long nextIncrement(final long pos, final long inc) {
+		if (!backAndForth || pos < first || pos > last) return inc;
+		if (inc > 0 && pos == last || inc < 0 && pos == first) return -inc;
+		return inc;
 	}
 
 	/** Ensures the position of the relevant axis is within the legal range. */
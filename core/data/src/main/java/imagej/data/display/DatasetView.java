@@ -42,6 +42,7 @@
 
 import java.util.List;
 
+import net.imglib2.Interval;
 import net.imglib2.algorithm.stats.ComputeMinMax;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.display.ColorTable;
@@ -60,6 +61,43 @@ public interface DatasetView extends DataView {
 
 	ARGBScreenImage getScreenImage();
 
+	/**
+	 * Gets the rendering of the current plane at the current resolution level.
+	 * At level 0 this is the {@link #getScreenImage() screen image}; at level
+	 * <em>n</em> each pixel covers a 2<sup>n</sup> x 2<sup>n</sup> block of the
+	 * plane.
+	 */
+	ARGBScreenImage getDisplayImage();
+
+	/**
+	 * Sets the resolution level at which the {@link #getDisplayImage() display
+	 * image} is rendered, typically chosen to match the zoom factor. Level 0 is
+	 * full resolution; each further level halves the width and height.
+	 */
+	void setResolutionLevel(int level);
+
+	/** Gets the resolution level of the {@link #getDisplayImage() display image}. */
+	int getResolutionLevel();
+
+	/**
+	 * Gets the resolution level suited to showing this view at the given scale
+	 * (screen pixels per image pixel).
+	 */
+	int getResolutionLevel(double scale);
+
+	/**
+	 * Sets the region of the plane that is on screen. At full resolution only
+	 * that part of the {@link #getDisplayImage() display image} is kept up to
+	 * date; the {@link #getScreenImage() screen image} is always complete. When
+	 * null (the default) the whole plane is on screen.
+	 * 
+	 * @return true if the display image changed
+	 */
+	boolean setViewport(Interval viewport);
+
+	/** Gets the region of the plane that is on screen, or null if all of it. */
+	Interval getViewport();
+
 	int getCompositeDimIndex();
 
 	CompositeXYProjector<? extends RealType<?>> getProjector();
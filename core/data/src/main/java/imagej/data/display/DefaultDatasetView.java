@@ -51,6 +51,7 @@
 import java.util.List;
 
 import net.imglib2.Binning;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.stats.ComputeMinMax;
 import net.imglib2.display.ARGBScreenImage;
@@ -58,15 +59,19 @@
 import net.imglib2.display.CompositeXYProjector;
 import net.imglib2.display.RealLUTConverter;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.view.Views;
 
 import org.scijava.Context;
 import org.scijava.event.EventHandler;
 import org.scijava.event.EventService;
 import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
 
 /**
  * A view into a {@link Dataset}, for use with a {@link ImageDisplay}.
@@ -90,11 +95,25 @@ public class DefaultDatasetView extends AbstractDataView implements DatasetView
 
 	private ARGBScreenImage screenImage;
 
-	private CompositeXYProjector<? extends RealType<?>> projector;
+	private TiledCompositeXYProjector<? extends RealType<?>> projector;
 
 	private final ArrayList<RealLUTConverter<? extends RealType<?>>> converters =
 		new ArrayList<RealLUTConverter<? extends RealType<?>>>();
 
+	/** Reduced resolution copies of the data, for rendering zoomed out. */
+	private ImagePyramid pyramid;
+
+	private int resolutionLevel;
+
+	/** Rendering at the current resolution level, when not full resolution. */
+	private ARGBScreenImage displayImage;
+
+	/** What {@link #displayImage} was last rendered from. */
+	private Object displayImageKey;
+
+	/** The region of the plane on screen, or null if all of it. */
+	private Interval viewport;
+
 	// -- DatasetView methods --
 
 	@Override
@@ -105,9 +124,60 @@ public int getChannelCount() {
 
 	@Override
 	public ARGBScreenImage getScreenImage() {
+		// NB - the projector defers its work while a reduced level is displayed
+		// and leaves out the tiles off screen
+		if (isInitialized()) projector.complete();
 		return screenImage;
 	}
 
+	@Override
+	public ARGBScreenImage getDisplayImage() {
+		if (!isInitialized()) return screenImage;
+		if (resolutionLevel == 0) {
+			projector.flush();
+			return screenImage;
+		}
+		final Object key = projector.getRenderKey();
+		if (displayImage == null || key == null || !key.equals(displayImageKey)) {
+			mapDisplayImage();
+			displayImageKey = key;
+		}
+		return displayImage;
+	}
+
+	@Override
+	public void setResolutionLevel(final int level) {
+		final int maxLevel = pyramid == null ? 0 : pyramid.getMaxLevel();
+		final int newLevel = Math.max(0, Math.min(level, maxLevel));
+		if (newLevel == resolutionLevel) return;
+		resolutionLevel = newLevel;
+		displayImage = null;
+		displayImageKey = null;
+		if (isInitialized()) projector.setDeferred(resolutionLevel > 0);
+	}
+
+	@Override
+	public int getResolutionLevel() {
+		return resolutionLevel;
+	}
+
+	@Override
+	public int getResolutionLevel(final double scale) {
+		return pyramid == null ? 0 : pyramid.getLevel(scale);
+	}
+
+	@Override
+	public boolean setViewport(final Interval viewport) {
+		this.viewport = viewport;
+		if (!isInitialized()) return false;
+		return projector.setViewport(viewport) && resolutionLevel == 0;
+	}
+
+	@Override
+	public Interval getViewport() {
+		return viewport;
+	}
+
 	@Override
 	public int getCompositeDimIndex() {
 		return channelDimIndex;
@@ -305,12 +375,12 @@ public Dataset getData() {
 
 	@Override
 	public int getPreferredWidth() {
-		return getScreenImage().image().getWidth(null);
+		return screenImage.image().getWidth(null);
 	}
 
 	@Override
 	public int getPreferredHeight() {
-		return getScreenImage().image().getHeight(null);
+		return screenImage.image().getHeight(null);
 	}
 
 	@Override
@@ -339,7 +409,13 @@ public void rebuild() {
 		final int height = (int) img.dimension(1);
 		screenImage = new ARGBScreenImage(width, height);
 
+		pyramid = new ImagePyramid(getData());
+		resolutionLevel = Math.min(resolutionLevel, pyramid.getMaxLevel());
+		displayImage = null;
+		displayImageKey = null;
+
 		initializeView(isComposite());
+		projector.setDeferred(resolutionLevel > 0);
 
 		updateLUTs();
 		projector.map();
@@ -379,6 +455,7 @@ public void setPosition(final long position, final AxisType axis) {
 		}
 
 		projector.map();
+		projector.prefetch(dim);
 
 		super.setPosition(position, axis);
 	}
@@ -410,7 +487,24 @@ protected void onEvent(final DatasetUpdatedEvent event) {
 		}
 		if (getData() == event.getObject()) {
 			if (event.isMetaDataOnly()) return;
+			final Interval region = event.getRegion();
+			if (region == null) {
+				projector.invalidate();
+				pyramid.invalidate();
+				displayImageKey = null;
+				projector.map();
+				return;
+			}
+			// re-project only the changed tiles, and only if they are on screen
+			projector.invalidate(region);
+			pyramid.invalidate(region);
+			final long[] pos = new long[projector.numDimensions()];
+			projector.localize(pos);
+			final int compositeDim = isComposite() ? channelDimIndex : -1;
+			if (!event.isPlaneDirty(pos, compositeDim)) return;
+			displayImageKey = null;
 			projector.map();
+			update();
 		}
 	}
 
@@ -447,9 +541,41 @@ private void initializeView(final boolean composite) {
 			converters.add(converter);
 		}
 		projector =
-			new CompositeXYProjector(getData().getImgPlus(), screenImage, converters,
-				channelDimIndex);
+			new TiledCompositeXYProjector(getData().getImgPlus(), screenImage,
+				converters, channelDimIndex);
 		projector.setComposite(composite);
+		projector.setViewport(viewport);
+		final Context context = getContext();
+		if (context != null) {
+			projector.setThreadService(context.getService(ThreadService.class));
+		}
+	}
+
+	/** Renders {@link #displayImage} from the pyramid's current level. */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void mapDisplayImage() {
+		final int level = resolutionLevel;
+		final long[] pos = new long[projector.numDimensions()];
+		projector.localize(pos);
+		final ArrayImg<FloatType, FloatArray> reduced =
+			pyramid.getLevel(level, pos);
+		final int w = pyramid.getWidth(level);
+		final int h = pyramid.getHeight(level);
+		if (displayImage == null || displayImage.dimension(0) != w ||
+			displayImage.dimension(1) != h)
+		{
+			displayImage = new ARGBScreenImage(w, h);
+		}
+		ArrayList reducedConverters = projector.snapshotConverters();
+		if (reducedConverters == null) reducedConverters = converters;
+		// NB - the reduced image has its channels, if any, along dimension 2
+		final int dimIndex = channelDimIndex < 0 ? -1 : 2;
+		final CompositeXYProjector reducedProjector =
+			new CompositeXYProjector(reduced, displayImage, reducedConverters,
+				dimIndex);
+		if (dimIndex >= 0) reducedProjector.setPosition(pos[channelDimIndex], 2);
+		reducedProjector.setComposite(projector.isComposite());
+		reducedProjector.map();
 	}
 
 	private void updateLUTs() {
@@ -37,11 +37,13 @@
 
 import imagej.data.CombinedInterval;
 import imagej.data.Data;
+import imagej.data.Dataset;
 import imagej.data.Extents;
 import imagej.data.display.event.AxisActivatedEvent;
 import imagej.data.display.event.AxisPositionEvent;
 import imagej.data.event.DataRestructuredEvent;
 import imagej.data.event.DataUpdatedEvent;
+import imagej.data.event.DatasetUpdatedEvent;
 import imagej.display.AbstractDisplay;
 import imagej.display.DisplayService;
 import imagej.display.event.DisplayDeletedEvent;
@@ -613,6 +615,9 @@ protected void onEvent(final DataRestructuredEvent event) {
 	protected void onEvent(final DataUpdatedEvent event) {
 		for (final DataView view : this) {
 			if (event.getObject() == view.getData()) {
+				// nothing to redraw if only planes that are not shown changed
+				if (event instanceof DatasetUpdatedEvent &&
+					!isShownPlaneDirty((DatasetUpdatedEvent) event)) return;
 				// BDZ removed 2013-03-15: update() updates all views. Addresses #1220.
 				// view.update();
 				update();
@@ -630,6 +635,21 @@ protected void onEvent(final DisplayDeletedEvent event) {
 
 	// -- Helper methods --
 
+	/**
+	 * Returns true if the given update may have changed the plane of its
+	 * dataset at the current position of this display.
+	 */
+	private boolean isShownPlaneDirty(final DatasetUpdatedEvent event) {
+		if (event.getRegion() == null) return true;
+		final Dataset dataset = event.getObject();
+		final long[] pos = new long[dataset.numDimensions()];
+		for (int d = 2; d < pos.length; d++) {
+			pos[d] = getLongPosition(dataset.axis(d));
+		}
+		// NB - views may show all channels at once
+		return event.isPlaneDirty(pos, dataset.getAxisIndex(Axes.CHANNEL));
+	}
+
 	/**
 	 * If the display is still nameless, tries to name it after the given
 	 * {@link DataView}.
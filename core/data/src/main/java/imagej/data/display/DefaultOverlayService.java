@@ -44,6 +44,7 @@
 import imagej.data.options.OptionsOverlay;
 import imagej.data.overlay.CompositeOverlay;
 import imagej.data.overlay.Overlay;
+import imagej.data.overlay.OverlayRasterizer;
 import imagej.data.overlay.OverlaySettings;
 import imagej.display.Display;
 import imagej.display.DisplayService;
@@ -344,6 +345,11 @@ private interface Drawer {
 	private static class OverlayOutliner implements Drawer {
 		@Override
 		public void draw(Overlay o, DrawingTool tool) {
+			final OverlayRasterizer rasterizer = OverlayRasterizer.create(o);
+			if (rasterizer != null) {
+				rasterizer.outline(0, 0, maxU(tool), maxV(tool), spanDrawer(tool));
+				return;
+			}
 			final RegionOfInterest region = o.getRegionOfInterest();
 			PointSet pointSet = new RoiPointSet(region);
 			// TODO - rather than a pointSet use an IterableInterval? Investigate.
@@ -385,6 +391,11 @@ private boolean isBorderPixel(RealRandomAccess<BitType> accessor, long[] pos,
 	private static class OverlayFiller implements Drawer {
 		@Override
 		public void draw(Overlay o, DrawingTool tool) {
+			final OverlayRasterizer rasterizer = OverlayRasterizer.create(o);
+			if (rasterizer != null) {
+				rasterizer.fill(0, 0, maxU(tool), maxV(tool), spanDrawer(tool));
+				return;
+			}
 			final RegionOfInterest region = o.getRegionOfInterest();
 			final RoiPointSet pointSet = new RoiPointSet(region);
 			final RealRandomAccess<BitType> accessor = region.realRandomAccess();
@@ -414,10 +425,30 @@ private void draw(Overlay o, ImageDisplay display, ChannelCollection channels, D
 		tool.setPosition(fullPos);
 		tool.setChannels(channels);
 		drawer.draw(o, tool);
-		ds.update();
+		tool.update();
 	}
 	
 	private Dataset getDataset(ImageDisplay display) {
 		return imageDisplayService.getActiveDataset(display);
 	}
+
+	private static long maxU(DrawingTool tool) {
+		return tool.getDataset().dimension(tool.getUAxis()) - 1;
+	}
+
+	private static long maxV(DrawingTool tool) {
+		return tool.getDataset().dimension(tool.getVAxis()) - 1;
+	}
+
+	private static OverlayRasterizer.SpanHandler spanDrawer(
+		final DrawingTool tool)
+	{
+		return new OverlayRasterizer.SpanHandler() {
+
+			@Override
+			public void span(long x1, long x2, long y) {
+				tool.fillSpan(x1, x2, y);
+			}
+		};
+	}
 }
@@ -0,0 +1,408 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.meta.Axes;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A lazily built, memory-bounded resolution pyramid of a {@link Dataset}'s XY
+ * planes, for rendering zoomed out views without touching every source pixel.
+ * Level 0 is the Dataset itself; each further level halves the width and height
+ * of the one below it (rounding up), so level n averages blocks of 2^n x 2^n
+ * samples.
+ * <p>
+ * A level is requested for a plane position and includes all channels at that
+ * position. It is built from the finest level below it that is still cached,
+ * or from the Dataset's samples if none is, building (and caching) the levels
+ * in between, so zooming out further only costs a fraction of the previous
+ * level. Samples are weighted by the number of Dataset samples they cover, so
+ * each sample is the exact average of its block even at the far edges. Least
+ * recently used levels are discarded once the cache exceeds its size.
+ * The pyramid cannot see changes to the Dataset's data; callers must
+ * invalidate it when the data changes.
+ * </p>
+ */
+public class ImagePyramid {
+
+	/** Default cache capacity, in samples. */
+	public static final long DEFAULT_CACHE_SIZE = 16L * 1024 * 1024;
+
+	// -- instance variables --
+
+	private final Dataset dataset;
+	private final long[] dims;
+	private final int channelIndex;
+	private final int channelCount;
+
+	private final LinkedHashMap<LevelKey, ArrayImg<FloatType, FloatArray>> cache =
+		new LinkedHashMap<LevelKey, ArrayImg<FloatType, FloatArray>>(16, 0.75f,
+			true);
+
+	private long cacheSize = DEFAULT_CACHE_SIZE;
+	private long cachedSamples;
+
+	// -- constructor --
+
+	public ImagePyramid(final Dataset dataset) {
+		this.dataset = dataset;
+		dims = dataset.getDims();
+		channelIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		channelCount = channelIndex < 0 ? 1 : (int) dims[channelIndex];
+	}
+
+	// -- ImagePyramid methods --
+
+	/**
+	 * Gets the coarsest useful level: the first one whose planes are no larger
+	 * than a single sample in both X and Y.
+	 */
+	public int getMaxLevel() {
+		int level = 0;
+		while (levelSize(dims[0], level) > 1 || levelSize(dims[1], level) > 1) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Gets the level best suited to display at the given scale (screen pixels
+	 * per image pixel): the coarsest level that still has at least one sample
+	 * per screen pixel.
+	 */
+	public int getLevel(final double scale) {
+		final int maxLevel = getMaxLevel();
+		int level = 0;
+		double s = scale;
+		while (s <= 0.5 && level < maxLevel) {
+			s *= 2;
+			level++;
+		}
+		return level;
+	}
+
+	/** Gets the width of the planes of the given level. */
+	public int getWidth(final int level) {
+		return (int) levelSize(dims[0], level);
+	}
+
+	/** Gets the height of the planes of the given level. */
+	public int getHeight(final int level) {
+		return (int) levelSize(dims[1], level);
+	}
+
+	/**
+	 * Gets the given level of the planes at the given Dataset position. The
+	 * image is XY, plus a channel axis (dimension 2) if the Dataset has one.
+	 * Only the non-XY, non-channel coordinates of the position are used.
+	 * 
+	 * @throws IllegalArgumentException if level is less than 1
+	 */
+	public ArrayImg<FloatType, FloatArray> getLevel(final int level,
+		final long[] position)
+	{
+		if (level < 1) {
+			throw new IllegalArgumentException("level must be at least 1: " + level);
+		}
+		final LevelKey key = new LevelKey(position, level);
+		ArrayImg<FloatType, FloatArray> img = get(key);
+		if (img != null) return img;
+		// start from the finest cached level below, if any
+		int below = level - 1;
+		while (below >= 1 && img == null) {
+			img = get(new LevelKey(position, below));
+			if (img == null) below--;
+		}
+		if (img == null) {
+			below = 1;
+			final int w = getWidth(1), h = getHeight(1);
+			img = createLevel(w, h);
+			final float[] dest = img.update(null).getCurrentStorageArray();
+			for (int c = 0; c < channelCount; c++) {
+				reduceSource(key.position, c, dest, c * w * h);
+			}
+			put(new LevelKey(position, 1), img);
+		}
+		for (int l = below + 1; l <= level; l++) {
+			final float[] src = img.update(null).getCurrentStorageArray();
+			final int sw = getWidth(l - 1), sh = getHeight(l - 1);
+			final int w = getWidth(l), h = getHeight(l);
+			img = createLevel(w, h);
+			final float[] dest = img.update(null).getCurrentStorageArray();
+			for (int c = 0; c < channelCount; c++) {
+				reduce(src, c * sw * sh, l, dest, c * w * h);
+			}
+			put(new LevelKey(position, l), img);
+		}
+		return img;
+	}
+
+	/** Discards all levels of all planes. */
+	public synchronized void invalidate() {
+		cache.clear();
+		cachedSamples = 0;
+	}
+
+	/**
+	 * Discards all levels of the planes at the given Dataset position. Only the
+	 * non-XY, non-channel coordinates of the position are used.
+	 */
+	public synchronized void invalidate(final long[] position) {
+		final long[] planePos = new LevelKey(position, 0).position;
+		final Iterator<Map.Entry<LevelKey, ArrayImg<FloatType, FloatArray>>> iter =
+			cache.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<LevelKey, ArrayImg<FloatType, FloatArray>> entry =
+				iter.next();
+			if (Arrays.equals(entry.getKey().position, planePos)) {
+				cachedSamples -= entry.getValue().size();
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards all levels of the planes that include samples of the given
+	 * region of the Dataset.
+	 */
+	public synchronized void invalidate(final Interval region) {
+		final Iterator<Map.Entry<LevelKey, ArrayImg<FloatType, FloatArray>>> iter =
+			cache.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<LevelKey, ArrayImg<FloatType, FloatArray>> entry =
+				iter.next();
+			if (includes(entry.getKey().position, region)) {
+				cachedSamples -= entry.getValue().size();
+				iter.remove();
+			}
+		}
+	}
+
+	/** Sets the maximum number of samples of reduced planes to retain. */
+	public synchronized void setCacheSize(final long samples) {
+		cacheSize = samples;
+		trimCache();
+	}
+
+	/** Gets the maximum number of samples of reduced planes to retain. */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	// -- Helper methods --
+
+	private static long levelSize(final long size, final int level) {
+		return ((size - 1) >> level) + 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private ArrayImg<FloatType, FloatArray> createLevel(final int w, final int h)
+	{
+		final long[] levelDims =
+			channelIndex < 0 ? new long[] { w, h } : new long[] { w, h,
+				channelCount };
+		return (ArrayImg<FloatType, FloatArray>) new ArrayImgFactory<FloatType>()
+			.create(levelDims, new FloatType());
+	}
+
+	/**
+	 * Builds level 1 of one channel of a plane from the Dataset's samples,
+	 * averaging blocks of 2x2 samples (fewer at the far edges).
+	 */
+	private void reduceSource(final long[] planePos, final int c,
+		final float[] dest, final int destOffset)
+	{
+		final int sw = (int) dims[0], sh = (int) dims[1];
+		final int dw = getWidth(1), dh = getHeight(1);
+		final long[] pos = planePos.clone();
+		if (channelIndex >= 0) pos[channelIndex] = c;
+		final PlaneAccess planes = PlaneAccess.create(dataset);
+		final RealArray plane =
+			planes == null ? null : planes.getPlaneForReading((int) PlaneAccess
+				.planeIndex(dims, pos));
+		final RandomAccess<? extends RealType<?>> accessor =
+			planes == null ? dataset.getImgPlus().randomAccess() : null;
+		// sum each pair of source rows into one row of block sums
+		final double[] row = new double[sw];
+		final double[] sums = new double[dw];
+		for (int dy = 0; dy < dh; dy++) {
+			Arrays.fill(sums, 0);
+			final int y0 = 2 * dy, y1 = Math.min(y0 + 2, sh);
+			for (int y = y0; y < y1; y++) {
+				if (plane != null) plane.get(y * sw, row, 0, sw);
+				else {
+					pos[1] = y;
+					for (int x = 0; x < sw; x++) {
+						pos[0] = x;
+						accessor.setPosition(pos);
+						row[x] = accessor.get().getRealDouble();
+					}
+				}
+				for (int x = 0; x < sw; x++)
+					sums[x >> 1] += row[x];
+			}
+			final int rows = y1 - y0;
+			for (int dx = 0; dx < dw; dx++) {
+				final int cols = Math.min(2, sw - 2 * dx);
+				final int n = rows * cols;
+				dest[destOffset + dy * dw + dx] = (float) (sums[dx] / n);
+			}
+		}
+	}
+
+	/**
+	 * Builds a level of one channel of a plane from the level below it,
+	 * averaging blocks of 2x2 samples weighted by the number of Dataset samples
+	 * each of them covers.
+	 */
+	private void reduce(final float[] src, final int srcOffset, final int level,
+		final float[] dest, final int destOffset)
+	{
+		final int sw = getWidth(level - 1), sh = getHeight(level - 1);
+		final int dw = getWidth(level), dh = getHeight(level);
+		final int block = 1 << (level - 1);
+		for (int dy = 0; dy < dh; dy++) {
+			final int y0 = 2 * dy, y1 = Math.min(y0 + 2, sh);
+			for (int dx = 0; dx < dw; dx++) {
+				final int x0 = 2 * dx, x1 = Math.min(x0 + 2, sw);
+				double sum = 0, weight = 0;
+				for (int y = y0; y < y1; y++) {
+					final long rows = coverage(dims[1], y, block);
+					for (int x = x0; x < x1; x++) {
+						final long w = rows * coverage(dims[0], x, block);
+						sum += w * src[srcOffset + y * sw + x];
+						weight += w;
+					}
+				}
+				dest[destOffset + dy * dw + dx] = (float) (sum / weight);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of samples, along an axis of the given size, covered by
+	 * the sample at the given index of a level whose blocks are that long.
+	 */
+	private static long coverage(final long size, final int index,
+		final int block)
+	{
+		return Math.min(block, size - (long) index * block);
+	}
+
+	private synchronized ArrayImg<FloatType, FloatArray> get(final LevelKey key)
+	{
+		return cache.get(key);
+	}
+
+	private synchronized void put(final LevelKey key,
+		final ArrayImg<FloatType, FloatArray> img)
+	{
+		final ArrayImg<FloatType, FloatArray> old = cache.put(key, img);
+		if (old != null) cachedSamples -= old.size();
+		cachedSamples += img.size();
+		trimCache();
+	}
+
+	private void trimCache() {
+		final Iterator<Map.Entry<LevelKey, ArrayImg<FloatType, FloatArray>>> iter =
+			cache.entrySet().iterator();
+		while (cachedSamples > cacheSize && iter.hasNext()) {
+			cachedSamples -= iter.next().getValue().size();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Returns true if the planes at the given key position include samples of
+	 * the given region. The channel coordinate is ignored, since a level holds
+	 * all channels.
+	 */
+	private boolean includes(final long[] position, final Interval region) {
+		final int n = Math.min(position.length, region.numDimensions());
+		for (int d = 2; d < n; d++) {
+			if (d == channelIndex) continue;
+			if (position[d] < region.min(d) || position[d] > region.max(d)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// -- helper classes --
+
+	/** Identifies one level of the planes at one non-channel position. */
+	private class LevelKey {
+
+		private final long[] position;
+		private final int level;
+
+		public LevelKey(final long[] position, final int level) {
+			this.position = position.clone();
+			this.position[0] = 0;
+			this.position[1] = 0;
+			if (channelIndex >= 0) this.position[channelIndex] = 0;
+			this.level = level;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof LevelKey)) return false;
+			final LevelKey other = (LevelKey) o;
+			return level == other.level && Arrays.equals(position, other.position);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Arrays.hashCode(position) + level;
+		}
+	}
+
+}
@@ -0,0 +1,643 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import imagej.util.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ARGBScreenImage;
+import net.imglib2.display.ColorTable;
+import net.imglib2.display.CompositeXYProjector;
+import net.imglib2.display.RealLUTConverter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import org.scijava.thread.ThreadService;
+
+/**
+ * A {@link CompositeXYProjector} that renders its plane as a grid of square
+ * tiles. Tiles are projected in parallel and remembered, keyed by the plane
+ * position, composite mode and each channel's display range and color table,
+ * so returning to a previously shown plane or display setting only copies
+ * pixels. Given a {@link ThreadService}, the planes adjacent to the current one
+ * along a changed axis, or the upcoming frames of an animation, can be
+ * projected ahead of time in the background.
+ * <p>
+ * A deferred projector only notes that its image is out of date when asked to
+ * {@link #map()}; the work happens on the next {@link #flush()}. This lets
+ * views that currently show something else (such as a reduced resolution
+ * rendering) avoid projecting a full plane nobody looks at. Likewise, given a
+ * {@link #setViewport viewport}, {@link #map()} projects only the tiles on
+ * screen; the others follow as they scroll into view, or on
+ * {@link #complete()} when the whole image is needed.
+ * </p>
+ * <p>
+ * The cache cannot see changes to the underlying data; callers must
+ * {@link #invalidate()} it when the data changes.
+ * </p>
+ */
+public class TiledCompositeXYProjector<A extends RealType<A>> extends
+	CompositeXYProjector<A>
+{
+
+	/** Edge length, in pixels, of the rendered tiles. */
+	public static final int TILE_SIZE = 256;
+
+	/** Default cache capacity, in pixels. */
+	public static final long DEFAULT_CACHE_SIZE = 16L * 1024 * 1024;
+
+	// -- instance variables --
+
+	private final RandomAccessibleInterval<A> source;
+	private final ARGBScreenImage target;
+	private final ArrayList<Converter<A, ARGBType>> converters;
+	private final int dimIndex;
+
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int tileCount;
+
+	/** Rendered tiles, in least recently used order. */
+	private final LinkedHashMap<TileKey, int[]> cache =
+		new LinkedHashMap<TileKey, int[]>(16, 0.75f, true);
+
+	private long cacheSize = DEFAULT_CACHE_SIZE;
+	private long cachedPixels;
+
+	/** Incremented whenever cached tiles become stale. */
+	private int generation;
+
+	private ThreadService threadService;
+	private Future<?> prefetch;
+
+	private boolean deferred;
+	private boolean stale;
+
+	/** The visible region of the plane, or null if all of it is visible. */
+	private Interval viewport;
+
+	/** The projection shown by the target, or null before the first one. */
+	private Projection shown;
+
+	/** Flags the tiles of the target that do not show {@link #shown} yet. */
+	private final boolean[] pending;
+
+	// -- constructor --
+
+	public TiledCompositeXYProjector(final RandomAccessibleInterval<A> source,
+		final ARGBScreenImage target,
+		final ArrayList<Converter<A, ARGBType>> converters, final int dimIndex)
+	{
+		super(source, target, converters, dimIndex);
+		this.source = source;
+		this.target = target;
+		this.converters = converters;
+		this.dimIndex = dimIndex;
+		width = (int) target.dimension(0);
+		height = (int) target.dimension(1);
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		final int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tileCount = tilesX * tilesY;
+		pending = new boolean[tileCount];
+	}
+
+	// -- TiledCompositeXYProjector methods --
+
+	/**
+	 * Sets the service used to project adjacent planes in the background. When
+	 * null (the default) nothing is projected ahead of time.
+	 */
+	public void setThreadService(final ThreadService threadService) {
+		this.threadService = threadService;
+	}
+
+	/**
+	 * Sets whether {@link #map()} is deferred until the next {@link #flush()}.
+	 * Turning deferral off flushes any pending projection.
+	 */
+	public void setDeferred(final boolean deferred) {
+		synchronized (this) {
+			this.deferred = deferred;
+		}
+		if (!deferred) flush();
+	}
+
+	/** Gets whether {@link #map()} is deferred until the next {@link #flush()}. */
+	public synchronized boolean isDeferred() {
+		return deferred;
+	}
+
+	/** Performs the projection if a deferred {@link #map()} is pending. */
+	public void flush() {
+		// NB - render() must not hold the lock; its workers need it for the cache
+		synchronized (this) {
+			if (!stale) return;
+			stale = false;
+		}
+		render();
+	}
+
+	/**
+	 * Sets the region of the plane that is on screen; {@link #map()} projects
+	 * only the tiles overlapping it, and the tiles left out that now overlap it
+	 * are projected right away. When null (the default) the whole plane is
+	 * projected.
+	 * 
+	 * @return true if any tiles of the target were projected
+	 */
+	public boolean setViewport(final Interval viewport) {
+		synchronized (this) {
+			this.viewport = viewport;
+			// NB - the next flush() projects the visible tiles anyway
+			if (stale) return false;
+		}
+		return renderPending(false);
+	}
+
+	/** Gets the region of the plane that is on screen, or null if all of it. */
+	public synchronized Interval getViewport() {
+		return viewport;
+	}
+
+	/**
+	 * Performs any pending projection, including the tiles left out of the
+	 * {@link #setViewport viewport}, so that the whole target shows the current
+	 * plane.
+	 */
+	public void complete() {
+		flush();
+		renderPending(true);
+	}
+
+	/** Sets the maximum number of pixels of rendered tiles to retain. */
+	public synchronized void setCacheSize(final long pixels) {
+		cacheSize = pixels;
+		trimCache();
+	}
+
+	/** Gets the maximum number of pixels of rendered tiles to retain. */
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	/** Discards all rendered tiles. Call whenever the source data changes. */
+	public synchronized void invalidate() {
+		cache.clear();
+		cachedPixels = 0;
+		generation++;
+	}
+
+	/**
+	 * Discards the rendered tiles that show samples of the given region of the
+	 * source. Call whenever the data in that region changes.
+	 */
+	public synchronized void invalidate(final Interval region) {
+		final Iterator<Map.Entry<TileKey, int[]>> iter =
+			cache.entrySet().iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<TileKey, int[]> entry = iter.next();
+			if (!overlaps(entry.getKey(), region)) continue;
+			cachedPixels -= entry.getValue().length;
+			iter.remove();
+		}
+		generation++;
+	}
+
+	/**
+	 * Projects, in the background, the planes on either side of the current
+	 * position along the given dimension, so that stepping to them is served
+	 * from the cache. Does nothing if a previous request is still running.
+	 */
+	public void prefetch(final int dim) {
+		if (dim < 2 || dim >= numDimensions()) return;
+		final long p = getLongPosition(dim);
+		prefetch(dim, new long[] { p - 1, p + 1 });
+	}
+
+	/**
+	 * Projects, in the background and in the given order, the planes at the
+	 * given positions along the given dimension (at the current position along
+	 * all others), so that stepping to them is served from the cache. Positions
+	 * outside the image are ignored, and planes beyond
+	 * {@link #getPrefetchCapacity()} are not projected. Does nothing if a
+	 * previous request is still running.
+	 */
+	public void prefetch(final int dim, final long[] positions) {
+		if (threadService == null || dim < 2 || isDeferred()) return;
+		final ArrayList<Converter<A, ARGBType>> snapshot = snapshotConverters();
+		if (snapshot == null) return;
+		final boolean composite = isComposite();
+		final long[] pos = new long[numDimensions()];
+		localize(pos);
+		final int gen = getGeneration();
+		final int capacity = getPrefetchCapacity();
+		final ArrayList<long[]> planes = new ArrayList<long[]>();
+		for (final long p : positions) {
+			if (planes.size() >= capacity) break;
+			if (p < source.min(dim) || p > source.max(dim)) continue;
+			final long[] plane = pos.clone();
+			plane[dim] = p;
+			planes.add(plane);
+		}
+		if (planes.isEmpty()) return;
+		// leave half of the processors to the projection of the current plane
+		final int threads = Math.max(1, ParallelLoop.defaultThreadCount() / 2);
+		synchronized (this) {
+			if (prefetch != null && !prefetch.isDone()) return;
+			prefetch = threadService.run(new Runnable() {
+
+				@Override
+				public void run() {
+					for (final long[] plane : planes) {
+						if (gen != getGeneration()) return;
+						renderPlane(gen, plane, composite, snapshot, threads);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Gets the number of planes {@link #prefetch(int, long[])} projects ahead:
+	 * as many as the cache holds besides the current plane.
+	 */
+	public synchronized int getPrefetchCapacity() {
+		final long planes = cacheSize / ((long) width * height) - 1;
+		return (int) Math.max(0, Math.min(Integer.MAX_VALUE, planes));
+	}
+
+	// -- Projector methods --
+
+	@Override
+	public void map() {
+		synchronized (this) {
+			if (deferred) {
+				stale = true;
+				return;
+			}
+			stale = false;
+		}
+		render();
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Gets an object that equals the one returned by an earlier call exactly when
+	 * the projection of the current plane would be the same (provided the data
+	 * did not change), or null if that cannot be determined.
+	 */
+	Object getRenderKey() {
+		final ArrayList<Converter<A, ARGBType>> snapshot = snapshotConverters();
+		if (snapshot == null) return null;
+		final long[] pos = new long[numDimensions()];
+		localize(pos);
+		return new PlaneKey(pos, isComposite(), snapshot);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Projects the visible tiles of the current plane, reusing and filling the
+	 * tile cache, and marks the others pending.
+	 */
+	private void render() {
+		final Projection projection = new Projection();
+		final boolean[] tiles = new boolean[tileCount];
+		synchronized (this) {
+			shown = projection;
+			for (int t = 0; t < tileCount; t++) {
+				tiles[t] = isVisible(t);
+				pending[t] = !tiles[t];
+			}
+		}
+		draw(projection, tiles);
+	}
+
+	/**
+	 * Projects the pending tiles: those in the viewport, or all of them.
+	 * 
+	 * @return true if any tiles were projected
+	 */
+	private boolean renderPending(final boolean all) {
+		final Projection projection;
+		final boolean[] tiles = new boolean[tileCount];
+		boolean any = false;
+		synchronized (this) {
+			projection = shown;
+			if (projection == null) return false;
+			for (int t = 0; t < tileCount; t++) {
+				if (!pending[t] || !all && !isVisible(t)) continue;
+				tiles[t] = true;
+				pending[t] = false;
+				any = true;
+			}
+		}
+		if (any) draw(projection, tiles);
+		return any;
+	}
+
+	/** Copies the flagged tiles of the given projection into the target. */
+	private void draw(final Projection projection, final boolean[] tiles) {
+		final int gen = getGeneration();
+		final int[] pixels = target.getData();
+		ParallelLoop.run(tileCount, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int t) {
+				if (!tiles[t]) return;
+				final int[] tile = projection.getTile(gen, t);
+				final int x0 = tileX(t), y0 = tileY(t);
+				final int tw = tileWidth(t), th = tileHeight(t);
+				for (int y = 0; y < th; y++) {
+					System.arraycopy(tile, y * tw, pixels, (y0 + y) * width + x0, tw);
+				}
+			}
+		});
+	}
+
+	/** Returns true if the given tile overlaps the viewport. */
+	private boolean isVisible(final int t) {
+		if (viewport == null) return true;
+		return tileX(t) <= viewport.max(0) &&
+			tileX(t) + tileWidth(t) > viewport.min(0) &&
+			tileY(t) <= viewport.max(1) &&
+			tileY(t) + tileHeight(t) > viewport.min(1);
+	}
+
+	/** Fills the cache with the missing tiles of the given plane. */
+	private void renderPlane(final int gen, final long[] pos,
+		final boolean composite, final ArrayList<Converter<A, ARGBType>> convs,
+		final int threads)
+	{
+		final PlaneKey key = new PlaneKey(pos, composite, convs);
+		ParallelLoop.run(tileCount, threads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int t) {
+				if (gen != getGeneration()) return;
+				final TileKey tileKey = new TileKey(key, t);
+				if (getCachedTile(tileKey) != null) return;
+				putTile(gen, tileKey, renderTile(t, pos, composite, convs));
+			}
+		});
+	}
+
+	/** Returns true if the given tile shows samples of the given region. */
+	private boolean overlaps(final TileKey key, final Interval region) {
+		final long[] pos = key.plane.position;
+		final int n = Math.min(pos.length, region.numDimensions());
+		for (int d = 2; d < n; d++) {
+			// composite tiles show every channel
+			if (d == dimIndex && key.plane.composite) continue;
+			if (pos[d] < region.min(d) || pos[d] > region.max(d)) return false;
+		}
+		final int t = key.tile;
+		return tileX(t) <= region.max(0) &&
+			tileX(t) + tileWidth(t) > region.min(0) &&
+			tileY(t) <= region.max(1) &&
+			tileY(t) + tileHeight(t) > region.min(1);
+	}
+
+	private int tileX(final int t) {
+		return (t % tilesX) * TILE_SIZE;
+	}
+
+	private int tileY(final int t) {
+		return (t / tilesX) * TILE_SIZE;
+	}
+
+	private int tileWidth(final int t) {
+		return Math.min(TILE_SIZE, width - tileX(t));
+	}
+
+	private int tileHeight(final int t) {
+		return Math.min(TILE_SIZE, height - tileY(t));
+	}
+
+	/** Projects one tile of the plane at the given position. */
+	private int[] renderTile(final int t, final long[] pos,
+		final boolean composite, final ArrayList<Converter<A, ARGBType>> convs)
+	{
+		final long[] origin = new long[pos.length];
+		origin[0] = tileX(t);
+		origin[1] = tileY(t);
+		final ARGBScreenImage tile =
+			new ARGBScreenImage(tileWidth(t), tileHeight(t));
+		final CompositeXYProjector<A> tileProjector =
+			new CompositeXYProjector<A>(Views.offset(source, origin), tile, convs,
+				dimIndex);
+		final long[] tilePos = pos.clone();
+		tilePos[0] = 0;
+		tilePos[1] = 0;
+		tileProjector.setPosition(tilePos);
+		tileProjector.setComposite(composite);
+		tileProjector.map();
+		return tile.getData();
+	}
+
+	/**
+	 * Copies the current converters, so that a projection can proceed while
+	 * display ranges or color tables change. Returns null if some converter is
+	 * not a {@link RealLUTConverter}, in which case nothing can be cached.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	ArrayList<Converter<A, ARGBType>> snapshotConverters() {
+		final ArrayList<Converter<A, ARGBType>> copies =
+			new ArrayList<Converter<A, ARGBType>>();
+		for (final Converter<A, ARGBType> converter : converters) {
+			if (!(converter instanceof RealLUTConverter)) return null;
+			final RealLUTConverter lutConverter = (RealLUTConverter) converter;
+			copies.add(new RealLUTConverter(lutConverter.getMin(), lutConverter
+				.getMax(), lutConverter.getLUT()));
+		}
+		return copies;
+	}
+
+	private synchronized int getGeneration() {
+		return generation;
+	}
+
+	private synchronized int[] getCachedTile(final TileKey key) {
+		return cache.get(key);
+	}
+
+	private synchronized void putTile(final int gen, final TileKey key,
+		final int[] tile)
+	{
+		if (gen != generation) return; // rendered from stale data
+		final int[] old = cache.put(key, tile);
+		if (old != null) cachedPixels -= old.length;
+		cachedPixels += tile.length;
+		trimCache();
+	}
+
+	private void trimCache() {
+		final Iterator<Map.Entry<TileKey, int[]>> iter =
+			cache.entrySet().iterator();
+		while (cachedPixels > cacheSize && iter.hasNext()) {
+			cachedPixels -= iter.next().getValue().length;
+			iter.remove();
+		}
+	}
+
+	// -- helper classes --
+
+	/** The state of the projector that a projection of the plane shows. */
+	private class Projection {
+
+		private final long[] pos;
+		private final boolean composite;
+		private final ArrayList<Converter<A, ARGBType>> convs;
+		private final PlaneKey key;
+
+		public Projection() {
+			composite = isComposite();
+			pos = new long[numDimensions()];
+			localize(pos);
+			final ArrayList<Converter<A, ARGBType>> snapshot =
+				snapshotConverters();
+			key = snapshot == null ? null :
+				new PlaneKey(pos, composite, snapshot);
+			convs = snapshot == null ? converters : snapshot;
+		}
+
+		/** Gets the given tile from the cache, projecting it if needed. */
+		public int[] getTile(final int gen, final int t) {
+			final TileKey tileKey = key == null ? null : new TileKey(key, t);
+			int[] tile = tileKey == null ? null : getCachedTile(tileKey);
+			if (tile == null) {
+				tile = renderTile(t, pos, composite, convs);
+				if (tileKey != null) putTile(gen, tileKey, tile);
+			}
+			return tile;
+		}
+	}
+
+	/** Identifies everything that determines how a plane is rendered. */
+	private static class PlaneKey {
+
+		private final long[] position;
+		private final boolean composite;
+		private final double[] mins;
+		private final double[] maxs;
+		private final ColorTable[] luts;
+		private final int hash;
+
+		@SuppressWarnings("rawtypes")
+		public PlaneKey(final long[] position, final boolean composite,
+			final ArrayList<? extends Converter> convs)
+		{
+			this.position = position.clone();
+			this.position[0] = 0;
+			this.position[1] = 0;
+			this.composite = composite;
+			mins = new double[convs.size()];
+			maxs = new double[convs.size()];
+			luts = new ColorTable[convs.size()];
+			for (int c = 0; c < luts.length; c++) {
+				final RealLUTConverter converter = (RealLUTConverter) convs.get(c);
+				mins[c] = converter.getMin();
+				maxs[c] = converter.getMax();
+				luts[c] = converter.getLUT();
+			}
+			int h = Arrays.hashCode(this.position);
+			h = 31 * h + (composite ? 1 : 0);
+			h = 31 * h + Arrays.hashCode(mins);
+			h = 31 * h + Arrays.hashCode(maxs);
+			for (final ColorTable lut : luts) {
+				h = 31 * h + System.identityHashCode(lut);
+			}
+			hash = h;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof PlaneKey)) return false;
+			final PlaneKey other = (PlaneKey) o;
+			if (hash != other.hash || composite != other.composite) return false;
+			if (!Arrays.equals(position, other.position)) return false;
+			if (!Arrays.equals(mins, other.mins)) return false;
+			if (!Arrays.equals(maxs, other.maxs)) return false;
+			if (luts.length != other.luts.length) return false;
+			for (int c = 0; c < luts.length; c++) {
+				if (luts[c] != other.luts[c]) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/** Identifies one tile of a rendered plane. */
+	private static class TileKey {
+
+		private final PlaneKey plane;
+		private final int tile;
+
+		public TileKey(final PlaneKey plane, final int tile) {
+			this.plane = plane;
+			this.tile = tile;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TileKey)) return false;
+			final TileKey other = (TileKey) o;
+			return tile == other.tile && plane.equals(other.plane);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * plane.hashCode() + tile;
+		}
+	}
+
+}
@@ -36,6 +36,7 @@
 package imagej.data.event;
 
 import imagej.data.Dataset;
+import net.imglib2.Interval;
 
 /**
  * An event indicating a {@link Dataset}'s data has been updated. This means
@@ -43,6 +44,9 @@
  * same as before.
  * <p>
  * This event is typically fired as part of a call to {@link Dataset#update()}.
+ * Events fired by {@link Dataset#update(Interval)} carry the region of the
+ * data that changed, possibly merged from a burst of updates; listeners can
+ * then limit their work to that region.
  * </p>
  * 
  * @author Curtis Rueden
@@ -51,11 +55,19 @@ public class DatasetUpdatedEvent extends DataUpdatedEvent {
 
 	private final Dataset dataset;
 	private final boolean metadataOnly;
+	private final Interval region;
 
 	public DatasetUpdatedEvent(final Dataset dataset, boolean metadataOnly) {
+		this(dataset, metadataOnly, null);
+	}
+
+	public DatasetUpdatedEvent(final Dataset dataset,
+		final boolean metadataOnly, final Interval region)
+	{
 		super(dataset);
 		this.dataset = dataset;
 		this.metadataOnly = metadataOnly;
+		this.region = region;
 	}
 
 	// -- ObjectEvent methods --
@@ -68,4 +80,30 @@ public Dataset getObject() {
 	public boolean isMetaDataOnly() {
 		return metadataOnly;
 	}
+
+	/**
+	 * Gets the region of the dataset whose samples changed, or null if any
+	 * sample may have changed.
+	 */
+	public Interval getRegion() {
+		return region;
+	}
+
+	/**
+	 * Returns true if samples of the plane at the given position may have
+	 * changed. Only the non-XY coordinates of the position are considered, and
+	 * the coordinate along channelDim (-1 for none) is ignored, for planes that
+	 * show all channels at once.
+	 */
+	public boolean isPlaneDirty(final long[] position, final int channelDim) {
+		if (metadataOnly) return false;
+		if (region == null) return true;
+		for (int d = 2; d < position.length; d++) {
+			if (d == channelDim || d >= region.numDimensions()) continue;
+			if (position[d] < region.min(d) || position[d] > region.max(d)) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,457 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.data.event.DatasetDeletedEvent;
+import imagej.data.event.DatasetRestructuredEvent;
+import imagej.data.event.DatasetUpdatedEvent;
+import imagej.util.ParallelLoop;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.meta.Axes;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+
+/**
+ * Default service for computing and caching histograms.
+ * <p>
+ * Samples are counted row by row straight from the primitive plane arrays
+ * when possible, with the work split over planes (and over bands of rows when
+ * there are fewer planes than threads). Each plane's histogram is remembered
+ * as long as the whole cache entry for a binning stays within
+ * {@link #MAX_CACHED_BINS}; larger requests are counted in a single parallel
+ * pass without caching planes. Only the most recently used binnings of each
+ * Dataset are cached.
+ * </p>
+ */
+@Plugin(type = Service.class)
+public class DefaultHistogramService extends AbstractService implements
+	HistogramService
+{
+
+	// -- constants --
+
+	/** Maximum number of bins cached for the planes of one Dataset. */
+	private static final long MAX_CACHED_BINS = 1 << 22;
+
+	/** Maximum number of binnings whose histograms are cached per Dataset. */
+	private static final int MAX_CACHED_BINNINGS = 4;
+
+	// -- parameters --
+
+	@Parameter
+	private EventService eventService;
+
+	// -- instance variables --
+
+	private final Map<Dataset, Entry> cache = new WeakHashMap<Dataset, Entry>();
+
+	// -- HistogramService methods --
+
+	@Override
+	public Histogram getHistogram(final Dataset dataset,
+		final HistogramBinning binning)
+	{
+		final Entry entry = getEntry(dataset);
+		synchronized (entry) {
+			final Histogram histogram = entry.totals.get(binning);
+			if (histogram != null) return histogram;
+		}
+		final Histogram histogram =
+			histogram(dataset, entry, allPlanes(entry.dims), binning);
+		synchronized (entry) {
+			entry.totals.put(binning, histogram);
+		}
+		return histogram;
+	}
+
+	@Override
+	public Histogram getChannelHistogram(final Dataset dataset,
+		final long channel, final HistogramBinning binning)
+	{
+		final int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+		final long channels = chIndex < 0 ? 1 : dataset.dimension(chIndex);
+		if (channel < 0 || channel >= channels) {
+			throw new IllegalArgumentException("no such channel: " + channel);
+		}
+		if (chIndex < 0) return getHistogram(dataset, binning);
+		if (chIndex < 2) {
+			return sliceHistogram(dataset, chIndex, channel, binning);
+		}
+		final Entry entry = getEntry(dataset);
+		return histogram(dataset, entry, channelPlanes(entry.dims, chIndex,
+			channel), binning);
+	}
+
+	@Override
+	public Histogram getPlaneHistogram(final Dataset dataset,
+		final long[] position, final HistogramBinning binning)
+	{
+		final Entry entry = getEntry(dataset);
+		final long[] planes = { PlaneAccess.planeIndex(entry.dims, position) };
+		return histogram(dataset, entry, planes, binning);
+	}
+
+	@Override
+	public double[] getDataRange(final Dataset dataset) {
+		final Entry entry = getEntry(dataset);
+		synchronized (entry) {
+			if (entry.range != null) return entry.range.clone();
+		}
+		final HistogramAccumulator stats =
+			accumulate(dataset, allPlanes(entry.dims), null);
+		final double[] range = { stats.getMin(), stats.getMax() };
+		synchronized (entry) {
+			entry.range = range;
+		}
+		return range.clone();
+	}
+
+	@Override
+	public void invalidate(final Dataset dataset) {
+		synchronized (cache) {
+			cache.remove(dataset);
+		}
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		eventService.subscribe(this);
+	}
+
+	// -- event handlers --
+
+	@EventHandler
+	protected void onEvent(final DatasetUpdatedEvent evt) {
+		if (!evt.isMetaDataOnly()) invalidate(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetRestructuredEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	@EventHandler
+	protected void onEvent(final DatasetDeletedEvent evt) {
+		invalidate(evt.getObject());
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Returns the cache entry of a Dataset, replacing it if the Dataset's image
+	 * was swapped or resized without an event.
+	 */
+	private Entry getEntry(final Dataset dataset) {
+		final Img<?> img = PlaneAccess.unwrap(dataset.getImgPlus());
+		final long[] dims = dataset.getDims();
+		synchronized (cache) {
+			Entry entry = cache.get(dataset);
+			if (entry == null || entry.img != img ||
+				!Arrays.equals(entry.dims, dims))
+			{
+				entry = new Entry(img, dims);
+				cache.put(dataset, entry);
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Returns the merged histogram of the given planes, counting and caching
+	 * missing plane histograms if the binning is small enough to cache.
+	 */
+	private Histogram histogram(final Dataset dataset, final Entry entry,
+		final long[] planes, final HistogramBinning binning)
+	{
+		final long planeCount = planeCount(entry.dims);
+		if (planeCount * binning.getBinCount() > MAX_CACHED_BINS) {
+			return accumulate(dataset, planes, binning).toHistogram();
+		}
+		Histogram[] cached;
+		synchronized (entry) {
+			cached = entry.planes.get(binning);
+			if (cached == null) {
+				cached = new Histogram[(int) planeCount];
+				entry.planes.put(binning, cached);
+			}
+		}
+		final Histogram[] histograms = new Histogram[planes.length];
+		int missingCount = 0;
+		final long[] missing = new long[planes.length];
+		synchronized (entry) {
+			for (int i = 0; i < planes.length; i++) {
+				histograms[i] = cached[(int) planes[i]];
+				if (histograms[i] == null) missing[missingCount++] = planes[i];
+			}
+		}
+		if (missingCount > 0) {
+			final long[] toCount = Arrays.copyOf(missing, missingCount);
+			final Histogram[] counted = countPlanes(dataset, toCount, binning);
+			synchronized (entry) {
+				for (int i = 0; i < missingCount; i++) {
+					cached[(int) missing[i]] = counted[i];
+				}
+				for (int i = 0; i < planes.length; i++) {
+					histograms[i] = cached[(int) planes[i]];
+				}
+			}
+		}
+		return histograms.length == 1 ? histograms[0] : Histogram
+			.merge(histograms);
+	}
+
+	/** Counts each of the given planes into its own histogram, in parallel. */
+	private Histogram[] countPlanes(final Dataset dataset, final long[] planes,
+		final HistogramBinning binning)
+	{
+		final PlaneAccess access = PlaneAccess.create(dataset);
+		final long[] dims = dataset.getDims();
+		final long height = planeHeight(dims);
+		final int threads = ParallelLoop.defaultThreadCount();
+		// split planes into bands of rows when there are too few to keep all
+		// threads busy
+		final long wanted = (2L * threads + planes.length - 1) / planes.length;
+		final int bands = (int) Math.max(1, Math.min(height, wanted));
+		final HistogramAccumulator[] partial =
+			new HistogramAccumulator[planes.length * bands];
+		ParallelLoop.run(partial.length, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				final long first = (i / bands) * height;
+				final int band = i % bands;
+				final long fromRow = first + height * band / bands;
+				final long toRow = first + height * (band + 1) / bands;
+				final HistogramAccumulator acc =
+					new HistogramAccumulator(binning);
+				accumulateRows(dataset, access, dims, planes, fromRow, toRow,
+					acc);
+				partial[i] = acc;
+			}
+		});
+		final Histogram[] histograms = new Histogram[planes.length];
+		for (int p = 0; p < planes.length; p++) {
+			final HistogramAccumulator acc = partial[p * bands];
+			for (int b = 1; b < bands; b++)
+				acc.add(partial[p * bands + b]);
+			histograms[p] = acc.toHistogram();
+		}
+		return histograms;
+	}
+
+	/**
+	 * Counts all rows of the given planes into one accumulator, in parallel. A
+	 * null binning gathers statistics only.
+	 */
+	private HistogramAccumulator accumulate(final Dataset dataset,
+		final long[] planes, final HistogramBinning binning)
+	{
+		final PlaneAccess access = PlaneAccess.create(dataset);
+		final long[] dims = dataset.getDims();
+		final long[] bounds =
+			ParallelLoop.chunkBounds(planes.length * planeHeight(dims), 2);
+		final HistogramAccumulator[] partial =
+			new HistogramAccumulator[bounds.length - 1];
+		ParallelLoop.run(partial.length, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int c) {
+				final HistogramAccumulator acc =
+					new HistogramAccumulator(binning);
+				accumulateRows(dataset, access, dims, planes, bounds[c],
+					bounds[c + 1], acc);
+				partial[c] = acc;
+			}
+		});
+		final HistogramAccumulator total = partial[0];
+		for (int c = 1; c < partial.length; c++)
+			total.add(partial[c]);
+		return total;
+	}
+
+	/**
+	 * Counts rows [fromRow, toRow) of the given planes, where row r is row (r %
+	 * height) of plane planes[r / height].
+	 */
+	private void accumulateRows(final Dataset dataset, final PlaneAccess access,
+		final long[] dims, final long[] planes, final long fromRow,
+		final long toRow, final HistogramAccumulator acc)
+	{
+		final long height = planeHeight(dims);
+		if (access != null) {
+			final int w = access.getPlaneWidth();
+			final double[] row = new double[w];
+			int current = -1;
+			RealArray plane = null;
+			for (long r = fromRow; r < toRow; r++) {
+				final int p = (int) planes[(int) (r / height)];
+				if (p != current) {
+					plane = access.getPlaneForReading(p);
+					current = p;
+				}
+				plane.get((int) (r % height) * w, row, 0, w);
+				acc.add(row, w);
+			}
+			return;
+		}
+		final RandomAccess<? extends RealType<?>> accessor =
+			dataset.getImgPlus().randomAccess();
+		final long[] pos = new long[dims.length];
+		for (long r = fromRow; r < toRow; r++) {
+			PlaneAccess.planePosition(dims, planes[(int) (r / height)], pos);
+			if (dims.length > 1) pos[1] = r % height;
+			accessor.setPosition(pos);
+			for (long x = 0; x < dims[0]; x++) {
+				acc.add(accessor.get().getRealDouble());
+				accessor.fwd(0);
+			}
+		}
+	}
+
+	/**
+	 * Counts one channel of a Dataset whose channel axis is X or Y. Such a
+	 * channel does not consist of whole planes, so it is counted directly.
+	 */
+	private Histogram sliceHistogram(final Dataset dataset, final int chIndex,
+		final long channel, final HistogramBinning binning)
+	{
+		final long[] min = new long[dataset.numDimensions()];
+		final long[] max = dataset.getDims();
+		for (int d = 0; d < max.length; d++)
+			max[d]--;
+		min[chIndex] = max[chIndex] = channel;
+		final Img<? extends RealType<?>> img = dataset.getImgPlus();
+		final Cursor<? extends RealType<?>> cursor =
+			Views.iterable(Views.interval(img, min, max)).cursor();
+		final HistogramAccumulator acc = new HistogramAccumulator(binning);
+		while (cursor.hasNext()) {
+			acc.add(cursor.next().getRealDouble());
+		}
+		return acc.toHistogram();
+	}
+
+	private static long planeHeight(final long[] dims) {
+		return dims.length > 1 ? dims[1] : 1;
+	}
+
+	private static long planeCount(final long[] dims) {
+		long count = 1;
+		for (int d = 2; d < dims.length; d++)
+			count *= dims[d];
+		return count;
+	}
+
+	private static long[] allPlanes(final long[] dims) {
+		final long[] planes = new long[(int) planeCount(dims)];
+		for (int p = 0; p < planes.length; p++)
+			planes[p] = p;
+		return planes;
+	}
+
+	private static long[] channelPlanes(final long[] dims, final int chIndex,
+		final long channel)
+	{
+		final long count = planeCount(dims) / dims[chIndex];
+		final long[] planes = new long[(int) count];
+		final long[] pos = new long[dims.length];
+		int next = 0;
+		for (long p = 0; next < planes.length; p++) {
+			PlaneAccess.planePosition(dims, p, pos);
+			if (pos[chIndex] == channel) planes[next++] = p;
+		}
+		return planes;
+	}
+
+	// -- helper classes --
+
+	/** Cached values of one Dataset. */
+	private static class Entry {
+
+		private final Img<?> img;
+		private final long[] dims;
+		private final Map<HistogramBinning, Histogram[]> planes =
+			new BinningCache<Histogram[]>();
+		private final Map<HistogramBinning, Histogram> totals =
+			new BinningCache<Histogram>();
+		private double[] range;
+
+		public Entry(final Img<?> img, final long[] dims) {
+			this.img = img;
+			this.dims = dims;
+		}
+	}
+
+
+	/** Keeps the values of the most recently used binnings only. */
+	private static class BinningCache<V> extends
+		LinkedHashMap<HistogramBinning, V>
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		public BinningCache() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+			final Map.Entry<HistogramBinning, V> eldest)
+		{
+			return size() > MAX_CACHED_BINNINGS;
+		}
+	}
+
+}
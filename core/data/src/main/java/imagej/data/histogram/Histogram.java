@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+/**
+ * An immutable histogram of sample values along with simple statistics of the
+ * samples that were counted. Histograms with the same {@link HistogramBinning}
+ * can be merged cheaply; the {@link HistogramService} builds channel and stack
+ * histograms this way from its cached plane histograms.
+ */
+public class Histogram {
+
+	// -- instance variables --
+
+	private final HistogramBinning binning;
+	private final long[] counts;
+	private final long sampleCount;
+	private final double min;
+	private final double max;
+	private final double sum;
+	private final double sumOfSquares;
+
+	// -- constructor --
+
+	/**
+	 * Constructs a histogram. The min and max are those of the non-NaN samples
+	 * (+Infinity and -Infinity if there were none). The counts array is copied.
+	 */
+	public Histogram(final HistogramBinning binning, final long[] counts,
+		final long sampleCount, final double min, final double max,
+		final double sum, final double sumOfSquares)
+	{
+		if (counts.length != binning.getBinCount()) {
+			throw new IllegalArgumentException("expected " +
+				binning.getBinCount() + " bins but got " + counts.length);
+		}
+		this.binning = binning;
+		this.counts = counts.clone();
+		this.sampleCount = sampleCount;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.sumOfSquares = sumOfSquares;
+	}
+
+	// -- public interface --
+
+	/** Returns the binning used to count samples. */
+	public HistogramBinning getBinning() {
+		return binning;
+	}
+
+	/** Returns the number of bins. */
+	public int getBinCount() {
+		return counts.length;
+	}
+
+	/** Returns the number of samples counted in the given bin. */
+	public long getCount(final int bin) {
+		return counts[bin];
+	}
+
+	/** Returns a copy of the bin counts. */
+	public long[] getCounts() {
+		return counts.clone();
+	}
+
+	/** Returns the total number of samples counted. */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/** Returns the smallest non-NaN sample value (+Infinity if none). */
+	public double getMin() {
+		return min;
+	}
+
+	/** Returns the largest non-NaN sample value (-Infinity if none). */
+	public double getMax() {
+		return max;
+	}
+
+	/** Returns the sum of the sample values. */
+	public double getSum() {
+		return sum;
+	}
+
+	/** Returns the sum of the squares of the sample values. */
+	public double getSumOfSquares() {
+		return sumOfSquares;
+	}
+
+	/** Returns the mean of the sample values. */
+	public double getMean() {
+		return sum / sampleCount;
+	}
+
+	/** Returns the (sample) standard deviation of the sample values. */
+	public double getStdDev() {
+		final double n = sampleCount;
+		return Math.sqrt((sumOfSquares - sum * sum / n) / (n - 1));
+	}
+
+	/**
+	 * Returns a histogram that counts the samples of all of the given
+	 * histograms. The histograms must share the same binning.
+	 */
+	public static Histogram merge(final Histogram... histograms) {
+		if (histograms.length == 0) {
+			throw new IllegalArgumentException("nothing to merge");
+		}
+		final HistogramBinning binning = histograms[0].getBinning();
+		final long[] counts = new long[binning.getBinCount()];
+		long sampleCount = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (final Histogram h : histograms) {
+			if (!binning.equals(h.getBinning())) {
+				throw new IllegalArgumentException("cannot merge " +
+					h.getBinning() + " into " + binning);
+			}
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += h.counts[i];
+			sampleCount += h.sampleCount;
+			if (h.min < min) min = h.min;
+			if (h.max > max) max = h.max;
+			sum += h.sum;
+			sumOfSquares += h.sumOfSquares;
+		}
+		return new Histogram(binning, counts, sampleCount, min, max, sum,
+			sumOfSquares);
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "Histogram[" + binning + ", " + sampleCount + " samples]";
+	}
+
+}
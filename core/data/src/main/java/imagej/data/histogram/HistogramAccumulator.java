@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+/**
+ * Counts sample values into a {@link Histogram}. Not thread safe: each thread
+ * accumulates into its own instance and the results are merged afterwards.
+ * When constructed without a binning only the statistics are gathered.
+ */
+class HistogramAccumulator {
+
+	// -- instance variables --
+
+	private final HistogramBinning binning;
+	private final long[] counts;
+	private long sampleCount;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+	private double sumOfSquares;
+
+	// -- constructor --
+
+	public HistogramAccumulator(final HistogramBinning binning) {
+		this.binning = binning;
+		this.counts = binning == null ? null : new long[binning.getBinCount()];
+	}
+
+	// -- public interface --
+
+	public void add(final double value) {
+		if (counts != null) counts[binning.getBin(value)]++;
+		sampleCount++;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		sum += value;
+		sumOfSquares += value * value;
+	}
+
+	public void add(final double[] values, final int count) {
+		for (int i = 0; i < count; i++)
+			add(values[i]);
+	}
+
+	public void add(final HistogramAccumulator other) {
+		if (counts != null) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += other.counts[i];
+		}
+		sampleCount += other.sampleCount;
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+		sum += other.sum;
+		sumOfSquares += other.sumOfSquares;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	public Histogram toHistogram() {
+		return new Histogram(binning, counts, sampleCount, min, max, sum,
+			sumOfSquares);
+	}
+
+}
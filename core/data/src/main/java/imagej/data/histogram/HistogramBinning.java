@@ -0,0 +1,204 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+/**
+ * Maps sample values to the bins of a histogram. Binnings are value objects:
+ * two binnings of the same kind with the same parameters are equal, which lets
+ * the {@link HistogramService} share cached histograms between callers.
+ */
+public abstract class HistogramBinning {
+
+	// -- instance variables --
+
+	private final double min;
+	private final double max;
+	private final int binCount;
+
+	// -- constructor --
+
+	protected HistogramBinning(final double min, final double max,
+		final int binCount)
+	{
+		if (binCount < 1) {
+			throw new IllegalArgumentException("bin count must be positive: " +
+				binCount);
+		}
+		this.min = min;
+		this.max = max;
+		this.binCount = binCount;
+	}
+
+	// -- HistogramBinning methods --
+
+	/** Returns the bin a value falls in, from 0 to {@link #getBinCount()}-1. */
+	public abstract int getBin(double value);
+
+	/** Returns the number of bins. */
+	public int getBinCount() {
+		return binCount;
+	}
+
+	/** Returns the value mapped to the first bin. */
+	public double getMin() {
+		return min;
+	}
+
+	/** Returns the value mapped to the last bin. */
+	public double getMax() {
+		return max;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public boolean equals(final Object o) {
+		if (o == null || o.getClass() != getClass()) return false;
+		final HistogramBinning other = (HistogramBinning) o;
+		return binCount == other.binCount && same(min, other.min) &&
+			same(max, other.max);
+	}
+
+	@Override
+	public int hashCode() {
+		final long bits =
+			31 * Double.doubleToLongBits(min) + Double.doubleToLongBits(max);
+		return getClass().hashCode() ^ (int) (bits ^ (bits >>> 32)) ^ binCount;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + min + ", " + max + "; " +
+			binCount + " bins]";
+	}
+
+	// -- static constructors --
+
+	/**
+	 * Returns a binning that clamps values to [min, max] and spreads that range
+	 * evenly over the bins, truncating: bin = (int) ((bins - 1) * (v - min) /
+	 * (max - min)).
+	 */
+	public static HistogramBinning clamped(final double min, final double max,
+		final int binCount)
+	{
+		return new Clamped(min, max, binCount);
+	}
+
+	/**
+	 * Returns a binning that spreads [min, max] evenly over the bins, rounding
+	 * to the nearest bin: bin = round((bins - 1) * ((v - min) / (max - min))).
+	 * Values must lie within [min, max].
+	 */
+	public static HistogramBinning rounded(final double min, final double max,
+		final int binCount)
+	{
+		return new Rounded(min, max, binCount);
+	}
+
+	/**
+	 * Returns a binning of bins of a fixed width starting at min. Values at or
+	 * beyond the end of the last bin fall in the last bin: bin = min(bins - 1,
+	 * (int) ((v - min) / width)). Values must not be less than min.
+	 */
+	public static HistogramBinning fixedWidth(final double min,
+		final double width, final int binCount)
+	{
+		return new FixedWidth(min, width, binCount);
+	}
+
+	// -- private helpers --
+
+	private static boolean same(final double a, final double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+	}
+
+	// -- helper classes --
+
+	private static class Clamped extends HistogramBinning {
+
+		private final double scale;
+
+		public Clamped(final double min, final double max, final int binCount) {
+			super(min, max, binCount);
+			scale = binCount - 1;
+		}
+
+		@Override
+		public int getBin(final double value) {
+			final double min = getMin(), max = getMax();
+			double v = value;
+			if (v < min) v = min;
+			if (v > max) v = max;
+			return (int) (scale * (v - min) / (max - min));
+		}
+	}
+
+	private static class Rounded extends HistogramBinning {
+
+		private final double scale;
+
+		public Rounded(final double min, final double max, final int binCount) {
+			super(min, max, binCount);
+			scale = binCount - 1;
+		}
+
+		@Override
+		public int getBin(final double value) {
+			final double relPos = (value - getMin()) / (getMax() - getMin());
+			return (int) Math.round(scale * relPos);
+		}
+	}
+
+	private static class FixedWidth extends HistogramBinning {
+
+		private final double width;
+
+		public FixedWidth(final double min, final double width,
+			final int binCount)
+		{
+			super(min, min + width * binCount, binCount);
+			this.width = width;
+		}
+
+		@Override
+		public int getBin(final double value) {
+			final int bin = (int) ((value - getMin()) / width);
+			return bin >= getBinCount() ? getBinCount() - 1 : bin;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+import imagej.data.Dataset;
+
+import org.scijava.service.Service;
+
+/**
+ * Interface for service that computes and caches histograms of
+ * {@link Dataset}s. Histograms are computed plane by plane in parallel and
+ * remembered per plane, so channel and whole stack histograms are merged from
+ * already counted planes. Cached values are discarded when a Dataset is
+ * updated, restructured or deleted.
+ */
+public interface HistogramService extends Service {
+
+	/** Returns the histogram of all samples of the given Dataset. */
+	Histogram getHistogram(Dataset dataset, HistogramBinning binning);
+
+	/**
+	 * Returns the histogram of the samples of one channel of the given Dataset.
+	 * A Dataset without a channel axis has a single channel 0.
+	 */
+	Histogram getChannelHistogram(Dataset dataset, long channel,
+		HistogramBinning binning);
+
+	/**
+	 * Returns the histogram of the XY plane of the given Dataset containing the
+	 * given position. Only the position's values for axes 2 and higher are
+	 * considered.
+	 */
+	Histogram getPlaneHistogram(Dataset dataset, long[] position,
+		HistogramBinning binning);
+
+	/**
+	 * Returns the smallest and largest non-NaN sample values of the given
+	 * Dataset as {min, max}. If there are no such values {+Infinity, -Infinity}
+	 * is returned.
+	 */
+	double[] getDataRange(Dataset dataset);
+
+	/** Discards all cached values of the given Dataset. */
+	void invalidate(Dataset dataset);
+
+}
@@ -36,6 +36,17 @@
 package imagej.data.measure;
 
 import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.ops.function.Function;
 import net.imglib2.ops.function.real.RealAlphaTrimmedMeanFunction;
@@ -66,6 +77,7 @@
 import net.imglib2.ops.function.real.RealWeightedSumFunction;
 import net.imglib2.ops.pointset.HyperVolumePointSet;
 import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 
@@ -74,8 +86,8 @@
 import org.scijava.service.Service;
 
 // TODO - make MeasurementService smarter. Compute values without always
-// revisiting the pixels. This current impl goes over pixels once for each
-// measurement. I will mock something up soon. BDZ
+// revisiting the pixels. The single measurement methods go over pixels once
+// for each measurement. The statistics() methods batch measurements together.
 
 // TODO - this service is limited to only the kinds of stats it knows. It can't
 // measure a user provided statistic. This can be done by calling the
@@ -99,6 +111,9 @@ public class DefaultStatisticsService extends AbstractService implements
 	StatisticsService
 {
 
+	/** Number of points of a non-box region read by one parallel task. */
+	private static final int CHUNK_POINTS = 16 * 1024;
+
 	// -- Parameters --
 
 	// later
@@ -433,6 +448,78 @@ public double weightedSum(final Dataset ds, final PointSet region,
 		return measure(func, region);
 	}
 
+	@Override
+	public Map<Statistic, Double> statistics(final Dataset ds,
+		final PointSet region, final Set<Statistic> statistics)
+	{
+		boolean needValues = false;
+		for (final Statistic statistic : statistics)
+			needValues |= statistic.isOrderStatistic();
+
+		final int numDims = region.numDimensions();
+		final long[] min = new long[numDims];
+		final long[] max = new long[numDims];
+		region.min(min);
+		region.max(max);
+		final RegionScan[] scans;
+		if (region instanceof HyperVolumePointSet) {
+			int axis = numDims - 1;
+			while (axis > 0 && max[axis] == min[axis])
+				axis--;
+			final long[] bounds =
+				ParallelLoop.chunkBounds(max[axis] - min[axis] + 1, 2);
+			scans = new RegionScan[bounds.length - 1];
+			for (int c = 0; c < scans.length; c++) {
+				final long[] chunkMin = min.clone();
+				final long[] chunkMax = max.clone();
+				chunkMin[axis] = min[axis] + bounds[c];
+				chunkMax[axis] = min[axis] + bounds[c + 1] - 1;
+				scans[c] =
+					new RegionScan(ds, chunkMin, chunkMax, statistics,
+						needValues);
+			}
+			scan(scans);
+		}
+		else {
+			// NB - other regions are walked through their own points, which
+			// costs far less than testing every point of a sparse region's box
+			scans = scanPoints(ds, region, statistics, needValues);
+		}
+
+		// NB - merge in chunk order so results do not depend on thread timing
+		final MomentAccumulator moments = new MomentAccumulator(statistics);
+		for (final RegionScan scan : scans)
+			moments.merge(scan.moments);
+		double[] values = null;
+		if (needValues) {
+			if (moments.getCount() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(
+					"region too large for order statistics");
+			}
+			values = new double[(int) moments.getCount()];
+			int pos = 0;
+			for (final RegionScan scan : scans) {
+				System.arraycopy(scan.values, 0, values, pos, scan.valueCount);
+				pos += scan.valueCount;
+			}
+		}
+
+		final Map<Statistic, Double> results =
+			new EnumMap<Statistic, Double>(Statistic.class);
+		for (final Statistic statistic : statistics) {
+			if (statistic == Statistic.MEDIAN) results.put(statistic, median(values));
+			else results.put(statistic, moments.get(statistic));
+		}
+		return results;
+	}
+
+	@Override
+	public Map<Statistic, Double> statistics(final Dataset ds,
+		final Set<Statistic> statistics)
+	{
+		return statistics(ds, allOf(ds), statistics);
+	}
+
 	@Override
 	public PointSet allOf(final Dataset ds) {
 		return new HyperVolumePointSet(ds.getDims());
@@ -440,6 +527,54 @@ public PointSet allOf(final Dataset ds) {
 
 	// -- private helpers --
 
+	/** Performs the given scans in parallel. */
+	private static void scan(final RegionScan[] scans) {
+		ParallelLoop.run(scans.length, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int c) {
+				scans[c].scan();
+			}
+		});
+	}
+
+	/**
+	 * Scans the points of a region in parallel. The region's iterator can only
+	 * be walked serially, so its points are collected in chunks of
+	 * {@link #CHUNK_POINTS}, and a batch of chunks (a few per thread) is read
+	 * in parallel before the walk goes on. Returns the scans in region order.
+	 */
+	private static RegionScan[] scanPoints(final Dataset ds,
+		final PointSet region, final Set<Statistic> statistics,
+		final boolean needValues)
+	{
+		final int numDims = region.numDimensions();
+		final int batchSize = 2 * ParallelLoop.defaultThreadCount();
+		final ArrayList<RegionScan> scans = new ArrayList<RegionScan>();
+		final PointSetIterator iter = region.iterator();
+		while (iter.hasNext()) {
+			final ArrayList<RegionScan> batch = new ArrayList<RegionScan>();
+			while (batch.size() < batchSize && iter.hasNext()) {
+				// NB - grow the chunk, so that small regions stay cheap
+				long[] points = new long[256 * numDims];
+				int count = 0;
+				while (count < CHUNK_POINTS && iter.hasNext()) {
+					if ((count + 1) * numDims > points.length) {
+						points = Arrays.copyOf(points, 2 * points.length);
+					}
+					final long[] pos = iter.next();
+					System.arraycopy(pos, 0, points, count * numDims, numDims);
+					count++;
+				}
+				batch.add(new RegionScan(ds, numDims, points, count, statistics,
+					needValues));
+			}
+			scan(batch.toArray(new RegionScan[batch.size()]));
+			scans.addAll(batch);
+		}
+		return scans.toArray(new RegionScan[scans.size()]);
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private RealImageFunction<?, DoubleType> imgFunc(final Dataset ds) {
 		final Img<? extends RealType<?>> imgPlus = ds.getImgPlus();
@@ -454,4 +589,189 @@ private double measure(final Function<PointSet, DoubleType> func,
 		return output.getRealDouble();
 	}
 
+	/**
+	 * Returns the median of the given values, partially reordering them. For an
+	 * even number of values the mean of the two middle values is returned.
+	 */
+	private static double median(final double[] values) {
+		final int n = values.length;
+		if (n == 0) return Double.NaN;
+		final int k = n / 2;
+		final double upper = select(values, k);
+		if (n % 2 == 1) return upper;
+		// after selection everything left of k is <= the k-th value
+		double lower = values[0];
+		for (int i = 1; i < k; i++)
+			if (values[i] > lower) lower = values[i];
+		return (lower + upper) / 2;
+	}
+
+	/**
+	 * Rearranges the values so that the k-th smallest is at index k, smaller
+	 * values precede it and larger values follow it. Returns the k-th smallest.
+	 */
+	private static double select(final double[] a, final int k) {
+		int lo = 0;
+		int hi = a.length - 1;
+		while (hi > lo) {
+			// median of three pivot guards against sorted input
+			final int mid = (lo + hi) >>> 1;
+			if (a[mid] < a[lo]) swap(a, mid, lo);
+			if (a[hi] < a[lo]) swap(a, hi, lo);
+			if (a[hi] < a[mid]) swap(a, hi, mid);
+			final double pivot = a[mid];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (a[i] < pivot)
+					i++;
+				while (a[j] > pivot)
+					j--;
+				if (i <= j) swap(a, i++, j--);
+			}
+			if (k <= j) hi = j;
+			else if (k >= i) lo = i;
+			else break;
+		}
+		return a[k];
+	}
+
+	private static void swap(final double[] a, final int i, final int j) {
+		final double t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	// -- helper classes --
+
+	/**
+	 * Gathers the moments (and optionally the values) of every point of a box,
+	 * or of a list of points. Each RegionScan is used by a single thread.
+	 */
+	private static class RegionScan {
+
+		private final Dataset ds;
+		private final int numDims;
+		private final long[] min;
+		private final long[] max;
+		private final long[] points;
+		private final int pointCount;
+		private final boolean keepValues;
+
+		private final MomentAccumulator moments;
+		private double[] values;
+		private int valueCount;
+
+		/** Creates a scan of the box spanning min to max, inclusive. */
+		public RegionScan(final Dataset ds, final long[] min, final long[] max,
+			final Set<Statistic> statistics, final boolean keepValues)
+		{
+			this(ds, min.length, min, max, null, 0, statistics, keepValues);
+		}
+
+		/**
+		 * Creates a scan of the first pointCount points of the given array,
+		 * which holds the numDims coordinates of one point after another.
+		 */
+		public RegionScan(final Dataset ds, final int numDims,
+			final long[] points, final int pointCount,
+			final Set<Statistic> statistics, final boolean keepValues)
+		{
+			this(ds, numDims, null, null, points, pointCount, statistics,
+				keepValues);
+		}
+
+		private RegionScan(final Dataset ds, final int numDims,
+			final long[] min, final long[] max, final long[] points,
+			final int pointCount, final Set<Statistic> statistics,
+			final boolean keepValues)
+		{
+			this.ds = ds;
+			this.numDims = numDims;
+			this.min = min;
+			this.max = max;
+			this.points = points;
+			this.pointCount = pointCount;
+			this.keepValues = keepValues;
+			this.values = keepValues ? new double[1024] : null;
+			moments = new MomentAccumulator(statistics);
+		}
+
+		public void scan() {
+			if (points != null) {
+				scanPoints();
+				return;
+			}
+			final PlaneAccess planes = PlaneAccess.create(ds);
+			if (planes != null && min.length >= 2) scanRows(planes);
+			else scanBox();
+		}
+
+		/** Adds the box's values row by row straight from the plane arrays. */
+		private void scanRows(final PlaneAccess planes) {
+			final long[] dims = planes.getDims();
+			final int width = planes.getPlaneWidth();
+			final int rowLength = (int) (max[0] - min[0] + 1);
+			final double[] row = new double[rowLength];
+			final long[] pos = min.clone();
+			while (true) {
+				final int planeNum = (int) PlaneAccess.planeIndex(dims, pos);
+				final RealArray plane = planes.getPlaneForReading(planeNum);
+				plane.get((int) pos[1] * width + (int) min[0], row, 0, rowLength);
+				for (int i = 0; i < rowLength; i++)
+					add(row[i]);
+				if (!nextPosition(pos, 1)) break;
+			}
+		}
+
+		/** Adds the values of every point of the box. */
+		private void scanBox() {
+			final RandomAccess<? extends RealType<?>> accessor =
+				ds.getImgPlus().randomAccess();
+			final long[] pos = min.clone();
+			while (true) {
+				accessor.setPosition(pos);
+				add(accessor.get().getRealDouble());
+				if (!nextPosition(pos, 0)) break;
+			}
+		}
+
+		/** Adds the values of the listed points, in order. */
+		private void scanPoints() {
+			final RandomAccess<? extends RealType<?>> accessor =
+				ds.getImgPlus().randomAccess();
+			final long[] pos = new long[numDims];
+			for (int i = 0; i < pointCount; i++) {
+				System.arraycopy(points, i * numDims, pos, 0, numDims);
+				accessor.setPosition(pos);
+				add(accessor.get().getRealDouble());
+			}
+		}
+
+		/**
+		 * Advances pos to the next point of the box in raster order, starting
+		 * with the given axis. Returns false once the box is exhausted.
+		 */
+		private boolean nextPosition(final long[] pos, final int firstAxis) {
+			for (int d = firstAxis; d < pos.length; d++) {
+				if (pos[d] < max[d]) {
+					pos[d]++;
+					return true;
+				}
+				pos[d] = min[d];
+			}
+			return false;
+		}
+
+		private void add(final double value) {
+			moments.add(value);
+			if (keepValues) {
+				if (valueCount == values.length) {
+					values = Arrays.copyOf(values, 2 * values.length);
+				}
+				values[valueCount++] = value;
+			}
+		}
+	}
+
 }
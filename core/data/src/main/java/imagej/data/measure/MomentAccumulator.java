@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Accumulates the moments of a stream of values in a numerically stable way.
+ * Values are added one at a time with {@link #add(double)} and accumulators
+ * that saw disjoint parts of a region can be combined with
+ * {@link #merge(MomentAccumulator)}, which makes it easy to gather statistics
+ * in parallel over chunks of a region.
+ * <p>
+ * Central moments up to the fourth are updated incrementally (Welford's method
+ * as extended by Terriberry) and merged with the pairwise formulas of Chan et
+ * al. and Pebay, so no second pass over the data is needed and no catastrophic
+ * cancellation occurs for data with a large mean. The sum is kept with Kahan
+ * compensation.
+ * </p>
+ * <p>
+ * An accumulator created for a given set of statistics only keeps what those
+ * need: for instance the mean alone needs no higher moments, logarithms or
+ * reciprocals. Accumulators to be merged must be created for the same
+ * statistics.
+ * </p>
+ */
+public class MomentAccumulator {
+
+	// -- instance variables --
+
+	/** Highest central moment kept (1 for the mean only). */
+	private final int order;
+	private final boolean keepSum;
+	private final boolean keepProduct;
+	private final boolean keepLogs;
+	private final boolean keepReciprocals;
+
+	private long n;
+	private double mean;
+	private double m2;
+	private double m3;
+	private double m4;
+	private double sum;
+	private double sumCompensation;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double product = 1;
+	private double sumOfLogs;
+	private double sumOfReciprocals;
+
+	// -- constructors --
+
+	/** Creates an accumulator for every statistic computed from moments. */
+	public MomentAccumulator() {
+		this(EnumSet.allOf(Statistic.class));
+	}
+
+	/** Creates an accumulator for the given statistics only. */
+	public MomentAccumulator(final Set<Statistic> statistics) {
+		int highest = 1;
+		boolean sums = false, products = false;
+		boolean logs = false, reciprocals = false;
+		for (final Statistic statistic : statistics) {
+			switch (statistic) {
+				case SUM:
+					sums = true;
+					break;
+				case PRODUCT:
+					products = true;
+					break;
+				case GEOMETRIC_MEAN:
+					logs = true;
+					break;
+				case HARMONIC_MEAN:
+					reciprocals = true;
+					break;
+				case SUM_OF_SQUARED_DEVIATIONS:
+				case POPULATION_VARIANCE:
+				case POPULATION_STD_DEV:
+				case SAMPLE_VARIANCE:
+				case SAMPLE_STD_DEV:
+					highest = Math.max(highest, 2);
+					break;
+				case POPULATION_SKEW:
+				case SAMPLE_SKEW:
+					highest = Math.max(highest, 3);
+					break;
+				case POPULATION_KURTOSIS:
+				case POPULATION_KURTOSIS_EXCESS:
+				case SAMPLE_KURTOSIS:
+				case SAMPLE_KURTOSIS_EXCESS:
+					highest = 4;
+					break;
+				default:
+					// count, extrema and mean are always kept
+			}
+		}
+		order = highest;
+		keepSum = sums;
+		keepProduct = products;
+		keepLogs = logs;
+		keepReciprocals = reciprocals;
+	}
+
+	// -- public interface --
+
+	/** Adds a value to the accumulated statistics. */
+	public void add(final double value) {
+		final long n1 = n;
+		n++;
+		final double delta = value - mean;
+		final double deltaN = delta / n;
+		mean += deltaN;
+		if (order >= 2) {
+			final double term1 = delta * deltaN * n1;
+			if (order >= 3) {
+				final double deltaN2 = deltaN * deltaN;
+				if (order >= 4) {
+					m4 +=
+						term1 * deltaN2 * ((double) n * n - 3.0 * n + 3) + 6 *
+							deltaN2 * m2 - 4 * deltaN * m3;
+				}
+				m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+			}
+			m2 += term1;
+		}
+
+		if (keepSum) {
+			final double y = value - sumCompensation;
+			final double t = sum + y;
+			sumCompensation = (t - sum) - y;
+			sum = t;
+		}
+
+		if (value < min) min = value;
+		if (value > max) max = value;
+		if (keepProduct) product *= value;
+		if (keepLogs) sumOfLogs += Math.log(value);
+		if (keepReciprocals) sumOfReciprocals += 1 / value;
+	}
+
+	/**
+	 * Adds the statistics gathered by another accumulator to this one. The two
+	 * accumulators must have seen disjoint sets of values.
+	 */
+	public void merge(final MomentAccumulator other) {
+		if (other.n == 0) return;
+		if (n == 0) {
+			copy(other);
+			return;
+		}
+		final double na = n;
+		final double nb = other.n;
+		final double nt = na + nb;
+		final double delta = other.mean - mean;
+		final double delta2 = delta * delta;
+		final double delta3 = delta * delta2;
+		final double delta4 = delta2 * delta2;
+
+		if (order >= 4) {
+			m4 +=
+				other.m4 + delta4 * na * nb * (na * na - na * nb + nb * nb) /
+					(nt * nt * nt) + 6 * delta2 *
+					(na * na * other.m2 + nb * nb * m2) / (nt * nt) + 4 *
+					delta * (na * other.m3 - nb * m3) / nt;
+		}
+		if (order >= 3) {
+			m3 +=
+				other.m3 + delta3 * na * nb * (na - nb) / (nt * nt) + 3 *
+					delta * (na * other.m2 - nb * m2) / nt;
+		}
+		if (order >= 2) m2 += other.m2 + delta2 * na * nb / nt;
+
+		mean += delta * nb / nt;
+		n += other.n;
+
+		if (keepSum) {
+			final double y =
+				other.sum - (sumCompensation + other.sumCompensation);
+			final double t = sum + y;
+			sumCompensation = (t - sum) - y;
+			sum = t;
+		}
+
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		if (keepProduct) product *= other.product;
+		if (keepLogs) sumOfLogs += other.sumOfLogs;
+		if (keepReciprocals) sumOfReciprocals += other.sumOfReciprocals;
+	}
+
+	/** Returns the number of values accumulated so far. */
+	public long getCount() {
+		return n;
+	}
+
+	/**
+	 * Returns the value of the given statistic for the values accumulated so far.
+	 * Returns NaN for statistics that are undefined for the current number of
+	 * values (such as the sample variance of a single value).
+	 * 
+	 * @throws IllegalArgumentException for order statistics such as the median,
+	 *           which cannot be computed from moments, and for statistics the
+	 *           accumulator was not created for
+	 */
+	public double get(final Statistic statistic) {
+		if (!isKept(statistic)) {
+			throw new IllegalArgumentException(statistic +
+				" is not accumulated by this accumulator");
+		}
+		switch (statistic) {
+			case COUNT:
+				return n;
+			case MINIMUM:
+				return n == 0 ? Double.NaN : min;
+			case MAXIMUM:
+				return n == 0 ? Double.NaN : max;
+			case MIDPOINT:
+				return n == 0 ? Double.NaN : (min + max) / 2;
+			case SUM:
+				return sum;
+			case PRODUCT:
+				return n == 0 ? Double.NaN : product;
+			case ARITHMETIC_MEAN:
+				return n == 0 ? Double.NaN : mean;
+			case GEOMETRIC_MEAN:
+				return n == 0 ? Double.NaN : Math.exp(sumOfLogs / n);
+			case HARMONIC_MEAN:
+				return n == 0 ? Double.NaN : n / sumOfReciprocals;
+			case SUM_OF_SQUARED_DEVIATIONS:
+				return m2;
+			case POPULATION_VARIANCE:
+				return n == 0 ? Double.NaN : m2 / n;
+			case POPULATION_STD_DEV:
+				return Math.sqrt(get(Statistic.POPULATION_VARIANCE));
+			case SAMPLE_VARIANCE:
+				return n < 2 ? Double.NaN : m2 / (n - 1);
+			case SAMPLE_STD_DEV:
+				return Math.sqrt(get(Statistic.SAMPLE_VARIANCE));
+			case POPULATION_SKEW:
+				return n == 0 ? Double.NaN : Math.sqrt(n) * m3 / Math.pow(m2, 1.5);
+			case SAMPLE_SKEW:
+				if (n < 3) return Double.NaN;
+				return get(Statistic.POPULATION_SKEW) * Math.sqrt(n * (n - 1.0)) /
+					(n - 2);
+			case POPULATION_KURTOSIS:
+				return n == 0 ? Double.NaN : n * m4 / (m2 * m2);
+			case POPULATION_KURTOSIS_EXCESS:
+				return get(Statistic.POPULATION_KURTOSIS) - 3;
+			case SAMPLE_KURTOSIS:
+				return get(Statistic.SAMPLE_KURTOSIS_EXCESS) + 3;
+			case SAMPLE_KURTOSIS_EXCESS:
+				if (n < 4) return Double.NaN;
+				final double g2 = get(Statistic.POPULATION_KURTOSIS_EXCESS);
+				return ((n + 1) * g2 + 6) * (n - 1) / ((n - 2.0) * (n - 3));
+			default:
+				throw new IllegalArgumentException(statistic +
+					" cannot be computed from moments");
+		}
+	}
+
+	// -- private helpers --
+
+	private boolean isKept(final Statistic statistic) {
+		switch (statistic) {
+			case SUM:
+				return keepSum;
+			case PRODUCT:
+				return keepProduct;
+			case GEOMETRIC_MEAN:
+				return keepLogs;
+			case HARMONIC_MEAN:
+				return keepReciprocals;
+			case SUM_OF_SQUARED_DEVIATIONS:
+			case POPULATION_VARIANCE:
+			case POPULATION_STD_DEV:
+			case SAMPLE_VARIANCE:
+			case SAMPLE_STD_DEV:
+				return order >= 2;
+			case POPULATION_SKEW:
+			case SAMPLE_SKEW:
+				return order >= 3;
+			case POPULATION_KURTOSIS:
+			case POPULATION_KURTOSIS_EXCESS:
+			case SAMPLE_KURTOSIS:
+			case SAMPLE_KURTOSIS_EXCESS:
+				return order >= 4;
+			default:
+				return true;
+		}
+	}
+
+	private void copy(final MomentAccumulator other) {
+		n = other.n;
+		mean = other.mean;
+		m2 = other.m2;
+		m3 = other.m3;
+		m4 = other.m4;
+		sum = other.sum;
+		sumCompensation = other.sumCompensation;
+		min = other.min;
+		max = other.max;
+		product = other.product;
+		sumOfLogs = other.sumOfLogs;
+		sumOfReciprocals = other.sumOfReciprocals;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+/**
+ * The statistics that {@link StatisticsService} can compute together in a
+ * single batch. All but {@link #MEDIAN} are derived from running sums and
+ * moments gathered in one streaming pass over the pixels; the median needs an
+ * additional selection pass over the gathered values.
+ */
+public enum Statistic {
+
+	/** The number of values measured. */
+	COUNT,
+
+	/** The smallest value. */
+	MINIMUM,
+
+	/** The largest value. */
+	MAXIMUM,
+
+	/** The mean of the smallest and largest values. */
+	MIDPOINT,
+
+	/** The sum of the values. */
+	SUM,
+
+	/** The product of the values. */
+	PRODUCT,
+
+	/** The arithmetic mean of the values. */
+	ARITHMETIC_MEAN,
+
+	/** The geometric mean of the values. */
+	GEOMETRIC_MEAN,
+
+	/** The harmonic mean of the values. */
+	HARMONIC_MEAN,
+
+	/** The sum of the squared deviations of the values from their mean. */
+	SUM_OF_SQUARED_DEVIATIONS,
+
+	/** The (biased) population variance: SSD / n. */
+	POPULATION_VARIANCE,
+
+	/** The square root of the population variance. */
+	POPULATION_STD_DEV,
+
+	/** The (unbiased) sample variance: SSD / (n-1). */
+	SAMPLE_VARIANCE,
+
+	/** The square root of the sample variance. */
+	SAMPLE_STD_DEV,
+
+	/** The population skew: m3 / m2^1.5 with m_k the k-th central moment. */
+	POPULATION_SKEW,
+
+	/** The sample skew: population skew * sqrt(n(n-1)) / (n-2). */
+	SAMPLE_SKEW,
+
+	/** The population kurtosis: m4 / m2^2. */
+	POPULATION_KURTOSIS,
+
+	/** The population kurtosis minus 3. */
+	POPULATION_KURTOSIS_EXCESS,
+
+	/** The sample kurtosis: the sample kurtosis excess plus 3. */
+	SAMPLE_KURTOSIS,
+
+	/**
+	 * The sample kurtosis excess: ((n+1) g2 + 6) (n-1) / ((n-2)(n-3)) with g2
+	 * the population kurtosis excess.
+	 */
+	SAMPLE_KURTOSIS_EXCESS,
+
+	/**
+	 * The middle value. For an even number of values the mean of the two middle
+	 * values.
+	 */
+	MEDIAN;
+
+	/** Returns true if this statistic is an order statistic (needs a sort). */
+	public boolean isOrderStatistic() {
+		return this == MEDIAN;
+	}
+}
@@ -36,13 +36,17 @@
 package imagej.data.measure;
 
 import imagej.data.Dataset;
+
+import java.util.Map;
+import java.util.Set;
+
 import net.imglib2.ops.pointset.PointSet;
 
 import org.scijava.service.Service;
 
 // TODO - make MeasurementService smarter. Compute values without always
-// revisiting the pixels. This current impl goes over pixels once for each
-// measurement. I will mock something up soon. BDZ
+// revisiting the pixels. The single measurement methods go over pixels once
+// for each measurement. The statistics() methods batch measurements together.
 
 // TODO - this service is limited to only the kinds of stats it knows. It can't
 // measure a user provided statistic. This can be done by calling the
@@ -536,6 +540,31 @@ public interface StatisticsService extends Service {
 	 */
 	double weightedSum(Dataset ds, PointSet region, double[] weights);
 
+	/**
+	 * Computes a batch of statistics of the values within a {@link PointSet}
+	 * region of a {@link Dataset}. All requested moment based statistics are
+	 * gathered in a single pass over the pixels, split across threads; order
+	 * statistics such as the median add one selection pass over the gathered
+	 * values.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param region The PointSet region upon which to calculate
+	 * @param statistics The statistics to compute (an EnumSet for instance)
+	 * @return A map from each requested statistic to its measured value
+	 */
+	Map<Statistic, Double> statistics(Dataset ds, PointSet region,
+		Set<Statistic> statistics);
+
+	/**
+	 * Computes a batch of statistics of the values within a {@link Dataset}. See
+	 * {@link #statistics(Dataset, PointSet, Set)}.
+	 * 
+	 * @param ds The Dataset to measure
+	 * @param statistics The statistics to compute (an EnumSet for instance)
+	 * @return A map from each requested statistic to its measured value
+	 */
+	Map<Statistic, Double> statistics(Dataset ds, Set<Statistic> statistics);
+
 	/**
 	 * A convenience function for defining a {@link PointSet} that encompasses all
 	 * the points within a {@link Dataset}.
@@ -42,6 +42,13 @@
 
 /**
  * Abstract base class for {@link CalculatorOp} implementations.
+ * <p>
+ * Besides the per-sample {@link #compute} method, operations provide
+ * {@link #compute(double[], double[], double[], int)} which combines whole
+ * rows of samples. The default implementation goes through the wrapped
+ * operation one sample at a time; subclasses override it with a primitive
+ * loop where the operation is simple arithmetic.
+ * </p>
  * 
  * @author Curtis Rueden
  */
@@ -70,4 +77,26 @@ public BinaryOperation<I1, I2, DoubleType> copy() {
 		return op.copy();
 	}
 
+	/**
+	 * Combines the first count values of input1 and input2 into output. The
+	 * output array may be one of the input arrays. This method may be called
+	 * from several threads at once.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void compute(final double[] input1, final double[] input2,
+		final double[] output, final int count)
+	{
+		// real operations only look at the real values of their inputs
+		final BinaryOperation rawOp = op.copy();
+		final DoubleType in1 = new DoubleType();
+		final DoubleType in2 = new DoubleType();
+		final DoubleType out = new DoubleType();
+		for (int i = 0; i < count; i++) {
+			in1.set(input1[i]);
+			in2.set(input2[i]);
+			rawOp.compute(in1, in2, out);
+			output[i] = out.get();
+		}
+	}
+
 }
@@ -72,8 +72,9 @@ public interface CalculatorService extends Service {
 	/**
 	 * Creates an {@code Img<DoubleType>} from the combination of two input
 	 * {@link Img}s. The size of the output {@link Img} matches the region of
-	 * overlap between the two input {@link Img}s. The combination is done pixel
-	 * by pixel using a given {@link CalculatorOp}.
+	 * overlap between the two input {@link Img}s (see
+	 * {@link #combinedDimensions(Img, Img)}). The combination is done pixel by
+	 * pixel using a given {@link CalculatorOp}.
 	 * 
 	 * @param img1 data input Img 1
 	 * @param img2 data input Img 2
@@ -84,4 +85,31 @@ public interface CalculatorService extends Service {
 	<U extends RealType<U>, V extends RealType<V>> Img<DoubleType> combine(
 		Img<U> img1, Img<V> img2, CalculatorOp<U, V> op);
 
+	/**
+	 * Returns the dimensions of the combination of two input {@link Img}s: the
+	 * region of overlap between the two, except that input 2 is broadcast along
+	 * any axis on which it has a size of 1 (or which it lacks). For example a
+	 * single 2D image can be combined with every plane of a stack.
+	 * 
+	 * @throws IllegalArgumentException if input 2 has more dimensions than
+	 *           input 1
+	 */
+	long[] combinedDimensions(Img<?> img1, Img<?> img2);
+
+	/**
+	 * Combines two input {@link Img}s pixel by pixel using a given
+	 * {@link CalculatorOp}, writing the results directly into an output
+	 * {@link Img} whose dimensions are at least
+	 * {@link #combinedDimensions(Img, Img)}. The output may be input 1 itself,
+	 * in which case the combination happens in place. The combination is done
+	 * in a single multithreaded pass.
+	 * 
+	 * @param img1 data input Img 1
+	 * @param img2 data input Img 2
+	 * @param op The CalculatorOp algorithm used to combine the two inputs
+	 * @param output The Img that receives the combined data
+	 */
+	<U extends RealType<U>, V extends RealType<V>> void combine(Img<U> img1,
+		Img<V> img2, CalculatorOp<U, V> op, Img<? extends RealType<?>> output);
+
 }
@@ -35,15 +35,20 @@
 
 package imagej.data.operator;
 
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.ops.img.ImageCombiner;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 
@@ -57,6 +62,14 @@
 
 /**
  * Default service for managing available {@link CalculatorOp}s.
+ * <p>
+ * Combinations are computed a row at a time: the rows of both inputs are read
+ * into primitive buffers, combined by the operation's row method (see
+ * {@link AbstractCalculatorOp#compute(double[], double[], double[], int)}) and
+ * written to the output, with rows of different planes processed in parallel.
+ * When all three images have primitive planes (see {@link PlaneAccess}) the
+ * rows are read and written directly from the backing arrays.
+ * </p>
  * 
  * @author Barry DeZonia
  */
@@ -109,12 +122,113 @@ public List<String> getOperatorNames() {
 		combine(final Img<U> img1, final Img<V> img2, final CalculatorOp<U, V> op)
 	{
 		// TODO - limited by ArrayImg size constraints
-		return ImageCombiner.applyOp(op, img1, img2,
-			new ArrayImgFactory<DoubleType>(), new DoubleType());
+		final Img<DoubleType> output =
+			new ArrayImgFactory<DoubleType>().create(
+				combinedDimensions(img1, img2), new DoubleType());
+		combine(img1, img2, op, output);
+		return output;
+	}
+
+	@Override
+	public long[] combinedDimensions(final Img<?> img1, final Img<?> img2) {
+		if (img2.numDimensions() > img1.numDimensions()) {
+			throw new IllegalArgumentException(
+				"input 2 has more dimensions than input 1");
+		}
+		final long[] dims = new long[img1.numDimensions()];
+		for (int d = 0; d < dims.length; d++) {
+			final long dim1 = img1.dimension(d);
+			final long dim2 = d < img2.numDimensions() ? img2.dimension(d) : 1;
+			dims[d] = dim2 == 1 ? dim1 : Math.min(dim1, dim2);
+		}
+		return dims;
+	}
+
+	@Override
+	public <U extends RealType<U>, V extends RealType<V>> void combine(
+		final Img<U> img1, final Img<V> img2, final CalculatorOp<U, V> op,
+		final Img<? extends RealType<?>> output)
+	{
+		final long[] dims = combinedDimensions(img1, img2);
+		boolean fits = output.numDimensions() == dims.length;
+		for (int d = 0; fits && d < dims.length; d++)
+			fits = output.dimension(d) >= dims[d];
+		if (!fits) {
+			throw new IllegalArgumentException(
+				"output does not match the combined inputs");
+		}
+		final PlaneAccess in1 = PlaneAccess.create(img1);
+		final PlaneAccess in2 = PlaneAccess.create(img2);
+		final PlaneAccess out = PlaneAccess.create(output);
+		final boolean planar = in1 != null && in2 != null && out != null;
+
+		final long height = dims.length > 1 ? dims[1] : 1;
+		long planes = 1;
+		for (int d = 2; d < dims.length; d++)
+			planes *= dims[d];
+		final long[] bounds = ParallelLoop.chunkBounds(height * planes, 4);
+		// bit packed samples of different rows may share a storage word
+		final int bits = output.firstElement().getBitsPerPixel();
+		final int threads =
+			bits % 8 != 0 ? 1 : ParallelLoop.defaultThreadCount();
+		ParallelLoop.run(bounds.length - 1, threads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int c) {
+				// RandomAccesses cannot be shared between threads
+				final Combiner combiner;
+				if (planar) {
+					combiner = new PlaneCombiner(dims, op, in1, in2, out);
+				}
+				else {
+					combiner =
+						new RandomAccessCombiner(dims, op, img1, img2, output);
+				}
+				combiner.combineRows(bounds[c], bounds[c + 1]);
+			}
+		});
 	}
 
 	// -- helpers --
 
+	/** Combines the samples of single rows of the inputs. */
+	private static RowOp rowOp(final CalculatorOp<?, ?> op) {
+		if (op instanceof AbstractCalculatorOp) {
+			final AbstractCalculatorOp<?, ?> calcOp =
+				(AbstractCalculatorOp<?, ?>) op;
+			return new RowOp() {
+
+				@Override
+				public void compute(final double[] input1,
+					final double[] input2, final double[] output,
+					final int count)
+				{
+					calcOp.compute(input1, input2, output, count);
+				}
+			};
+		}
+		return new RowOp() {
+
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			@Override
+			public void compute(final double[] input1, final double[] input2,
+				final double[] output, final int count)
+			{
+				// real operations only look at the real values of their inputs
+				final CalculatorOp rawOp = (CalculatorOp) op.copy();
+				final DoubleType in1 = new DoubleType();
+				final DoubleType in2 = new DoubleType();
+				final DoubleType out = new DoubleType();
+				for (int i = 0; i < count; i++) {
+					in1.set(input1[i]);
+					in2.set(input2[i]);
+					rawOp.compute(in1, in2, out);
+					output[i] = out.get();
+				}
+			}
+		};
+	}
+
 	@SuppressWarnings("rawtypes")
 	private void findOperators() {
 		final List<PluginInfo<CalculatorOp>> pluginInfos =
@@ -129,4 +243,178 @@ private void findOperators() {
 		Collections.sort(operatorNames);
 	}
 
+	// -- helper classes --
+
+	private interface RowOp {
+
+		void compute(double[] input1, double[] input2, double[] output,
+			int count);
+	}
+
+	/**
+	 * Combines ranges of rows of the combined region. Row r is row (r % height)
+	 * of plane (r / height) of the region. Input 2 is read at position 0 along
+	 * the axes it is broadcast on; when that includes X its single sample is
+	 * repeated across the row.
+	 */
+	private abstract static class Combiner {
+
+		protected final long[] dims;
+		protected final long[] dims2;
+		protected final int width;
+		protected final int width2;
+		protected final long height;
+		private final RowOp rowOp;
+
+		public Combiner(final long[] dims, final Img<?> img2,
+			final CalculatorOp<?, ?> op)
+		{
+			this.dims = dims;
+			dims2 = new long[dims.length];
+			for (int d = 0; d < dims.length; d++)
+				dims2[d] = d < img2.numDimensions() ? img2.dimension(d) : 1;
+			width = (int) dims[0];
+			width2 = dims2[0] == 1 ? 1 : width;
+			height = dims.length > 1 ? dims[1] : 1;
+			rowOp = rowOp(op);
+		}
+
+		public void combineRows(final long fromRow, final long toRow) {
+			final double[] row1 = new double[width];
+			final double[] row2 = new double[width];
+			final long[] pos = new long[dims.length];
+			final long[] pos2 = new long[dims.length];
+			for (long r = fromRow; r < toRow; r++) {
+				PlaneAccess.planePosition(dims, r / height, pos);
+				if (dims.length > 1) pos[1] = r % height;
+				for (int d = 0; d < dims.length; d++)
+					pos2[d] = dims2[d] == 1 ? 0 : pos[d];
+				read1(pos, row1);
+				read2(pos2, row2);
+				if (width2 < width) Arrays.fill(row2, 1, width, row2[0]);
+				rowOp.compute(row1, row2, row1, width);
+				write(pos, row1);
+			}
+		}
+
+		/** Reads the row of input 1 starting at the given position. */
+		protected abstract void read1(long[] pos, double[] row);
+
+		/**
+		 * Reads the first {@code width2} samples of the row of input 2
+		 * starting at the given position.
+		 */
+		protected abstract void read2(long[] pos, double[] row);
+
+		/** Writes the row of the output starting at the given position. */
+		protected abstract void write(long[] pos, double[] row);
+	}
+
+	/** Combines images whose samples are stored in primitive planes. */
+	private static class PlaneCombiner extends Combiner {
+
+		private final PlaneAccess in1, in2, out;
+		private final long[] inDims1, inDims2, outDims;
+
+		public PlaneCombiner(final long[] dims, final CalculatorOp<?, ?> op,
+			final PlaneAccess in1, final PlaneAccess in2, final PlaneAccess out)
+		{
+			super(dims, in2.getImg(), op);
+			this.in1 = in1;
+			this.in2 = in2;
+			this.out = out;
+			inDims1 = in1.getDims();
+			inDims2 = padded(in2.getDims(), dims.length);
+			outDims = out.getDims();
+		}
+
+		@Override
+		protected void read1(final long[] pos, final double[] row) {
+			readPlane(in1, inDims1, pos).get(offset(in1, pos), row, 0, width);
+		}
+
+		@Override
+		protected void read2(final long[] pos, final double[] row) {
+			readPlane(in2, inDims2, pos).get(offset(in2, pos), row, 0, width2);
+		}
+
+		@Override
+		protected void write(final long[] pos, final double[] row) {
+			plane(out, outDims, pos).set(offset(out, pos), row, 0, width);
+		}
+
+		private static RealArray plane(final PlaneAccess access,
+			final long[] imgDims, final long[] pos)
+		{
+			return access.getPlane((int) PlaneAccess.planeIndex(imgDims, pos));
+		}
+
+		private static RealArray readPlane(final PlaneAccess access,
+			final long[] imgDims, final long[] pos)
+		{
+			final int p = (int) PlaneAccess.planeIndex(imgDims, pos);
+			return access.getPlaneForReading(p);
+		}
+
+		private static int offset(final PlaneAccess access, final long[] pos) {
+			return pos.length > 1 ? (int) pos[1] * access.getPlaneWidth() : 0;
+		}
+
+		/** Pads dimensions with trailing 1s up to the given length. */
+		private static long[] padded(final long[] imgDims, final int length) {
+			final long[] result = new long[length];
+			for (int d = 0; d < length; d++)
+				result[d] = d < imgDims.length ? imgDims[d] : 1;
+			return result;
+		}
+	}
+
+	/** Combines arbitrary images by walking rows with RandomAccesses. */
+	private static class RandomAccessCombiner extends Combiner {
+
+		private final RandomAccess<? extends RealType<?>> in1, in2, out;
+		private final long[] pos2;
+
+		public RandomAccessCombiner(final long[] dims,
+			final CalculatorOp<?, ?> op, final Img<? extends RealType<?>> img1,
+			final Img<? extends RealType<?>> img2,
+			final Img<? extends RealType<?>> output)
+		{
+			super(dims, img2, op);
+			in1 = img1.randomAccess();
+			in2 = img2.randomAccess();
+			out = output.randomAccess();
+			pos2 = new long[img2.numDimensions()];
+		}
+
+		@Override
+		protected void read1(final long[] pos, final double[] row) {
+			in1.setPosition(pos);
+			for (int x = 0; x < width; x++) {
+				row[x] = in1.get().getRealDouble();
+				in1.fwd(0);
+			}
+		}
+
+		@Override
+		protected void read2(final long[] pos, final double[] row) {
+			for (int d = 0; d < pos2.length; d++)
+				pos2[d] = pos[d];
+			in2.setPosition(pos2);
+			for (int x = 0; x < width2; x++) {
+				row[x] = in2.get().getRealDouble();
+				in2.fwd(0);
+			}
+		}
+
+		@Override
+		protected void write(final long[] pos, final double[] row) {
+			out.setPosition(pos);
+			for (int x = 0; x < width; x++) {
+				out.get().setReal(row[x]);
+				out.fwd(0);
+			}
+		}
+	}
+
 }
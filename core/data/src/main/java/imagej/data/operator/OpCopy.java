@@ -57,4 +57,11 @@ public OpCopy() {
 		super(new RealCopyRight<I1, I2, DoubleType>());
 	}
 
+	@Override
+	public void compute(final double[] input1, final double[] input2,
+		final double[] output, final int count)
+	{
+		System.arraycopy(input2, 0, output, 0, count);
+	}
+
 }
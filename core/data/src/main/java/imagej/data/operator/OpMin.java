@@ -57,4 +57,12 @@ public OpMin() {
 		super(new RealMin<I1, I2, DoubleType>());
 	}
 
+	@Override
+	public void compute(final double[] input1, final double[] input2,
+		final double[] output, final int count)
+	{
+		for (int i = 0; i < count; i++)
+			output[i] = Math.min(input1[i], input2[i]);
+	}
+
 }
@@ -0,0 +1,576 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.overlay;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RealLocalizable;
+import net.imglib2.img.Img;
+import net.imglib2.roi.BinaryMaskRegionOfInterest;
+import net.imglib2.roi.GeneralPathRegionOfInterest;
+import net.imglib2.roi.GeneralPathSegmentHandler;
+import net.imglib2.roi.PolygonRegionOfInterest;
+import net.imglib2.roi.RegionOfInterest;
+import net.imglib2.type.logic.BitType;
+
+/**
+ * Scan converts the region of a two dimensional {@link Overlay} into runs of
+ * pixels. A pixel (x,y) belongs to the region when the overlay's region of
+ * interest contains the integer point (x,y). Rather than testing every pixel
+ * of the bounding box against the region, each row is computed analytically
+ * (rectangles and ellipses), by intersecting it with the region's edges
+ * (polygons and general paths, using the even-odd rule) or by scanning a row
+ * of the mask (binary masks).
+ * 
+ * @author Barry DeZonia
+ */
+public abstract class OverlayRasterizer {
+
+	/** Receives the horizontal runs of pixels produced by a rasterizer. */
+	public interface SpanHandler {
+
+		/** Handles the pixels (x1,y) through (x2,y) inclusive. */
+		void span(long x1, long x2, long y);
+	}
+
+	// -- constants --
+
+	/** Maximum distance of flattened curve segments from the true curve. */
+	private static final double FLATNESS = 0.1;
+
+	// -- static constructors --
+
+	/**
+	 * Returns a rasterizer for the given overlay or null if the overlay is not
+	 * a two dimensional rectangle, ellipse, polygon, general path or binary
+	 * mask.
+	 */
+	public static OverlayRasterizer create(final Overlay overlay) {
+		final RegionOfInterest roi = overlay.getRegionOfInterest();
+		if (roi == null || roi.numDimensions() != 2) return null;
+		if (overlay instanceof RectangleOverlay) {
+			final RectangleOverlay r = (RectangleOverlay) overlay;
+			return new RectangleRasterizer(r.getOrigin(0), r.getOrigin(1), r
+				.getExtent(0), r.getExtent(1));
+		}
+		if (overlay instanceof EllipseOverlay) {
+			final EllipseOverlay e = (EllipseOverlay) overlay;
+			return new EllipseRasterizer(e.getOrigin(0), e.getOrigin(1), e
+				.getRadius(0), e.getRadius(1));
+		}
+		if (overlay instanceof PolygonOverlay) {
+			return new EdgeRasterizer(polygonEdges(((PolygonOverlay) overlay)
+				.getRegionOfInterest()));
+		}
+		if (overlay instanceof GeneralPathOverlay) {
+			return new EdgeRasterizer(pathEdges(((GeneralPathOverlay) overlay)
+				.getRegionOfInterest()));
+		}
+		if (overlay instanceof BinaryMaskOverlay) {
+			final BinaryMaskRegionOfInterest<?, ?> mask =
+				((BinaryMaskOverlay<?, ?>) overlay).getRegionOfInterest();
+			return new MaskRasterizer(mask.getImg(), mask.getOrigin());
+		}
+		return null;
+	}
+
+	// -- public interface --
+
+	/**
+	 * Produces the runs of pixels of the region that lie within the given
+	 * bounds (inclusive), row by row from top to bottom.
+	 */
+	public void fill(final long minX, final long minY, final long maxX,
+		final long maxY, final SpanHandler handler)
+	{
+		final Spans row = new Spans();
+		final long y0 = Math.max(minY, getMinY());
+		final long y1 = Math.min(maxY, getMaxY());
+		for (long y = y0; y <= y1; y++) {
+			row.clear();
+			addSpans(y, minX, maxX, row);
+			for (int i = 0; i < row.size(); i++) {
+				handler.span(row.start(i), row.end(i), y);
+			}
+		}
+	}
+
+	/**
+	 * Produces the runs of border pixels of the region that lie within the
+	 * given bounds (inclusive), row by row from top to bottom. A pixel of the
+	 * region is a border pixel when one of its four neighbors is not part of
+	 * the region or when it lies in row or column 0.
+	 */
+	public void outline(final long minX, final long minY, final long maxX,
+		final long maxY, final SpanHandler handler)
+	{
+		// rows are computed one pixel wider than the bounds so that pixels on
+		// the bounds can see their neighbors
+		final long x0 = minX - 1, x1 = maxX + 1;
+		Spans above = new Spans(), row = new Spans(), below = new Spans();
+		final Spans interior = new Spans(), scratch = new Spans();
+		final Spans border = new Spans();
+		final long y0 = Math.max(minY, getMinY());
+		final long y1 = Math.min(maxY, getMaxY());
+		if (y0 > y1) return;
+		addSpans(y0 - 1, x0, x1, above);
+		addSpans(y0, x0, x1, row);
+		for (long y = y0; y <= y1; y++) {
+			below.clear();
+			addSpans(y + 1, x0, x1, below);
+			interior.clear();
+			if (y != 0) {
+				row.erode(scratch);
+				scratch.intersect(above, interior);
+				interior.intersect(below, scratch);
+				scratch.intersect(1, Long.MAX_VALUE, interior);
+			}
+			row.subtract(interior, border);
+			border.intersect(minX, maxX, scratch);
+			for (int i = 0; i < scratch.size(); i++) {
+				handler.span(scratch.start(i), scratch.end(i), y);
+			}
+			final Spans recycled = above;
+			above = row;
+			row = below;
+			below = recycled;
+		}
+	}
+
+	// -- internal interface --
+
+	/** Returns the first row that may contain pixels of the region. */
+	abstract long getMinY();
+
+	/** Returns the last row that may contain pixels of the region. */
+	abstract long getMaxY();
+
+	/**
+	 * Adds the runs of pixels of the given row that lie within [minX, maxX] to
+	 * the given spans, from left to right.
+	 */
+	abstract void addSpans(long y, long minX, long maxX, Spans spans);
+
+	// -- private helpers --
+
+	private static double[] polygonEdges(final PolygonRegionOfInterest roi) {
+		final int count = roi.getVertexCount();
+		final double[] edges = new double[4 * count];
+		for (int i = 0; i < count; i++) {
+			final RealLocalizable p = roi.getVertex(i);
+			final RealLocalizable q = roi.getVertex((i + 1) % count);
+			edges[4 * i] = p.getDoublePosition(0);
+			edges[4 * i + 1] = p.getDoublePosition(1);
+			edges[4 * i + 2] = q.getDoublePosition(0);
+			edges[4 * i + 3] = q.getDoublePosition(1);
+		}
+		return edges;
+	}
+
+	private static double[] pathEdges(final GeneralPathRegionOfInterest roi) {
+		final Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+		roi.iteratePath(new GeneralPathSegmentHandler() {
+
+			@Override
+			public void moveTo(final double x, final double y) {
+				path.moveTo(x, y);
+			}
+
+			@Override
+			public void lineTo(final double x, final double y) {
+				path.lineTo(x, y);
+			}
+
+			@Override
+			public void quadTo(final double x1, final double y1, final double x,
+				final double y)
+			{
+				path.quadTo(x1, y1, x, y);
+			}
+
+			@Override
+			public void cubicTo(final double x1, final double y1,
+				final double x2, final double y2, final double x,
+				final double y)
+			{
+				path.curveTo(x1, y1, x2, y2, x, y);
+			}
+
+			@Override
+			public void close() {
+				path.closePath();
+			}
+		});
+		// flatten the curves and close every subpath, as filling does
+		final EdgeList list = new EdgeList();
+		final double[] coords = new double[6];
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		final PathIterator iter = path.getPathIterator(null, FLATNESS);
+		for (; !iter.isDone(); iter.next()) {
+			switch (iter.currentSegment(coords)) {
+				case PathIterator.SEG_MOVETO:
+					list.addEdge(lastX, lastY, startX, startY);
+					startX = lastX = coords[0];
+					startY = lastY = coords[1];
+					break;
+				case PathIterator.SEG_LINETO:
+					list.addEdge(lastX, lastY, coords[0], coords[1]);
+					lastX = coords[0];
+					lastY = coords[1];
+					break;
+				default: // SEG_CLOSE
+					list.addEdge(lastX, lastY, startX, startY);
+					lastX = startX;
+					lastY = startY;
+					break;
+			}
+		}
+		list.addEdge(lastX, lastY, startX, startY);
+		return list.toArray();
+	}
+
+	// -- helper classes --
+
+	/** Sorted, disjoint runs [start, end] of pixels of one row. */
+	static class Spans {
+
+		private long[] runs = new long[16];
+		private int size;
+
+		public int size() {
+			return size;
+		}
+
+		public long start(final int i) {
+			return runs[2 * i];
+		}
+
+		public long end(final int i) {
+			return runs[2 * i + 1];
+		}
+
+		public void clear() {
+			size = 0;
+		}
+
+		/**
+		 * Appends the run [start, end]. Runs must be added from left to right;
+		 * touching runs are merged and empty runs are ignored.
+		 */
+		public void add(final long start, final long end) {
+			if (start > end) return;
+			if (size > 0 && start <= runs[2 * size - 1] + 1) {
+				if (end > runs[2 * size - 1]) runs[2 * size - 1] = end;
+				return;
+			}
+			if (2 * size == runs.length) {
+				runs = Arrays.copyOf(runs, 2 * runs.length);
+			}
+			runs[2 * size] = start;
+			runs[2 * size + 1] = end;
+			size++;
+		}
+
+		/** Sets out to these runs shrunk by one pixel at each end. */
+		public void erode(final Spans out) {
+			out.clear();
+			for (int i = 0; i < size; i++)
+				out.add(start(i) + 1, end(i) - 1);
+		}
+
+		/** Sets out to the pixels of these runs within [min, max]. */
+		public void intersect(final long min, final long max, final Spans out) {
+			out.clear();
+			for (int i = 0; i < size; i++)
+				out.add(Math.max(start(i), min), Math.min(end(i), max));
+		}
+
+		/** Sets out to the pixels in both these runs and the other runs. */
+		public void intersect(final Spans other, final Spans out) {
+			out.clear();
+			int i = 0, j = 0;
+			while (i < size && j < other.size) {
+				final long start = Math.max(start(i), other.start(j));
+				out.add(start, Math.min(end(i), other.end(j)));
+				if (end(i) < other.end(j)) i++;
+				else j++;
+			}
+		}
+
+		/** Sets out to the pixels in these runs but not in the other runs. */
+		public void subtract(final Spans other, final Spans out) {
+			out.clear();
+			int j = 0;
+			for (int i = 0; i < size; i++) {
+				long start = start(i);
+				final long end = end(i);
+				while (j < other.size && other.end(j) < start)
+					j++;
+				for (int k = j; k < other.size && other.start(k) <= end; k++) {
+					out.add(start, other.start(k) - 1);
+					start = Math.max(start, other.end(k) + 1);
+				}
+				out.add(start, end);
+			}
+		}
+	}
+
+	/** A growable list of edges (x1, y1, x2, y2). */
+	private static class EdgeList {
+
+		private double[] values = new double[64];
+		private int size;
+
+		public void addEdge(final double x1, final double y1, final double x2,
+			final double y2)
+		{
+			if (y1 == y2) return; // horizontal edges never cross a row
+			if (size + 4 > values.length) {
+				values = Arrays.copyOf(values, 2 * values.length);
+			}
+			values[size++] = x1;
+			values[size++] = y1;
+			values[size++] = x2;
+			values[size++] = y2;
+		}
+
+		public double[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	private static class RectangleRasterizer extends OverlayRasterizer {
+
+		private final long minX, minY, maxX, maxY;
+
+		public RectangleRasterizer(final double originX, final double originY,
+			final double extentX, final double extentY)
+		{
+			// a point p is inside when origin <= p < origin + extent
+			minX = (long) Math.ceil(originX);
+			minY = (long) Math.ceil(originY);
+			maxX = (long) Math.ceil(originX + extentX) - 1;
+			maxY = (long) Math.ceil(originY + extentY) - 1;
+		}
+
+		@Override
+		long getMinY() {
+			return minY;
+		}
+
+		@Override
+		long getMaxY() {
+			return maxY;
+		}
+
+		@Override
+		void addSpans(final long y, final long x1, final long x2,
+			final Spans spans)
+		{
+			if (y < minY || y > maxY) return;
+			spans.add(Math.max(minX, x1), Math.min(maxX, x2));
+		}
+	}
+
+	private static class EllipseRasterizer extends OverlayRasterizer {
+
+		private final double originX, originY, radiusX, radiusY;
+
+		public EllipseRasterizer(final double originX, final double originY,
+			final double radiusX, final double radiusY)
+		{
+			this.originX = originX;
+			this.originY = originY;
+			this.radiusX = radiusX;
+			this.radiusY = radiusY;
+		}
+
+		@Override
+		long getMinY() {
+			return (long) Math.ceil(originY - radiusY);
+		}
+
+		@Override
+		long getMaxY() {
+			return (long) Math.floor(originY + radiusY);
+		}
+
+		@Override
+		void addSpans(final long y, final long x1, final long x2,
+			final Spans spans)
+		{
+			if (!(radiusX > 0) || !(radiusY > 0)) return;
+			final double dy = (y - originY) / radiusY;
+			final double dy2 = dy * dy;
+			if (dy2 > 1) return;
+			final double half = radiusX * Math.sqrt(1 - dy2);
+			long start = (long) Math.ceil(originX - half);
+			long end = (long) Math.floor(originX + half);
+			// the square root may be off by an ulp; settle the ends with the
+			// membership test itself
+			while (start <= end && !contains(start, dy2))
+				start++;
+			while (contains(start - 1, dy2))
+				start--;
+			while (end >= start && !contains(end, dy2))
+				end--;
+			while (contains(end + 1, dy2))
+				end++;
+			spans.add(Math.max(start, x1), Math.min(end, x2));
+		}
+
+		private boolean contains(final long x, final double dy2) {
+			final double dx = (x - originX) / radiusX;
+			return dx * dx + dy2 <= 1;
+		}
+	}
+
+	/** Fills the area enclosed by a set of edges using the even-odd rule. */
+	private static class EdgeRasterizer extends OverlayRasterizer {
+
+		private final double[] edges;
+		private final long minY, maxY;
+		private double[] crossings = new double[16];
+
+		public EdgeRasterizer(final double[] edges) {
+			this.edges = edges;
+			double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+			for (int e = 0; e < edges.length; e += 4) {
+				lo = Math.min(lo, Math.min(edges[e + 1], edges[e + 3]));
+				hi = Math.max(hi, Math.max(edges[e + 1], edges[e + 3]));
+			}
+			if (lo > hi) {
+				minY = 0;
+				maxY = -1;
+			}
+			else {
+				// rows are half open: an edge covers y1 <= y < y2
+				minY = (long) Math.ceil(lo);
+				maxY = (long) Math.ceil(hi) - 1;
+			}
+		}
+
+		@Override
+		long getMinY() {
+			return minY;
+		}
+
+		@Override
+		long getMaxY() {
+			return maxY;
+		}
+
+		@Override
+		void addSpans(final long y, final long x1, final long x2,
+			final Spans spans)
+		{
+			if (y < minY || y > maxY) return;
+			int count = 0;
+			for (int e = 0; e < edges.length; e += 4) {
+				final double ya = edges[e + 1], yb = edges[e + 3];
+				if ((ya <= y && y < yb) || (yb <= y && y < ya)) {
+					final double xa = edges[e], xb = edges[e + 2];
+					if (count == crossings.length) {
+						crossings = Arrays.copyOf(crossings, 2 * count);
+					}
+					crossings[count++] = xa + (y - ya) * (xb - xa) / (yb - ya);
+				}
+			}
+			Arrays.sort(crossings, 0, count);
+			// a point is inside from an odd crossing (inclusive) up to the
+			// next even crossing (exclusive)
+			for (int i = 0; i + 1 < count; i += 2) {
+				final long start = (long) Math.ceil(crossings[i]);
+				final long end = (long) Math.ceil(crossings[i + 1]) - 1;
+				spans.add(Math.max(start, x1), Math.min(end, x2));
+			}
+		}
+	}
+
+	private static class MaskRasterizer extends OverlayRasterizer {
+
+		private final RandomAccess<? extends BitType> access;
+		private final long width, height;
+		private final double originX, originY;
+
+		public MaskRasterizer(final Img<? extends BitType> mask,
+			final double[] origin)
+		{
+			access = mask.randomAccess();
+			width = mask.dimension(0);
+			height = mask.dimension(1);
+			originX = origin[0];
+			originY = origin[1];
+		}
+
+		@Override
+		long getMinY() {
+			return (long) Math.ceil(originY);
+		}
+
+		@Override
+		long getMaxY() {
+			return (long) Math.ceil(originY + height) - 1;
+		}
+
+		@Override
+		void addSpans(final long y, final long x1, final long x2,
+			final Spans spans)
+		{
+			final long my = (long) Math.floor(y - originY);
+			if (my < 0 || my >= height) return;
+			access.setPosition(0, 0);
+			access.setPosition(my, 1);
+			long runStart = -1;
+			for (long mx = 0; mx <= width; mx++) {
+				final boolean set = mx < width && access.get().get();
+				if (set && runStart < 0) runStart = mx;
+				else if (!set && runStart >= 0) {
+					// mask pixel m covers points p with m <= p - origin < m + 1
+					final long start = (long) Math.ceil(runStart + originX);
+					final long end = (long) Math.ceil(mx + originX) - 1;
+					spans.add(Math.max(start, x1), Math.min(end, x2));
+					runStart = -1;
+				}
+				if (mx < width) access.fwd(0);
+			}
+		}
+	}
+
+}
@@ -48,11 +48,9 @@
 import java.util.ArrayList;
 import java.util.List;
 
-import net.imglib2.RandomAccess;
 import net.imglib2.display.ColorTable;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
-import net.imglib2.type.numeric.RealType;
 
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -213,44 +211,13 @@ private ImageDisplay createOutputImage(final SamplingDefinition def) {
 	private void copyData(final SamplingDefinition def,
 		final ImageDisplay outputImage)
 	{
-		final PositionIterator iter1 = new SparsePositionIterator(def);
-		final PositionIterator iter2 = new DensePositionIterator(def);
 		// TODO - remove evil casts
 		final Dataset input = (Dataset) def.getDisplay().getActiveView().getData();
 		final Dataset output = (Dataset) outputImage.getActiveView().getData();
-		final long[] inputDims = input.getDims();
-		final long[] outputDims = output.getDims();
-		final RandomAccess<? extends RealType<?>> inputAccessor =
-			input.getImgPlus().randomAccess();
-		final RandomAccess<? extends RealType<?>> outputAccessor =
-			output.getImgPlus().randomAccess();
-		double min = Double.MAX_VALUE;
-		double max = -Double.MAX_VALUE;
-		while (iter1.hasNext() && iter2.hasNext()) {
-
-			// determine data positions within datasets
-			final long[] inputPos = iter1.next();
-			final long[] outputPos = iter2.next();
-			inputAccessor.setPosition(inputPos);
-			outputAccessor.setPosition(outputPos);
-
-			// copy value
-			final double value = inputAccessor.get().getRealDouble();
-			min = Math.min(value, min);
-			max = Math.max(value, max);
-			outputAccessor.get().setReal(value);
-
-			// TODO - notice there is a lot of inefficiency following here.
-			// We are setting color tables once per pixel in image and do a lot of
-			// calculation to figure out what table. This should be done once per
-			// plane.
-			
-			// keep dataset color tables in sync
-			final int inputPlaneNumber = planeNum(inputDims, inputPos);
-			final ColorTable lut = input.getColorTable(inputPlaneNumber);
-			final int outputPlaneNumber = planeNum(outputDims, outputPos);
-			output.setColorTable(lut, outputPlaneNumber);
-		}
+
+		// copy values and keep dataset color tables in sync
+		final SampleCopier copier = new SampleCopier(def, input, output);
+		copier.copy();
 
 		// TODO - enable this code
 		// List<Overlay> overlays = overlayService.getOverlays(def.getDisplay());
@@ -268,18 +235,7 @@ private void copyData(final SamplingDefinition def,
 
 		// set the display range from actual data values
 		// TODO - could just reuse input image's display ranges for valid channels
-		setDisplayRange(outputImage, min, max);
-	}
-
-	/** Calculates a plane number from a position within a dimensional space. */
-	private int planeNum(final long[] dims, final long[] pos) {
-		int plane = 0;
-		int inc = 1;
-		for (int i = 2; i < dims.length; i++) { // TODO - assumes X & Y are 1st two dims
-			plane += pos[i] * inc;
-			inc *= dims[i];
-		}
-		return plane;
+		setDisplayRange(outputImage, copier.getMin(), copier.getMax());
 	}
 
 	/**
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.sampler;
+
+import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
+
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.display.ColorTable;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * This class copies the samples selected by a {@link SamplingDefinition} from
+ * an input {@link Dataset} into an output Dataset, along with the color tables
+ * of the planes involved, and notes the range of the copied values. It has
+ * package level sharing and access.
+ * <p>
+ * When both Datasets offer direct plane access the copy proceeds one input row
+ * (the selected X positions at a fixed position along every other axis) at a
+ * time, with rows distributed among threads. Rows whose X positions are
+ * consecutive are transferred in bulk; stepped ranges read only the selected
+ * samples. Otherwise the copy falls back to walking both spaces with position
+ * iterators.
+ * </p>
+ * 
+ * @author Barry DeZonia
+ */
+class SampleCopier {
+
+	// -- instance variables --
+
+	private final SamplingDefinition def;
+	private final Dataset input;
+	private final Dataset output;
+
+	/** The selected input positions, per input axis. */
+	private final long[][] indices;
+
+	/** The output axis of each input axis, or -1 if it is collapsed. */
+	private final int[] outputAxes;
+
+	private double min = Double.MAX_VALUE;
+	private double max = -Double.MAX_VALUE;
+
+	// -- constructor --
+
+	SampleCopier(final SamplingDefinition def, final Dataset input,
+		final Dataset output)
+	{
+		this.def = def;
+		this.input = input;
+		this.output = output;
+		final List<List<Long>> ranges = def.getInputRanges();
+		indices = new long[ranges.size()][];
+		outputAxes = new int[ranges.size()];
+		int outAxis = 0;
+		for (int i = 0; i < indices.length; i++) {
+			final List<Long> range = ranges.get(i);
+			indices[i] = new long[range.size()];
+			for (int k = 0; k < indices[i].length; k++)
+				indices[i][k] = range.get(k);
+			outputAxes[i] = indices[i].length > 1 ? outAxis++ : -1;
+		}
+	}
+
+	// -- package interface --
+
+	/** Copies the selected samples and their planes' color tables. */
+	void copy() {
+		final PlaneAccess inPlanes = PlaneAccess.create(input);
+		final PlaneAccess outPlanes = PlaneAccess.create(output);
+		// NB - rows stay rows only if the X axis is not collapsed
+		if (inPlanes != null && outPlanes != null && indices[0].length > 1) {
+			copyRows(inPlanes, outPlanes);
+		}
+		else copySamples();
+		copyColorTables();
+	}
+
+	/** Returns the smallest value copied. */
+	double getMin() {
+		return min;
+	}
+
+	/** Returns the largest value copied. */
+	double getMax() {
+		return max;
+	}
+
+	// -- private helpers --
+
+	/** Copies sample by sample, walking input and output spaces in step. */
+	private void copySamples() {
+		final PositionIterator iter1 = new SparsePositionIterator(def);
+		final PositionIterator iter2 = new DensePositionIterator(def);
+		final RandomAccess<? extends RealType<?>> inputAccessor =
+			input.getImgPlus().randomAccess();
+		final RandomAccess<? extends RealType<?>> outputAccessor =
+			output.getImgPlus().randomAccess();
+		while (iter1.hasNext() && iter2.hasNext()) {
+			inputAccessor.setPosition(iter1.next());
+			outputAccessor.setPosition(iter2.next());
+			final double value = inputAccessor.get().getRealDouble();
+			min = Math.min(value, min);
+			max = Math.max(value, max);
+			outputAccessor.get().setReal(value);
+		}
+	}
+
+	/** Copies row by row through the Datasets' backing arrays. */
+	private void copyRows(final PlaneAccess inPlanes, final PlaneAccess outPlanes)
+	{
+		long rowCount = 1;
+		for (int i = 1; i < indices.length; i++)
+			rowCount *= indices[i].length;
+		final long[] bounds = ParallelLoop.chunkBounds(rowCount, 4);
+		final int chunks = bounds.length - 1;
+		final double[] mins = new double[chunks];
+		final double[] maxs = new double[chunks];
+		ParallelLoop.run(chunks, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int chunk) {
+				final double[] range =
+					copyRows(inPlanes, outPlanes, bounds[chunk], bounds[chunk + 1]);
+				mins[chunk] = range[0];
+				maxs[chunk] = range[1];
+			}
+		});
+		for (int c = 0; c < chunks; c++) {
+			min = Math.min(mins[c], min);
+			max = Math.max(maxs[c], max);
+		}
+	}
+
+	/**
+	 * Copies rows first (inclusive) through last (exclusive), numbered with axis
+	 * 1 varying fastest, and returns the min and max of the copied values.
+	 */
+	private double[] copyRows(final PlaneAccess inPlanes,
+		final PlaneAccess outPlanes, final long first, final long last)
+	{
+		final long[] inDims = inPlanes.getDims();
+		final long[] outDims = outPlanes.getDims();
+		final long[] xs = indices[0];
+		final int count = xs.length;
+		boolean consecutive = true;
+		for (int k = 1; k < count; k++)
+			consecutive &= xs[k] == xs[0] + k;
+		final double[] values = new double[count];
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+
+		// position counters of the first row
+		final int[] counters = new int[indices.length];
+		long r = first;
+		for (int i = 1; i < indices.length; i++) {
+			counters[i] = (int) (r % indices[i].length);
+			r /= indices[i].length;
+		}
+
+		final long[] inPos = new long[inDims.length];
+		final long[] outPos = new long[outDims.length];
+		for (long row = first; row < last; row++) {
+			for (int i = 1; i < indices.length; i++) {
+				inPos[i] = indices[i][counters[i]];
+				if (outputAxes[i] >= 0) outPos[outputAxes[i]] = counters[i];
+			}
+			final RealArray src =
+				inPlanes.getPlaneForReading((int) PlaneAccess.planeIndex(inDims,
+					inPos));
+			final RealArray dest =
+				outPlanes.getPlane((int) PlaneAccess.planeIndex(outDims, outPos));
+			final int srcRow =
+				inDims.length > 1 ? (int) (inPos[1] * inDims[0]) : 0;
+			final int destRow =
+				outDims.length > 1 ? (int) (outPos[1] * outDims[0]) : 0;
+			if (consecutive) src.get(srcRow + (int) xs[0], values, 0, count);
+			else {
+				for (int k = 0; k < count; k++)
+					values[k] = src.getReal(srcRow + (int) xs[k]);
+			}
+			for (int k = 0; k < count; k++) {
+				lo = Math.min(values[k], lo);
+				hi = Math.max(values[k], hi);
+			}
+			dest.set(destRow, values, 0, count);
+
+			// advance to the next row
+			for (int i = 1; i < indices.length; i++) {
+				if (++counters[i] < indices[i].length) break;
+				counters[i] = 0;
+			}
+		}
+		return new double[] { lo, hi };
+	}
+
+	/**
+	 * Gives each output plane the color table of the input plane it was copied
+	 * from. Where several input planes land in one output plane the last one in
+	 * iteration order wins, as it would copying sample by sample.
+	 */
+	private void copyColorTables() {
+		final long[] inDims = input.getDims();
+		final long[] outDims = output.getDims();
+		final long[] inPos = new long[inDims.length];
+		final long[] outPos = new long[outDims.length];
+		// NB - plane numbers only depend on the positions along axes 2 and up
+		final int[] counters = new int[indices.length];
+		while (true) {
+			for (int i = 2; i < indices.length; i++) {
+				inPos[i] = indices[i][counters[i]];
+				if (outputAxes[i] >= 0) outPos[outputAxes[i]] = counters[i];
+			}
+			final ColorTable lut = input.getColorTable(planeNum(inDims, inPos));
+			output.setColorTable(lut, planeNum(outDims, outPos));
+			int i = 2;
+			while (i < indices.length && ++counters[i] == indices[i].length) {
+				counters[i++] = 0;
+			}
+			if (i >= indices.length) break;
+		}
+	}
+
+	/** Calculates a plane number from a position within a dimensional space. */
+	private int planeNum(final long[] dims, final long[] pos) {
+		int plane = 0;
+		int inc = 1;
+		for (int i = 2; i < dims.length; i++) { // TODO - assumes X & Y are 1st two dims
+			plane += pos[i] * inc;
+			inc *= dims[i];
+		}
+		return plane;
+	}
+}
@@ -36,19 +36,35 @@
 package imagej.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import imagej.data.access.SharedPlanes;
+import imagej.data.event.DatasetUpdatedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.img.cell.CellImgFactory;
 import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.IntType;
 
 import org.junit.Test;
 import org.scijava.Context;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.thread.ThreadService;
 
 /**
  * Unit tests for {@link Dataset}.
@@ -74,6 +90,34 @@ private Dataset createDataset(final ImgFactory<IntType> factory) {
 		return datasetService.create(imgPlus);
 	}
 
+	/** Creates a planar Dataset whose plane p holds the value p. */
+	private Dataset createShareableDataset() {
+		final Context context = new Context(DatasetService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final AxisType[] axes =
+			{ Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME };
+		final Dataset ds =
+			datasetService.create(new IntType(), DIMENSIONS, "test", axes);
+		final Cursor<? extends RealType<?>> cursor =
+			ds.getImgPlus().localizingCursor();
+		final long[] pos = new long[DIMENSIONS.length];
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.localize(pos);
+			final long plane = pos[2] + CPLANES * (pos[3] + ZPLANES * pos[4]);
+			cursor.get().setReal(plane);
+		}
+		return ds;
+	}
+
+	private double valueAt(final Dataset ds, final long[] pos) {
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		accessor.setPosition(pos);
+		return accessor.get().getRealDouble();
+	}
+
 	private Dataset createPlanarDataset() {
 		return createDataset(new PlanarImgFactory<IntType>());
 	}
@@ -176,4 +220,136 @@ public void testGetPlane() {
 		testPlanarCase();
 		testNonplanarCase();
 	}
+
+	@Test
+	public void testDuplicateSharesPlanes() {
+		final Dataset ds = createShareableDataset();
+		final int planeSize = (int) (DIMENSIONS[0] * DIMENSIONS[1]);
+		final int planeCount = CPLANES * ZPLANES * TPLANES;
+
+		final Dataset copy = ds.duplicate();
+		for (int p = 0; p < planeCount; p++) {
+			assertTrue(SharedPlanes.isShared(copy.getImgPlus(), p));
+		}
+
+		// writing to the copy detaches only the plane written
+		final RandomAccess<? extends RealType<?>> accessor =
+			copy.getImgPlus().randomAccess();
+		accessor.setPosition(new long[DIMENSIONS.length]);
+		accessor.get().setReal(-1);
+		assertFalse(SharedPlanes.isShared(copy.getImgPlus(), 0));
+		assertFalse(SharedPlanes.isShared(ds.getImgPlus(), 0));
+		assertTrue(SharedPlanes.isShared(copy.getImgPlus(), 1));
+		assertEquals(-1, ((int[]) copy.getPlane(0, false))[0]);
+		assertEquals(0, ((int[]) ds.getPlane(0, false))[0]);
+		for (int p = 1; p < planeCount; p++) {
+			assertEquals(p, ((int[]) copy.getPlane(p, false))[planeSize - 1]);
+		}
+	}
+
+	@Test
+	public void testDuplicateAfterLegacyEdit() {
+		final Dataset ds = createShareableDataset();
+		// the legacy layer hands the raw planes to an ImagePlus
+		final int[] legacyPlane = (int[]) ds.getPlane(1, false);
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		final long[] pos = new long[DIMENSIONS.length];
+		pos[2] = 1;
+		accessor.setPosition(pos);
+
+		final Dataset copy = ds.duplicate();
+		assertFalse(SharedPlanes.isShared(copy.getImgPlus(), 1));
+		legacyPlane[0] = -5;
+		assertEquals(-5, ((int[]) ds.getPlane(1, false))[0]);
+		assertEquals(1, valueAt(copy, pos), 0);
+		accessor.get().setReal(-6);
+		assertEquals(1, valueAt(copy, pos), 0);
+
+		// the legacy plane is set back on the next harmonization
+		ds.setPlaneSilently(1, legacyPlane);
+		legacyPlane[0] = -7;
+		assertEquals(1, valueAt(copy, pos), 0);
+		assertEquals(-7, valueAt(ds, pos), 0);
+	}
+
+	@Test
+	public void testDuplicateNonplanar() {
+		final Dataset ds = createNonplanarDataset();
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		accessor.setPosition(new long[DIMENSIONS.length]);
+		accessor.get().setReal(7);
+		final Dataset copy = ds.duplicate();
+		accessor.get().setReal(8);
+		final RandomAccess<? extends RealType<?>> copyAccessor =
+			copy.getImgPlus().randomAccess();
+		copyAccessor.setPosition(new long[DIMENSIONS.length]);
+		assertEquals(7, copyAccessor.get().getRealDouble(), 0);
+	}
+
+	@Test
+	public void testRegionUpdatesCoalesce() throws Exception {
+		final Context context =
+			new Context(DatasetService.class, ThreadService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final Img<IntType> img =
+			new PlanarImgFactory<IntType>().create(DIMENSIONS, new IntType());
+		final Dataset ds = datasetService.create(new ImgPlus<IntType>(img));
+		final UpdateListener listener = new UpdateListener();
+		context.getService(EventService.class).subscribe(listener);
+
+		final ThreadService threadService =
+			context.getService(ThreadService.class);
+		final int[] publishedEarly = new int[1];
+		threadService.invoke(new Runnable() {
+
+			@Override
+			public void run() {
+				ds.update(new FinalInterval(new long[] { 0, 0, 0, 1, 0 },
+					new long[] { 3, 3, 0, 1, 0 }));
+				ds.update(new FinalInterval(new long[] { 1, 1, 1, 2, 3 },
+					new long[] { 2, 2, 1, 2, 3 }));
+				// nothing is published while the dispatch thread is busy
+				publishedEarly[0] = listener.events.size();
+			}
+		});
+		// the merged event was queued behind the updates
+		threadService.invoke(new Runnable() {
+
+			@Override
+			public void run() {
+				// wait
+			}
+		});
+		assertEquals(0, publishedEarly[0]);
+		assertEquals(1, listener.events.size());
+		final Interval region = listener.events.get(0).getRegion();
+		assertEquals(0, region.min(0));
+		assertEquals(3, region.max(0));
+		assertEquals(0, region.min(2));
+		assertEquals(1, region.max(2));
+		assertEquals(1, region.min(3));
+		assertEquals(2, region.max(3));
+		assertEquals(0, region.min(4));
+		assertEquals(3, region.max(4));
+		assertTrue(ds.isDirty());
+		context.dispose();
+	}
+
+	// -- helper classes --
+
+	/** Collects the {@link DatasetUpdatedEvent}s published. */
+	public static class UpdateListener {
+
+		private final List<DatasetUpdatedEvent> events =
+			new ArrayList<DatasetUpdatedEvent>();
+
+		@EventHandler
+		public void onEvent(final DatasetUpdatedEvent evt) {
+			events.add(evt);
+		}
+	}
+
 }
@@ -0,0 +1,248 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.render.RenderingService;
+
+import java.util.Collections;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link FloodFiller}.
+ */
+public class FloodFillerTest {
+
+	/** A mask whose zero pixels touch the center only by corners. */
+	private static final String[] CROSS = {
+		"00100",
+		"00100",
+		"11011",
+		"00100",
+		"00100" };
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class, RenderingService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testFill4() {
+		final Dataset ds = createDataset(new long[] { 5, 5 }, Axes.X, Axes.Y);
+		setPlane(ds, new long[2], 0, 1, CROSS);
+		final long[] pos = new long[2];
+		assertTrue(new FloodFiller(createTool(ds, pos)).fill4(0, 0, pos));
+		assertPlane(ds, new long[2], 0, 1, new String[] {
+			"55100",
+			"55100",
+			"11011",
+			"00100",
+			"00100" });
+	}
+
+	@Test
+	public void testFill8() {
+		final Dataset ds = createDataset(new long[] { 5, 5 }, Axes.X, Axes.Y);
+		setPlane(ds, new long[2], 0, 1, CROSS);
+		final long[] pos = new long[2];
+		assertTrue(new FloodFiller(createTool(ds, pos)).fill8(0, 0, pos));
+		assertPlane(ds, new long[2], 0, 1, new String[] {
+			"55155",
+			"55155",
+			"11511",
+			"55155",
+			"55155" });
+	}
+
+	@Test
+	public void testFill26() {
+		final String[][] stack = {
+			{ "0111", "1111", "1111", "1111" },
+			{ "1111", "1011", "1111", "1111" },
+			{ "1111", "1111", "1101", "0111" } };
+		final Dataset ds =
+			createDataset(new long[] { 4, 4, 3 }, Axes.X, Axes.Y, Axes.Z);
+		setStack(ds, stack);
+		final long[] pos = new long[3];
+		final DrawingTool tool = createTool(ds, pos);
+		assertTrue(new FloodFiller(tool).fill26(0, 0, pos, 2));
+		assertStack(ds, new String[][] {
+			{ "5111", "1111", "1111", "1111" },
+			{ "1111", "1511", "1111", "1111" },
+			{ "1111", "1111", "1151", "0111" } });
+		// the tool is back in the plane the fill started in
+		final long[] toolPos = new long[3];
+		tool.getPosition(toolPos);
+		assertEquals(0, toolPos[2]);
+
+		// an 8-connected fill stays in its plane
+		setStack(ds, stack);
+		assertTrue(new FloodFiller(tool).fill8(0, 0, pos));
+		assertStack(ds, new String[][] {
+			{ "5111", "1111", "1111", "1111" }, stack[1], stack[2] });
+	}
+
+	@Test
+	public void testFillValueMatchesSeed() {
+		final Dataset ds = createDataset(new long[] { 5, 5 }, Axes.X, Axes.Y);
+		setPlane(ds, new long[2], 0, 1, CROSS);
+		final long[] pos = new long[2];
+		final DrawingTool tool = createTool(ds, pos);
+		setValue(tool, 0);
+		assertFalse(new FloodFiller(tool).fill4(0, 0, pos));
+		assertFalse(new FloodFiller(tool).fill8(2, 2, pos));
+		assertPlane(ds, new long[2], 0, 1, CROSS);
+	}
+
+	@Test
+	public void testNonXYPlane() {
+		// fill the XZ plane at y = 1; no primitive planes are XZ
+		final Dataset ds =
+			createDataset(new long[] { 5, 2, 5 }, Axes.X, Axes.Y, Axes.Z);
+		final long[] pos = { 0, 1, 0 };
+		setPlane(ds, pos, 0, 2, CROSS);
+		final DrawingTool tool = createTool(ds, pos);
+		tool.setVAxis(2);
+		assertTrue(new FloodFiller(tool).fill4(0, 0, pos));
+		assertPlane(ds, pos, 0, 2, new String[] {
+			"55100",
+			"55100",
+			"11011",
+			"00100",
+			"00100" });
+		assertTrue(new FloodFiller(tool).fill8(4, 4, pos));
+		assertPlane(ds, pos, 0, 2, new String[] {
+			"55155",
+			"55155",
+			"11511",
+			"55155",
+			"55155" });
+		// the plane at y = 0 is untouched
+		assertPlane(ds, new long[3], 0, 2, new String[] {
+			"00000",
+			"00000",
+			"00000",
+			"00000",
+			"00000" });
+	}
+
+	// -- helper methods --
+
+	private Dataset createDataset(final long[] dims, final AxisType... axes) {
+		return context.getService(DatasetService.class).create(dims, "test",
+			axes, 8, false, false);
+	}
+
+	/** Creates a tool filling with 5 at the given position. */
+	private DrawingTool createTool(final Dataset ds, final long[] position) {
+		final DrawingTool tool =
+			new DrawingTool(ds, context.getService(RenderingService.class));
+		tool.setUAxis(0);
+		tool.setVAxis(1);
+		tool.setPosition(position);
+		setValue(tool, 5);
+		return tool;
+	}
+
+	private void setValue(final DrawingTool tool, final double value) {
+		tool.setChannels(new ChannelCollection(Collections.nCopies(1, value)));
+	}
+
+	/** Sets the UV plane at the given position to rows of digits. */
+	private void setPlane(final Dataset ds, final long[] position,
+		final int uAxis, final int vAxis, final String[] rows)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			ds.getImgPlus().randomAccess();
+		access.setPosition(position);
+		for (int v = 0; v < rows.length; v++) {
+			for (int u = 0; u < rows[v].length(); u++) {
+				access.setPosition(u, uAxis);
+				access.setPosition(v, vAxis);
+				access.get().setReal(rows[v].charAt(u) - '0');
+			}
+		}
+	}
+
+	private void assertPlane(final Dataset ds, final long[] position,
+		final int uAxis, final int vAxis, final String[] rows)
+	{
+		final RandomAccess<? extends RealType<?>> access =
+			ds.getImgPlus().randomAccess();
+		access.setPosition(position);
+		for (int v = 0; v < rows.length; v++) {
+			final StringBuilder row = new StringBuilder();
+			for (int u = 0; u < rows[v].length(); u++) {
+				access.setPosition(u, uAxis);
+				access.setPosition(v, vAxis);
+				row.append((int) access.get().getRealDouble());
+			}
+			assertEquals("row " + v, rows[v], row.toString());
+		}
+	}
+
+	/** Sets the XY planes of an XYZ Dataset. */
+	private void setStack(final Dataset ds, final String[][] planes) {
+		for (int z = 0; z < planes.length; z++) {
+			setPlane(ds, new long[] { 0, 0, z }, 0, 1, planes[z]);
+		}
+	}
+
+	private void assertStack(final Dataset ds, final String[][] planes) {
+		for (int z = 0; z < planes.length; z++) {
+			assertPlane(ds, new long[] { 0, 0, z }, 0, 1, planes[z]);
+		}
+	}
+
+}
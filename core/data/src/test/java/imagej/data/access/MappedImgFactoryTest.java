@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link MappedImgFactory}.
+ */
+public class MappedImgFactoryTest {
+
+	private static final long[] DIMS = { 8, 4, 5 };
+
+	private static final long PLANE_BYTES = DIMS[0] * DIMS[1] * 2;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("mapped-test-", ".raw");
+		file.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testReadWrite() {
+		final MappedRegionCache cache = new MappedRegionCache(2 * PLANE_BYTES);
+		final Img<UnsignedShortType> img = create(cache);
+		assertTrue(img instanceof MappedPlanarImg);
+		fill(img);
+		// no more than the capacity and the plane in use stay mapped
+		assertTrue(cache.getMappedBytes() <= cache.getCapacity() + PLANE_BYTES);
+		check(img);
+		assertTrue(cache.getMappedBytes() <= cache.getCapacity() + PLANE_BYTES);
+		assertTrue(file.length() >= DIMS[2] * PLANE_BYTES);
+	}
+
+	@Test
+	public void testPersistence() {
+		fill(create(new MappedRegionCache(PLANE_BYTES)));
+		check(create(new MappedRegionCache(PLANE_BYTES)));
+	}
+
+	@Test
+	public void testSetPlaneCopies() {
+		final Img<UnsignedShortType> img =
+			create(new MappedRegionCache(PLANE_BYTES));
+		@SuppressWarnings("unchecked")
+		final PlanarImg<UnsignedShortType, ShortArray> planar =
+			(PlanarImg<UnsignedShortType, ShortArray>) img;
+		final short[] samples = new short[(int) (DIMS[0] * DIMS[1])];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = (short) (1000 + i);
+		planar.setPlane(2, new ShortArray(samples));
+		samples[0] = 0;
+		final short[] plane = planar.getPlane(2).getCurrentStorageArray();
+		assertEquals(1000, plane[0]);
+		assertEquals(1000 + samples.length - 1, plane[samples.length - 1]);
+		// the returned storage array is a copy, too
+		plane[1] = 0;
+		assertEquals(1001, planar.getPlane(2).getValue(1));
+	}
+
+	@Test
+	public void testCloseReleasesTemporaryFile() {
+		final MappedRegionCache cache = new MappedRegionCache(2 * PLANE_BYTES);
+		final Img<UnsignedShortType> img =
+			new MappedImgFactory<UnsignedShortType>(null, cache).create(DIMS,
+				new UnsignedShortType());
+		fill(img);
+		final MappedPlanarImg<?, ?> mapped = (MappedPlanarImg<?, ?>) img;
+		final File temp = mapped.getFile();
+		assertTrue(temp.exists());
+		assertTrue(cache.getMappedBytes() > 0);
+		mapped.close();
+		assertEquals(0, cache.getMappedBytes());
+		assertFalse(temp.exists());
+	}
+
+	@Test
+	public void testCloseKeepsGivenFile() {
+		final Img<UnsignedShortType> img =
+			create(new MappedRegionCache(PLANE_BYTES));
+		fill(img);
+		((MappedPlanarImg<?, ?>) img).close();
+		assertTrue(file.exists());
+		check(create(new MappedRegionCache(PLANE_BYTES)));
+	}
+
+	@Test
+	public void testNoPlaneAccess() {
+		assertNull(PlaneAccess.create(create(new MappedRegionCache(
+			PLANE_BYTES))));
+	}
+
+	// -- helper methods --
+
+	private Img<UnsignedShortType> create(final MappedRegionCache cache) {
+		return new MappedImgFactory<UnsignedShortType>(file, cache).create(DIMS,
+			new UnsignedShortType());
+	}
+
+	private void fill(final Img<UnsignedShortType> img) {
+		final Cursor<UnsignedShortType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().set(value(cursor));
+		}
+	}
+
+	private void check(final Img<UnsignedShortType> img) {
+		final Cursor<UnsignedShortType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			assertEquals(value(cursor), cursor.get().get());
+		}
+	}
+
+	private int value(final Cursor<?> cursor) {
+		final long x = cursor.getLongPosition(0);
+		final long y = cursor.getLongPosition(1);
+		final long z = cursor.getLongPosition(2);
+		return (int) ((z * DIMS[1] + y) * DIMS[0] + x);
+	}
+
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link SharedPlanes}.
+ */
+public class SharedPlanesTest {
+
+	private static final long[] DIMS = { 3, 2, 2 };
+
+	@Test
+	public void testWriteToCopy() {
+		final Img<FloatType> src = create();
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 1, dst, 0));
+		assertTrue(SharedPlanes.isShared(src, 1));
+		assertTrue(SharedPlanes.isShared(dst, 0));
+		assertFalse(SharedPlanes.isShared(src, 0));
+		assertEquals(value(2, 1, 1), get(dst, 2, 1, 0), 0);
+		set(dst, 2, 1, 0, -1);
+		assertEquals(-1, get(dst, 2, 1, 0), 0);
+		assertEquals(value(2, 1, 1), get(src, 2, 1, 1), 0);
+		assertFalse(SharedPlanes.isShared(dst, 0));
+		// the source is the last holder and may now write in place
+		set(src, 0, 0, 1, -2);
+		assertEquals(-2, get(src, 0, 0, 1), 0);
+		assertEquals(value(0, 0, 1), get(dst, 0, 0, 0), 0);
+	}
+
+	@Test
+	public void testWriteToOriginal() {
+		final Img<FloatType> src = create();
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 0, dst, 1));
+		set(src, 1, 1, 0, 99);
+		assertEquals(99, get(src, 1, 1, 0), 0);
+		assertEquals(value(1, 1, 0), get(dst, 1, 1, 1), 0);
+	}
+
+	@Test
+	public void testRawAccessDetaches() {
+		final Img<FloatType> src = create();
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 0, dst, 0));
+		final RealArray plane = PlaneAccess.create(dst).getPlane(0);
+		assertFalse(SharedPlanes.isShared(dst, 0));
+		plane.setReal(0, 42);
+		assertEquals(42, get(dst, 0, 0, 0), 0);
+		assertEquals(value(0, 0, 0), get(src, 0, 0, 0), 0);
+	}
+
+	@Test
+	public void testReadDoesNotDetach() {
+		final Img<FloatType> src = create();
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 1, dst, 0));
+		final RealArray plane = PlaneAccess.create(dst).getPlaneForReading(0);
+		assertEquals(value(2, 1, 1), plane.getReal(5), 0);
+		assertTrue(SharedPlanes.isShared(dst, 0));
+		assertTrue(SharedPlanes.isShared(src, 1));
+		assertSame(plane.getStorageArray(), PlaneAccess.create(src)
+			.getPlaneForReading(1).getStorageArray());
+	}
+
+	@Test
+	public void testHandedOutPlaneIsCopied() {
+		final Img<FloatType> src = create();
+		final RealArray plane = PlaneAccess.create(src).getPlane(0);
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 0, dst, 0));
+		assertFalse(SharedPlanes.isShared(src, 0));
+		assertFalse(SharedPlanes.isShared(dst, 0));
+		// writes through the array handed out do not reach the copy
+		plane.setReal(0, 42);
+		assertEquals(42, get(src, 0, 0, 0), 0);
+		assertEquals(value(0, 0, 0), get(dst, 0, 0, 0), 0);
+		// the copy itself can be shared
+		final Img<FloatType> dst2 =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(dst, 0, dst2, 0));
+		assertTrue(SharedPlanes.isShared(dst2, 0));
+	}
+
+	@Test
+	public void testUnpreparedPlaneIsCopied() {
+		final Img<FloatType> src =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		final RandomAccess<FloatType> ra = src.randomAccess();
+		ra.setPosition(new long[] { 1, 1, 1 });
+		ra.get().set(5);
+		final Img<FloatType> dst =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		assertTrue(SharedPlanes.share(src, 1, dst, 1));
+		assertFalse(SharedPlanes.isShared(dst, 1));
+		// a RandomAccess opened before keeps writing to the source only
+		ra.get().set(6);
+		assertEquals(6, get(src, 1, 1, 1), 0);
+		assertEquals(5, get(dst, 1, 1, 1), 0);
+	}
+
+	@Test
+	public void testNotPlanar() {
+		final Img<FloatType> src =
+			new ArrayImgFactory<FloatType>().create(DIMS, new FloatType());
+		final Img<FloatType> dst = create();
+		assertFalse(SharedPlanes.canShare(src));
+		assertTrue(SharedPlanes.canShare(dst));
+		assertFalse(SharedPlanes.share(src, 0, dst, 0));
+	}
+
+	// -- helper methods --
+
+	private Img<FloatType> create() {
+		final Img<FloatType> img =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		for (long z = 0; z < DIMS[2]; z++)
+			for (long y = 0; y < DIMS[1]; y++)
+				for (long x = 0; x < DIMS[0]; x++)
+					set(img, x, y, z, value(x, y, z));
+		SharedPlanes.makeShareable(img);
+		return img;
+	}
+
+	private float value(final long x, final long y, final long z) {
+		return (z * DIMS[1] + y) * DIMS[0] + x + 1;
+	}
+
+	private float get(final Img<FloatType> img, final long x, final long y,
+		final long z)
+	{
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new long[] { x, y, z });
+		return ra.get().get();
+	}
+
+	private void set(final Img<FloatType> img, final long x, final long y,
+		final long z, final float v)
+	{
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new long[] { x, y, z });
+		ra.get().set(v);
+	}
+
+}
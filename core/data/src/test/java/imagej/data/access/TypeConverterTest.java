@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import static org.junit.Assert.assertEquals;
+import imagej.data.access.TypeConverter.Scaling;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TypeConverter}.
+ */
+public class TypeConverterTest {
+
+	private static final long[] DIMS = { 5, 4, 3 };
+
+	@Test
+	public void testClamp() {
+		final Img<FloatType> input =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		fill(input, -100, 10);
+		final Img<UnsignedByteType> output =
+			new PlanarImgFactory<UnsignedByteType>().create(DIMS,
+				new UnsignedByteType());
+		new TypeConverter().convert(input, output);
+		final Cursor<FloatType> in = input.cursor();
+		final Cursor<UnsignedByteType> out = output.cursor();
+		while (in.hasNext()) {
+			final double value = in.next().getRealDouble();
+			final double expected =
+				Math.max(0, Math.min(255, Math.round(value)));
+			assertEquals(expected, out.next().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testRescaleFull() {
+		final Img<UnsignedShortType> input =
+			new ArrayImgFactory<UnsignedShortType>().create(DIMS,
+				new UnsignedShortType());
+		fill(input, 1000, 100);
+		final Img<UnsignedByteType> output =
+			new ArrayImgFactory<UnsignedByteType>().create(DIMS,
+				new UnsignedByteType());
+		new TypeConverter(Scaling.RESCALE_FULL).convert(input, output);
+		assertEquals(0, min(output), 0);
+		assertEquals(255, max(output), 0);
+	}
+
+	@Test
+	public void testRescaleDisplay() {
+		final Img<UnsignedShortType> input =
+			new PlanarImgFactory<UnsignedShortType>().create(DIMS,
+				new UnsignedShortType());
+		fill(input, 0, 100);
+		final Img<UnsignedByteType> output =
+			new PlanarImgFactory<UnsignedByteType>().create(DIMS,
+				new UnsignedByteType());
+		final TypeConverter converter =
+			new TypeConverter(Scaling.RESCALE_DISPLAY);
+		converter.setDisplayRange(1000, 2000);
+		converter.convert(input, output);
+		final Cursor<UnsignedShortType> in = input.cursor();
+		final Cursor<UnsignedByteType> out = output.cursor();
+		while (in.hasNext()) {
+			final double value = in.next().getRealDouble();
+			double expected = Math.round((value - 1000) * 255 / 1000);
+			expected = Math.max(0, Math.min(255, expected));
+			assertEquals(expected, out.next().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testBitInput() {
+		final Img<BitType> input =
+			new ArrayImgFactory<BitType>().create(DIMS, new BitType());
+		int i = 0;
+		for (final BitType t : input)
+			t.set(i++ % 3 == 0);
+		final Img<UnsignedByteType> output =
+			new PlanarImgFactory<UnsignedByteType>().create(DIMS,
+				new UnsignedByteType());
+		new TypeConverter().convert(input, output);
+		final Cursor<BitType> in = input.cursor();
+		final Cursor<UnsignedByteType> out = output.cursor();
+		while (in.hasNext()) {
+			final double expected = in.next().get() ? 255 : 0;
+			assertEquals(expected, out.next().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testFallbackMatchesPlanes() {
+		final Img<FloatType> planar =
+			new PlanarImgFactory<FloatType>().create(DIMS, new FloatType());
+		final Img<FloatType> cells =
+			new CellImgFactory<FloatType>(2).create(DIMS, new FloatType());
+		fill(planar, -50, 7);
+		fill(cells, -50, 7);
+		final TypeConverter converter = new TypeConverter(Scaling.RESCALE_FULL);
+		final ImgFactory<UnsignedShortType> factory =
+			new PlanarImgFactory<UnsignedShortType>();
+		final Img<UnsignedShortType> fast = convert(converter, planar, factory);
+		final Img<UnsignedShortType> slow = convert(converter, cells, factory);
+		final Cursor<UnsignedShortType> a = fast.cursor();
+		final Cursor<UnsignedShortType> b = slow.cursor();
+		while (a.hasNext()) {
+			assertEquals(a.next().getRealDouble(), b.next().getRealDouble(), 0);
+		}
+	}
+
+	@Test
+	public void testAverage() {
+		final Img<UnsignedByteType> input =
+			new PlanarImgFactory<UnsignedByteType>().create(DIMS,
+				new UnsignedByteType());
+		fill(input, 0, 1);
+		final long[] outDims = { DIMS[0], DIMS[1] };
+		final Img<FloatType> output =
+			new PlanarImgFactory<FloatType>().create(outDims, new FloatType());
+		new TypeConverter().convertAverage(input, 2, output);
+		final Cursor<FloatType> out = output.localizingCursor();
+		final long planeSize = DIMS[0] * DIMS[1];
+		while (out.hasNext()) {
+			out.fwd();
+			final long index =
+				out.getLongPosition(1) * DIMS[0] + out.getLongPosition(0);
+			// channel c holds index + c * planeSize
+			final double expected = index + planeSize;
+			assertEquals(expected, out.get().getRealDouble(), 0);
+		}
+	}
+
+	// -- private helpers --
+
+	/** Fills an image with start, start + step, ... in cursor order. */
+	private static void fill(final Img<? extends RealType<?>> img,
+		final double start, final double step)
+	{
+		final Cursor<? extends RealType<?>> cursor = img.localizingCursor();
+		final long[] pos = new long[img.numDimensions()];
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.localize(pos);
+			long index = 0;
+			for (int d = pos.length - 1; d >= 0; d--)
+				index = index * img.dimension(d) + pos[d];
+			cursor.get().setReal(start + index * step);
+		}
+	}
+
+	private static <T extends RealType<T>> Img<UnsignedShortType> convert(
+		final TypeConverter converter, final Img<T> input,
+		final ImgFactory<UnsignedShortType> factory)
+	{
+		final Img<UnsignedShortType> output =
+			factory.create(DIMS, new UnsignedShortType());
+		converter.convert(input, output);
+		return output;
+	}
+
+	private static double min(final Img<? extends RealType<?>> img) {
+		double min = Double.POSITIVE_INFINITY;
+		for (final RealType<?> t : img)
+			min = Math.min(min, t.getRealDouble());
+		return min;
+	}
+
+	private static double max(final Img<? extends RealType<?>> img) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (final RealType<?> t : img)
+			max = Math.max(max, t.getRealDouble());
+		return max;
+	}
+
+}
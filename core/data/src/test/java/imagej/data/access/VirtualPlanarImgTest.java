@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.access;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link VirtualPlanarImg}.
+ */
+public class VirtualPlanarImgTest {
+
+	private static final long[] DIMS = { 6, 4, 10 };
+
+	private static final long PLANE_BYTES = DIMS[0] * DIMS[1] * 4;
+
+	@Test
+	public void testBoundedCache() {
+		final CountingReader reader = new CountingReader();
+		final PlaneCache cache = new PlaneCache(3 * PLANE_BYTES);
+		final Img<FloatType> img = create(reader, cache);
+		check(img);
+		assertTrue(cache.getCachedBytes() <= cache.getCapacity());
+		assertEquals(3, cache.getCachedPlanes());
+		assertEquals(DIMS[2], reader.reads);
+		assertEquals(DIMS[2], cache.getMisses());
+		assertEquals(DIMS[2] - 3, cache.getEvictions());
+	}
+
+	@Test
+	public void testHits() {
+		final CountingReader reader = new CountingReader();
+		final PlaneCache cache = new PlaneCache(DIMS[2] * PLANE_BYTES);
+		final Img<FloatType> img = create(reader, cache);
+		check(img);
+		cache.resetStatistics();
+		// the cached planes are not read again
+		check(img);
+		assertEquals(DIMS[2], reader.reads);
+		assertEquals(0, cache.getMisses());
+		assertTrue(cache.getHits() >= DIMS[2]);
+		assertEquals(0, cache.getEvictions());
+		assertEquals(1, cache.getHitRatio(), 0);
+	}
+
+	@Test
+	public void testSpill() {
+		final CountingReader reader = new CountingReader();
+		final PlaneCache cache = new PlaneCache(PLANE_BYTES);
+		final Img<FloatType> img = create(reader, cache);
+		set(img, 1, 2, 0, -1);
+		check(img, 1, 2, 0, -1);
+		assertTrue(cache.getSpills() > 0);
+		assertEquals(0, cache.getWriteBacks());
+		assertEquals(-1, get(img, 1, 2, 0), 0);
+	}
+
+	@Test
+	public void testWriteBack() {
+		final CountingWriter writer = new CountingWriter();
+		final PlaneCache cache = new PlaneCache(4 * PLANE_BYTES);
+		final VirtualPlanarImg<FloatType, ?> img =
+			VirtualPlanarImg.create(DIMS, new FloatType(), writer, cache);
+		set(img, 3, 1, 5, -2);
+		img.flush();
+		assertEquals(1, cache.getWriteBacks());
+		assertEquals(-2, ((float[]) writer.written.get(5))[1 * 6 + 3], 0);
+		// saved planes stay clean until written again
+		img.flush();
+		assertEquals(1, cache.getWriteBacks());
+		assertEquals(-2, get(img, 3, 1, 5), 0);
+	}
+
+	@Test
+	public void testClose() {
+		final ClosingWriter writer = new ClosingWriter();
+		final PlaneCache cache = new PlaneCache(4 * PLANE_BYTES);
+		final VirtualPlanarImg<FloatType, ?> img =
+			VirtualPlanarImg.create(DIMS, new FloatType(), writer, cache);
+		set(img, 2, 3, 7, -3);
+		assertEquals(-3, get(img, 2, 3, 7), 0);
+		assertTrue(cache.getCachedPlanes() > 0);
+		img.close();
+		assertEquals(0, cache.getCachedPlanes());
+		assertEquals(0, cache.getCachedBytes());
+		assertTrue(writer.closed);
+		assertEquals(-3, ((float[]) writer.written.get(7))[3 * 6 + 2], 0);
+	}
+
+	@Test
+	public void testWritesSurviveEviction() throws InterruptedException {
+		final PlaneCache cache = new PlaneCache(PLANE_BYTES);
+		final Img<FloatType> img = create(new CountingReader(), cache);
+		final long planes = DIMS[2] / 2;
+		// keep evicting the planes being written by reading the others
+		final Thread evictor = new Thread() {
+
+			@Override
+			public void run() {
+				final RandomAccess<FloatType> ra = img.randomAccess();
+				while (!isInterrupted()) {
+					for (long z = planes; z < DIMS[2]; z++) {
+						ra.setPosition(new long[] { 0, 0, z });
+						ra.get().get();
+					}
+				}
+			}
+		};
+		evictor.start();
+		try {
+			for (int pass = 0; pass < 20; pass++) {
+				final Cursor<FloatType> cursor = img.localizingCursor();
+				while (cursor.hasNext()) {
+					cursor.fwd();
+					if (cursor.getLongPosition(2) >= planes) break;
+					cursor.get().set(-pass - 1);
+				}
+			}
+		}
+		finally {
+			evictor.interrupt();
+			evictor.join();
+		}
+		final Cursor<FloatType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			if (cursor.getLongPosition(2) >= planes) break;
+			assertEquals(-20, cursor.get().get(), 0);
+		}
+		assertTrue(cache.getEvictions() > 0);
+	}
+
+	@Test
+	public void testSetPlaneCopies() {
+		final VirtualPlanarImg<FloatType, ?> img =
+			VirtualPlanarImg.create(DIMS, new FloatType(), new CountingReader(),
+				new PlaneCache(PLANE_BYTES));
+		final float[] samples = new float[(int) (DIMS[0] * DIMS[1])];
+		samples[0] = 7;
+		@SuppressWarnings("unchecked")
+		final VirtualPlanarImg<FloatType, FloatArray> planar =
+			(VirtualPlanarImg<FloatType, FloatArray>) img;
+		planar.setPlane(4, new FloatArray(samples));
+		samples[0] = 8;
+		assertEquals(7, get(img, 0, 0, 4), 0);
+		assertNull(PlaneAccess.create(img));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedType() {
+		VirtualPlanarImg.create(DIMS, new BitType(), new CountingReader(),
+			new PlaneCache(PLANE_BYTES));
+	}
+
+	// -- helper methods --
+
+	private Img<FloatType> create(final PlaneReader reader,
+		final PlaneCache cache)
+	{
+		return VirtualPlanarImg.create(DIMS, new FloatType(), reader, cache);
+	}
+
+	private void check(final Img<FloatType> img) {
+		check(img, -1, -1, -1, 0);
+	}
+
+	/** Checks every sample, but the given one which must equal v. */
+	private void check(final Img<FloatType> img, final long px,
+		final long py, final long pz, final float v)
+	{
+		final Cursor<FloatType> cursor = img.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			final long x = cursor.getLongPosition(0);
+			final long y = cursor.getLongPosition(1);
+			final long z = cursor.getLongPosition(2);
+			final float expected =
+				x == px && y == py && z == pz ? v : value(x, y, z);
+			assertEquals(expected, cursor.get().get(), 0);
+		}
+	}
+
+	private static float value(final long x, final long y, final long z) {
+		return (z * DIMS[1] + y) * DIMS[0] + x;
+	}
+
+	private float get(final Img<FloatType> img, final long x, final long y,
+		final long z)
+	{
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new long[] { x, y, z });
+		return ra.get().get();
+	}
+
+	private void set(final Img<FloatType> img, final long x, final long y,
+		final long z, final float v)
+	{
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new long[] { x, y, z });
+		ra.get().set(v);
+	}
+
+	// -- helper classes --
+
+	private static class CountingReader implements PlaneReader {
+
+		private int reads;
+
+		@Override
+		public void read(final int planeIndex, final Object plane) {
+			reads++;
+			final float[] samples = (float[]) plane;
+			for (int i = 0; i < samples.length; i++) {
+				samples[i] = value(i % DIMS[0], i / DIMS[0], planeIndex);
+			}
+		}
+	}
+
+	private static class CountingWriter extends CountingReader implements
+		PlaneWriter
+	{
+
+		private final Map<Integer, Object> written =
+			new HashMap<Integer, Object>();
+
+		@Override
+		public void write(final int planeIndex, final Object plane) {
+			written.put(planeIndex, ((float[]) plane).clone());
+		}
+	}
+
+	private static class ClosingWriter extends CountingWriter implements
+		Closeable
+	{
+
+		private boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+}
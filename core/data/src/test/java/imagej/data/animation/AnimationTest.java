@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.animation;
+
+import static org.junit.Assert.assertEquals;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.display.ImageDisplay;
+import imagej.data.display.ImageDisplayService;
+import imagej.display.DisplayService;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link Animation}, driving its playback clock by hand.
+ */
+public class AnimationTest {
+
+	/** Nanoseconds between frames at 8 frames per second. */
+	private static final long PERIOD = 125000000L;
+
+	private Context context;
+	private ImageDisplay display;
+	private Animation animation;
+
+	@Before
+	public void setUp() {
+		context =
+			new Context(DisplayService.class, ImageDisplayService.class,
+				DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Dataset ds =
+			context.getService(DatasetService.class).create(
+				new long[] { 4, 3, 10 }, "test", axes, 8, false, false);
+		final DisplayService displayService =
+			context.getService(DisplayService.class);
+		display = (ImageDisplay) displayService.createDisplay("test", ds);
+		animation = new Animation(display);
+		animation.setFPS(8);
+		animation.setLookahead(0);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testFramesOnTime() {
+		animation.begin(0);
+		for (int i = 0; i < 8; i++) {
+			assertEquals(0, animation.advance(i * PERIOD));
+		}
+		assertEquals(8, display.getLongPosition(Axes.Z));
+
+		// too early for the next frame
+		assertEquals(PERIOD / 2, animation.advance(7 * PERIOD + PERIOD / 2));
+		assertEquals(8, display.getLongPosition(Axes.Z));
+		assertEquals(0, animation.getAchievedFPS(), 0);
+
+		// a second has passed: eight frames were shown in it
+		assertEquals(0, animation.advance(8 * PERIOD));
+		assertEquals(9, display.getLongPosition(Axes.Z));
+		assertEquals(8, animation.getAchievedFPS(), 1e-9);
+		assertEquals(0, animation.getDroppedFrames());
+	}
+
+	@Test
+	public void testLateFramesAreDropped() {
+		animation.begin(0);
+		for (int i = 0; i <= 8; i++) {
+			animation.advance(i * PERIOD);
+		}
+
+		// three frames late: they are skipped and the position wraps past them
+		assertEquals(0, animation.advance(12 * PERIOD));
+		assertEquals(3, animation.getDroppedFrames());
+		assertEquals(3, display.getLongPosition(Axes.Z));
+		assertEquals(PERIOD, animation.advance(12 * PERIOD));
+
+		// back on schedule; only the frames shown count toward the rate
+		for (int i = 13; i < 16; i++) {
+			assertEquals(0, animation.advance(i * PERIOD));
+		}
+		assertEquals(0, animation.advance(16 * PERIOD));
+		assertEquals(5, animation.getAchievedFPS(), 1e-9);
+		assertEquals(3, animation.getDroppedFrames());
+		assertEquals(7, display.getLongPosition(Axes.Z));
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link ImagePyramid}.
+ */
+public class ImagePyramidTest {
+
+	@Test
+	public void testLevels() {
+		final Context context = new Context(DatasetService.class);
+		final ImagePyramid pyramid = new ImagePyramid(createDataset(context));
+		assertEquals(3, pyramid.getMaxLevel());
+		// nothing is cached: each level is rebuilt through the levels below it
+		pyramid.setCacheSize(0);
+		assertLevels(pyramid);
+		context.dispose();
+	}
+
+	@Test
+	public void testLevelsInBetweenAreCached() {
+		final Context context = new Context(DatasetService.class);
+		final ImagePyramid pyramid = new ImagePyramid(createDataset(context));
+		final long[] pos = new long[2];
+		pyramid.getLevel(3, pos);
+		final ArrayImg<FloatType, FloatArray> level2 = pyramid.getLevel(2, pos);
+		assertSame(level2, pyramid.getLevel(2, pos));
+		assertLevels(pyramid);
+		context.dispose();
+	}
+
+	// -- helper methods --
+
+	/** Creates a 5x3 image whose sample at (x, y) is 10y + x. */
+	private Dataset createDataset(final Context context) {
+		final Dataset ds =
+			context.getService(DatasetService.class).create(new long[] { 5, 3 },
+				"test", new AxisType[] { Axes.X, Axes.Y }, 16, false, false);
+		final RandomAccess<? extends RealType<?>> access =
+			ds.getImgPlus().randomAccess();
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 5; x++) {
+				access.setPosition(new long[] { x, y });
+				access.get().setReal(10 * y + x);
+			}
+		}
+		return ds;
+	}
+
+	/** Checks the levels of the image made by {@link #createDataset}. */
+	private void assertLevels(final ImagePyramid pyramid) {
+		final long[] pos = new long[2];
+		final float[] level1 = samples(pyramid.getLevel(1, pos));
+		assertEquals(3, pyramid.getWidth(1));
+		assertEquals(2, pyramid.getHeight(1));
+		assertEquals(5.5, level1[0], 1e-6);
+		assertEquals(7.5, level1[1], 1e-6);
+		assertEquals(9, level1[2], 1e-6);
+		assertEquals(20.5, level1[3], 1e-6);
+		assertEquals(24, level1[5], 1e-6);
+
+		final float[] level2 = samples(pyramid.getLevel(2, pos));
+		assertEquals(2, pyramid.getWidth(2));
+		assertEquals(1, pyramid.getHeight(2));
+		// 4x3 block, then the lone last column
+		assertEquals(11.5, level2[0], 1e-6);
+		assertEquals(14, level2[1], 1e-6);
+
+		final float[] level3 = samples(pyramid.getLevel(3, pos));
+		assertEquals(12, level3[0], 1e-6);
+	}
+
+	private float[] samples(final ArrayImg<FloatType, FloatArray> img) {
+		return img.update(null).getCurrentStorageArray();
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.ARGBScreenImage;
+import net.imglib2.display.RealLUTConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link TiledCompositeXYProjector}.
+ */
+public class TiledCompositeXYProjectorTest {
+
+	@Test
+	public void testInvalidatedRegionShowsEdit() {
+		final int size = TiledCompositeXYProjector.TILE_SIZE + 10;
+		final ArrayImg<UnsignedByteType, ?> img =
+			new ArrayImgFactory<UnsignedByteType>().create(
+				new long[] { size, size }, new UnsignedByteType());
+		final byte[] data =
+			((ByteArray) img.update(null)).getCurrentStorageArray();
+		final ARGBScreenImage screen = new ARGBScreenImage(size, size);
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			new ArrayList<Converter<UnsignedByteType, ARGBType>>();
+		converters.add(new RealLUTConverter<UnsignedByteType>(0, 255,
+			ColorTables.GRAYS));
+		final TiledCompositeXYProjector<UnsignedByteType> projector =
+			new TiledCompositeXYProjector<UnsignedByteType>(img, screen,
+				converters, -1);
+		projector.map();
+		final int black = screen.getData()[0];
+
+		// edit a pixel of the last tile in place
+		final int x = size - 1, y = size - 1;
+		data[y * size + x] = (byte) 255;
+		projector.invalidate(new FinalInterval(new long[] { x, y }, new long[] {
+			x, y }));
+		projector.map();
+		assertFalse(black == screen.getData()[y * size + x]);
+		assertEquals(black, screen.getData()[0]);
+	}
+
+	@Test
+	public void testViewportLimitsProjection() {
+		final int size = TiledCompositeXYProjector.TILE_SIZE + 10;
+		final ArrayImg<UnsignedByteType, ?> img =
+			new ArrayImgFactory<UnsignedByteType>().create(
+				new long[] { size, size }, new UnsignedByteType());
+		final byte[] data =
+			((ByteArray) img.update(null)).getCurrentStorageArray();
+		Arrays.fill(data, (byte) 255);
+		final ARGBScreenImage screen = new ARGBScreenImage(size, size);
+		final ArrayList<Converter<UnsignedByteType, ARGBType>> converters =
+			new ArrayList<Converter<UnsignedByteType, ARGBType>>();
+		converters.add(new RealLUTConverter<UnsignedByteType>(0, 255,
+			ColorTables.GRAYS));
+		final TiledCompositeXYProjector<UnsignedByteType> projector =
+			new TiledCompositeXYProjector<UnsignedByteType>(img, screen,
+				converters, -1);
+		final int last = size * size - 1;
+
+		// only the first tile is on screen
+		projector.setViewport(new FinalInterval(new long[] { 0, 0 },
+			new long[] { 9, 9 }));
+		projector.map();
+		final int white = screen.getData()[0];
+		assertFalse(white == 0);
+		assertEquals(0, screen.getData()[last]);
+
+		// scrolling the last tile into view projects it
+		assertTrue(projector.setViewport(new FinalInterval(new long[] {
+			size - 10, size - 10 }, new long[] { size - 1, size - 1 })));
+		assertEquals(white, screen.getData()[last]);
+		assertTrue(projector.setViewport(null));
+		assertFalse(projector.setViewport(null));
+
+		// the rest of the plane follows on request
+		Arrays.fill(screen.getData(), 0);
+		projector.setViewport(new FinalInterval(new long[] { 0, 0 },
+			new long[] { 9, 9 }));
+		projector.map();
+		assertEquals(0, screen.getData()[last]);
+		projector.complete();
+		assertEquals(white, screen.getData()[last]);
+	}
+
+	@Test
+	public void testPlaneEditedInPlaceShowsAfterUpdate() {
+		final Context context =
+			new Context(ImageDisplayService.class, DatasetService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Dataset ds =
+			datasetService.create(new long[] { 4, 3, 2 }, "test", axes, 8,
+				false, false);
+		final RealArray plane = PlaneAccess.create(ds).getPlane(0);
+		plane.setReal(1, 255);
+		final DatasetView view =
+			(DatasetView) context.getService(ImageDisplayService.class)
+				.createDataView(ds);
+		view.rebuild();
+		final int[] pixels = view.getScreenImage().getData();
+		final int black = pixels[0], white = pixels[1];
+		assertFalse(black == white);
+
+		// edit the displayed plane in place, as legacy plugins do
+		plane.setReal(5, 255);
+		ds.update();
+		assertEquals(white, view.getScreenImage().getData()[5]);
+		context.dispose();
+	}
+
+}
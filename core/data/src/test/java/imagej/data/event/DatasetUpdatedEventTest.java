@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import net.imglib2.FinalInterval;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link DatasetUpdatedEvent}.
+ */
+public class DatasetUpdatedEventTest {
+
+	@Test
+	public void testIsPlaneDirty() {
+		final Context context = new Context(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z };
+		final Dataset ds =
+			context.getService(DatasetService.class).create(
+				new long[] { 4, 4, 3, 5 }, "test", axes, 8, false, false);
+
+		// channel 1 of planes z = 2..3
+		final DatasetUpdatedEvent event =
+			new DatasetUpdatedEvent(ds, false, new FinalInterval(new long[] { 1,
+				1, 1, 2 }, new long[] { 2, 2, 1, 3 }));
+		assertTrue(event.isPlaneDirty(new long[] { 0, 0, 1, 2 }, -1));
+		assertTrue(event.isPlaneDirty(new long[] { 0, 0, 1, 3 }, -1));
+		assertFalse(event.isPlaneDirty(new long[] { 0, 0, 1, 4 }, -1));
+		assertFalse(event.isPlaneDirty(new long[] { 0, 0, 0, 2 }, -1));
+		// composite planes show every channel
+		assertTrue(event.isPlaneDirty(new long[] { 0, 0, 0, 2 }, 2));
+		assertFalse(event.isPlaneDirty(new long[] { 0, 0, 0, 1 }, 2));
+
+		// whole image and metadata only updates
+		final long[] pos = { 0, 0, 2, 4 };
+		assertTrue(new DatasetUpdatedEvent(ds, false).isPlaneDirty(pos, -1));
+		assertFalse(new DatasetUpdatedEvent(ds, true).isPlaneDirty(pos, -1));
+		context.dispose();
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.histogram;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Histogram} and {@link HistogramBinning}.
+ */
+public class HistogramTest {
+
+	@Test
+	public void testClampedBinning() {
+		final HistogramBinning binning = HistogramBinning.clamped(0, 255, 256);
+		assertEquals(0, binning.getBin(-10));
+		assertEquals(0, binning.getBin(Double.NaN));
+		assertEquals(17, binning.getBin(17));
+		assertEquals(255, binning.getBin(1000));
+	}
+
+	@Test
+	public void testRoundedBinning() {
+		final HistogramBinning binning = HistogramBinning.rounded(0, 10, 11);
+		assertEquals(0, binning.getBin(0.4));
+		assertEquals(5, binning.getBin(4.5));
+		assertEquals(10, binning.getBin(10));
+	}
+
+	@Test
+	public void testFixedWidthBinning() {
+		final HistogramBinning binning =
+			HistogramBinning.fixedWidth(0, 0.5, 10);
+		assertEquals(0, binning.getBin(0.49));
+		assertEquals(1, binning.getBin(0.5));
+		// the maximum value falls in the last bin
+		assertEquals(9, binning.getBin(5));
+	}
+
+	@Test
+	public void testBinningEquality() {
+		final HistogramBinning a = HistogramBinning.clamped(0, 255, 256);
+		assertEquals(a, HistogramBinning.clamped(0, 255, 256));
+		assertEquals(a.hashCode(), HistogramBinning.clamped(0, 255, 256)
+			.hashCode());
+		assertFalse(a.equals(HistogramBinning.rounded(0, 255, 256)));
+		assertFalse(a.equals(HistogramBinning.clamped(0, 255, 128)));
+	}
+
+	@Test
+	public void testMergeEqualsSinglePass() {
+		final HistogramBinning binning = HistogramBinning.clamped(0, 99, 10);
+		final HistogramAccumulator all = new HistogramAccumulator(binning);
+		final HistogramAccumulator low = new HistogramAccumulator(binning);
+		final HistogramAccumulator high = new HistogramAccumulator(binning);
+		for (int i = 0; i < 100; i++) {
+			all.add(i);
+			if (i < 30) low.add(i);
+			else high.add(i);
+		}
+		final Histogram expected = all.toHistogram();
+		final Histogram merged =
+			Histogram.merge(low.toHistogram(), high.toHistogram());
+		assertArrayEquals(expected.getCounts(), merged.getCounts());
+		assertEquals(100, merged.getSampleCount());
+		assertEquals(0, merged.getMin(), 0);
+		assertEquals(99, merged.getMax(), 0);
+		assertEquals(expected.getMean(), merged.getMean(), 1e-12);
+		assertEquals(expected.getStdDev(), merged.getStdDev(), 1e-12);
+	}
+
+	@Test
+	public void testNaNIgnoredByRange() {
+		final HistogramAccumulator acc =
+			new HistogramAccumulator(HistogramBinning.clamped(0, 1, 2));
+		acc.add(Double.NaN);
+		acc.add(0.5);
+		final Histogram h = acc.toHistogram();
+		assertEquals(2, h.getSampleCount());
+		assertEquals(0.5, h.getMin(), 0);
+		assertEquals(0.5, h.getMax(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMergeRejectsDifferentBinnings() {
+		final Histogram a =
+			new HistogramAccumulator(HistogramBinning.clamped(0, 1, 2))
+				.toHistogram();
+		final Histogram b =
+			new HistogramAccumulator(HistogramBinning.rounded(0, 1, 2))
+				.toHistogram();
+		Histogram.merge(a, b);
+	}
+
+}
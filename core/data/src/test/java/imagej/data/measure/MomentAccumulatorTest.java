@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MomentAccumulator}.
+ */
+public class MomentAccumulatorTest {
+
+	@Test
+	public void testMatchesTwoPassFormulas() {
+		final double[] data = data(1000, 3);
+		final MomentAccumulator acc = new MomentAccumulator();
+		for (final double v : data)
+			acc.add(v);
+
+		final int n = data.length;
+		double mean = 0;
+		for (final double v : data)
+			mean += v;
+		mean /= n;
+		double m2 = 0, m3 = 0, m4 = 0;
+		for (final double v : data) {
+			final double d = v - mean;
+			m2 += d * d;
+			m3 += d * d * d;
+			m4 += d * d * d * d;
+		}
+		assertEquals(n, acc.get(Statistic.COUNT), 0);
+		assertEquals(mean, acc.get(Statistic.ARITHMETIC_MEAN), 1e-9);
+		assertEquals(m2, acc.get(Statistic.SUM_OF_SQUARED_DEVIATIONS), 1e-6);
+		assertEquals(m2 / (n - 1), acc.get(Statistic.SAMPLE_VARIANCE), 1e-9);
+		final double skew = (m3 / n) / Math.pow(m2 / n, 1.5);
+		assertEquals(skew, acc.get(Statistic.POPULATION_SKEW), 1e-9);
+		final double kurtosis = (m4 / n) / ((m2 / n) * (m2 / n));
+		assertEquals(kurtosis, acc.get(Statistic.POPULATION_KURTOSIS), 1e-9);
+	}
+
+	@Test
+	public void testMergeEqualsSinglePass() {
+		final double[] data = data(777, 5);
+		final MomentAccumulator whole = new MomentAccumulator();
+		final MomentAccumulator a = new MomentAccumulator();
+		final MomentAccumulator b = new MomentAccumulator();
+		for (int i = 0; i < data.length; i++) {
+			whole.add(data[i]);
+			if (i < 300) a.add(data[i]);
+			else b.add(data[i]);
+		}
+		a.merge(b);
+		for (final Statistic s : Statistic.values()) {
+			if (s.isOrderStatistic()) continue;
+			final double expected = whole.get(s);
+			final double tolerance = Math.max(1e-9, Math.abs(expected) * 1e-9);
+			assertEquals(s.toString(), expected, a.get(s), tolerance);
+		}
+	}
+
+	@Test
+	public void testLargeOffsetIsStable() {
+		final MomentAccumulator acc = new MomentAccumulator();
+		acc.add(1e9 + 4);
+		acc.add(1e9 + 7);
+		acc.add(1e9 + 13);
+		acc.add(1e9 + 16);
+		assertEquals(30, acc.get(Statistic.SAMPLE_VARIANCE), 1e-6);
+	}
+
+	@Test
+	public void testEmpty() {
+		final MomentAccumulator acc = new MomentAccumulator();
+		assertEquals(0, acc.get(Statistic.COUNT), 0);
+		assertTrue(Double.isNaN(acc.get(Statistic.ARITHMETIC_MEAN)));
+		assertTrue(Double.isNaN(acc.get(Statistic.MINIMUM)));
+	}
+
+	@Test
+	public void testSingleStatisticMatchesFull() {
+		final double[] data = data(500, 7);
+		final MomentAccumulator whole = new MomentAccumulator();
+		for (final double v : data)
+			whole.add(v);
+		for (final Statistic s : Statistic.values()) {
+			if (s.isOrderStatistic()) continue;
+			final MomentAccumulator a = new MomentAccumulator(EnumSet.of(s));
+			final MomentAccumulator b = new MomentAccumulator(EnumSet.of(s));
+			for (int i = 0; i < data.length; i++) {
+				if (i < 200) a.add(data[i]);
+				else b.add(data[i]);
+			}
+			a.merge(b);
+			final double expected = whole.get(s);
+			final double tolerance = Math.max(1e-9, Math.abs(expected) * 1e-9);
+			assertEquals(s.toString(), expected, a.get(s), tolerance);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStatisticNotAccumulated() {
+		final MomentAccumulator acc =
+			new MomentAccumulator(EnumSet.of(Statistic.ARITHMETIC_MEAN));
+		acc.add(1);
+		acc.get(Statistic.SAMPLE_VARIANCE);
+	}
+
+	private double[] data(final int count, final long seed) {
+		final Random random = new Random(seed);
+		final double[] data = new double[count];
+		for (int i = 0; i < count; i++)
+			data[i] = 1 + 100 * random.nextDouble() * random.nextDouble();
+		return data;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.operator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link DefaultCalculatorService} and the row methods of the
+ * {@link CalculatorOp}s.
+ */
+public class CalculatorServiceTest {
+
+	private static final long[] STACK = { 6, 5, 4 };
+
+	private final CalculatorService service = new DefaultCalculatorService();
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void testRowMethodsMatchSampleMethods() {
+		final AbstractCalculatorOp[] ops =
+			{ new OpAdd(), new OpSubtract(), new OpMultiply(), new OpDivide(),
+				new OpMin(), new OpMax(), new OpAverage(), new OpDifference(),
+				new OpCopy(), new OpTransparentZero(), new OpAnd(), new OpOr(),
+				new OpXor() };
+		final double[] a = { 0, 1, -3, 7, 12.5, 100 };
+		final double[] b = { 0, 4, 5, -2, 0, 3 };
+		for (final AbstractCalculatorOp op : ops) {
+			final double[] expected = new double[a.length];
+			final DoubleType out = new DoubleType();
+			for (int i = 0; i < a.length; i++) {
+				op.compute(new DoubleType(a[i]), new DoubleType(b[i]), out);
+				expected[i] = out.get();
+			}
+			final double[] actual = new double[a.length];
+			op.compute(a, b, actual, a.length);
+			assertArrayEquals(op.getClass().getName(), expected, actual, 0);
+		}
+	}
+
+	@Test
+	public void testCombinedDimensions() {
+		final Img<FloatType> stack = create(STACK, 0);
+		final Img<FloatType> plane = create(new long[] { 6, 5 }, 0);
+		final Img<FloatType> small = create(new long[] { 3, 5, 2 }, 0);
+		assertArrayEquals(STACK, service.combinedDimensions(stack, plane));
+		assertArrayEquals(new long[] { 3, 5, 2 }, service.combinedDimensions(
+			stack, small));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoreDimensionsInInput2() {
+		service.combinedDimensions(create(new long[] { 6, 5 }, 0), create(STACK,
+			0));
+	}
+
+	@Test
+	public void testBroadcastPlane() {
+		final Img<FloatType> stack = create(STACK, 1000);
+		final Img<FloatType> background = create(new long[] { 6, 5 }, 0);
+		final OpSubtract<FloatType, FloatType> op =
+			new OpSubtract<FloatType, FloatType>();
+		final Img<DoubleType> result = service.combine(stack, background, op);
+		final Cursor<DoubleType> cursor = result.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			// the plane's contribution cancels, leaving 1000 + z * planeSize
+			final double expected = 1000 + cursor.getLongPosition(2) * 30;
+			assertEquals(expected, cursor.get().get(), 0);
+		}
+	}
+
+	@Test
+	public void testBroadcastColumn() {
+		final Img<FloatType> column = create(new long[] { 1, 5 }, 100);
+		final Img<FloatType> cells =
+			new CellImgFactory<FloatType>(4).create(STACK, new FloatType());
+		fill(cells, 0);
+		final OpSubtract<FloatType, FloatType> op =
+			new OpSubtract<FloatType, FloatType>();
+		assertArrayEquals(STACK, service.combinedDimensions(cells, column));
+		assertColumnSubtracted(service.combine(create(STACK, 0), column, op));
+		assertColumnSubtracted(service.combine(cells, column, op));
+	}
+
+	@Test
+	public void testInPlace() {
+		final Img<ShortType> img1 =
+			new PlanarImgFactory<ShortType>().create(STACK, new ShortType());
+		fill(img1, 0);
+		final Img<ShortType> img2 =
+			new PlanarImgFactory<ShortType>().create(STACK, new ShortType());
+		fill(img2, 5);
+		service.combine(img1, img2, new OpAdd<ShortType, ShortType>(), img1);
+		final RandomAccess<ShortType> access = img1.randomAccess();
+		access.setPosition(new long[] { 2, 3, 1 });
+		// 2 * (index of (2, 3, 1)) + 5
+		assertEquals(2 * (2 + 3 * 6 + 30) + 5, access.get().get());
+	}
+
+	@Test
+	public void testCellsMatchPlanes() {
+		final Img<FloatType> planar1 = create(STACK, 3);
+		final Img<FloatType> planar2 = create(new long[] { 6, 5 }, -7);
+		final Img<FloatType> cells1 =
+			new CellImgFactory<FloatType>(4).create(STACK, new FloatType());
+		fill(cells1, 3);
+		final OpMultiply<FloatType, FloatType> op =
+			new OpMultiply<FloatType, FloatType>();
+		final Img<DoubleType> expected = service.combine(planar1, planar2, op);
+		final Img<DoubleType> actual = service.combine(cells1, planar2, op);
+		final Cursor<DoubleType> e = expected.cursor();
+		final Cursor<DoubleType> a = actual.cursor();
+		while (e.hasNext()) {
+			assertEquals(e.next().get(), a.next().get(), 0);
+		}
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Checks the result of subtracting a column of samples 100 + y from a stack
+	 * filled with raster indices.
+	 */
+	private static void assertColumnSubtracted(final Img<DoubleType> result) {
+		final Cursor<DoubleType> cursor = result.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			final long x = cursor.getLongPosition(0);
+			final long y = cursor.getLongPosition(1);
+			final long z = cursor.getLongPosition(2);
+			final double expected = x + 6 * y + 30 * z - (100 + y);
+			assertEquals(expected, cursor.get().get(), 0);
+		}
+	}
+
+	private static Img<FloatType> create(final long[] dims, final double start)
+	{
+		final Img<FloatType> img =
+			new PlanarImgFactory<FloatType>().create(dims, new FloatType());
+		fill(img, start);
+		return img;
+	}
+
+	/** Sets each sample to start plus its raster index. */
+	private static void fill(final Img<? extends RealType<?>> img,
+		final double start)
+	{
+		final Cursor<? extends RealType<?>> cursor = img.localizingCursor();
+		final long[] pos = new long[img.numDimensions()];
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.localize(pos);
+			long index = 0;
+			for (int d = pos.length - 1; d >= 0; d--)
+				index = index * img.dimension(d) + pos[d];
+			cursor.get().setReal(start + index);
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.data.overlay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import net.imglib2.Cursor;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.BitAccess;
+import net.imglib2.roi.BinaryMaskRegionOfInterest;
+import net.imglib2.roi.PolygonRegionOfInterest;
+import net.imglib2.roi.RegionOfInterest;
+import net.imglib2.type.logic.BitType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests that {@link OverlayRasterizer} produces the same pixels as testing
+ * each pixel against the overlay's region of interest.
+ */
+public class OverlayRasterizerTest {
+
+	private static final int SIZE = 48;
+
+	@Test
+	public void testRectangle() {
+		final RectangleOverlay overlay = new RectangleOverlay();
+		overlay.setOrigin(-2.5, 0);
+		overlay.setOrigin(3.5, 1);
+		overlay.setExtent(20, 0);
+		overlay.setExtent(17.25, 1);
+		assertMatchesRegion(overlay);
+	}
+
+	@Test
+	public void testEllipse() {
+		final EllipseOverlay overlay = new EllipseOverlay();
+		overlay.setOrigin(20.3, 0);
+		overlay.setOrigin(15.5, 1);
+		overlay.setRadius(12.7, 0);
+		overlay.setRadius(9, 1);
+		assertMatchesRegion(overlay);
+	}
+
+	@Test
+	public void testPolygon() {
+		final PolygonOverlay overlay = new PolygonOverlay();
+		final PolygonRegionOfInterest roi = overlay.getRegionOfInterest();
+		final double[][] vertices =
+			{ { 2.5, 1.25 }, { 40.3, 5.7 }, { 10.1, 45.6 }, { 18.7, 12.4 } };
+		for (int i = 0; i < vertices.length; i++) {
+			roi.addVertex(i, new RealPoint(vertices[i]));
+		}
+		assertMatchesRegion(overlay);
+	}
+
+	@Test
+	public void testBinaryMask() {
+		final long[] dims = { 20, 10 };
+		final NativeImg<BitType, ? extends BitAccess> img =
+			new ArrayImgFactory<BitType>().createBitInstance(dims, 1);
+		final BitType t = new BitType(img);
+		img.setLinkedType(t);
+		final Cursor<BitType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			final long x = c.getLongPosition(0), y = c.getLongPosition(1);
+			c.get().set((7 * x + y) % 3 != 0);
+		}
+		final BinaryMaskRegionOfInterest<BitType, Img<BitType>> roi =
+			new BinaryMaskRegionOfInterest<BitType, Img<BitType>>(img);
+		roi.move(new double[] { 5, 7 });
+		final Context context = new Context();
+		final BinaryMaskOverlay<BitType, Img<BitType>> overlay =
+			new BinaryMaskOverlay<BitType, Img<BitType>>(context, roi);
+		assertMatchesRegion(overlay);
+		context.dispose();
+	}
+
+	// -- Helper methods --
+
+	private void assertMatchesRegion(final Overlay overlay) {
+		final OverlayRasterizer rasterizer = OverlayRasterizer.create(overlay);
+		assertNotNull(rasterizer);
+		final boolean[][] filled = new boolean[SIZE][SIZE];
+		final boolean[][] outlined = new boolean[SIZE][SIZE];
+		rasterizer.fill(0, 0, SIZE - 1, SIZE - 1, marker(filled));
+		rasterizer.outline(0, 0, SIZE - 1, SIZE - 1, marker(outlined));
+		final RegionOfInterest roi = overlay.getRegionOfInterest();
+		final RealRandomAccess<BitType> access = roi.realRandomAccess();
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				final boolean member = contains(access, x, y);
+				final boolean border = member && isBorder(access, x, y);
+				final String where = x + "," + y;
+				assertEquals("fill at " + where, member, filled[y][x]);
+				assertEquals("outline at " + where, border, outlined[y][x]);
+			}
+		}
+	}
+
+	private boolean isBorder(final RealRandomAccess<BitType> access,
+		final long x, final long y)
+	{
+		if (x == 0 || y == 0) return true;
+		if (!contains(access, x - 1, y)) return true;
+		if (!contains(access, x + 1, y)) return true;
+		if (!contains(access, x, y - 1)) return true;
+		return !contains(access, x, y + 1);
+	}
+
+	private boolean contains(final RealRandomAccess<BitType> access,
+		final long x, final long y)
+	{
+		access.setPosition(x, 0);
+		access.setPosition(y, 1);
+		return access.get().get();
+	}
+
+	private OverlayRasterizer.SpanHandler marker(final boolean[][] pixels) {
+		return new OverlayRasterizer.SpanHandler() {
+
+			@Override
+			public void span(final long x1, final long x2, final long y) {
+				for (long x = x1; x <= x2; x++) {
+					pixels[(int) y][(int) x] = true;
+				}
+			}
+		};
+	}
+
+}
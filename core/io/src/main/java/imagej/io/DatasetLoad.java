@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.io;
+
+import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.io.ImgIOException;
+
+/**
+ * A handle on a {@link Dataset} being loaded in the background, as started by
+ * {@link IOService#loadDatasetAsync(String)}. The dataset becomes available
+ * from {@link #getDataset()} as soon as its dimensions and type are known,
+ * and can be displayed right away; its planes fill in as they are read, each
+ * batch announced by a {@link Dataset#update(net.imglib2.Interval)}.
+ * {@link #get()} waits for the whole image.
+ * 
+ * @author Curtis Rueden
+ */
+public class DatasetLoad implements Future<Dataset> {
+
+	private final String source;
+
+	private final CountDownLatch opened = new CountDownLatch(1);
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private volatile Dataset dataset;
+	private volatile Throwable failure;
+	private volatile boolean cancelled;
+
+	private volatile int progress;
+	private volatile int progressMaximum;
+
+	DatasetLoad(final String source) {
+		this.source = source;
+	}
+
+	// -- DatasetLoad methods --
+
+	/** Gets the source (such as a file on disk) being loaded. */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Waits until the dimensions and type of the image are known and returns
+	 * its dataset, whose planes may still be loading.
+	 * 
+	 * @throws CancellationException if the load was cancelled first
+	 */
+	public Dataset getDataset() throws ImgIOException,
+		IncompatibleTypeException, InterruptedException
+	{
+		opened.await();
+		if (dataset != null) return dataset;
+		if (cancelled) throw new CancellationException();
+		if (failure instanceof ImgIOException) throw (ImgIOException) failure;
+		if (failure instanceof IncompatibleTypeException) {
+			throw (IncompatibleTypeException) failure;
+		}
+		throw new ImgIOException(failure);
+	}
+
+	/** Gets how far the load has progressed, out of {@link #getMaximum()}. */
+	public int getProgress() {
+		return progress;
+	}
+
+	/** Gets the progress value at which the load is complete. */
+	public int getMaximum() {
+		return progressMaximum;
+	}
+
+	// -- Future methods --
+
+	/**
+	 * Stops loading after the plane being read. The dataset keeps the planes
+	 * read so far. Returns false if the load had already finished.
+	 */
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		if (isDone()) return false;
+		cancelled = true;
+		opened.countDown();
+		finished.countDown();
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return finished.getCount() == 0;
+	}
+
+	@Override
+	public Dataset get() throws InterruptedException, ExecutionException {
+		finished.await();
+		return result();
+	}
+
+	@Override
+	public Dataset get(final long timeout, final TimeUnit unit)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if (!finished.await(timeout, unit)) throw new TimeoutException();
+		return result();
+	}
+
+	// -- Internal methods --
+
+	/** Gets the dataset without waiting, or null if not created yet. */
+	Dataset openedDataset() {
+		return dataset;
+	}
+
+	/** Called once the image is allocated and its dataset created. */
+	void opened(final Dataset ds) {
+		dataset = ds;
+		opened.countDown();
+	}
+
+	/**
+	 * Called as planes are read. Throws {@link CancellationException} to abort
+	 * the reading if the load was cancelled.
+	 */
+	void progress(final int value, final int maximum) {
+		if (cancelled) throw new CancellationException();
+		progress = value;
+		progressMaximum = maximum;
+		final Dataset ds = dataset;
+		// NB - plane n is announced just before it is read
+		if (ds != null && value > 0) {
+			ds.update(planeRegion(ds, value - 1, maximum));
+		}
+	}
+
+	/** Called when the whole image has been read. */
+	void finished() {
+		progress = progressMaximum;
+		opened.countDown();
+		finished.countDown();
+	}
+
+	/** Called when reading the image failed. */
+	void failed(final Throwable t) {
+		failure = t;
+		opened.countDown();
+		finished.countDown();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the region of the given plane of a dataset, which the opener reads
+	 * in raster order, or the whole image if the opener's progress does not
+	 * count planes.
+	 */
+	private Interval planeRegion(final Dataset ds, final long plane,
+		final long planeCount)
+	{
+		final long[] dims = ds.getDims();
+		long count = 1;
+		for (int d = 2; d < dims.length; d++)
+			count *= dims[d];
+		if (dims.length < 2 || count != planeCount) return ds.getImgPlus();
+		final long[] min = new long[dims.length];
+		PlaneAccess.planePosition(dims, plane, min);
+		final long[] max = min.clone();
+		max[0] = dims[0] - 1;
+		max[1] = dims[1] - 1;
+		return new FinalInterval(min, max);
+	}
+
+	private Dataset result() throws ExecutionException {
+		if (cancelled) throw new CancellationException();
+		if (failure != null) throw new ExecutionException(failure);
+		return dataset;
+	}
+
+}
@@ -37,21 +37,34 @@
 
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
+import imagej.data.access.MappedImgFactory;
+import imagej.data.access.SharedPlanes;
 import imagej.io.event.FileOpenedEvent;
 import imagej.module.ModuleService;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+
 import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.io.ImgIOException;
 import net.imglib2.io.ImgOpener;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import ome.scifio.common.StatusEvent;
+import ome.scifio.common.StatusListener;
 
 import org.scijava.app.StatusService;
 import org.scijava.event.EventService;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
 
 /**
  * Default service that provides I/O convenience methods.
@@ -78,6 +91,12 @@
 	@Parameter
 	private DatasetService datasetService;
 
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
 	// -- IOService methods --
 
 	@Override
@@ -115,11 +134,32 @@ public Dataset loadDataset(final String source) throws ImgIOException,
 		final ImgPlus<T> imgPlus = (ImgPlus<T>) imageOpener.openImg(source);
 		*/
 		final ImgPlus<T> imgPlus = imageOpener.openImg(source);
+		// the opener is done with the planes it read
+		SharedPlanes.makeShareable(imgPlus);
 		final Dataset dataset = datasetService.create(imgPlus);
 		eventService.publish(new FileOpenedEvent(source));
 		return dataset;
 	}
 
+	@Override
+	public DatasetLoad loadDatasetAsync(final String source) {
+		return loadDatasetAsync(source, null);
+	}
+
+	@Override
+	public DatasetLoad loadDatasetAsync(final String source, final File storage)
+	{
+		final DatasetLoad load = new DatasetLoad(source);
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				load(load, storage);
+			}
+		});
+		return load;
+	}
+
 	@Override
 	public void revertDataset(final Dataset dataset) throws ImgIOException,
 		IncompatibleTypeException
@@ -130,4 +170,94 @@ public void revertDataset(final Dataset dataset) throws ImgIOException,
 		revertedDataset.copyInto(dataset);
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Reads the source of the given load. Its dataset is created as soon as the
+	 * image is allocated, and the image's metadata is applied once all planes
+	 * have been read. If a storage file is given, the planes are mapped from
+	 * it.
+	 */
+	private void load(final DatasetLoad load, final File storage) {
+		final String source = load.getSource();
+		try {
+			final ImgOpener imageOpener = new ImgOpener();
+			imageOpener.addStatusListener(new StatusDispatcher(statusService));
+			imageOpener.addStatusListener(new StatusListener() {
+
+				@Override
+				public void statusUpdated(final StatusEvent e) {
+					load.progress(e.getProgressValue(), e.getProgressMaximum());
+				}
+			});
+			final ImgPlus<T> imgPlus =
+				imageOpener.openImg(source, new LoadingImgFactory(load,
+					storage));
+			if (load.isCancelled()) throw new CancellationException();
+			Dataset dataset = load.openedDataset();
+			if (dataset == null) {
+				// the opener did not allocate through our factory
+				dataset = datasetService.create(imgPlus);
+				load.opened(dataset);
+			}
+			else dataset.setImgPlus(imgPlus);
+			dataset.update();
+			eventService.publish(new FileOpenedEvent(source));
+			load.finished();
+		}
+		catch (final Throwable t) {
+			if (load.isCancelled()) {
+				statusService.showStatus("Loading cancelled: " + source);
+				return;
+			}
+			log.error("Cannot load " + source, t);
+			load.failed(t);
+		}
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Allocates planar images and, for the first one (the image being read),
+	 * creates the dataset of the given load before any plane is read.
+	 */
+	private class LoadingImgFactory extends ImgFactory<T> {
+
+		private final DatasetLoad load;
+		private final PlanarImgFactory<T> factory;
+
+		public LoadingImgFactory(final DatasetLoad load, final File storage) {
+			this.load = load;
+			factory =
+				storage == null ? new PlanarImgFactory<T>()
+					: new MappedImgFactory<T>(storage);
+		}
+
+		@Override
+		public Img<T> create(final long[] dim, final T type) {
+			final Img<T> img = factory.create(dim, type);
+			if (load.openedDataset() == null) {
+				final Dataset dataset =
+					datasetService.create(new ImgPlus<T>(img));
+				dataset.setName(new File(load.getSource()).getName());
+				load.opened(dataset);
+			}
+			return img;
+		}
+
+		@Override
+		public <S> ImgFactory<S> imgFactory(final S type)
+			throws IncompatibleTypeException
+		{
+			if (!(type instanceof NativeType)) {
+				throw new IncompatibleTypeException(this, type.getClass()
+					.getCanonicalName() +
+					" does not implement NativeType.");
+			}
+			@SuppressWarnings({ "rawtypes", "unchecked" })
+			final ImgFactory<S> factory = (ImgFactory) this;
+			return factory;
+		}
+	}
+
 }
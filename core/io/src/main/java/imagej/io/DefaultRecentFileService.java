@@ -204,6 +204,8 @@ private ModuleInfo createInfo(final String path) {
 		// hard code path to open as a preset
 		final HashMap<String, Object> presets = new HashMap<String, Object>();
 		presets.put("inputFile", path);
+		// display the image while it is read, as File > Open does
+		presets.put("background", true);
 		info.setPresets(presets);
 
 		// set menu path
@@ -38,6 +38,9 @@
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
 import imagej.module.ModuleService;
+
+import java.io.File;
+
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.io.ImgIOException;
 
@@ -64,6 +67,23 @@ public interface IOService extends Service {
 	Dataset loadDataset(String source) throws ImgIOException,
 		IncompatibleTypeException;
 
+	/**
+	 * Starts loading a dataset from a source (such as a file on disk) in the
+	 * background. The dataset is available from the returned handle as soon as
+	 * the image's dimensions and type are known; its planes are filled in as
+	 * they are read, and the load can be cancelled.
+	 */
+	DatasetLoad loadDatasetAsync(String source);
+
+	/**
+	 * Starts loading a dataset from a source in the background, like
+	 * {@link #loadDatasetAsync(String)}, but stores its planes in the given
+	 * file (memory-mapped) rather than on the heap. This allows opening images
+	 * larger than the available memory. If the storage file is null, the planes
+	 * are stored on the heap.
+	 */
+	DatasetLoad loadDatasetAsync(String source, File storage);
+
 	/** Reverts the given dataset to its original source. */
 	void revertDataset(Dataset dataset) throws ImgIOException,
 		IncompatibleTypeException;
@@ -47,6 +47,7 @@
 import imagej.legacy.translate.Harmonizer;
 import imagej.legacy.translate.ImageTranslator;
 import imagej.legacy.translate.LegacyUtils;
+import imagej.legacy.translate.PlaneChangeTracker;
 import imagej.ui.UIService;
 import imagej.ui.viewer.DisplayWindow;
 import imagej.ui.viewer.image.ImageDisplayViewer;
@@ -113,6 +114,12 @@ public class LegacyImageMap extends AbstractContextual {
 	 */
 	private final DefaultLegacyService legacyService;
 
+	/**
+	 * Which planes of each {@link ImagePlus} are in sync with its
+	 * {@link Dataset}, kept across legacy commands.
+	 */
+	private final PlaneChangeTracker planeChangeTracker;
+
 	// -- Constructor --
 
 	public LegacyImageMap(final DefaultLegacyService legacyService) {
@@ -121,10 +128,19 @@ public LegacyImageMap(final DefaultLegacyService legacyService) {
 		imagePlusTable = new ConcurrentHashMap<ImageDisplay, ImagePlus>();
 		displayTable = new ConcurrentHashMap<ImagePlus, ImageDisplay>();
 		imageTranslator = new DefaultImageTranslator(legacyService);
+		planeChangeTracker = new PlaneChangeTracker();
 	}
 
 	// -- LegacyImageMap methods --
 
+	/**
+	 * Gets the sync state of the planes of the mapped {@link ImagePlus}es,
+	 * shared by the {@link Harmonizer}s of all legacy commands.
+	 */
+	public PlaneChangeTracker getPlaneChangeTracker() {
+		return planeChangeTracker;
+	}
+
 	/**
 	 * Gets the {@link ImageDisplay} corresponding to the given {@link ImagePlus},
 	 * or null if there is no existing table entry.
@@ -165,7 +181,7 @@ public ImagePlus registerDisplay(final ImageDisplay display) {
 
 	public synchronized void toggleLegacyMode(boolean toggle) {
 		final Harmonizer harmonizer =
-			new Harmonizer(legacyService, imageTranslator);
+			new Harmonizer(legacyService, imageTranslator, planeChangeTracker);
 		if (toggle) {
 			// make sure that all ImageDisplays have a corresponding ImagePlus
 			final ImageDisplayService imageDisplayService =
@@ -303,6 +319,7 @@ private void removeMapping(final ImageDisplay display, final ImagePlus imp) {
 		}
 		if (imp != null) {
 			displayTable.remove(imp);
+			planeChangeTracker.forget(imp);
 			LegacyUtils.deleteImagePlus(imp);
 		}
 	}
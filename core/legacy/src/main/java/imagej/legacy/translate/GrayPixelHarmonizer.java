@@ -39,6 +39,9 @@
 import ij.ImageStack;
 import ij.process.ImageProcessor;
 import imagej.data.Dataset;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
 import net.imglib2.RandomAccess;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
@@ -51,11 +54,41 @@
  * {@link Dataset}s. Single channel color {@link ImagePlus}es are not supported
  * here. But multichannel color {@link ImagePlus}es are handled and treated as
  * gray data.
+ * <p>
+ * When the Dataset's planes are XY planes backed by primitive arrays (planar or
+ * array images) whole planes are transferred between the primitive arrays of
+ * both sides one row at a time, and planes are converted in parallel. Other
+ * Datasets are updated through a RandomAccess that walks each row. Given a
+ * {@link PlaneChangeTracker}, planes that are still in sync since the last
+ * update are skipped.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class GrayPixelHarmonizer implements DataHarmonizer {
 
+	// -- instance variables --
+
+	private final PlaneChangeTracker tracker;
+
+	// -- constructors --
+
+	/** Creates a harmonizer that always copies every plane. */
+	public GrayPixelHarmonizer() {
+		this(null);
+	}
+
+	/**
+	 * Creates a harmonizer that skips planes the given {@link PlaneChangeTracker}
+	 * knows to be in sync already. Only Datasets with direct plane access are
+	 * tracked.
+	 */
+	public GrayPixelHarmonizer(final PlaneChangeTracker tracker) {
+		this.tracker = tracker;
+	}
+
+	// -- public interface --
+
 	/**
 	 * Assigns the data values of a {@link Dataset} from a paired
 	 * {@link ImagePlus}. Assumes the Dataset and ImagePlus have compatible
@@ -69,46 +102,40 @@ public void updateDataset(final Dataset ds, final ImagePlus imp) {
 		final RealType<?> type = ds.getType();
 		final double typeMin = type.getMinValue();
 		final double typeMax = type.getMaxValue();
-		final boolean signed16BitData = type instanceof ShortType;
-		final RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
-		final long[] dims = ds.getDims();
-		final AxisType[] axes = ds.getAxes();
-		final int xIndex = ds.getAxisIndex(Axes.X);
-		final int yIndex = ds.getAxisIndex(Axes.Y);
-		final int zIndex = ds.getAxisIndex(Axes.Z);
-		final int tIndex = ds.getAxisIndex(Axes.TIME);
-		final int xSize = imp.getWidth();
-		final int ySize = imp.getHeight();
-		final int zSize = imp.getNSlices();
-		final int tSize = imp.getNFrames();
-		final int cSize = imp.getNChannels();
+		final double offset = (type instanceof ShortType) ? -32768.0 : 0;
 		final ImageStack stack = imp.getStack();
-		int planeNum = 1;
-		final long[] pos = new long[dims.length];
-		for (int t = 0; t < tSize; t++) {
-			if (tIndex >= 0) pos[tIndex] = t;
-			for (int z = 0; z < zSize; z++) {
-				if (zIndex >= 0) pos[zIndex] = z;
-				for (int c = 0; c < cSize; c++) {
-					LegacyUtils.fillChannelIndices(dims, axes, c, pos);
-					final ImageProcessor proc = stack.getProcessor(planeNum++);
-					for (int x = 0; x < xSize; x++) {
-						if (xIndex >= 0) pos[xIndex] = x;
-						for (int y = 0; y < ySize; y++) {
-							if (yIndex >= 0) pos[yIndex] = y;
-							accessor.setPosition(pos);
-							double value = proc.getf(x, y);
-							if (signed16BitData) value -= 32768.0;
-							if (value < typeMin) value = typeMin;
-							else if (value > typeMax) value = typeMax;
-							accessor.get().setReal(value);
-						}
+		final long[][] planePositions = planePositions(ds, imp);
+		final PlaneAccess planes = planeAccess(ds, imp);
+		final PlaneChangeTracker.Planes syncState =
+			syncState(ds, imp, planes, planePositions.length);
+		final boolean[] copied = new boolean[planePositions.length];
+		ParallelLoop.run(planePositions.length, threadCount(ds, stack),
+			new ParallelLoop.Body() {
+
+				@Override
+				public void run(final int p) {
+					final ImageProcessor proc = stack.getProcessor(p + 1);
+					if (planes == null) {
+						updateDatasetPlane(ds, proc, planePositions[p], offset, typeMin,
+							typeMax);
+						copied[p] = true;
+						return;
 					}
+					final long[] dims = planes.getDims();
+					final int planeNum =
+						(int) PlaneAccess.planeIndex(dims, planePositions[p]);
+					final RealArray plane = planes.getPlane(planeNum);
+					copied[p] =
+						updateDatasetPlane(syncState, p, plane, proc, offset,
+							typeMin, typeMax);
 				}
+			});
+		for (final boolean c : copied) {
+			if (c) {
+				ds.update();
+				break;
 			}
 		}
-		ds.update();
 	}
 
 	/**
@@ -123,23 +150,49 @@ public void updateDataset(final Dataset ds, final ImagePlus imp) {
 	@Override
 	public void updateLegacyImage(final Dataset ds, final ImagePlus imp) {
 		final RealType<?> type = ds.getType();
-		final boolean signed16BitData = type instanceof ShortType;
+		final double offset = (type instanceof ShortType) ? 32768.0 : 0;
 		final boolean bitData = type instanceof BitType;
-		final RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
+		final ImageStack stack = imp.getStack();
+		final long[][] planePositions = planePositions(ds, imp);
+		final PlaneAccess planes = planeAccess(ds, imp);
+		final PlaneChangeTracker.Planes syncState =
+			syncState(ds, imp, planes, planePositions.length);
+		ParallelLoop.run(planePositions.length, threadCount(ds, stack),
+			new ParallelLoop.Body() {
+
+				@Override
+				public void run(final int p) {
+					final ImageProcessor proc = stack.getProcessor(p + 1);
+					if (planes == null) {
+						updateLegacyPlane(ds, proc, planePositions[p], offset, bitData);
+					}
+					else {
+						final int planeNum =
+							(int) PlaneAccess.planeIndex(planes.getDims(), planePositions[p]);
+						final RealArray plane =
+							planes.getPlaneForReading(planeNum);
+						updateLegacyPlane(syncState, p, plane, proc, offset);
+					}
+				}
+			});
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Returns the Dataset position of the origin of each ImagePlus plane, in
+	 * ImageStack order.
+	 */
+	private long[][] planePositions(final Dataset ds, final ImagePlus imp) {
 		final long[] dims = ds.getDims();
 		final AxisType[] axes = ds.getAxes();
-		final int xIndex = ds.getAxisIndex(Axes.X);
-		final int yIndex = ds.getAxisIndex(Axes.Y);
 		final int zIndex = ds.getAxisIndex(Axes.Z);
 		final int tIndex = ds.getAxisIndex(Axes.TIME);
-		final int xSize = imp.getWidth();
-		final int ySize = imp.getHeight();
 		final int zSize = imp.getNSlices();
 		final int tSize = imp.getNFrames();
 		final int cSize = imp.getNChannels();
-		final ImageStack stack = imp.getStack();
-		int planeNum = 1;
+		final long[][] positions = new long[tSize * zSize * cSize][];
+		int planeNum = 0;
 		final long[] pos = new long[dims.length];
 		for (int t = 0; t < tSize; t++) {
 			if (tIndex >= 0) pos[tIndex] = t;
@@ -147,21 +200,213 @@ public void updateLegacyImage(final Dataset ds, final ImagePlus imp) {
 				if (zIndex >= 0) pos[zIndex] = z;
 				for (int c = 0; c < cSize; c++) {
 					LegacyUtils.fillChannelIndices(dims, axes, c, pos);
-					final ImageProcessor proc = stack.getProcessor(planeNum++);
-					for (int x = 0; x < xSize; x++) {
-						if (xIndex >= 0) pos[xIndex] = x;
-						for (int y = 0; y < ySize; y++) {
-							if (yIndex >= 0) pos[yIndex] = y;
-							accessor.setPosition(pos);
-							double value = accessor.get().getRealDouble();
-							if (signed16BitData) value += 32768.0;
-							else if (bitData) if (value > 0) value = 255;
-							proc.setf(x, y, (float)value);
-						}
-					}
+					positions[planeNum++] = pos.clone();
 				}
 			}
 		}
+		return positions;
+	}
+
+	/**
+	 * Returns direct access to the Dataset's planes if they line up with the
+	 * ImagePlus' planes (X and Y are the first two axes and sizes agree), or
+	 * null otherwise.
+	 */
+	private PlaneAccess planeAccess(final Dataset ds, final ImagePlus imp) {
+		if (ds.getAxisIndex(Axes.X) != 0) return null;
+		if (ds.getAxisIndex(Axes.Y) != 1) return null;
+		final PlaneAccess planes = PlaneAccess.create(ds);
+		if (planes == null) return null;
+		if (planes.getPlaneWidth() != imp.getWidth()) return null;
+		if (planes.getPlaneHeight() != imp.getHeight()) return null;
+		return planes;
+	}
+
+	/**
+	 * Returns the tracked sync state of the pairing's planes, or null if planes
+	 * are not tracked for it.
+	 */
+	private PlaneChangeTracker.Planes syncState(final Dataset ds,
+		final ImagePlus imp, final PlaneAccess planes, final int planeCount)
+	{
+		if (tracker == null || planes == null) return null;
+		// NB - virtual stack planes are reloaded on every access; nothing to gain
+		if (imp.getStack().isVirtual()) return null;
+		return tracker.getPlanes(ds, imp, planeCount);
+	}
+
+	private int threadCount(final Dataset ds, final ImageStack stack) {
+		// NB - virtual stacks load and cache planes in ways that are not safe to
+		// use from several threads
+		if (stack.isVirtual()) return 1;
+		// NB - samples smaller than a byte share storage words with their
+		// neighbors so concurrent writes to different planes could collide
+		if (ds.getType().getBitsPerPixel() % 8 != 0) return 1;
+		return ParallelLoop.defaultThreadCount();
+	}
+
+	/**
+	 * Copies one legacy plane into a primitive Dataset plane unless the given
+	 * sync state (if any) knows them to be in sync. The legacy pixels, which
+	 * are not changed by the copy, are fingerprinted only once. Returns true if
+	 * the plane was copied.
+	 */
+	private boolean updateDatasetPlane(
+		final PlaneChangeTracker.Planes syncState, final int p,
+		final RealArray plane, final ImageProcessor proc, final double offset,
+		final double typeMin, final double typeMax)
+	{
+		if (syncState == null) {
+			updateDatasetPlane(plane, proc, offset, typeMin, typeMax);
+			return true;
+		}
+		final long legacyPrint =
+			PlaneChangeTracker.fingerprint(proc.getPixels());
+		if (syncState.isUnchanged(p, legacyPrint, plane)) return false;
+		updateDatasetPlane(plane, proc, offset, typeMin, typeMax);
+		syncState.record(p, legacyPrint, PlaneChangeTracker.fingerprint(plane));
+		return true;
+	}
+
+	/**
+	 * Copies one primitive Dataset plane into a legacy plane unless the given
+	 * sync state (if any) knows them to be in sync. The Dataset plane, which is
+	 * not changed by the copy, is fingerprinted only once.
+	 */
+	private void updateLegacyPlane(final PlaneChangeTracker.Planes syncState,
+		final int p, final RealArray plane, final ImageProcessor proc,
+		final double offset)
+	{
+		if (syncState == null) {
+			updateLegacyPlane(plane, proc, offset);
+			return;
+		}
+		final long datasetPrint = PlaneChangeTracker.fingerprint(plane);
+		final Object pixels = proc.getPixels();
+		if (syncState.isUnchanged(p, pixels, datasetPrint)) return;
+		updateLegacyPlane(plane, proc, offset);
+		final long legacyPrint = PlaneChangeTracker.fingerprint(pixels);
+		syncState.record(p, legacyPrint, datasetPrint);
+	}
+
+	/** Copies one legacy plane into a primitive Dataset plane. */
+	private void updateDatasetPlane(final RealArray plane,
+		final ImageProcessor proc, final double offset, final double typeMin,
+		final double typeMax)
+	{
+		final int w = proc.getWidth();
+		final int h = proc.getHeight();
+		final Object pixels = proc.getPixels();
+		final double[] row = new double[w];
+		for (int y = 0; y < h; y++) {
+			final int rowStart = y * w;
+			if (pixels instanceof byte[]) {
+				final byte[] src = (byte[]) pixels;
+				for (int x = 0; x < w; x++)
+					row[x] = src[rowStart + x] & 0xff;
+			}
+			else if (pixels instanceof short[]) {
+				final short[] src = (short[]) pixels;
+				for (int x = 0; x < w; x++)
+					row[x] = src[rowStart + x] & 0xffff;
+			}
+			else if (pixels instanceof float[]) {
+				final float[] src = (float[]) pixels;
+				for (int x = 0; x < w; x++)
+					row[x] = src[rowStart + x];
+			}
+			else {
+				for (int x = 0; x < w; x++)
+					row[x] = proc.getf(x, y);
+			}
+			for (int x = 0; x < w; x++) {
+				final double value = row[x] + offset;
+				row[x] = Math.max(typeMin, Math.min(typeMax, value));
+			}
+			plane.set(rowStart, row, 0, w);
+		}
+	}
+
+	/** Copies one legacy plane into a Dataset via a RandomAccess. */
+	private void updateDatasetPlane(final Dataset ds, final ImageProcessor proc,
+		final long[] planePos, final double offset, final double typeMin,
+		final double typeMax)
+	{
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		final int xIndex = ds.getAxisIndex(Axes.X);
+		final int yIndex = ds.getAxisIndex(Axes.Y);
+		final long[] pos = planePos.clone();
+		final int xSize = proc.getWidth();
+		final int ySize = proc.getHeight();
+		for (int y = 0; y < ySize; y++) {
+			if (yIndex >= 0) pos[yIndex] = y;
+			for (int x = 0; x < xSize; x++) {
+				if (xIndex >= 0) pos[xIndex] = x;
+				accessor.setPosition(pos);
+				double value = proc.getf(x, y) + offset;
+				if (value < typeMin) value = typeMin;
+				else if (value > typeMax) value = typeMax;
+				accessor.get().setReal(value);
+			}
+		}
+	}
+
+	/** Copies a primitive Dataset plane into one legacy plane. */
+	private void updateLegacyPlane(final RealArray plane,
+		final ImageProcessor proc, final double offset)
+	{
+		final int w = proc.getWidth();
+		final int h = proc.getHeight();
+		final Object pixels = proc.getPixels();
+		final double[] row = new double[w];
+		for (int y = 0; y < h; y++) {
+			final int rowStart = y * w;
+			plane.get(rowStart, row, 0, w);
+			// NB - the casts below mirror what each processor's setf() does
+			if (pixels instanceof byte[]) {
+				final byte[] dest = (byte[]) pixels;
+				for (int x = 0; x < w; x++)
+					dest[rowStart + x] = (byte) (float) (row[x] + offset);
+			}
+			else if (pixels instanceof short[]) {
+				final short[] dest = (short[]) pixels;
+				for (int x = 0; x < w; x++)
+					dest[rowStart + x] = (short) (float) (row[x] + offset);
+			}
+			else if (pixels instanceof float[]) {
+				final float[] dest = (float[]) pixels;
+				for (int x = 0; x < w; x++)
+					dest[rowStart + x] = (float) (row[x] + offset);
+			}
+			else {
+				for (int x = 0; x < w; x++)
+					proc.setf(x, y, (float) (row[x] + offset));
+			}
+		}
+	}
+
+	/** Copies a Dataset plane into one legacy plane via a RandomAccess. */
+	private void updateLegacyPlane(final Dataset ds, final ImageProcessor proc,
+		final long[] planePos, final double offset, final boolean bitData)
+	{
+		final RandomAccess<? extends RealType<?>> accessor =
+			ds.getImgPlus().randomAccess();
+		final int xIndex = ds.getAxisIndex(Axes.X);
+		final int yIndex = ds.getAxisIndex(Axes.Y);
+		final long[] pos = planePos.clone();
+		final int xSize = proc.getWidth();
+		final int ySize = proc.getHeight();
+		for (int y = 0; y < ySize; y++) {
+			if (yIndex >= 0) pos[yIndex] = y;
+			for (int x = 0; x < xSize; x++) {
+				if (xIndex >= 0) pos[xIndex] = x;
+				accessor.setPosition(pos);
+				double value = accessor.get().getRealDouble() + offset;
+				if (bitData) if (value > 0) value = 255;
+				proc.setf(x, y, (float) value);
+			}
+		}
 	}
 
 }
@@ -67,6 +67,7 @@ public class Harmonizer {
 
 	private final ImageTranslator imageTranslator;
 	private final Map<ImagePlus, Integer> bitDepthMap;
+	private final PlaneChangeTracker planeChangeTracker;
 
 	private final GrayPixelHarmonizer grayPixelHarmonizer;
 	private final ColorPixelHarmonizer colorPixelHarmonizer;
@@ -80,17 +81,30 @@ public class Harmonizer {
 
 	// -- constructor --
 
+	/**
+	 * Creates a harmonizer sharing the plane sync state of the legacy service's
+	 * image map, so that planes already in sync are skipped across commands.
+	 */
 	public Harmonizer(final LegacyService legSrv, final ImageTranslator trans) {
+		this(legSrv, trans, legSrv.getImageMap().getPlaneChangeTracker());
+	}
+
+	/** Creates a harmonizer keeping plane sync state in the given tracker. */
+	public Harmonizer(final LegacyService legSrv, final ImageTranslator trans,
+		final PlaneChangeTracker planeChangeTracker)
+	{
 		this.legSrv = legSrv;
 		imageTranslator = trans;
 		bitDepthMap = new HashMap<ImagePlus, Integer>();
-		grayPixelHarmonizer = new GrayPixelHarmonizer();
+		this.planeChangeTracker = planeChangeTracker;
+		grayPixelHarmonizer = new GrayPixelHarmonizer(planeChangeTracker);
 		colorPixelHarmonizer = new ColorPixelHarmonizer();
 		colorTableHarmonizer =
 			new ColorTableHarmonizer(legSrv.getImageDisplayService());
 		metadataHarmonizer = new MetadataHarmonizer();
 		compositeHarmonizer = new CompositeHarmonizer();
-		planeHarmonizer = new PlaneHarmonizer(legSrv.getLogService());
+		planeHarmonizer =
+			new PlaneHarmonizer(legSrv.getLogService(), planeChangeTracker);
 		overlayHarmonizer = new OverlayHarmonizer(legSrv);
 		positionHarmonizer = new PositionHarmonizer();
 		nameHarmonizer = new NameHarmonizer();
@@ -223,7 +237,8 @@ public void registerType(final ImagePlus imp) {
 
 	/**
 	 * Forgets the types of all {@link ImagePlus}es. Called before a plugin is run
-	 * to reset the tracking of types.
+	 * to reset the tracking of types. Which planes are in sync is remembered
+	 * across plugins.
 	 */
 	public void resetTypeTracking() {
 		bitDepthMap.clear();
@@ -351,6 +366,7 @@ private void rebuildImagePlusData(final ImageDisplay display,
 		final ImagePlus imp)
 	{
 		final ImagePlus newImp = imageTranslator.createLegacyImage(display);
+		planeChangeTracker.forget(imp);
 		imp.setStack(newImp.getStack());
 		final int c = newImp.getNChannels();
 		final int z = newImp.getNSlices();
@@ -379,6 +395,7 @@ private void rebuildDatasetData(final Dataset ds, final ImagePlus imp, boolean i
 			imageTranslator.createDisplay(imp, ds.getAxes(), isBinaryImp);
 		ImageDisplayService idSrv = legSrv.getImageDisplayService();
 		final Dataset tmpDs = idSrv.getActiveDataset(tmpDisplay);
+		planeChangeTracker.forget(imp);
 		ds.setImgPlus(tmpDs.getImgPlus());
 		ds.setRGBMerged(tmpDs.isRGBMerged());
 		tmpDisplay.close();
@@ -0,0 +1,240 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.legacy.translate;
+
+import ij.ImagePlus;
+import imagej.data.Dataset;
+import imagej.data.access.RealArray;
+
+import java.lang.reflect.Array;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers what the planes of {@link ImagePlus}/{@link Dataset} pairs looked
+ * like the last time they were synchronized. A plane whose legacy pixels and
+ * Dataset samples are both unchanged since then is already in sync and need
+ * not be copied again.
+ * <p>
+ * Planes are recognized by 64-bit fingerprints of their contents rather than by
+ * hooking pixel setters, since legacy plugins routinely write straight into the
+ * pixel arrays of their {@link ij.process.ImageProcessor}s.
+ * </p>
+ * <p>
+ * The state must outlive single commands for planes to be skipped at all, so
+ * the {@link imagej.legacy.LegacyImageMap} owns the tracker shared by every
+ * {@link Harmonizer}, and forgets an {@link ImagePlus} when its mapping is
+ * removed.
+ * </p>
+ */
+public class PlaneChangeTracker {
+
+	// -- constants --
+
+	private static final long PRIME = 0x100000001b3L;
+
+	// -- instance variables --
+
+	private final Map<ImagePlus, Planes> planesMap =
+		new WeakHashMap<ImagePlus, Planes>();
+
+	// -- public interface --
+
+	/**
+	 * Gets the sync state of the planes of a given {@link ImagePlus}/
+	 * {@link Dataset} pairing. Any previous state is discarded if the pairing,
+	 * the Dataset's data or the plane count changed since it was recorded.
+	 */
+	public synchronized Planes getPlanes(final Dataset ds, final ImagePlus imp,
+		final int planeCount)
+	{
+		Planes planes = planesMap.get(imp);
+		if (planes == null || !planes.matches(ds, planeCount)) {
+			planes = new Planes(ds, planeCount);
+			planesMap.put(imp, planes);
+		}
+		return planes;
+	}
+
+	/** Forgets the sync state of a given {@link ImagePlus}. */
+	public synchronized void forget(final ImagePlus imp) {
+		planesMap.remove(imp);
+	}
+
+	/** Forgets the sync state of all {@link ImagePlus}es. */
+	public synchronized void clear() {
+		planesMap.clear();
+	}
+
+	/**
+	 * Computes a fingerprint of a region of a primitive array. Only the raw bits
+	 * of each element contribute, so any change of value changes the result
+	 * with overwhelming probability.
+	 */
+	public static long fingerprint(final Object array, final int offset,
+		final int length)
+	{
+		long h = 0xcbf29ce484222325L ^ length;
+		final int end = offset + length;
+		if (array instanceof byte[]) {
+			final byte[] a = (byte[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ a[i]) * PRIME;
+		}
+		else if (array instanceof short[]) {
+			final short[] a = (short[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ a[i]) * PRIME;
+		}
+		else if (array instanceof int[]) {
+			final int[] a = (int[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ a[i]) * PRIME;
+		}
+		else if (array instanceof long[]) {
+			final long[] a = (long[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ a[i]) * PRIME;
+		}
+		else if (array instanceof float[]) {
+			final float[] a = (float[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ Float.floatToRawIntBits(a[i])) * PRIME;
+		}
+		else if (array instanceof double[]) {
+			final double[] a = (double[]) array;
+			for (int i = offset; i < end; i++)
+				h = (h ^ Double.doubleToRawLongBits(a[i])) * PRIME;
+		}
+		else {
+			throw new IllegalArgumentException("unsupported array type: " +
+				(array == null ? null : array.getClass()));
+		}
+		// final avalanche so that nearby inputs spread across all the bits
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/** Computes a fingerprint of a whole primitive array. */
+	public static long fingerprint(final Object array) {
+		return fingerprint(array, 0, Array.getLength(array));
+	}
+
+	/** Computes a fingerprint of the samples of a Dataset plane. */
+	public static long fingerprint(final RealArray plane) {
+		return fingerprint(plane.getStorageArray(), plane.offset(), plane.size());
+	}
+
+	// -- helper classes --
+
+	/**
+	 * The sync state of the planes of one {@link ImagePlus}/{@link Dataset}
+	 * pairing. Planes are indexed as in the ImageStack, starting at 0. Distinct
+	 * planes may be queried and recorded from different threads.
+	 */
+	public static class Planes {
+
+		private final Dataset ds;
+		private final Object img;
+		private final boolean[] known;
+		private final long[] legacyPrints;
+		private final long[] datasetPrints;
+
+		private Planes(final Dataset ds, final int planeCount) {
+			this.ds = ds;
+			this.img = ds.getImgPlus().getImg();
+			known = new boolean[planeCount];
+			legacyPrints = new long[planeCount];
+			datasetPrints = new long[planeCount];
+		}
+
+		/**
+		 * Returns true if neither side of a plane changed since it was last
+		 * recorded as synchronized, given the fingerprint of its legacy pixels
+		 * (the source when updating the Dataset). The Dataset plane is only
+		 * fingerprinted if the legacy side is unchanged.
+		 */
+		public boolean isUnchanged(final int p, final long legacyPrint,
+			final RealArray plane)
+		{
+			if (!known[p] || legacyPrint != legacyPrints[p]) return false;
+			return fingerprint(plane) == datasetPrints[p];
+		}
+
+		/**
+		 * Returns true if neither side of a plane changed since it was last
+		 * recorded as synchronized, given the fingerprint of its Dataset
+		 * samples (the source when updating the legacy image). The legacy
+		 * pixels are only fingerprinted if the Dataset side is unchanged.
+		 */
+		public boolean isUnchanged(final int p, final Object legacyPixels,
+			final long datasetPrint)
+		{
+			if (!known[p] || datasetPrint != datasetPrints[p]) return false;
+			return fingerprint(legacyPixels) == legacyPrints[p];
+		}
+
+		/**
+		 * Returns true if a plane whose pixels are shared by both sides did not
+		 * change since it was last recorded, given the fingerprint of the
+		 * pixels.
+		 */
+		public boolean isUnchanged(final int p, final long sharedPrint) {
+			return known[p] && sharedPrint == legacyPrints[p] &&
+				sharedPrint == datasetPrints[p];
+		}
+
+		/**
+		 * Records that a plane is now synchronized on both sides, given the
+		 * fingerprints of both sides.
+		 */
+		public void record(final int p, final long legacyPrint,
+			final long datasetPrint)
+		{
+			legacyPrints[p] = legacyPrint;
+			datasetPrints[p] = datasetPrint;
+			known[p] = true;
+		}
+
+		private boolean matches(final Dataset dataset, final int planeCount) {
+			return ds == dataset && img == dataset.getImgPlus().getImg() &&
+				known.length == planeCount;
+		}
+	}
+
+}
@@ -48,21 +48,41 @@
  * Synchronizes internal plane reference values between a {@link Dataset} and an
  * {@link ImagePlus}. After synchronization each one of them will share the same
  * plane memory references.
+ * <p>
+ * Since the planes are shared, legacy plugins that write straight into the
+ * pixel arrays change the {@link Dataset} without any reference changing. Given
+ * a {@link PlaneChangeTracker}, such planes are recognized by their changed
+ * fingerprints; without one the Dataset is always reported as updated.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class PlaneHarmonizer implements DataHarmonizer {
 
 	private final LogService log;
+	private final PlaneChangeTracker tracker;
 
-	public PlaneHarmonizer(LogService log) {
+	/** Creates a harmonizer that always reports the Dataset as updated. */
+	public PlaneHarmonizer(final LogService log) {
+		this(log, null);
+	}
+
+	/**
+	 * Creates a harmonizer that reports the Dataset as updated only if one of
+	 * its planes was replaced or changed since the last update.
+	 */
+	public PlaneHarmonizer(final LogService log,
+		final PlaneChangeTracker tracker)
+	{
 		this.log = log;
+		this.tracker = tracker;
 	}
 
 	/**
 	 * Assigns a planar {@link Dataset}'s plane references to match those of a
 	 * given {@link ImagePlus}. Assumes input Dataset and ImagePlus match in
-	 * dimensions and backing type.
+	 * dimensions and backing type. Publishes an update if any plane was
+	 * replaced or edited in place.
 	 */
 	@Override
 	public void updateDataset(final Dataset ds, final ImagePlus imp) {
@@ -80,10 +100,15 @@ public void updateDataset(final Dataset ds, final ImagePlus imp) {
 			planeDims[i] = fullDims[i + 2];
 		final Position planePos = new Extents(planeDims).createPosition();
 
+		final PlaneChangeTracker.Planes syncState = tracker == null ? null :
+			tracker.getPlanes(ds, imp, imp.getStackSize());
+
 		// copy planes by reference
 		boolean changes = false;
 		if (imp.getStackSize() == 1) {
-			changes |= ds.setPlaneSilently(0, imp.getProcessor().getPixels());
+			final Object plane = imp.getProcessor().getPixels();
+			changes |= ds.setPlaneSilently(0, plane);
+			changes |= isEdited(syncState, 0, plane);
 		}
 		else {
 			int stackPosition = 1;
@@ -100,6 +125,8 @@ public void updateDataset(final Dataset ds, final ImagePlus imp) {
 						}
 						final int planeNum = (int) planePos.getIndex();
 						changes |= ds.setPlaneSilently(planeNum, plane);
+						final int p = stackPosition - 2;
+						changes |= isEdited(syncState, p, plane);
 					}
 				}
 			}
@@ -166,6 +193,22 @@ public void updateLegacyImage(final Dataset ds, final ImagePlus imp) {
 
 	// -- private interface --
 
+	/**
+	 * Returns true if a shared plane may have been edited in place since the
+	 * last update, recording its current fingerprint. Without sync state every
+	 * plane may have been.
+	 */
+	private boolean isEdited(final PlaneChangeTracker.Planes syncState,
+		final int p, final Object plane)
+	{
+		if (syncState == null) return true;
+		if (plane == null) return false;
+		final long print = PlaneChangeTracker.fingerprint(plane);
+		if (syncState.isUnchanged(p, print)) return false;
+		syncState.record(p, print, print);
+		return true;
+	}
+
 	/** Formats an error message. */
 	private String message(final String message, final long c, final long z,
 		final long t)
@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.legacy.translate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link PlaneChangeTracker}.
+ */
+public class PlaneChangeTrackerTest {
+
+	@Test
+	public void testStateOutlivesLookups() {
+		final Context context = new Context(DatasetService.class);
+		final Dataset ds = create(context);
+		final ImagePlus imp =
+			NewImage.createByteImage("test", 4, 3, 2, NewImage.FILL_BLACK);
+		final PlaneChangeTracker tracker = new PlaneChangeTracker();
+		final RealArray plane = PlaneAccess.create(ds).getPlane(0);
+		final byte[] pixels = (byte[]) imp.getStack().getPixels(1);
+
+		final PlaneChangeTracker.Planes planes = tracker.getPlanes(ds, imp, 2);
+		final long legacyPrint = PlaneChangeTracker.fingerprint(pixels);
+		assertFalse(planes.isUnchanged(0, legacyPrint, plane));
+		planes.record(0, legacyPrint, PlaneChangeTracker.fingerprint(plane));
+
+		// a later command sees the recorded state
+		final PlaneChangeTracker.Planes later = tracker.getPlanes(ds, imp, 2);
+		assertSame(planes, later);
+		assertTrue(later.isUnchanged(0, legacyPrint, plane));
+		assertTrue(later.isUnchanged(0, pixels, PlaneChangeTracker
+			.fingerprint(plane)));
+		assertFalse(later.isUnchanged(1, legacyPrint, plane));
+
+		// edits on either side are noticed
+		pixels[5] = 17;
+		assertFalse(later.isUnchanged(0, PlaneChangeTracker.fingerprint(pixels),
+			plane));
+		pixels[5] = 0;
+		plane.setReal(2, 9);
+		assertFalse(later.isUnchanged(0, legacyPrint, plane));
+
+		tracker.forget(imp);
+		assertNotSame(planes, tracker.getPlanes(ds, imp, 2));
+		context.dispose();
+	}
+
+	// -- helper methods --
+
+	private Dataset create(final Context context) {
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		return datasetService.create(new long[] { 4, 3, 2 }, "test", axes, 8,
+			false, false);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.legacy.translate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+/**
+ * Tests {@link PlaneHarmonizer}.
+ */
+public class PlaneHarmonizerTest {
+
+	@Test
+	public void testPlaneEditedInPlaceUpdatesDataset() {
+		final Context context =
+			new Context(DatasetService.class, LogService.class);
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final AxisType[] axes = { Axes.X, Axes.Y, Axes.Z };
+		final Dataset ds =
+			datasetService.create(new long[] { 4, 3, 2 }, "test", axes, 8,
+				false, false);
+		final ImagePlus imp =
+			NewImage.createByteImage("test", 4, 3, 2, NewImage.FILL_BLACK);
+		final PlaneHarmonizer harmonizer =
+			new PlaneHarmonizer(context.getService(LogService.class),
+				new PlaneChangeTracker());
+		harmonizer.updateLegacyImage(ds, imp);
+
+		// the first update cannot know what the planes looked like before
+		harmonizer.updateDataset(ds, imp);
+		assertTrue(ds.isDirty());
+
+		// planes are shared, so nothing changed
+		ds.setDirty(false);
+		harmonizer.updateDataset(ds, imp);
+		assertFalse(ds.isDirty());
+
+		// a legacy plugin writes straight into the pixels
+		((byte[]) imp.getStack().getPixels(2))[5] = 17;
+		harmonizer.updateDataset(ds, imp);
+		assertTrue(ds.isDirty());
+		context.dispose();
+	}
+
+}
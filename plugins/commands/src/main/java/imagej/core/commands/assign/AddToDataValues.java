@@ -88,4 +88,17 @@ public void setValue(double value) {
 	public RealAddConstant<DoubleType,DoubleType> getOperation() {
 		return new RealAddConstant<DoubleType,DoubleType>(value);
 	}
+
+	@Override
+	public InplaceUnaryTransform.Kernel getKernel() {
+		final double constant = value;
+		return new InplaceUnaryTransform.Kernel() {
+
+			@Override
+			public void compute(final double[] values, final int count) {
+				for (int i = 0; i < count; i++)
+					values[i] += constant;
+			}
+		};
+	}
 }
@@ -0,0 +1,392 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.assign;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+/**
+ * Compiles the equations of {@link EquationDataValues} to bytecode. The result
+ * is an {@link InplaceUnaryTransform.PositionKernel} whose loop over a run of
+ * pixels evaluates the equation directly, without the per-pixel function tree
+ * built by the imglib2-ops equation parser.
+ * <p>
+ * Only the common subset of the equation language is compiled: numbers,
+ * {@code E}, {@code PI}, {@code img} (the current value), the axis variables
+ * declared in the leading {@code [x,y,...]} list, the operators
+ * {@code + - * / % ^}, parentheses and the functions that map directly onto
+ * {@link Math}. For any other equation {@link #compile} returns null and the
+ * caller should evaluate the equation the usual way. Equations are expected
+ * to have been validated by the imglib2-ops parser beforehand.
+ * </p>
+ * 
+ * @author Barry DeZonia
+ */
+public class EquationCompiler {
+
+	// -- constants --
+
+	private static final String PACKAGE = "imagej.core.commands.assign.";
+
+	/** Functions compiled to the {@link Math} method of the same name. */
+	private static final Set<String> MATH_FUNCTIONS = new HashSet<String>(
+		Arrays.asList("abs", "acos", "asin", "atan", "cbrt", "ceil", "cos",
+			"cosh", "exp", "expm1", "floor", "log", "log10", "log1p", "signum",
+			"sin", "sinh", "sqrt", "tan", "tanh"));
+
+	/** Maximum number of compiled kernel classes to retain. */
+	private static final int MAX_CLASSES = 64;
+
+	/**
+	 * Most recently used compiled kernel classes, keyed by generated source.
+	 * Each class has a class loader of its own, so once it is dropped from here
+	 * and its kernels are gone it can be unloaded.
+	 */
+	private static final Map<String, Class<?>> CLASSES =
+		new LinkedHashMap<String, Class<?>>(16, 0.75f, true)
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+			final Map.Entry<String, Class<?>> eldest)
+		{
+			return size() > MAX_CLASSES;
+		}
+	};
+
+	/** Number of kernel classes compiled so far, for unique class names. */
+	private static int classCount;
+
+	// -- instance variables --
+
+	private List<String> tokens;
+	private int index;
+	private List<String> variables;
+
+	// -- public interface --
+
+	/**
+	 * Compiles the given equation for images with the given number of
+	 * dimensions. The resulting kernel must be run along the axis with the
+	 * given index. Returns null if the equation uses features that are not
+	 * compiled.
+	 */
+	public InplaceUnaryTransform.PositionKernel compile(final String equation,
+		final int numDims, final int axis)
+	{
+		final String expression;
+		try {
+			expression = translate(equation, numDims);
+		}
+		catch (final UncompilableException e) {
+			return null;
+		}
+		final String source = methodSource(expression, numDims, axis);
+		try {
+			return (InplaceUnaryTransform.PositionKernel) kernelClass(source)
+				.newInstance();
+		}
+		catch (final CannotCompileException e) {
+			return null;
+		}
+		catch (final NotFoundException e) {
+			return null;
+		}
+		catch (final InstantiationException e) {
+			return null;
+		}
+		catch (final IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	// -- private helpers --
+
+	/** Translates an equation into a Java expression. */
+	private String translate(final String equation, final int numDims)
+		throws UncompilableException
+	{
+		tokens = tokenize(equation);
+		index = 0;
+		variables = new ArrayList<String>();
+		if (peek("[")) {
+			next();
+			while (true) {
+				final String name = next();
+				if (!isIdentifier(name) || isReserved(name) ||
+					variables.contains(name))
+				{
+					throw new UncompilableException();
+				}
+				variables.add(name);
+				if (peek("]")) break;
+				expect(",");
+			}
+			expect("]");
+			expect(",");
+			if (variables.size() != numDims) {
+				throw new UncompilableException();
+			}
+		}
+		final String expression = expression();
+		if (index != tokens.size()) throw new UncompilableException();
+		return expression;
+	}
+
+	private String expression() throws UncompilableException {
+		String result = term();
+		while (peek("+") || peek("-")) {
+			final String op = next();
+			result = "(" + result + " " + op + " " + term() + ")";
+		}
+		return result;
+	}
+
+	private String term() throws UncompilableException {
+		String result = factor();
+		while (peek("*") || peek("/") || peek("%")) {
+			final String op = next();
+			result = "(" + result + " " + op + " " + factor() + ")";
+		}
+		return result;
+	}
+
+	private String factor() throws UncompilableException {
+		final boolean signed = peek("+") || peek("-");
+		final String base = signedAtom();
+		if (!peek("^")) return base;
+		// the binding of a sign to a power and the grouping of chained powers
+		// are left to the full parser
+		if (signed) throw new UncompilableException();
+		next();
+		final String exponent = signedAtom();
+		if (peek("^")) throw new UncompilableException();
+		return "java.lang.Math.pow(" + base + ", " + exponent + ")";
+	}
+
+	private String signedAtom() throws UncompilableException {
+		if (peek("+")) {
+			next();
+			return atom();
+		}
+		if (peek("-")) {
+			next();
+			return "(-" + atom() + ")";
+		}
+		return atom();
+	}
+
+	private String atom() throws UncompilableException {
+		final String token = next();
+		if (token.equals("(")) {
+			final String result = expression();
+			expect(")");
+			return result;
+		}
+		if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+			return literal(Double.parseDouble(token));
+		}
+		if (!isIdentifier(token)) throw new UncompilableException();
+		if (token.equals("E")) return literal(Math.E);
+		if (token.equals("PI")) return literal(Math.PI);
+		if (token.equals("img")) return "v";
+		final int var = variables.indexOf(token);
+		if (var >= 0) return "p" + var;
+		if (peek("(")) {
+			next();
+			final String arg = expression();
+			expect(")");
+			if (token.equals("sqr")) {
+				return "sqr(" + arg + ")";
+			}
+			if (MATH_FUNCTIONS.contains(token)) {
+				return "java.lang.Math." + token + "(" + arg + ")";
+			}
+		}
+		throw new UncompilableException();
+	}
+
+	private boolean peek(final String token) {
+		return index < tokens.size() && tokens.get(index).equals(token);
+	}
+
+	private String next() throws UncompilableException {
+		if (index >= tokens.size()) throw new UncompilableException();
+		return tokens.get(index++);
+	}
+
+	private void expect(final String token) throws UncompilableException {
+		if (!next().equals(token)) throw new UncompilableException();
+	}
+
+	private static List<String> tokenize(final String equation)
+		throws UncompilableException
+	{
+		final List<String> result = new ArrayList<String>();
+		int i = 0;
+		while (i < equation.length()) {
+			final char ch = equation.charAt(i);
+			if (Character.isWhitespace(ch)) {
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			if (Character.isDigit(ch) || ch == '.') {
+				while (end < equation.length() &&
+					(Character.isDigit(equation.charAt(end)) ||
+						equation.charAt(end) == '.'))
+				{
+					end++;
+				}
+				// exponents and the like are left to the full parser
+				if (end < equation.length() &&
+					Character.isLetter(equation.charAt(end)))
+				{
+					throw new UncompilableException();
+				}
+				try {
+					Double.parseDouble(equation.substring(i, end));
+				}
+				catch (final NumberFormatException e) {
+					throw new UncompilableException();
+				}
+			}
+			else if (Character.isLetter(ch) || ch == '_') {
+				while (end < equation.length() &&
+					(Character.isLetterOrDigit(equation.charAt(end)) ||
+						equation.charAt(end) == '_'))
+				{
+					end++;
+				}
+			}
+			else if ("+-*/%^()[],".indexOf(ch) < 0) {
+				throw new UncompilableException();
+			}
+			result.add(equation.substring(i, end));
+			i = end;
+		}
+		return result;
+	}
+
+	private static boolean isIdentifier(final String token) {
+		final char ch = token.charAt(0);
+		return Character.isLetter(ch) || ch == '_';
+	}
+
+	private static boolean isReserved(final String name) {
+		return name.equals("E") || name.equals("PI") || name.equals("img") ||
+			name.equals("sqr") || MATH_FUNCTIONS.contains(name);
+	}
+
+	/** Returns a Java literal that evaluates exactly to the given value. */
+	private static String literal(final double value) {
+		final String s = Double.toString(value);
+		if (s.indexOf('E') < 0) return s;
+		return "java.lang.Double.longBitsToDouble(" +
+			Double.doubleToLongBits(value) + "L)";
+	}
+
+	/** Builds the source of the kernel's compute method. */
+	private static String methodSource(final String expression,
+		final int numDims, final int axis)
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append("public void compute(long[] position, int axis, ");
+		sb.append("double[] values, int count) {\n");
+		for (int d = 0; d < numDims; d++) {
+			sb.append("double p" + d + " = (double) position[" + d + "];\n");
+		}
+		sb.append("for (int i = 0; i < count; i++) {\n");
+		sb.append("double v = values[i];\n");
+		sb.append("values[i] = " + expression + ";\n");
+		sb.append("p" + axis + " = p" + axis + " + 1.0;\n");
+		sb.append("}\n}");
+		return sb.toString();
+	}
+
+	/** Returns the (possibly cached) kernel class for the given source. */
+	private static Class<?> kernelClass(final String source)
+		throws CannotCompileException, NotFoundException
+	{
+		synchronized (CLASSES) {
+			Class<?> c = CLASSES.get(source);
+			if (c != null) return c;
+			final ClassPool pool = new ClassPool();
+			pool.appendClassPath(new ClassClassPath(EquationCompiler.class));
+			final String name = PACKAGE + "CompiledEquation" + classCount++;
+			final CtClass classRef = pool.makeClass(name);
+			classRef.addInterface(pool.get(
+				InplaceUnaryTransform.PositionKernel.class.getName()));
+			classRef.addConstructor(CtNewConstructor
+				.defaultConstructor(classRef));
+			classRef.addMethod(CtNewMethod.make(
+				"private static double sqr(double x) { return x * x; }",
+				classRef));
+			classRef.addMethod(CtNewMethod.make(source, classRef));
+			// NB - a loader per class, so evicted classes can be unloaded
+			final ClassLoader loader =
+				new ClassLoader(EquationCompiler.class.getClassLoader()) {};
+			c = classRef.toClass(loader, null);
+			classRef.detach();
+			CLASSES.put(source, c);
+			return c;
+		}
+	}
+
+	// -- helper classes --
+
+	/** Thrown when an equation uses features that are not compiled. */
+	private static class UncompilableException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+}
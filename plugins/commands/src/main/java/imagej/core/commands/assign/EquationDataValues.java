@@ -70,7 +70,9 @@
 
 /**
  * Fills a region of a Dataset with the point by point calculation of a user
- * specified equation.
+ * specified equation. Equations are compiled to bytecode by the
+ * {@link EquationCompiler} when possible and evaluated over the region in
+ * parallel; other equations are evaluated by the imglib2-ops function tree.
  * 
  * @author Barry DeZonia
  */
@@ -137,6 +139,7 @@ public void run() {
 			cancel("Equation parsing error: "+result.get2());
 			return;
 		}
+		if (runCompiled()) return;
 		InputIteratorFactory<long[]> factory = new PointInputIteratorFactory();
 		Function<long[],DoubleType> function = result.get1();
 		@SuppressWarnings("unchecked")
@@ -174,6 +177,35 @@ public void setEquation(String equationString) {
 	
 	// -- private helpers --
 
+	/**
+	 * Evaluates the equation with compiled code if possible. Returns false if
+	 * the equation could not be compiled.
+	 */
+	private boolean runCompiled() {
+		final int xIndex = dataset.getAxisIndex(Axes.X);
+		final InplaceUnaryTransform.PositionKernel kernel =
+			new EquationCompiler().compile(equationString,
+				dataset.numDimensions(), xIndex);
+		if (kernel == null) return false;
+		final Overlay overlay = overlayService.getActiveOverlay(display);
+		final InplaceUnaryTransform<T, DoubleType> transform;
+		if (allPlanes) {
+			transform =
+				new InplaceUnaryTransform<T, DoubleType>(null, new DoubleType(),
+					dataset, overlay);
+		}
+		else {
+			final DatasetView view =
+				imgDispService.getActiveDatasetView(display);
+			transform =
+				new InplaceUnaryTransform<T, DoubleType>(null, new DoubleType(),
+					dataset, overlay, view.getPlanePosition());
+		}
+		transform.setKernel(kernel);
+		transform.run();
+		return true;
+	}
+
 	private String setRegion(final ImageDisplay disp, boolean allPlanes) {
 		dataset = imgDispService.getActiveDataset(disp);
 		final Overlay overlay = overlayService.getActiveOverlay(disp);
@@ -37,19 +37,25 @@
 
 import imagej.data.Dataset;
 import imagej.data.Position;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
 import imagej.data.display.ImageDisplay;
 import imagej.data.overlay.Overlay;
-import net.imglib2.img.Img;
+import imagej.data.overlay.OverlayRasterizer;
+import imagej.util.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RealRandomAccess;
 import net.imglib2.meta.Axes;
-import net.imglib2.ops.condition.Condition;
-import net.imglib2.ops.condition.UVInsideRoiCondition;
-import net.imglib2.ops.function.complex.ComplexImageFunction;
-import net.imglib2.ops.function.general.GeneralUnaryFunction;
-import net.imglib2.ops.img.ImageAssignment;
-import net.imglib2.ops.input.InputIteratorFactory;
-import net.imglib2.ops.input.PointInputIteratorFactory;
+import net.imglib2.ops.operation.UnaryOperation;
 import net.imglib2.ops.operation.complex.unary.ComplexUnaryOperation;
+import net.imglib2.roi.RegionOfInterest;
+import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.ComplexType;
+import net.imglib2.type.numeric.RealType;
 
 /**
  * Helper class for use by many plugins that apply a {@link
@@ -57,20 +63,53 @@
  * current selection of the active {@link Dataset} of the given {@link
  * ImageDisplay}. The given {@link ComplexUnaryOperation} is applied on a pixel
  * by pixel basis.
+ * <p>
+ * The XY extent of the selection is computed once, as runs of pixels per row,
+ * and then applied to every affected plane (including all three channels of
+ * RGB images) in a single multithreaded pass. Runs of pixels are transformed
+ * in bulk, directly on the primitive arrays of the Dataset where possible. A
+ * {@link Kernel} (or a {@link PositionKernel} when results depend on pixel
+ * positions) can be supplied to replace the per-pixel operation with a
+ * primitive loop.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class InplaceUnaryTransform<I extends ComplexType<I>, O extends ComplexType<O>> {
 
+	/** Transforms runs of sample values in place. */
+	public interface Kernel {
+
+		/**
+		 * Replaces the first count values with their transformed values. May be
+		 * called from several threads at once.
+		 */
+		void compute(double[] values, int count);
+	}
+
+	/** Transforms runs of sample values whose results depend on position. */
+	public interface PositionKernel {
+
+		/**
+		 * Replaces the first count values with their transformed values. Value
+		 * i is the sample at the given position advanced i steps along the axis
+		 * with the given index. The position must not be modified. May be
+		 * called from several threads at once.
+		 */
+		void compute(long[] position, int axis, double[] values, int count);
+	}
+
 	// -- instance variables --
 
-	private final ImageAssignment<I,O,long[]> assigner1;
-	private final ImageAssignment<I,O,long[]> assigner2;
-	private final ImageAssignment<I,O,long[]> assigner3;
+	private final ComplexUnaryOperation<O,O> operation;
+	private final O outType;
 	private final Dataset dataset;
+	private final Overlay overlay;
 	private long[] origin;
 	private long[] span;
-	private Condition<long[]> condition;
+	private long[] planeOrigin;
+	private long[] planeSpan;
+	private PositionKernel kernel;
 
 	// -- constructor --
 
@@ -81,22 +120,13 @@ public InplaceUnaryTransform(
 			Dataset dataset,
 			Overlay overlay)
 	{
+		this.operation = operation;
+		this.outType = outType;
 		this.dataset = dataset;
+		this.overlay = overlay;
 		setRegion(dataset, overlay);
-		@SuppressWarnings("unchecked")
-		final Img<I> img = (Img<I>)dataset.getImgPlus();
-		final ComplexImageFunction<I,O> f1 =
-				new ComplexImageFunction<I,O>(img, outType.createVariable());
-		final GeneralUnaryFunction<long[],O,O> function = new
-				GeneralUnaryFunction<long[],O,O>(
-					f1, operation, outType.createVariable());
-		final InputIteratorFactory<long[]> factory =
-				new PointInputIteratorFactory();
-		assigner1 =
-			new ImageAssignment<I,O, long[]>(img, origin, span, function,
-					condition, factory);
-		assigner2 = null;
-		assigner3 = null;
+		planeOrigin = origin.clone();
+		planeSpan = span.clone();
 	}
 
 	/** Single plane versions */
@@ -107,48 +137,119 @@ public InplaceUnaryTransform(
 			Overlay overlay,
 			Position planePos)
 	{
+		this.operation = operation;
+		this.outType = outType;
 		this.dataset = dataset;
+		this.overlay = overlay;
 		setRegion(dataset, overlay, planePos);
-		@SuppressWarnings("unchecked")
-		final Img<I> img = (Img<I>)dataset.getImgPlus();
-		final ComplexImageFunction<I,O> f1 =
-				new ComplexImageFunction<I,O>(img, outType.createVariable());
-		final GeneralUnaryFunction<long[],O,O> function = new
-				GeneralUnaryFunction<long[],O,O>(
-					f1, operation, outType.createVariable());
-		final InputIteratorFactory<long[]> factory =
-				new PointInputIteratorFactory();
-		boolean rgb = dataset.isRGBMerged();
-		int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
-		if (rgb) {
-			origin[chIndex] = 0;
-		}
-		assigner1 =
-			new ImageAssignment<I,O, long[]>(img, origin, span, function,
-					condition, factory);
-		if (rgb) {
-			origin[chIndex] = 1;
-			assigner2 =
-				new ImageAssignment<I,O, long[]>(img, origin, span, function,
-					condition, factory);
-			origin[chIndex] = 2;
-			assigner3 =
-				new ImageAssignment<I,O, long[]>(img, origin, span, function,
-					condition, factory);
-		}
-		else {
-			assigner2 = null;
-			assigner3 = null;
+		planeOrigin = origin.clone();
+		planeSpan = span.clone();
+		if (dataset.isRGBMerged()) {
+			int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
+			planeOrigin[chIndex] = 0;
+			planeSpan[chIndex] = 3;
 		}
 	}
 
 	
 	// -- public interface --
 
+	/**
+	 * Sets a kernel that computes the same values as the operation, used in
+	 * place of the operation for speed.
+	 */
+	public void setKernel(final Kernel kernel) {
+		if (kernel == null) {
+			this.kernel = null;
+			return;
+		}
+		this.kernel = new PositionKernel() {
+
+			@Override
+			public void compute(long[] position, int axis, double[] values,
+				int count)
+			{
+				kernel.compute(values, count);
+			}
+		};
+	}
+
+	/**
+	 * Sets a kernel that computes the transformed values from the sample values
+	 * and their positions. The operation is not used (and may be null) when
+	 * such a kernel is set.
+	 */
+	public void setKernel(final PositionKernel kernel) {
+		this.kernel = kernel;
+	}
+
 	public void run() {
-		if (assigner1 != null) assigner1.assign();
-		if (assigner2 != null) assigner2.assign();
-		if (assigner3 != null) assigner3.assign();
+		final int xIndex = dataset.getAxisIndex(Axes.X);
+		final int yIndex = dataset.getAxisIndex(Axes.Y);
+		final long[][] rows = findRuns(xIndex, yIndex);
+		final long[] dims = dataset.getDims();
+		final PlaneAccess access =
+			(xIndex == 0 && yIndex == 1) ? PlaneAccess.create(dataset) : null;
+
+		// the positions of the affected planes
+		final List<long[]> planes = new ArrayList<long[]>();
+		final long[] pos = planeOrigin.clone();
+		while (true) {
+			planes.add(pos.clone());
+			int d = 0;
+			while (d < pos.length) {
+				if (d != xIndex && d != yIndex &&
+					++pos[d] < planeOrigin[d] + planeSpan[d]) break;
+				pos[d] = planeOrigin[d];
+				d++;
+			}
+			if (d == pos.length) break;
+		}
+
+		// work unit u is row (u % rows.length) of plane (u / rows.length)
+		final long units = (long) planes.size() * rows.length;
+		final long[] bounds = ParallelLoop.chunkBounds(units, 4);
+		// bit packed samples of different rows may share a storage word
+		final int bits = dataset.getType().getBitsPerPixel();
+		final int threads =
+			bits % 8 != 0 ? 1 : ParallelLoop.defaultThreadCount();
+		ParallelLoop.run(bounds.length - 1, threads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int c) {
+				final PositionKernel k =
+					(kernel != null) ? kernel : operationKernel();
+				RandomAccess<? extends RealType<?>> ra = null;
+				if (access == null) ra = dataset.getImgPlus().randomAccess();
+				final long[] runPos = new long[dims.length];
+				double[] values = new double[0];
+				for (long u = bounds[c]; u < bounds[c + 1]; u++) {
+					final long[] rowRuns = rows[(int) (u % rows.length)];
+					final long[] plane = planes.get((int) (u / rows.length));
+					final long y = rowRuns[0];
+					for (int i = 1; i < rowRuns.length; i += 2) {
+						final long x1 = rowRuns[i];
+						final int count = (int) (rowRuns[i + 1] - x1 + 1);
+						if (values.length < count) values = new double[count];
+						System.arraycopy(plane, 0, runPos, 0, plane.length);
+						runPos[xIndex] = x1;
+						runPos[yIndex] = y;
+						if (access != null) {
+							final RealArray array = access.getPlane(
+								(int) PlaneAccess.planeIndex(dims, plane));
+							final int offset =
+								(int) (y * access.getPlaneWidth() + x1);
+							array.get(offset, values, 0, count);
+							k.compute(runPos, xIndex, values, count);
+							array.set(offset, values, 0, count);
+						}
+						else {
+							transformRun(ra, runPos, xIndex, values, count, k);
+						}
+					}
+				}
+			}
+		});
 		dataset.update();
 	}
 
@@ -188,10 +289,6 @@ else if (i == yIndex) {
 				span[i] = dims[i];
 			}
 		}
-		
-		condition = null;
-		if (overlay != null)
-			condition = new UVInsideRoiCondition(overlay.getRegionOfInterest());
 	}
 
 	/** Single plane version */
@@ -224,10 +321,6 @@ else if (i == yIndex) {
 				span[i] = 1;
 			}
 		}
-		
-		condition = null;
-		if (overlay != null)
-			condition = new UVInsideRoiCondition(overlay.getRegionOfInterest());
 	}
 
 	private LongRect findXYRegion(Dataset ds, Overlay overlay, int xIndex, int yIndex) {
@@ -249,8 +342,126 @@ private LongRect findXYRegion(Dataset ds, Overlay overlay, int xIndex, int yInde
 		}
 		return rect;
 	}
-	
+
+	/**
+	 * Finds the runs of pixels of the XY region (clipped to the Dataset). Each
+	 * row with pixels is returned as {y, x1, x2, x1, x2, ...} with inclusive
+	 * runs.
+	 */
+	private long[][] findRuns(final int xIndex, final int yIndex) {
+		final long[] dims = dataset.getDims();
+		final long minX = Math.max(0, origin[xIndex]);
+		final long minY = Math.max(0, origin[yIndex]);
+		final long maxX =
+			Math.min(dims[xIndex], origin[xIndex] + span[xIndex]) - 1;
+		final long maxY =
+			Math.min(dims[yIndex], origin[yIndex] + span[yIndex]) - 1;
+		final List<long[]> rows = new ArrayList<long[]>();
+		final RunCollector collector = new RunCollector(rows);
+		final OverlayRasterizer rasterizer =
+			(overlay == null) ? null : OverlayRasterizer.create(overlay);
+		if (overlay == null) {
+			for (long y = minY; y <= maxY; y++)
+				collector.span(minX, maxX, y);
+		}
+		else if (rasterizer != null) {
+			rasterizer.fill(minX, minY, maxX, maxY, collector);
+		}
+		else {
+			// test each XY position once rather than once per plane
+			final RegionOfInterest roi = overlay.getRegionOfInterest();
+			final RealRandomAccess<BitType> ra = roi.realRandomAccess();
+			for (long y = minY; y <= maxY; y++) {
+				long start = -1;
+				for (long x = minX; x <= maxX + 1; x++) {
+					boolean inside = false;
+					if (x <= maxX) {
+						ra.setPosition(x, 0);
+						ra.setPosition(y, 1);
+						inside = ra.get().get();
+					}
+					if (inside && start < 0) start = x;
+					if (!inside && start >= 0) {
+						collector.span(start, x - 1, y);
+						start = -1;
+					}
+				}
+			}
+		}
+		collector.finish();
+		return rows.toArray(new long[rows.size()][]);
+	}
+
+	/** Adapts the operation to a kernel for use by a single thread. */
+	private PositionKernel operationKernel() {
+		final UnaryOperation<O,O> op = operation.copy();
+		final O in = outType.createVariable();
+		final O out = outType.createVariable();
+		return new PositionKernel() {
+
+			@Override
+			public void compute(long[] position, int axis, double[] values,
+				int count)
+			{
+				for (int i = 0; i < count; i++) {
+					in.setComplexNumber(values[i], 0);
+					op.compute(in, out);
+					values[i] = out.getRealDouble();
+				}
+			}
+		};
+	}
+
+	/** Transforms count pixels along the X axis starting at the position. */
+	private static void transformRun(
+			final RandomAccess<? extends RealType<?>> ra, final long[] pos,
+			final int xIndex, final double[] values, final int count,
+			final PositionKernel kernel)
+	{
+		ra.setPosition(pos);
+		for (int i = 0; i < count; i++) {
+			values[i] = ra.get().getRealDouble();
+			ra.fwd(xIndex);
+		}
+		kernel.compute(pos, xIndex, values, count);
+		ra.setPosition(pos);
+		for (int i = 0; i < count; i++) {
+			ra.get().setReal(values[i]);
+			ra.fwd(xIndex);
+		}
+	}
+
 	private class LongRect {
 		public long x, y, w, h;
 	}
+
+	/** Gathers the runs of each row into a {y, x1, x2, ...} array. */
+	private static class RunCollector implements OverlayRasterizer.SpanHandler
+	{
+		private final List<long[]> rows;
+		private final List<Long> runs = new ArrayList<Long>();
+		private long row = Long.MIN_VALUE;
+
+		public RunCollector(List<long[]> rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public void span(long x1, long x2, long y) {
+			if (y != row) finish();
+			row = y;
+			runs.add(x1);
+			runs.add(x2);
+		}
+
+		public void finish() {
+			if (runs.isEmpty()) return;
+			final long[] result = new long[runs.size() + 1];
+			result[0] = row;
+			for (int i = 0; i < runs.size(); i++)
+				result[i + 1] = runs.get(i);
+			rows.add(result);
+			runs.clear();
+		}
+	}
 }
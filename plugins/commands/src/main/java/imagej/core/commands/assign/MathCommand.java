@@ -145,6 +145,15 @@ public void setPreview(final boolean preview) {
 
 	public abstract ComplexUnaryOperation<O,O> getOperation();
 
+	/**
+	 * Returns a primitive kernel equivalent to {@link #getOperation()} or null
+	 * if the operation should be applied pixel by pixel. Simple arithmetic
+	 * commands override this for speed.
+	 */
+	public InplaceUnaryTransform.Kernel getKernel() {
+		return null;
+	}
+
 	// -- private helpers --
 
 	private void initialize() {
@@ -174,16 +183,23 @@ private void initialize() {
 	private InplaceUnaryTransform<I,O> getPreviewTransform(
 				Dataset ds, Overlay ov)
 	{
-		return new InplaceUnaryTransform<I,O>(
+		InplaceUnaryTransform<I,O> xform =
+				new InplaceUnaryTransform<I,O>(
 					getOperation(), outType, ds, ov, planePos);
+		xform.setKernel(getKernel());
+		return xform;
 	}
 	
 	private InplaceUnaryTransform<I,O> getFinalTransform(
 			Dataset ds, Overlay ov)
 	{
-		if (allPlanes)
-			return new InplaceUnaryTransform<I,O>(
-					getOperation(), outType, ds, ov);
+		if (allPlanes) {
+			InplaceUnaryTransform<I,O> xform =
+					new InplaceUnaryTransform<I,O>(
+						getOperation(), outType, ds, ov);
+			xform.setKernel(getKernel());
+			return xform;
+		}
 		return getPreviewTransform(ds, ov);
 	}
 
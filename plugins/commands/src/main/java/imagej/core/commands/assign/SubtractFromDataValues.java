@@ -77,6 +77,19 @@ public RealSubtractConstant<DoubleType, DoubleType> getOperation() {
 		return new RealSubtractConstant<DoubleType, DoubleType>(value);
 	}
 
+	@Override
+	public InplaceUnaryTransform.Kernel getKernel() {
+		final double constant = value;
+		return new InplaceUnaryTransform.Kernel() {
+
+			@Override
+			public void compute(final double[] values, final int count) {
+				for (int i = 0; i < count; i++)
+					values[i] -= constant;
+			}
+		};
+	}
+
 	public double getValue() {
 		return value;
 	}
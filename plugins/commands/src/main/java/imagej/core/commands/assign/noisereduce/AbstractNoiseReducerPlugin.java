@@ -106,6 +106,15 @@ public enum NeighborhoodType {RADIAL, RECTANGULAR}
 	public abstract Function<PointSet,DoubleType> getFunction(
 		Function<long[],DoubleType> otherFunc);
 
+	/**
+	 * Returns the rank statistic computed by this plugin's function, or null if
+	 * the function is not a rank statistic. Plugins returning a statistic can be
+	 * run with a fast sliding histogram kernel.
+	 */
+	public SlidingHistogramFilter.Statistic getStatistic() {
+		return null;
+	}
+
 	@Override
 	public void run() {
 		Neighborhood neighborhood = determineNeighborhood(input.numDimensions());
@@ -119,6 +128,7 @@ public void run() {
 		PointSet ps = neighborhood.getPoints();
 		Reducer<U,DoubleType> reducer =
 				new Reducer<U,DoubleType>(context, inputImg, getFunction(otherFunc), ps);
+		reducer.setStatistic(getStatistic());
 		output = reducer.reduceNoise(neighborhood.getDescription());
 	}
 
@@ -115,10 +115,20 @@ public void run() {
 		final Function<long[], DoubleType> otherFunc =
 			new RealImageFunction<U, DoubleType>(inputImg, oobFactory,
 				new DoubleType());
-		final List<PointSet> pointSets = getNeighborhoods(input.numDimensions());
+		final int numDims = input.numDimensions();
+		final List<PointSet> pointSets = getNeighborhoods(numDims);
+		// NB - each thread gets its own list of neighborhoods since the adaptive
+		// median function translates them as it goes
+		final Reducer.FunctionFactory<DoubleType> factory =
+			new Reducer.FunctionFactory<DoubleType>() {
+
+				@Override
+				public Function<PointSet, DoubleType> create() {
+					return getFunction(otherFunc.copy(), getNeighborhoods(numDims));
+				}
+			};
 		final Reducer<U, DoubleType> reducer =
-			new Reducer<U, DoubleType>(context, inputImg, getFunction(otherFunc,
-				pointSets), pointSets.get(0));
+			new Reducer<U, DoubleType>(context, inputImg, factory, pointSets.get(0));
 		output = reducer.reduceNoise("Adaptive window neighborhood");
 	}
 
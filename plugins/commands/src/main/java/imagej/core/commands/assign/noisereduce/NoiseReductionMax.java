@@ -68,4 +68,9 @@ public Function<PointSet, DoubleType> getFunction(
 		return new RealMaxFunction<DoubleType>(otherFunc);
 	}
 
+	@Override
+	public SlidingHistogramFilter.Statistic getStatistic() {
+		return SlidingHistogramFilter.Statistic.MAX;
+	}
+
 }
@@ -68,4 +68,9 @@ public Function<PointSet, DoubleType> getFunction(
 		return new RealMedianFunction<DoubleType>(otherFunc);
 	}
 
+	@Override
+	public SlidingHistogramFilter.Statistic getStatistic() {
+		return SlidingHistogramFilter.Statistic.MEDIAN;
+	}
+
 }
@@ -68,4 +68,9 @@ public Function<PointSet, DoubleType> getFunction(
 		return new RealMinFunction<DoubleType>(otherFunc);
 	}
 
+	@Override
+	public SlidingHistogramFilter.Statistic getStatistic() {
+		return SlidingHistogramFilter.Statistic.MIN;
+	}
+
 }
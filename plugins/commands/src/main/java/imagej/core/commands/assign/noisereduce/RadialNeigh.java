@@ -35,7 +35,6 @@
 
 package imagej.core.commands.assign.noisereduce;
 
-import net.imglib2.ops.condition.Condition;
 import net.imglib2.ops.pointset.ConditionalPointSet;
 import net.imglib2.ops.pointset.HyperVolumePointSet;
 import net.imglib2.ops.pointset.PointSet;
@@ -61,9 +60,7 @@ public RadialNeigh(final int numDims, final long radius) {
 		}
 		final PointSet space =
 			new HyperVolumePointSet(new long[numDims], posOff, negOff);
-		final Condition<long[]> condition =
-			new WithinRadiusOfPointSetOriginCondition(radius, space);
-		this.points = new ConditionalPointSet(space, condition);
+		this.points = new RadialPointSet(space, radius);
 	}
 
 	@Override
@@ -77,4 +74,31 @@ public String getDescription() {
 			" pixel radial neighborhood";
 	}
 
+	// -- helper classes --
+
+	/**
+	 * A ConditionalPointSet whose radius condition is always bound to its own
+	 * bounding space. A plain ConditionalPointSet copies its condition along with
+	 * its space, but the copied {@link WithinRadiusOfPointSetOriginCondition}
+	 * would still measure distances from the original space's origin. Copies of
+	 * a RadialPointSet can thus be translated independently, which allows
+	 * neighborhoods to be used from several threads at once.
+	 */
+	private static class RadialPointSet extends ConditionalPointSet {
+
+		private final PointSet space;
+		private final long radius;
+
+		public RadialPointSet(final PointSet space, final long radius) {
+			super(space, new WithinRadiusOfPointSetOriginCondition(radius, space));
+			this.space = space;
+			this.radius = radius;
+		}
+
+		@Override
+		public RadialPointSet copy() {
+			return new RadialPointSet(space.copy(), radius);
+		}
+	}
+
 }
@@ -35,8 +35,10 @@
 
 package imagej.core.commands.assign.noisereduce;
 
+import imagej.core.commands.assign.noisereduce.SlidingHistogramFilter.Statistic;
 import imagej.data.Dataset;
 import imagej.data.DefaultDataset;
+import imagej.util.ParallelLoop;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.ops.function.Function;
 import net.imglib2.ops.img.SerialImageAssignment;
@@ -49,15 +51,34 @@
 import org.scijava.app.StatusService;
 
 /**
- * TODO
+ * Applies a neighborhood function to every pixel of an image, producing a new
+ * noise reduced {@link Dataset}.
+ * <p>
+ * The image is split into slabs along its last nontrivial axis and the slabs
+ * are reduced in parallel. Each slab gets its own copy of the neighborhood and
+ * its own function (obtained from a {@link FunctionFactory} or by copying the
+ * given function), so results are identical to a serial pass. When a rank
+ * {@link Statistic} is set and the image qualifies, a
+ * {@link SlidingHistogramFilter} is used instead.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class Reducer<U extends RealType<U>,V extends RealType<V>>
 {
+	/**
+	 * Creates the neighborhood function used by one thread of a reduction. Use
+	 * this rather than a single function when the function's copy() shares
+	 * mutable state between copies.
+	 */
+	public interface FunctionFactory<T> {
+
+		Function<PointSet, T> create();
+	}
+
 	private final Context context;
 	
-	private final Function<PointSet,V> inputFunction;
+	private final FunctionFactory<V> functionFactory;
 	
 	private final PointSet neighborhood;
 	
@@ -65,52 +86,120 @@
 
 	private final StatusService statusService; 
 	
+	private Statistic statistic;
+
+	private int threadCount = ParallelLoop.defaultThreadCount();
+	
 	// -- public interface --
 
 	
-	public Reducer(Context context, ImgPlus<U> input, Function<PointSet,V> func,
-		PointSet neighborhood)
+	public Reducer(Context context, ImgPlus<U> input,
+		final Function<PointSet,V> func, PointSet neighborhood)
+	{
+		this(context, input, new FunctionFactory<V>() {
+
+			@Override
+			public Function<PointSet, V> create() {
+				return func.copy();
+			}
+		}, neighborhood);
+	}
+
+	public Reducer(Context context, ImgPlus<U> input,
+		FunctionFactory<V> functionFactory, PointSet neighborhood)
 	{
 		this.context = context;
 		this.input = input;
-		this.inputFunction = func;
+		this.functionFactory = functionFactory;
 		this.neighborhood = neighborhood;
 		this.statusService = context.getService(StatusService.class);
 	}
 
-	// NOTE - because the neighborhood could be a spherical neighborhood that
-	// relies on a WithinRadiusOfPointCondition we cannot parallelize this
-	// algorithm. If we did we'd get one point per Thread with only one being
-	// updated correctly. One can see by trial that using a regular
-	// ImageAssignment here results in only a portion of the image getting noise
-	// reduced.
+	/**
+	 * Declares that the reducer's function computes the given rank statistic of
+	 * each neighborhood. This allows the much faster sliding histogram kernel to
+	 * be used for images it supports. Pass null to always use the function.
+	 */
+	public void setStatistic(Statistic statistic) {
+		this.statistic = statistic;
+	}
+
+	/**
+	 * Sets the maximum number of threads used to reduce the image. With a count
+	 * of 1 the image is reduced in a single serial pass. Defaults to
+	 * {@link ParallelLoop#defaultThreadCount()}.
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	// NOTE - the neighborhood could be a spherical neighborhood that relies on a
+	// WithinRadiusOfPointCondition. Such neighborhoods can only be parallelized
+	// if their copies measure radii from their own origins (see RadialNeigh).
+	// Each slab of work translates its own copy of the neighborhood.
 	
 	public Dataset reduceNoise(String neighDescrip) {
 		notifyUserAtStart(neighDescrip);
 		ImgPlus<U> newImg = input.copy();
-		long[] dims = new long[newImg.numDimensions()];
-		newImg.dimensions(dims);
-		PointSet space = new HyperVolumePointSet(dims);
-		PointSetInputIterator inputIterator =
-				new PointSetInputIterator(space, neighborhood);
-		long[] outputOrigin = new long[input.numDimensions()];
-		long[] outputSpan = outputOrigin.clone();
-		input.dimensions(outputSpan);
-		// NB - regular ImageAssignement won't work here for radial neighborhood due
-		// to the duplication of neighborhoods for parallelization and its
-		// interference with the WithinRadiusOfPointSetOriginCondition.
-		SerialImageAssignment<U,V,PointSet> assigner =
-				new SerialImageAssignment<U,V,PointSet>(
-					newImg,
-					inputFunction,
-					inputIterator,
-					null);
-		assigner.assign();
+		final SlidingHistogramFilter filter = createFilter();
+		if (filter != null) filter.filter(newImg, threadCount);
+		else assign(newImg);
 		notifyUserAtEnd(neighDescrip);
 		return new DefaultDataset(context, newImg);
 	}
 
 	// -- private interface --
+
+	/**
+	 * Creates the sliding histogram filter for the image and neighborhood, or
+	 * returns null if they do not qualify (the neighborhood, which may be set
+	 * by the user, can have rows that are not contiguous).
+	 */
+	private SlidingHistogramFilter createFilter() {
+		if (statistic == null || !SlidingHistogramFilter.canFilter(input)) {
+			return null;
+		}
+		try {
+			return new SlidingHistogramFilter(input, neighborhood, statistic);
+		}
+		catch (final IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private void assign(final ImgPlus<U> output) {
+		final long[] dims = new long[output.numDimensions()];
+		output.dimensions(dims);
+		int splitAxis = dims.length - 1;
+		while (splitAxis > 0 && dims[splitAxis] == 1)
+			splitAxis--;
+		final int axis = splitAxis;
+		// NB - samples smaller than a byte share storage words with their
+		// neighbors so concurrent writes to different pixels could collide
+		final int bits = output.firstElement().getBitsPerPixel();
+		final int threads = bits % 8 == 0 ? threadCount : 1;
+		final long[] bounds =
+			threads == 1 ? new long[] { 0, dims[axis] } : ParallelLoop
+				.chunkBounds(dims[axis], 2);
+		ParallelLoop.run(bounds.length - 1, threads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int chunk) {
+				final long[] slabDims = dims.clone();
+				slabDims[axis] = bounds[chunk + 1] - bounds[chunk];
+				final long[] slabOrigin = new long[dims.length];
+				slabOrigin[axis] = bounds[chunk];
+				final PointSet slab = new HyperVolumePointSet(slabDims);
+				slab.translate(slabOrigin);
+				final PointSetInputIterator inputIterator =
+					new PointSetInputIterator(slab, neighborhood.copy());
+				final SerialImageAssignment<U, V, PointSet> assigner =
+					new SerialImageAssignment<U, V, PointSet>(output, functionFactory
+						.create(), inputIterator, null);
+				assigner.assign();
+			}
+		});
+	}
 	
 	private void notifyUserAtStart(String neighDescrip) {
 		if (statusService != null)
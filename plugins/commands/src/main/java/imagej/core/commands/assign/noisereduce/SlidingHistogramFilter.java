@@ -0,0 +1,364 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.assign.noisereduce;
+
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import net.imglib2.img.Img;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computes neighborhood minimum, median or maximum values using a sliding
+ * histogram. Rather than gathering every neighbor of every pixel, the filter
+ * keeps a histogram of the current neighborhood and, when moving one pixel
+ * along a row, removes the column of values that leaves the neighborhood and
+ * adds the column that enters it. Per pixel cost thus grows with the number of
+ * rows in the neighborhood rather than with its volume.
+ * <p>
+ * The filter works on integer images of 16 bits or less that are backed by
+ * primitive arrays (see {@link #canFilter(Img)}) and requires that every row of
+ * the neighborhood be a contiguous run of x offsets, which holds for the
+ * rectangular and radial neighborhoods. Out of bounds neighbors are mirrored
+ * with the border pixel repeated, matching OutOfBoundsMirrorFactory's
+ * Boundary.DOUBLE as used by the noise reduction plugins. For an even number of
+ * neighbors the median is the mean of the two middle values. Results are
+ * identical to those of the corresponding imglib2-ops functions.
+ * </p>
+ */
+public class SlidingHistogramFilter {
+
+	// -- constants --
+
+	/** The neighborhood statistics the filter can compute. */
+	public enum Statistic {
+		MIN, MEDIAN, MAX
+	}
+
+	private static final int MAX_BITS = 16;
+	private static final int COARSE_SHIFT = 8;
+
+	// -- instance variables --
+
+	private final PlaneAccess source;
+	private final Statistic statistic;
+	private final long[] dims;
+	private final int width;
+	private final int height;
+	private final int typeMin;
+	private final int binCount;
+	private final int neighborCount;
+
+	/** Offsets of each neighborhood row along axes 1 and up. */
+	private final long[][] runOffsets;
+	/** First x offset of each neighborhood row. */
+	private final int[] runMinX;
+	/** Last x offset of each neighborhood row. */
+	private final int[] runMaxX;
+	private final int padLeft;
+	private final int padRight;
+
+	// -- constructor --
+
+	/**
+	 * Creates a filter for the given input image and neighborhood. The
+	 * neighborhood's points are read relative to its origin.
+	 * 
+	 * @throws IllegalArgumentException if the image cannot be filtered (see
+	 *           {@link #canFilter(Img)}) or the neighborhood has a row that is
+	 *           not contiguous
+	 */
+	public SlidingHistogramFilter(final Img<? extends RealType<?>> input,
+		final PointSet neighborhood, final Statistic statistic)
+	{
+		if (!canFilter(input)) {
+			throw new IllegalArgumentException(
+				"sliding histogram filter requires primitive integer data of at most " +
+					MAX_BITS + " bits");
+		}
+		this.source = PlaneAccess.create(input);
+		this.statistic = statistic;
+		this.dims = source.getDims();
+		this.width = source.getPlaneWidth();
+		this.height = source.getPlaneHeight();
+		final RealType<?> type = source.getType();
+		this.typeMin = (int) type.getMinValue();
+		this.binCount = (int) (type.getMaxValue() - type.getMinValue()) + 1;
+
+		final List<long[]> offsets = offsets(neighborhood, dims.length);
+		this.neighborCount = offsets.size();
+		final List<long[]> runs = new ArrayList<long[]>();
+		final List<int[]> runBounds = new ArrayList<int[]>();
+		for (final long[] offset : offsets) {
+			final int last = runs.size() - 1;
+			if (last >= 0 && sameRow(runs.get(last), offset)) {
+				final int[] bounds = runBounds.get(last);
+				if (offset[0] != bounds[1] + 1) {
+					throw new IllegalArgumentException(
+						"neighborhood rows must be contiguous");
+				}
+				bounds[1] = (int) offset[0];
+			}
+			else {
+				runs.add(offset);
+				runBounds.add(new int[] { (int) offset[0], (int) offset[0] });
+			}
+		}
+		runOffsets = runs.toArray(new long[runs.size()][]);
+		runMinX = new int[runBounds.size()];
+		runMaxX = new int[runBounds.size()];
+		int left = 0, right = 0;
+		for (int r = 0; r < runMinX.length; r++) {
+			runMinX[r] = runBounds.get(r)[0];
+			runMaxX[r] = runBounds.get(r)[1];
+			left = Math.max(left, -runMinX[r]);
+			right = Math.max(right, runMaxX[r]);
+		}
+		padLeft = left;
+		padRight = right;
+	}
+
+	// -- public interface --
+
+	/**
+	 * Returns true if the given image can be processed by a
+	 * SlidingHistogramFilter.
+	 */
+	public static boolean canFilter(final Img<? extends RealType<?>> img) {
+		final PlaneAccess access = PlaneAccess.create(img);
+		if (access == null || img.numDimensions() < 2) return false;
+		final RealType<?> type = access.getType();
+		if (!(type instanceof IntegerType)) return false;
+		return type.getBitsPerPixel() <= MAX_BITS;
+	}
+
+	/**
+	 * Fills the output image with the chosen statistic of each input pixel's
+	 * neighborhood. The output must have the same dimensions as the input and
+	 * must not share storage with it. Rows are processed in parallel.
+	 */
+	public void filter(final Img<? extends RealType<?>> output) {
+		filter(output, ParallelLoop.defaultThreadCount());
+	}
+
+	/**
+	 * Fills the output image like {@link #filter(Img)}, using at most the given
+	 * number of threads.
+	 */
+	public void filter(final Img<? extends RealType<?>> output,
+		final int maxThreads)
+	{
+		final PlaneAccess target = PlaneAccess.create(output);
+		if (target == null) {
+			throw new IllegalArgumentException("output must be primitive backed");
+		}
+		final int rowCount = source.getPlaneCount() * height;
+		final long[] bounds = ParallelLoop.chunkBounds(rowCount, 4);
+		final int chunks = bounds.length - 1;
+		ParallelLoop.run(chunks, maxThreads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int chunk) {
+				final RowFilter rowFilter = new RowFilter(target);
+				for (long row = bounds[chunk]; row < bounds[chunk + 1]; row++)
+					rowFilter.filterRow((int) (row / height), (int) (row % height));
+			}
+		});
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Returns the points of the neighborhood relative to its origin, sorted so
+	 * that points of the same row are adjacent and ordered by x.
+	 */
+	private static List<long[]> offsets(final PointSet neighborhood,
+		final int numDims)
+	{
+		if (neighborhood.numDimensions() != numDims) {
+			throw new IllegalArgumentException(
+				"neighborhood and image dimensionality differ");
+		}
+		final long[] origin = neighborhood.getOrigin();
+		final List<long[]> offsets = new ArrayList<long[]>();
+		final PointSetIterator iter = neighborhood.iterator();
+		while (iter.hasNext()) {
+			final long[] point = iter.next();
+			final long[] offset = new long[numDims];
+			for (int d = 0; d < numDims; d++)
+				offset[d] = point[d] - origin[d];
+			offsets.add(offset);
+		}
+		if (offsets.isEmpty()) {
+			throw new IllegalArgumentException("neighborhood is empty");
+		}
+		final Comparator<long[]> rowMajor = new Comparator<long[]>() {
+
+			@Override
+			public int compare(final long[] a, final long[] b) {
+				for (int d = a.length - 1; d >= 0; d--) {
+					if (a[d] < b[d]) return -1;
+					if (a[d] > b[d]) return 1;
+				}
+				return 0;
+			}
+		};
+		final long[][] sorted = offsets.toArray(new long[offsets.size()][]);
+		Arrays.sort(sorted, rowMajor);
+		return Arrays.asList(sorted);
+	}
+
+	private static boolean sameRow(final long[] a, final long[] b) {
+		for (int d = 1; d < a.length; d++)
+			if (a[d] != b[d]) return false;
+		return true;
+	}
+
+	/** Mirrors an index into [0, size) repeating the border index. */
+	private static long mirror(final long index, final long size) {
+		final long period = 2 * size;
+		long i = index % period;
+		if (i < 0) i += period;
+		if (i >= size) i = period - 1 - i;
+		return i;
+	}
+
+	/**
+	 * Per thread working storage: the histogram and padded copies of the source
+	 * rows that feed one output row.
+	 */
+	private class RowFilter {
+
+		private final PlaneAccess target;
+		private final int[] fine = new int[binCount];
+		private final int[] coarse = new int[(binCount >> COARSE_SHIFT) + 1];
+		private final int[][] rows = new int[runOffsets.length][];
+		private final double[] rowValues = new double[width];
+		private final double[] output = new double[width];
+		private final long[] position = new long[dims.length];
+		private final long[] sourcePos = new long[dims.length];
+
+		public RowFilter(final PlaneAccess target) {
+			this.target = target;
+			for (int r = 0; r < rows.length; r++)
+				rows[r] = new int[padLeft + width + padRight];
+		}
+
+		public void filterRow(final int planeNum, final int y) {
+			PlaneAccess.planePosition(dims, planeNum, position);
+			position[1] = y;
+			for (int r = 0; r < rows.length; r++)
+				loadRow(r);
+
+			Arrays.fill(fine, 0);
+			Arrays.fill(coarse, 0);
+			for (int r = 0; r < rows.length; r++) {
+				final int[] row = rows[r];
+				for (int dx = runMinX[r]; dx <= runMaxX[r]; dx++)
+					add(row[padLeft + dx]);
+			}
+			output[0] = statistic();
+			for (int x = 1; x < width; x++) {
+				for (int r = 0; r < rows.length; r++) {
+					final int[] row = rows[r];
+					remove(row[padLeft + x - 1 + runMinX[r]]);
+					add(row[padLeft + x + runMaxX[r]]);
+				}
+				output[x] = statistic();
+			}
+			target.getPlane(planeNum).set(y * width, output, 0, width);
+		}
+
+		/** Reads the (mirrored) source row feeding neighborhood row r. */
+		private void loadRow(final int r) {
+			final long[] offset = runOffsets[r];
+			for (int d = 1; d < dims.length; d++)
+				sourcePos[d] = mirror(position[d] + offset[d], dims[d]);
+			final int sourcePlane = (int) PlaneAccess.planeIndex(dims, sourcePos);
+			final int sourceY = (int) sourcePos[1];
+			source.getPlane(sourcePlane).get(sourceY * width, rowValues, 0, width);
+			final int[] row = rows[r];
+			for (int i = 0; i < row.length; i++) {
+				final int x = (int) mirror(i - padLeft, width);
+				row[i] = (int) rowValues[x] - typeMin;
+			}
+		}
+
+		private void add(final int bin) {
+			fine[bin]++;
+			coarse[bin >> COARSE_SHIFT]++;
+		}
+
+		private void remove(final int bin) {
+			fine[bin]--;
+			coarse[bin >> COARSE_SHIFT]--;
+		}
+
+		private double statistic() {
+			switch (statistic) {
+				case MIN:
+					return valueOfRank(0);
+				case MAX:
+					return valueOfRank(neighborCount - 1);
+				default:
+					final int half = neighborCount / 2;
+					if (neighborCount % 2 == 1) return valueOfRank(half);
+					return (valueOfRank(half - 1) + valueOfRank(half)) / 2;
+			}
+		}
+
+		/** Returns the value of the k-th smallest (0 based) neighbor. */
+		private double valueOfRank(final int k) {
+			int seen = 0;
+			int c = 0;
+			while (seen + coarse[c] <= k)
+				seen += coarse[c++];
+			int bin = c << COARSE_SHIFT;
+			while (seen + fine[bin] <= k)
+				seen += fine[bin++];
+			return bin + typeMin;
+		}
+	}
+}
@@ -46,12 +46,8 @@
 
 import java.util.List;
 
-import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
-import net.imglib2.ops.pointset.HyperVolumePointSet;
-import net.imglib2.ops.pointset.PointSetIterator;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.ItemIO;
 import org.scijava.plugin.Menu;
@@ -60,7 +56,8 @@
 
 /**
  * Fills an output Dataset with a combination of two input Datasets. The
- * combination is specified by the user (such as Add, Min, Average, etc.).
+ * combination is specified by the user (such as Add, Min, Average, etc.). A
+ * single plane input 2 is combined with every plane of input 1.
  * 
  * @author Barry DeZonia
  * @author Curtis Rueden
@@ -118,23 +115,21 @@ public void run() {
 		if (operator == null) {
 			operator = (CalculatorOp<U, V>) calculatorService.getOperator(opName);
 		}
-		Img<DoubleType> img = null;
+		final Img<U> img1 = (Img<U>) input1.getImgPlus();
+		final Img<V> img2 = (Img<V>) input2.getImgPlus();
+		final long[] span;
 		try {
-			final Img<U> img1 = (Img<U>) input1.getImgPlus();
-			final Img<V> img2 = (Img<V>) input2.getImgPlus();
-			img = calculatorService.combine(img1, img2, operator);
+			span = calculatorService.combinedDimensions(img1, img2);
 		}
 		catch (final IllegalArgumentException e) {
 			cancel(e.toString());
 			return;
 		}
-		final long[] span = new long[img.numDimensions()];
-		img.dimensions(span);
 
 		// replace original data if desired by user
 		if (!wantDoubles && !newWindow) {
 			output = null;
-			copyDataInto(input1.getImgPlus(), img, span);
+			calculatorService.combine(img1, img2, operator, img1);
 			input1.update();
 		}
 		else { // write into output
@@ -150,7 +145,8 @@ public void run() {
 			output =
 				datasetService.create(span, "Result of operation", input1.getAxes(),
 					bits, signed, floating);
-			copyDataInto(output.getImgPlus(), img, span);
+			calculatorService.combine(img1, img2, operator,
+				output.getImgPlus());
 			output.update(); // TODO - probably unnecessary
 		}
 	}
@@ -249,23 +245,4 @@ protected void initCalculator() {
 		opNameInput.setChoices(opNames);
 	}
 
-	// -- private helpers --
-
-	private void copyDataInto(final Img<? extends RealType<?>> out,
-		final Img<? extends RealType<?>> in, final long[] span)
-	{
-		final RandomAccess<? extends RealType<?>> src = in.randomAccess();
-		final RandomAccess<? extends RealType<?>> dst = out.randomAccess();
-		final HyperVolumePointSet ps = new HyperVolumePointSet(span);
-		final PointSetIterator iter = ps.iterator();
-		long[] pos = null;
-		while (iter.hasNext()) {
-			pos = iter.next();
-			src.setPosition(pos);
-			dst.setPosition(pos);
-			final double value = src.get().getRealDouble();
-			dst.get().setReal(value);
-		}
-	}
-
 }
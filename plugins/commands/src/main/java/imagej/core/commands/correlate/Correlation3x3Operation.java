@@ -37,6 +37,7 @@
 
 import imagej.core.commands.neigh.Neighborhood3x3Operation;
 import imagej.core.commands.neigh.Neighborhood3x3Watcher;
+import imagej.core.commands.neigh.Neighborhood3x3WatcherFactory;
 import imagej.data.Dataset;
 import imagej.util.RealRect;
 
@@ -76,7 +77,13 @@ public Correlation3x3Operation(final Dataset input, final RealRect selection,
 		this.kernel = kernel;
 		this.neighOperation =
 			new Neighborhood3x3Operation(input, selection,
-				new CorrelateWatcher(input));
+				new Neighborhood3x3WatcherFactory() {
+
+					@Override
+					public Neighborhood3x3Watcher createWatcher() {
+						return new CorrelateWatcher(input);
+					}
+				});
 
 		if (kernel.length != 9) throw new IllegalArgumentException(
 			"kernel must contain nine elements (shaped 3x3)");
@@ -98,7 +105,7 @@ public void run() {
 	 * is calculated. The watcher is called from Neighborhood3x3Operation visiting
 	 * each pixel in the input image (and all its immediate neighbors) once.
 	 * CorrelateWatcher tallies that information and returns appropriate values as
-	 * necessary.
+	 * necessary. Each thread of the operation uses its own CorrelateWatcher.
 	 */
 	private class CorrelateWatcher implements Neighborhood3x3Watcher {
 
@@ -40,6 +40,8 @@
 import imagej.data.display.ImageDisplay;
 import imagej.data.display.ImageDisplayService;
 import imagej.data.display.event.AxisPositionEvent;
+import imagej.data.histogram.HistogramBinning;
+import imagej.data.histogram.HistogramService;
 import imagej.data.overlay.ThresholdOverlay;
 import imagej.data.threshold.AutoThresholdMethod;
 import imagej.data.threshold.ThresholdService;
@@ -50,17 +52,9 @@
 import imagej.util.Colors;
 import imagej.widget.Button;
 import net.imglib2.Cursor;
-import net.imglib2.IterableInterval;
-import net.imglib2.RandomAccess;
-import net.imglib2.img.Img;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.AxisType;
-import net.imglib2.ops.pointset.HyperVolumePointSet;
-import net.imglib2.ops.pointset.PointSet;
-import net.imglib2.ops.pointset.PointSetIterator;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
 
 import org.scijava.ItemIO;
 import org.scijava.event.EventHandler;
@@ -164,6 +158,9 @@ public class Threshold extends InteractiveCommand {
 	@Parameter
 	private ThresholdService threshSrv;
 
+	@Parameter
+	private HistogramService histSrv;
+
 	@Parameter
 	private ImageDisplayService imgDispSrv;
 
@@ -384,114 +381,32 @@ private void getAutoThresholdMethodNames() {
 
 	private void calcDataRange() {
 		Dataset ds = imgDispSrv.getActiveDataset(display);
-		dataMin = Double.POSITIVE_INFINITY;
-		dataMax = Double.NEGATIVE_INFINITY;
-		ImgPlus<? extends RealType<?>> imgPlus = ds.getImgPlus();
-		Cursor<? extends RealType<?>> cursor = imgPlus.cursor();
-		while (cursor.hasNext()) {
-			cursor.fwd();
-			double value = cursor.get().getRealDouble();
-			if (!Double.isNaN(value)) {
-				if (value < dataMin) dataMin = value;
-				if (value > dataMax) dataMax = value;
-			}
-		}
+		double[] range = histSrv.getDataRange(ds);
+		dataMin = range[0];
+		dataMax = range[1];
 	}
 
 	// builds the histogram from either the whole data range or the currently
 	// viewed plane
 
 	private long[] buildHistogram(boolean allData, long[] existingHist) {
-		// return buildHistogramFromPointSets(allData, existingHist);
-		return buildHistogramFromViews(allData, existingHist);
-	}
-
-	private long[] buildHistogramFromViews(boolean allData, long[] existingHist) {
 		Dataset ds = imgDispSrv.getActiveDataset(display);
-		long[] min = new long[ds.numDimensions()];
-		long[] max = min.clone();
-		max[0] = ds.dimension(0) - 1;
-		max[1] = ds.dimension(1) - 1;
-		for (int d = 2; d < ds.numDimensions(); d++) {
-			if (allData) {
-				min[d] = 0;
-				max[d] = ds.dimension(d) - 1;
-			}
-			else { // viewed data only
-				AxisType axisType = ds.axis(d);
-				long pos = display.getLongPosition(axisType);
-				min[d] = pos;
-				max[d] = pos;
-			}
-		}
-		Img<? extends RealType<?>> img = ds.getImgPlus();
-		IntervalView<? extends RealType<?>> view = Views.interval(img, min, max);
-		IterableInterval<? extends RealType<?>> data = Views.iterable(view);
-		final long[] histogram;
-		if (existingHist == null) {
-			// +1 needed for int but maybe not float
-			histogram = allocateHistogram(dataMax - dataMin + 1);
+		// +1 needed for int but maybe not float
+		int bins =
+			(existingHist == null) ? allocateHistogram(dataMax - dataMin + 1)
+				: existingHist.length;
+		HistogramBinning binning =
+			HistogramBinning.rounded(dataMin, dataMax, bins);
+		if (allData) return histSrv.getHistogram(ds, binning).getCounts();
+		long[] position = new long[ds.numDimensions()];
+		for (int d = 2; d < position.length; d++) {
+			AxisType axisType = ds.axis(d);
+			position[d] = display.getLongPosition(axisType);
 		}
-		else {
-			zeroOut(existingHist);
-			histogram = existingHist;
-		}
-		Cursor<? extends RealType<?>> cursor = data.cursor();
-		while (cursor.hasNext()) {
-			double value = cursor.next().getRealDouble();
-			double relPos = (value - dataMin) / (dataMax - dataMin);
-			int binNumber = (int) Math.round((histogram.length - 1) * relPos);
-			histogram[binNumber]++;
-		}
-		return histogram;
-	}
-
-	@SuppressWarnings("unused")
-	private long[] buildHistogramFromPointSets(boolean allData,
-		long[] existingHist)
-	{
-		Dataset ds = imgDispSrv.getActiveDataset(display);
-		final long[] histogram;
-		if (existingHist == null) {
-			// +1 needed for int but maybe not float
-			histogram = allocateHistogram(dataMax - dataMin + 1);
-		}
-		else {
-			zeroOut(existingHist);
-			histogram = existingHist;
-		}
-		RandomAccess<? extends RealType<?>> accessor =
-			ds.getImgPlus().randomAccess();
-		PointSet points = allData ? allPlanes(ds) : viewedPlane(ds);
-		PointSetIterator iter = points.iterator();
-		while (iter.hasNext()) {
-			long[] pos = iter.next();
-			accessor.setPosition(pos);
-			double value = accessor.get().getRealDouble();
-			double relPos = (value - dataMin) / (dataMax - dataMin);
-			int binNumber = (int) Math.round((histogram.length - 1) * relPos);
-			histogram[binNumber]++;
-		}
-		return histogram;
+		return histSrv.getPlaneHistogram(ds, position, binning).getCounts();
 	}
 
-	private PointSet allPlanes(Dataset dataset) {
-		return new HyperVolumePointSet(dataset.getDims());
-	}
-
-	private PointSet viewedPlane(Dataset dataset) {
-		long[] pt1 = new long[dataset.numDimensions()];
-		long[] pt2 = new long[dataset.numDimensions()];
-		for (int i = 2; i < pt1.length; i++) {
-			AxisType axisType = dataset.axis(i);
-			pt1[i] = pt2[i] = display.getLongPosition(axisType);
-		}
-		pt2[0] = dataset.dimension(0) - 1;
-		pt2[1] = dataset.dimension(1) - 1;
-		return new HyperVolumePointSet(pt1, pt2);
-	}
-
-	private long[] allocateHistogram(double dataRange) {
+	private int allocateHistogram(double dataRange) {
 		// TODO - size of histogram affects speed of all autothresh methods
 		// What is the best way to determine size?
 		// Do we want some power of two as size? For now yes.
@@ -504,12 +419,6 @@ private long[] allocateHistogram(double dataRange) {
 			}
 		}
 		if (histSize == -1) histSize = MAX;
-		return new long[histSize];
-	}
-
-	private void zeroOut(long[] histogram) {
-		for (int i = 0; i < histogram.length; i++) {
-			histogram[i] = 0;
-		}
+		return histSize;
 	}
 }
@@ -38,35 +38,37 @@
 import imagej.command.Command;
 import imagej.command.ContextCommand;
 import imagej.data.Dataset;
+import imagej.io.DatasetLoad;
 import imagej.io.IOService;
-import imagej.menu.MenuConstants;
 import imagej.ui.DialogPrompt;
 import imagej.ui.UIService;
 
 import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.io.ImgIOException;
 
 import org.scijava.ItemIO;
+import org.scijava.ItemVisibility;
 import org.scijava.log.LogService;
-import org.scijava.plugin.Menu;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.thread.ThreadService;
 
 /**
- * Opens the selected file as a {@link Dataset}.
+ * Opens the selected file as a {@link Dataset}, waiting until the whole image
+ * is read. If the "background" input is set and a user interface is visible,
+ * the dataset is instead output (and so displayed) as soon as its dimensions
+ * are known and its planes are read in the background, as File &gt; Open does
+ * (see {@link OpenImageInBackground}); a read failing after that is reported
+ * through the user interface.
  * 
  * @author Curtis Rueden
  * @author Mark Hiner
  */
-@Plugin(type = Command.class, iconPath = "/icons/commands/folder_picture.png",
-	menu = {
-		@Menu(label = MenuConstants.FILE_LABEL,
-			weight = MenuConstants.FILE_WEIGHT,
-			mnemonic = MenuConstants.FILE_MNEMONIC),
-		@Menu(label = "Open...", weight = 1, mnemonic = 'o',
-			accelerator = "control O") })
+@Plugin(type = Command.class, iconPath = "/icons/commands/folder_picture.png")
 public class OpenImage extends ContextCommand {
 
 	@Parameter
@@ -78,17 +80,43 @@ public class OpenImage extends ContextCommand {
 	@Parameter
 	private UIService uiService;
 
+	@Parameter
+	private ThreadService threadService;
+
 	@Parameter(label = "File to open")
 	private File inputFile;
 
+	@Parameter(visibility = ItemVisibility.INVISIBLE, persist = false,
+		required = false)
+	private boolean background;
+
 	@Parameter(type = ItemIO.OUTPUT)
 	private Dataset dataset;
 
 	@Override
 	public void run() {
 		final String source = inputFile.getAbsolutePath();
+		final DatasetLoad load = ioService.loadDatasetAsync(source);
 		try {
-			dataset = ioService.loadDataset(source);
+			dataset = load.getDataset();
+			// NB - the dataset can be displayed while its planes are still read
+			if (background && uiService.isVisible()) reportFailure(load);
+			else load.get();
+		}
+		catch (final InterruptedException e) {
+			load.cancel(true);
+			dataset = null;
+			Thread.currentThread().interrupt();
+		}
+		catch (final CancellationException e) {
+			// loading was cancelled: nothing to show
+			dataset = null;
+		}
+		catch (final ExecutionException e) {
+			// the failure is logged by the IOService
+			dataset = null;
+			uiService.showDialog(e.getCause().getMessage(),
+				DialogPrompt.MessageType.ERROR_MESSAGE);
 		}
 		catch (final ImgIOException e) {
 			log.error(e);
@@ -110,6 +138,14 @@ public void setInputFile(final File inputFile) {
 		this.inputFile = inputFile;
 	}
 
+	public boolean isBackground() {
+		return background;
+	}
+
+	public void setBackground(final boolean background) {
+		this.background = background;
+	}
+
 	public Dataset getDataset() {
 		return dataset;
 	}
@@ -118,4 +154,34 @@ public void setDataset(final Dataset dataset) {
 		this.dataset = dataset;
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Reports the failure of a load still in progress once it fails, since this
+	 * command is done by then.
+	 */
+	private void reportFailure(final DatasetLoad load) {
+		threadService.run(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					load.get();
+				}
+				catch (final InterruptedException e) {
+					// nothing left to report
+				}
+				catch (final CancellationException e) {
+					// cancelled on purpose
+				}
+				catch (final ExecutionException e) {
+					// the failure is logged by the IOService
+					uiService.showDialog("Cannot read all of " +
+						inputFile.getName() + ": " + e.getCause().getMessage(),
+						DialogPrompt.MessageType.ERROR_MESSAGE);
+				}
+			}
+		});
+	}
+
 }
@@ -83,7 +83,13 @@ public void run() {
 		final RealRect selection = overlayService.getSelectionBounds(display);
 		final Neighborhood3x3Operation operation =
 			new Neighborhood3x3Operation(input, selection,
-				new FindEdgesWatcher(input));
+				new Neighborhood3x3WatcherFactory() {
+
+					@Override
+					public Neighborhood3x3Watcher createWatcher() {
+						return new FindEdgesWatcher(input);
+					}
+				});
 		operation.run();
 	}
 
@@ -36,46 +36,94 @@
 package imagej.core.commands.neigh;
 
 import imagej.data.Dataset;
-import imagej.data.Extents;
-import imagej.data.Position;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
 import imagej.util.RealRect;
-import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
-import net.imglib2.RandomAccessible;
 import net.imglib2.img.Img;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.view.Views;
 
 /**
  * Neighborhood3x3Operation - a helper class for 3x3 neighborhood operation
  * plugins such as SmoothDataValues, SharpenDataValues, and FindEdges. Does the
  * work of communicating with a Neighborhood3x3Watcher.
+ * <p>
+ * The operation works in place. Rather than cloning the whole image it slides a
+ * three row buffer of original values down each plane, so only O(rows) extra
+ * memory is needed. Out of bounds neighbors are mirrored (without repeating the
+ * border pixel) just as {@code Views.extendMirrorSingle()} would do. Rows are
+ * read and written directly through the backing primitive arrays when the
+ * image is planar or array based and through a RandomAccess otherwise.
+ * </p>
+ * <p>
+ * When constructed with a {@link Neighborhood3x3WatcherFactory} the work is
+ * split across threads: by plane when there are enough planes to keep every
+ * processor busy and by bands of rows within each plane otherwise. When given a
+ * single {@link Neighborhood3x3Watcher} the operation runs on the calling
+ * thread.
+ * </p>
  * 
  * @author Barry DeZonia
  */
 public class Neighborhood3x3Operation {
 
+	// -- constants --
+
+	/** Fewest rows worth handing to a thread as a band of its own. */
+	private static final int MIN_BAND_ROWS = 16;
+
 	// -- instance variables --
 
 	private final Dataset input;
-	private Img<? extends RealType<?>> inputImage;
-	private Img<? extends RealType<?>> inputImageCopy;
 	private final RealRect selection;
 	private final Neighborhood3x3Watcher watcher;
+	private final Neighborhood3x3WatcherFactory watcherFactory;
+
+	private Img<? extends RealType<?>> inputImage;
+	private PlaneAccess planes;
+	private long[] imageDims;
+	private int width;
+	private int height;
+	private int minX;
+	private int minY;
+	private int regionWidth;
+	private int regionHeight;
 
-	// -- constructor --
+	// -- constructors --
 
+	/**
+	 * Creates an operation that visits every neighborhood with the given watcher
+	 * on the calling thread.
+	 */
 	public Neighborhood3x3Operation(final Dataset input,
 		final RealRect selection, final Neighborhood3x3Watcher watcher)
 	{
 		this.input = input;
 		this.watcher = watcher;
+		this.watcherFactory = null;
 		this.selection = selection;
 
 		if (watcher == null) throw new IllegalArgumentException(
 			"neighborhood watcher cannot be null!");
 	}
 
+	/**
+	 * Creates an operation that may visit neighborhoods on several threads at
+	 * once. Each thread obtains its own watcher from the given factory.
+	 */
+	public Neighborhood3x3Operation(final Dataset input,
+		final RealRect selection, final Neighborhood3x3WatcherFactory factory)
+	{
+		this.input = input;
+		this.watcher = null;
+		this.watcherFactory = factory;
+		this.selection = selection;
+
+		if (factory == null) throw new IllegalArgumentException(
+			"neighborhood watcher factory cannot be null!");
+	}
+
 	// -- public interface --
 
 	public void run() {
@@ -96,119 +144,244 @@ private void checkInput() {
 		if (input.getImgPlus() == null) throw new IllegalArgumentException(
 			"input Img is null");
 
-		// if (input.getImage().numDimensions() != 2)
-		// throw new IllegalArgumentException("input image is not 2d but has " +
-		// input.getImage().numDimensions() + " dimensions");
+		if (input.numDimensions() < 2) throw new IllegalArgumentException(
+			"input Dataset must have at least two dimensions");
 	}
 
 	private void setupWorkingData() {
 		inputImage = input.getImgPlus();
-		inputImageCopy = cloneImage(inputImage);
+		planes = PlaneAccess.create(inputImage);
+		imageDims = new long[inputImage.numDimensions()];
+		inputImage.dimensions(imageDims);
+		if (imageDims[0] > Integer.MAX_VALUE || imageDims[1] > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("input planes are too large");
+		}
+		width = (int) imageDims[0];
+		height = (int) imageDims[1];
+
+		if (selection.width == 0) selection.width = width;
+		if (selection.height == 0) selection.height = height;
+
+		minX = Math.max(0, (int) selection.x);
+		minY = Math.max(0, (int) selection.y);
+		regionWidth = Math.min(width, (int) (selection.x + selection.width)) - minX;
+		regionHeight =
+			Math.min(height, (int) (selection.y + selection.height)) - minY;
 	}
 
 	private void runAssignment() {
-		final long[] planeDims = new long[inputImage.numDimensions() - 2];
-		for (int i = 0; i < planeDims.length; i++)
-			planeDims[i] = inputImage.dimension(i + 2);
-		final Extents extents = new Extents(planeDims);
-		final Position planePos = extents.createPosition();
-		if (planeDims.length == 0) { // dataset is 2d only
-			applyOperationToPlane(planePos);
-		}
-		else { // 3 or more dimensions
-			while (planePos.hasNext()) {
-				planePos.fwd();
-				applyOperationToPlane(planePos);
+		if (regionWidth > 0 && regionHeight > 0) {
+			long planeCount = 1;
+			for (int i = 2; i < imageDims.length; i++)
+				planeCount *= imageDims[i];
+			if (planeCount > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("too many planes");
+			}
+			final int numPlanes = (int) planeCount;
+			final int numThreads = threadCount();
+			final int maxY = minY + regionHeight;
+			if (numThreads == 1) {
+				for (int p = 0; p < numPlanes; p++)
+					applyOperationToBand(watcher(), p, minY, maxY, null);
+			}
+			else if (numPlanes >= numThreads) {
+				ParallelLoop.run(numPlanes, numThreads, new ParallelLoop.Body() {
+
+					@Override
+					public void run(final int p) {
+						applyOperationToBand(watcher(), p, minY, maxY, null);
+					}
+				});
+			}
+			else {
+				for (int p = 0; p < numPlanes; p++)
+					applyOperationToPlaneInBands(p, numThreads);
 			}
 		}
 		input.update();
 	}
 
-	private void applyOperationToPlane(final Position planePos) {
+	/**
+	 * Splits one plane into bands of rows and runs the bands in parallel. The
+	 * rows bordering each band are captured before any band starts writing so
+	 * that every band sees original values at its edges.
+	 */
+	private void applyOperationToPlaneInBands(final int planeNum,
+		final int numThreads)
+	{
+		final int maxBands = Math.max(1, regionHeight / MIN_BAND_ROWS);
+		final int numBands = Math.min(maxBands, 2 * numThreads);
+		final int[] bandStarts = new int[numBands + 1];
+		for (int b = 0; b <= numBands; b++)
+			bandStarts[b] = minY + (int) ((long) regionHeight * b / numBands);
+
+		final RowIO io = new RowIO(planeNum);
+		final double[][][] halos = new double[numBands][][];
+		for (int b = 0; b < numBands; b++)
+			halos[b] = captureHalos(io, bandStarts[b], bandStarts[b + 1]);
+
+		ParallelLoop.run(numBands, numThreads, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int b) {
+				applyOperationToBand(watcher(), planeNum, bandStarts[b],
+					bandStarts[b + 1], halos[b]);
+			}
+		});
+	}
 
-		final long[] imageDims = new long[inputImage.numDimensions()];
-		inputImage.dimensions(imageDims);
+	/**
+	 * Applies the operation to rows [startY, endY) of the given plane. halos
+	 * contains copies of the original rows just above and just below the band;
+	 * if null they are read at the start of the band.
+	 */
+	private void applyOperationToBand(final Neighborhood3x3Watcher w,
+		final int planeNum, final int startY, final int endY,
+		final double[][] halos)
+	{
+		final RowIO io = new RowIO(planeNum);
+		final double[][] edges =
+			(halos != null) ? halos : captureHalos(io, startY, endY);
 
-		if (selection.width == 0) selection.width = (int) imageDims[0];
+		// initialize the watcher
+		w.setup();
+
+		final long[] position = new long[imageDims.length];
+		PlaneAccess.planePosition(imageDims, planeNum, position);
+
+		double[] prev = edges[0];
+		double[] curr = new double[width + 2];
+		double[] next = new double[width + 2];
+		final double[] spare = new double[width + 2];
+		final double[] output = new double[regionWidth];
+		io.readRow(startY, curr);
+
+		for (int y = startY; y < endY; y++) {
+			if (y + 1 < endY) io.readRow(y + 1, next);
+			else next = edges[1];
+			position[1] = y;
+			for (int i = 0; i < regionWidth; i++) {
+				final int x = minX + i;
+				position[0] = x;
+				w.initializeNeighborhood(position);
+				// NB - padded rows are offset by one: column x lives at x + 1
+				w.visitLocation(-1, -1, prev[x]);
+				w.visitLocation(0, -1, prev[x + 1]);
+				w.visitLocation(1, -1, prev[x + 2]);
+				w.visitLocation(-1, 0, curr[x]);
+				w.visitLocation(0, 0, curr[x + 1]);
+				w.visitLocation(1, 0, curr[x + 2]);
+				w.visitLocation(-1, 1, next[x]);
+				w.visitLocation(0, 1, next[x + 1]);
+				w.visitLocation(1, 1, next[x + 2]);
+				output[i] = w.calcOutputValue();
+			}
+			// assign output
+			io.writeRow(y, output);
+
+			// slide the buffer down one row, recycling the oldest row buffer
+			final double[] recycled = (prev == edges[0]) ? spare : prev;
+			prev = curr;
+			curr = next;
+			next = recycled;
+		}
+	}
 
-		if (selection.height == 0) selection.height = (int) imageDims[1];
+	/**
+	 * Returns padded copies of the original rows bordering rows [startY, endY).
+	 */
+	private double[][] captureHalos(final RowIO io, final int startY,
+		final int endY)
+	{
+		final double[] above = new double[width + 2];
+		final double[] below = new double[width + 2];
+		io.readRow(mirror(startY - 1, height), above);
+		io.readRow(mirror(endY, height), below);
+		return new double[][] { above, below };
+	}
 
-		// output is done by changin input image in place
-		final RandomAccess<? extends RealType<?>> outputAccessor =
-			inputImage.randomAccess();
+	private Neighborhood3x3Watcher watcher() {
+		if (watcherFactory == null) return watcher;
+		return watcherFactory.createWatcher();
+	}
 
-		// input is a copy of the original data with out of bounds access enabled
-		final RandomAccessible<? extends RealType<?>> inputInterval =
-			Views.extendMirrorSingle(inputImageCopy);
+	private int threadCount() {
+		if (watcherFactory == null) return 1;
+		// NB - samples smaller than a byte share storage words with their
+		// neighbors so concurrent writes to different pixels could collide
+		if (input.getType().getBitsPerPixel() % 8 != 0) return 1;
+		return ParallelLoop.defaultThreadCount();
+	}
 
-		final RandomAccess<? extends RealType<?>> extendedInput =
-			inputInterval.randomAccess();
+	/** Mirrors an index into [0, size) without repeating the border index. */
+	private static int mirror(final int index, final int size) {
+		if (size == 1) return 0;
+		final int period = 2 * size - 2;
+		int i = index % period;
+		if (i < 0) i += period;
+		if (i >= size) i = period - i;
+		return i;
+	}
 
-		// initialize the watcher
-		watcher.setup();
+	/**
+	 * Reads and writes rows of one plane, going straight to the primitive arrays
+	 * when possible. Each thread uses its own instance.
+	 */
+	private class RowIO {
 
-		final long[] inputPosition = new long[imageDims.length];
-		final long[] localInputPosition = new long[imageDims.length];
+		private final RealArray plane;
+		private final RandomAccess<? extends RealType<?>> accessor;
+		private final long[] rowOrigin;
 
-		for (int i = 2; i < inputPosition.length; i++) {
-			inputPosition[i] = planePos.getLongPosition(i - 2);
-			localInputPosition[i] = planePos.getLongPosition(i - 2);
+		public RowIO(final int planeNum) {
+			if (planes != null) {
+				plane = planes.getPlane(planeNum);
+				accessor = null;
+				rowOrigin = null;
+			}
+			else {
+				plane = null;
+				accessor = inputImage.randomAccess();
+				rowOrigin = new long[imageDims.length];
+				PlaneAccess.planePosition(imageDims, planeNum, rowOrigin);
+			}
 		}
 
-		final long minX = (long) selection.x;
-		final long minY = (long) selection.y;
-		final long width = (long) selection.width;
-		final long height = (long) selection.height;
-		for (long y = minY; y < minY + height; y++) {
-			inputPosition[1] = y;
-			for (long x = minX; x < minX + width; x++) {
-				inputPosition[0] = x;
-				watcher.initializeNeighborhood(inputPosition);
-
-				for (int dy = -1; dy <= 1; dy++) {
-					localInputPosition[1] = inputPosition[1] + dy;
-					for (int dx = -1; dx <= 1; dx++) {
-						localInputPosition[0] = inputPosition[0] + dx;
-						extendedInput.setPosition(localInputPosition);
-						final double localValue = extendedInput.get().getRealDouble();
-						watcher.visitLocation(dx, dy, localValue);
-					}
+		/**
+		 * Reads row y into positions 1 through width of the given buffer and fills
+		 * positions 0 and width+1 with mirrored values.
+		 */
+		public void readRow(final int y, final double[] row) {
+			if (plane != null) {
+				plane.get(y * width, row, 1, width);
+			}
+			else {
+				rowOrigin[0] = 0;
+				rowOrigin[1] = y;
+				accessor.setPosition(rowOrigin);
+				for (int x = 1; x <= width; x++) {
+					row[x] = accessor.get().getRealDouble();
+					accessor.fwd(0);
 				}
-				// assign output
-				outputAccessor.setPosition(inputPosition);
-				outputAccessor.get().setReal(watcher.calcOutputValue());
 			}
+			row[0] = row[mirror(-1, width) + 1];
+			row[width + 1] = row[mirror(width, width) + 1];
 		}
-	}
-
-	// TODO - eliminate when ImgLib allows ability to duplicate/clone an Img
-	// TODO - find a way to eliminate use of raw types here
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private Img<? extends RealType<?>> cloneImage(final Img image) {
-		// TODO - used to be able to call Image::clone()
-		// For now copy data by hand
-
-		final long[] dimensions = new long[image.numDimensions()];
-		image.dimensions(dimensions);
 
-		final Img<? extends RealType<?>> copyOfImg =
-			image.factory().create(dimensions, image.firstElement());
-
-		final long[] position = new long[dimensions.length];
-
-		final Cursor<? extends RealType<?>> cursor = image.localizingCursor();
-
-		final RandomAccess<? extends RealType<?>> access =
-			copyOfImg.randomAccess();
-
-		while (cursor.hasNext()) {
-			cursor.next();
-			final double currValue = cursor.get().getRealDouble();
-			cursor.localize(position);
-			access.setPosition(position);
-			access.get().setReal(currValue);
+		/** Writes the given values into row y starting at column minX. */
+		public void writeRow(final int y, final double[] values) {
+			if (plane != null) {
+				plane.set(y * width + minX, values, 0, regionWidth);
+			}
+			else {
+				rowOrigin[0] = minX;
+				rowOrigin[1] = y;
+				accessor.setPosition(rowOrigin);
+				for (int i = 0; i < regionWidth; i++) {
+					accessor.get().setReal(values[i]);
+					accessor.fwd(0);
+				}
+			}
 		}
-
-		return copyOfImg;
 	}
 }
@@ -38,6 +38,7 @@
 import imagej.command.Command;
 import imagej.command.DynamicCommand;
 import imagej.data.Dataset;
+import imagej.data.access.EmptyPlanarImgFactory;
 import imagej.menu.MenuConstants;
 import imagej.module.MutableModuleItem;
 
@@ -136,8 +137,9 @@ public void run() {
 		final long[] newDimensions =
 			RestructureUtils.getDimensions(dataset, axis, quantity);
 		final ImgPlus<? extends RealType<?>> dstImgPlus =
-			RestructureUtils.createNewImgPlus(dataset, newDimensions, axes);
+			RestructureUtils.createEmptyImgPlus(dataset, newDimensions, axes);
 		fillNewImgPlus(dataset.getImgPlus(), dstImgPlus, axis);
+		EmptyPlanarImgFactory.allocateMissingPlanes(dstImgPlus);
 		final int compositeChannelCount =
 			compositeStatus(dataset, dstImgPlus, axis);
 		dstImgPlus.setCompositeChannelCount(compositeChannelCount);
@@ -0,0 +1,259 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.restructure;
+
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.SharedPlanes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.img.ImgPlus;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Splits the channels of a Dataset into separate Datasets and merges
+ * single-channel Datasets back into one. When the images are planar the
+ * resulting Datasets share their planes with the originals rather than
+ * copying them (see {@link SharedPlanes}); a shared plane is only copied once
+ * either side writes to it. Splitting or merging a planar stack thus costs
+ * time and memory proportional to its number of planes rather than its number
+ * of pixels. Other images are copied a plane (or a row) at a time.
+ * 
+ * @author Barry DeZonia
+ */
+public class ChannelSplitter {
+
+	private ChannelSplitter() {
+		// utility class : uninstantiable
+	}
+
+	// -- public interface --
+
+	/**
+	 * Returns one new Dataset per channel of the given Dataset. Each has the
+	 * axes of the input minus its channel axis and is named after the input
+	 * with a "C#-" prefix.
+	 */
+	public static List<Dataset> split(final DatasetService datasetService,
+		final Dataset dataset)
+	{
+		final int chAxis = dataset.getAxisIndex(Axes.CHANNEL);
+		if (chAxis < 0) {
+			throw new IllegalArgumentException("dataset has no channel axis");
+		}
+		final long[] dims = dataset.getDims();
+		final AxisType[] axes = dataset.getAxes();
+		final long[] newDims = new long[dims.length - 1];
+		final AxisType[] newAxes = new AxisType[axes.length - 1];
+		for (int i = 0, j = 0; i < dims.length; i++) {
+			if (i == chAxis) continue;
+			newDims[j] = dims[i];
+			newAxes[j++] = axes[i];
+		}
+		final ImgPlus<? extends RealType<?>> srcImgPlus = dataset.getImgPlus();
+		final int planeCount = planeCount(newDims);
+		final long[] newPos = new long[newDims.length];
+		final long[] srcPos = new long[dims.length];
+		final List<Dataset> channels = new ArrayList<Dataset>();
+		for (long c = 0; c < dims[chAxis]; c++) {
+			final ImgPlus<? extends RealType<?>> dstImgPlus =
+				RestructureUtils.createNewImgPlus(dataset, newDims, newAxes);
+			final int[] sourcePlanes = new int[planeCount];
+			for (int p = 0; p < planeCount; p++) {
+				PlaneAccess.planePosition(newDims, p, newPos);
+				for (int i = 0, j = 0; i < dims.length; i++)
+					srcPos[i] = i == chAxis ? c : newPos[j++];
+				sourcePlanes[p] = (int) PlaneAccess.planeIndex(dims, srcPos);
+			}
+			if (chAxis < 2 ||
+				!movePlanes(srcImgPlus, dstImgPlus, sourcePlanes))
+			{
+				final long[] srcOrigin = new long[dims.length];
+				final long[] srcSpan = dims.clone();
+				srcOrigin[chAxis] = c;
+				srcSpan[chAxis] = 1;
+				RestructureUtils.copyHyperVolume(srcImgPlus, srcOrigin, srcSpan,
+					dstImgPlus, new long[newDims.length], newDims);
+			}
+			RestructureUtils.allocateColorTables(dstImgPlus);
+			if (chAxis >= 2) {
+				copyColorTables(srcImgPlus, dstImgPlus, sourcePlanes);
+			}
+			final String name = "C" + (c + 1) + "-" + dataset.getName();
+			channels.add(createDataset(datasetService, dstImgPlus, name));
+		}
+		return channels;
+	}
+
+	/**
+	 * Returns a new Dataset whose channels are the given Datasets, in order.
+	 * The Datasets must have the same axes, dimensions and type and no channel
+	 * axis. The channel axis is inserted after the first two axes of the
+	 * inputs.
+	 */
+	public static Dataset merge(final DatasetService datasetService,
+		final List<Dataset> channels, final String name)
+	{
+		if (channels.isEmpty()) {
+			throw new IllegalArgumentException("no datasets to merge");
+		}
+		final Dataset first = channels.get(0);
+		final long[] dims = first.getDims();
+		final AxisType[] axes = first.getAxes();
+		if (dims.length < 2) {
+			throw new IllegalArgumentException("datasets must have XY planes");
+		}
+		for (final Dataset ds : channels) {
+			if (ds.getAxisIndex(Axes.CHANNEL) >= 0) {
+				throw new IllegalArgumentException(
+					"cannot merge datasets that already have a channel axis");
+			}
+			if (!Arrays.equals(dims, ds.getDims()) ||
+				!Arrays.equals(axes, ds.getAxes()) ||
+				ds.getType().getClass() != first.getType().getClass())
+			{
+				throw new IllegalArgumentException(
+					"datasets to merge must have the same axes, dims and type");
+			}
+		}
+		final int count = channels.size();
+		final long[] newDims = new long[dims.length + 1];
+		final AxisType[] newAxes = new AxisType[axes.length + 1];
+		for (int i = 0, j = 0; i < newDims.length; i++) {
+			if (i == 2) {
+				newDims[i] = count;
+				newAxes[i] = Axes.CHANNEL;
+			}
+			else {
+				newDims[i] = dims[j];
+				newAxes[i] = axes[j++];
+			}
+		}
+		final ImgPlus<? extends RealType<?>> dstImgPlus =
+			RestructureUtils.createNewImgPlus(first, newDims, newAxes);
+		RestructureUtils.allocateColorTables(dstImgPlus);
+		final int planeCount = planeCount(dims);
+		final int newPlaneCount = planeCount * count;
+		for (int c = 0; c < count; c++) {
+			final ImgPlus<? extends RealType<?>> srcImgPlus =
+				channels.get(c).getImgPlus();
+			// the channel axis varies fastest among the plane axes
+			final int[] sourcePlanes = new int[newPlaneCount];
+			Arrays.fill(sourcePlanes, -1);
+			for (int p = 0; p < planeCount; p++)
+				sourcePlanes[p * count + c] = p;
+			if (!movePlanes(srcImgPlus, dstImgPlus, sourcePlanes)) {
+				final long[] dstOrigin = new long[newDims.length];
+				final long[] dstSpan = newDims.clone();
+				dstOrigin[2] = c;
+				dstSpan[2] = 1;
+				final long[] srcOrigin = new long[dims.length];
+				RestructureUtils.copyHyperVolume(srcImgPlus, srcOrigin, dims,
+					dstImgPlus, dstOrigin, dstSpan);
+			}
+			copyColorTables(srcImgPlus, dstImgPlus, sourcePlanes);
+		}
+		dstImgPlus.setCompositeChannelCount(count);
+		return createDataset(datasetService, dstImgPlus, name);
+	}
+
+	// -- private helpers --
+
+	/**
+	 * Fills the planes of the destination from the given source planes (-1
+	 * meaning none), sharing them where possible and copying the rest. Returns
+	 * false if the planes could not be accessed directly.
+	 */
+	private static boolean movePlanes(
+		final ImgPlus<? extends RealType<?>> srcImgPlus,
+		final ImgPlus<? extends RealType<?>> dstImgPlus,
+		final int[] sourcePlanes)
+	{
+		final int[] toCopy = new int[sourcePlanes.length];
+		Arrays.fill(toCopy, -1);
+		boolean copyNeeded = false;
+		for (int d = 0; d < sourcePlanes.length; d++) {
+			final int s = sourcePlanes[d];
+			if (s < 0) continue;
+			if (!SharedPlanes.share(srcImgPlus, s, dstImgPlus, d)) {
+				toCopy[d] = s;
+				copyNeeded = true;
+			}
+		}
+		if (!copyNeeded) return true;
+		return RestructureUtils.copyPlanes(srcImgPlus, dstImgPlus, toCopy,
+			false);
+	}
+
+	/** Copies the color table of each source plane to its destination plane. */
+	private static void copyColorTables(final ImgPlus<?> srcImgPlus,
+		final ImgPlus<?> dstImgPlus, final int[] sourcePlanes)
+	{
+		final int srcCount = srcImgPlus.getColorTableCount();
+		for (int d = 0; d < sourcePlanes.length; d++) {
+			final int s = sourcePlanes[d];
+			if (s < 0 || s >= srcCount) continue;
+			dstImgPlus.setColorTable(srcImgPlus.getColorTable(s), d);
+		}
+	}
+
+	/** Returns the number of XY planes of an image of the given dimensions. */
+	private static int planeCount(final long[] dims) {
+		long count = 1;
+		for (int d = 2; d < dims.length; d++)
+			count *= dims[d];
+		if (count > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many planes");
+		}
+		return (int) count;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Dataset createDataset(final DatasetService datasetService,
+		final ImgPlus<? extends RealType<?>> imgPlus, final String name)
+	{
+		final Dataset ds = datasetService.create((ImgPlus) imgPlus);
+		ds.setName(name);
+		return ds;
+	}
+
+}
@@ -38,6 +38,7 @@
 import imagej.command.Command;
 import imagej.command.DynamicCommand;
 import imagej.data.Dataset;
+import imagej.data.access.EmptyPlanarImgFactory;
 import imagej.menu.MenuConstants;
 import imagej.module.MutableModuleItem;
 
@@ -138,10 +139,11 @@ public void run() {
 		final long[] newDimensions =
 			RestructureUtils.getDimensions(dataset, axis, -quantity);
 		final ImgPlus<? extends RealType<?>> dstImgPlus =
-			RestructureUtils.createNewImgPlus(dataset, newDimensions, axes);
+			RestructureUtils.createEmptyImgPlus(dataset, newDimensions, axes);
 		final int compositeChannelCount =
 			compositeStatus(dataset.getCompositeChannelCount(), dstImgPlus, axis);
 		fillNewImgPlus(dataset.getImgPlus(), dstImgPlus, axis);
+		EmptyPlanarImgFactory.allocateMissingPlanes(dstImgPlus);
 		dstImgPlus.setCompositeChannelCount(compositeChannelCount);
 		RestructureUtils.allocateColorTables(dstImgPlus);
 		if (Axes.isXY(axis)) {
@@ -38,6 +38,8 @@
 import imagej.command.Command;
 import imagej.command.DynamicCommand;
 import imagej.data.Dataset;
+import imagej.data.access.EmptyPlanarImgFactory;
+import imagej.data.access.PlaneAccess;
 import imagej.menu.MenuConstants;
 import imagej.module.DefaultModuleItem;
 
@@ -252,8 +254,14 @@ private ImgPlus<? extends RealType<?>> getReorganizedData() {
 		final long[] newDims = getNewDims(origDims);
 		final AxisType[] newAxes = getNewAxes(origAxes);
 		final ImgPlus<? extends RealType<?>> newImgPlus =
-			RestructureUtils.createNewImgPlus(dataset, newDims, newAxes);
+			RestructureUtils.createEmptyImgPlus(dataset, newDims, newAxes);
 		newImgPlus.setCompositeChannelCount(dataset.getCompositeChannelCount());
+		if (permutationAxisIndices[0] == 0 && permutationAxisIndices[1] == 1 &&
+			movePlanes(origDims, newDims, newImgPlus))
+		{
+			return newImgPlus;
+		}
+		EmptyPlanarImgFactory.allocateMissingPlanes(newImgPlus);
 		final RandomAccess<? extends RealType<?>> outputAccessor =
 			newImgPlus.randomAccess();
 		final long[] permutedPos = new long[inputSpan.length];
@@ -269,6 +277,27 @@ private ImgPlus<? extends RealType<?>> getReorganizedData() {
 		return newImgPlus;
 	}
 
+	/**
+	 * Fills the reordered ImgPlus by moving whole XY planes when X and Y keep
+	 * their places. Returns false if the planes cannot be accessed directly.
+	 */
+	private boolean movePlanes(final long[] origDims, final long[] newDims,
+		final ImgPlus<? extends RealType<?>> newImgPlus)
+	{
+		final long planeCount = RestructureUtils.planeCount(newImgPlus);
+		if (planeCount > Integer.MAX_VALUE) return false;
+		final int[] sourcePlanes = new int[(int) planeCount];
+		final long[] origPos = new long[origDims.length];
+		final long[] newPos = new long[origDims.length];
+		for (int p = 0; p < sourcePlanes.length; p++) {
+			PlaneAccess.planePosition(origDims, p, origPos);
+			permute(origPos, newPos);
+			sourcePlanes[(int) PlaneAccess.planeIndex(newDims, newPos)] = p;
+		}
+		return RestructureUtils.copyPlanes(dataset.getImgPlus(), newImgPlus,
+			sourcePlanes, true);
+	}
+
 	/**
 	 * Returns the axis index of an Axis given a permuted set of axes.
 	 */
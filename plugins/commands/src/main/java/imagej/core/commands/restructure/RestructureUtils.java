@@ -37,14 +37,23 @@
 
 import imagej.data.Dataset;
 import imagej.data.Extents;
+import imagej.data.access.EmptyPlanarImgFactory;
+import imagej.data.access.PlaneAccess;
+import imagej.util.ParallelLoop;
+
+import java.util.Arrays;
+
 import net.imglib2.RandomAccess;
 import net.imglib2.display.ColorTable;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
+import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.meta.AxisType;
 import net.imglib2.ops.pointset.HyperVolumePointSet;
 import net.imglib2.ops.pointset.PointSetIterator;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 
 /**
@@ -82,20 +91,38 @@ public static ImgPlus<? extends RealType<?>> createNewImgPlus(
 		final ImgFactory factory = ds.getImgPlus().factory();
 		final Img<? extends RealType<?>> img =
 			factory.create(dimensions, ds.getType());
-		final String name = ds.getName();
-		final double[] calibration = new double[axes.length];
-		for (int i = 0; i < axes.length; i++) {
-			final int index = ds.getAxisIndex(axes[i]);
-			if (index >= 0) calibration[i] = ds.calibration(index);
-			else calibration[i] = Double.NaN;
+		return wrap(ds, img, axes);
+	}
+
+	/**
+	 * Creates a new ImgPlus like {@link #createNewImgPlus} but, when the input
+	 * Dataset is stored in plain planes of the same XY size, without allocating
+	 * them (see {@link EmptyPlanarImgFactory}): {@link #copyPlanes} then moves
+	 * the planes of the input over by reference and only the planes that remain
+	 * missing are allocated, by
+	 * {@link EmptyPlanarImgFactory#allocateMissingPlanes}.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static ImgPlus<? extends RealType<?>> createEmptyImgPlus(
+		final Dataset ds, final long[] dimensions, final AxisType[] axes)
+	{
+		final ImgFactory factory = ds.getImgPlus().factory();
+		if (factory.getClass() != PlanarImgFactory.class ||
+			dimensions.length < 2 || dimensions[0] != ds.dimension(0) ||
+			dimensions[1] != ds.dimension(1))
+		{
+			return createNewImgPlus(ds, dimensions, axes);
 		}
-		return new ImgPlus(img, name, axes, calibration);
+		final Img<? extends RealType<?>> img =
+			new EmptyPlanarImgFactory().create(dimensions, (NativeType) ds
+				.getType());
+		return wrap(ds, img, axes);
 	}
 
 	/**
 	 * Copies a region of data from a srcImgPlus to a dstImgPlus. region is
 	 * defined by a number of planes along an axis that is present in both input
-	 * ImgPluses
+	 * ImgPluses. See {@link #copyHyperVolume} for how whole planes are moved.
 	 */
 	public static void copyData(final ImgPlus<? extends RealType<?>> srcImgPlus,
 		final ImgPlus<? extends RealType<?>> dstImgPlus, final AxisType axis,
@@ -116,6 +143,13 @@ public static void copyData(final ImgPlus<? extends RealType<?>> srcImgPlus,
 	 * Copies a hypervolume from a source {@link ImgPlus} to a destination
 	 * {@link ImgPlus}. Spans may have different number of dimensions but must be
 	 * shape compatible with axes in same relative order.
+	 * <p>
+	 * When both spans cover entire XY planes of the same size the data is moved
+	 * a plane at a time with {@link #copyPlanes}: planar images share the
+	 * source's plane arrays by reference, so the source should be discarded
+	 * afterward as the restructure commands do. Otherwise data is copied a row
+	 * at a time through RandomAccesses, after allocating any planes the
+	 * destination is still missing (see {@link #createEmptyImgPlus}).
 	 */
 	public static void copyHyperVolume(
 		final ImgPlus<? extends RealType<?>> srcImgPlus, final long[] srcOrigin,
@@ -123,6 +157,27 @@ public static void copyHyperVolume(
 		final long[] dstOrigin, final long[] dstSpan)
 	{
 		checkSpanShapes(srcSpan, dstSpan);
+		if (coversPlanes(srcImgPlus, srcOrigin, srcSpan, dstImgPlus, dstOrigin,
+			dstSpan))
+		{
+			final long[] srcDims = new long[srcImgPlus.numDimensions()];
+			final long[] dstDims = new long[dstImgPlus.numDimensions()];
+			srcImgPlus.dimensions(srcDims);
+			dstImgPlus.dimensions(dstDims);
+			final int[] srcPlanes = spanPlanes(srcDims, srcOrigin, srcSpan);
+			final int[] dstPlanes = spanPlanes(dstDims, dstOrigin, dstSpan);
+			final int[] sourcePlanes = new int[(int) planeCount(dstImgPlus)];
+			Arrays.fill(sourcePlanes, -1);
+			for (int i = 0; i < dstPlanes.length; i++)
+				sourcePlanes[dstPlanes[i]] = srcPlanes[i];
+			if (copyPlanes(srcImgPlus, dstImgPlus, sourcePlanes, true)) return;
+		}
+		EmptyPlanarImgFactory.allocateMissingPlanes(dstImgPlus);
+		if (srcSpan[0] == dstSpan[0]) {
+			copyRows(srcImgPlus, srcOrigin, srcSpan, dstImgPlus, dstOrigin,
+				dstSpan);
+			return;
+		}
 		final RandomAccess<? extends RealType<?>> srcAccessor =
 			srcImgPlus.randomAccess();
 		final RandomAccess<? extends RealType<?>> dstAccessor =
@@ -151,6 +206,68 @@ public static void copyHyperVolume(
 		}
 	}
 
+	/**
+	 * Fills whole planes of a destination ImgPlus from planes of a source
+	 * ImgPlus. Entry i of sourcePlanes is the index of the source plane that
+	 * destination plane i gets, or -1 to leave that plane alone. When share is
+	 * true and both images are planar each plane is moved by reference rather
+	 * than copied (at most once per source plane); remaining planes are copied
+	 * with {@code System.arraycopy}, several planes at once. Returns false,
+	 * without copying anything, if either image does not have primitive planes
+	 * or their types or plane sizes differ.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static boolean copyPlanes(
+		final ImgPlus<? extends RealType<?>> srcImgPlus,
+		final ImgPlus<? extends RealType<?>> dstImgPlus, final int[] sourcePlanes,
+		final boolean share)
+	{
+		final PlaneAccess src = PlaneAccess.create(srcImgPlus);
+		final PlaneAccess dst = PlaneAccess.create(dstImgPlus);
+		if (src == null || dst == null) return false;
+		if (src.getType().getClass() != dst.getType().getClass()) return false;
+		if (src.getPlaneWidth() != dst.getPlaneWidth() ||
+			src.getPlaneHeight() != dst.getPlaneHeight())
+		{
+			return false;
+		}
+		if (sourcePlanes.length != dst.getPlaneCount()) {
+			throw new IllegalArgumentException(
+				"plane map does not match destination plane count");
+		}
+		final int[] copies = new int[sourcePlanes.length];
+		int copyCount = 0;
+		if (share && src.isPlanar() && dst.isPlanar()) {
+			final PlanarAccess srcPlanar = (PlanarAccess) src.getImg();
+			final PlanarAccess dstPlanar = (PlanarAccess) dst.getImg();
+			final boolean[] shared = new boolean[src.getPlaneCount()];
+			for (int d = 0; d < sourcePlanes.length; d++) {
+				final int s = sourcePlanes[d];
+				if (s < 0) continue;
+				if (shared[s]) copies[copyCount++] = d;
+				else {
+					dstPlanar.setPlane(d, srcPlanar.getPlane(s));
+					shared[s] = true;
+				}
+			}
+		}
+		else {
+			for (int d = 0; d < sourcePlanes.length; d++)
+				if (sourcePlanes[d] >= 0) copies[copyCount++] = d;
+		}
+		final int planeSize = src.getPlaneSize();
+		ParallelLoop.run(copyCount, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				final int d = copies[i];
+				src.getPlane(sourcePlanes[d]).copyTo(0, dst.getPlane(d), 0,
+					planeSize);
+			}
+		});
+		return true;
+	}
+
 	/**
 	 * Modifies an given ImgPlus by allocating 1 color table reference for each
 	 * plane in the ImgPlus. 
@@ -189,6 +306,108 @@ public static void copyColorTables(ImgPlus<?> srcImgPlus, ImgPlus<?> dstImgPlus)
 	}
 	
 	// -- private helpers --
+
+	/**
+	 * Wraps an Img in an ImgPlus with the given axes and the name and matching
+	 * calibration values of a Dataset.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static ImgPlus<? extends RealType<?>> wrap(final Dataset ds,
+		final Img<? extends RealType<?>> img, final AxisType[] axes)
+	{
+		final String name = ds.getName();
+		final double[] calibration = new double[axes.length];
+		for (int i = 0; i < axes.length; i++) {
+			final int index = ds.getAxisIndex(axes[i]);
+			if (index >= 0) calibration[i] = ds.calibration(index);
+			else calibration[i] = Double.NaN;
+		}
+		return new ImgPlus(img, name, axes, calibration);
+	}
+
+	/**
+	 * Returns true if both spans cover whole XY planes of the same size so that
+	 * a hypervolume copy can be done plane by plane.
+	 */
+	private static boolean coversPlanes(final ImgPlus<?> srcImgPlus,
+		final long[] srcOrigin, final long[] srcSpan, final ImgPlus<?> dstImgPlus,
+		final long[] dstOrigin, final long[] dstSpan)
+	{
+		if (srcSpan.length < 2 || dstSpan.length < 2) return false;
+		for (int d = 0; d < 2; d++) {
+			if (srcOrigin[d] != 0 || dstOrigin[d] != 0) return false;
+			if (srcSpan[d] != srcImgPlus.dimension(d)) return false;
+			if (dstSpan[d] != dstImgPlus.dimension(d)) return false;
+			if (srcSpan[d] != dstSpan[d]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the indices of the planes within a span in raster order (axis 2
+	 * varying fastest).
+	 */
+	private static int[] spanPlanes(final long[] dims, final long[] origin,
+		final long[] span)
+	{
+		long count = 1;
+		for (int d = 2; d < dims.length; d++)
+			count *= span[d];
+		final int[] planes = new int[(int) count];
+		final long[] pos = new long[dims.length];
+		for (int d = 2; d < dims.length; d++)
+			pos[d] = origin[d];
+		for (int p = 0; p < planes.length; p++) {
+			planes[p] = (int) PlaneAccess.planeIndex(dims, pos);
+			for (int d = 2; d < dims.length; d++) {
+				if (++pos[d] < origin[d] + span[d]) break;
+				pos[d] = origin[d];
+			}
+		}
+		return planes;
+	}
+
+	/**
+	 * Copies a hypervolume whose spans have the same length along axis 0 one row
+	 * at a time, stepping both accessors along the row.
+	 */
+	private static void copyRows(
+		final ImgPlus<? extends RealType<?>> srcImgPlus, final long[] srcOrigin,
+		final long[] srcSpan, final ImgPlus<? extends RealType<?>> dstImgPlus,
+		final long[] dstOrigin, final long[] dstSpan)
+	{
+		final long rowLength = srcSpan[0];
+		if (rowLength == 0) return;
+		final RandomAccess<? extends RealType<?>> srcAccessor =
+			srcImgPlus.randomAccess();
+		final RandomAccess<? extends RealType<?>> dstAccessor =
+			dstImgPlus.randomAccess();
+		final HyperVolumePointSet srcRows = rowStarts(srcOrigin, srcSpan);
+		final HyperVolumePointSet dstRows = rowStarts(dstOrigin, dstSpan);
+		final PointSetIterator iterS = srcRows.iterator();
+		final PointSetIterator iterD = dstRows.iterator();
+		while (iterS.hasNext() && iterD.hasNext()) {
+			srcAccessor.setPosition(iterS.next());
+			dstAccessor.setPosition(iterD.next());
+			for (long x = 0; x < rowLength; x++) {
+				final double value = srcAccessor.get().getRealDouble();
+				dstAccessor.get().setReal(value);
+				srcAccessor.fwd(0);
+				dstAccessor.fwd(0);
+			}
+		}
+	}
+
+	/** Returns the set of first positions of the rows of a span. */
+	private static HyperVolumePointSet rowStarts(final long[] origin,
+		final long[] span)
+	{
+		final long[] max = new long[origin.length];
+		for (int i = 0; i < max.length; i++)
+			max[i] = origin[i] + span[i] - 1;
+		max[0] = origin[0];
+		return new HyperVolumePointSet(origin, max);
+	}
 	
 	/**
 	 * Returns a span array covering the specified hyperplanes. Only the axis
@@ -36,17 +36,22 @@
 package imagej.core.commands.restructure;
 
 import imagej.command.Command;
-import imagej.command.CommandService;
 import imagej.command.ContextCommand;
-
-import java.util.HashMap;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.display.ImageDisplayService;
+import imagej.display.DisplayService;
+import net.imglib2.meta.Axes;
 
 import org.scijava.plugin.Menu;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
 /**
- * Context menu command for Split Channels legacy command.
+ * Context menu command that splits the channels of the active image into
+ * separate images. Planar images are split without copying their pixels: the
+ * new images share the original planes until one side modifies them (see
+ * {@link ChannelSplitter}).
  * 
  * @author Curtis Rueden
  */
@@ -57,20 +62,29 @@ public class SplitChannelsContext extends ContextCommand {
 	// -- Parameters --
 
 	@Parameter
-	private CommandService commandService;
+	private ImageDisplayService imageDisplayService;
+
+	@Parameter
+	private DatasetService datasetService;
+
+	@Parameter
+	private DisplayService displayService;
 
 	// -- Command methods --
 
 	@Override
 	public void run() {
-		// TODO: Figure out why the parameter order is messed up and this fails:
-//		commandService.run("imagej.legacy.plugin.LegacyCommand",
-//			"ij.plugin.ChannelSplitter");
-		final HashMap<String, Object> inputValues = new HashMap<String, Object>();
-		inputValues.put("className", "ij.plugin.ChannelSplitter");
-		commandService.run("imagej.legacy.plugin.LegacyCommand", inputValues);
-		
-		// TODO - replace with LegacyService::reunLegacyCommand() ?
+		final Dataset dataset = imageDisplayService.getActiveDataset();
+		if (dataset == null) return;
+		if (dataset.getAxisIndex(Axes.CHANNEL) < 0) {
+			cancel("Image has no channel axis to split.");
+			return;
+		}
+		for (final Dataset channel : ChannelSplitter.split(datasetService,
+			dataset))
+		{
+			displayService.createDisplay(channel.getName(), channel);
+		}
 	}
 
 }
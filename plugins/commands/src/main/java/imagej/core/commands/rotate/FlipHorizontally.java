@@ -126,6 +126,14 @@ private void flipPixels(final Dataset input, final RealRect selection) {
 			planeDims[d++] = dims[i];
 		}
 
+		// flip primitive planes in place a row at a time when possible
+		if (xAxis == 0 && yAxis == 1 &&
+			PlaneTransforms.flipHorizontally(input.getImgPlus(), oX, oY, width, height))
+		{
+			input.update();
+			return;
+		}
+
 		final Position planePos = new Extents(planeDims).createPosition();
 
 		if (dims.length == 2) { // a single plane
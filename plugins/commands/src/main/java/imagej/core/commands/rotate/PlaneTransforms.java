@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.rotate;
+
+import imagej.data.access.PlaneAccess;
+import imagej.data.access.RealArray;
+import imagej.util.ParallelLoop;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Flips and quarter turns of the XY planes of an image working directly on
+ * their primitive plane arrays. Flips are done in place a row at a time by
+ * reversing (or swapping) row segments. Rotations copy the planes in square
+ * tiles so that both the rows read and the rows written stay in cache. The
+ * planes of a stack, and bands of rows within a plane, are processed in
+ * parallel.
+ * <p>
+ * All methods expect X and Y to be the first two axes of their images and
+ * return false without touching any pixels when the image storage is not made
+ * of primitive planes, in which case the caller should fall back to a
+ * RandomAccess based implementation.
+ * 
+ * @author Barry DeZonia
+ */
+public final class PlaneTransforms {
+
+	// -- constants --
+
+	/** The edge length of the square tiles used when rotating planes. */
+	public static final int TILE = 64;
+
+	/** The number of rows each work unit of a flip handles. */
+	private static final int ROWS_PER_UNIT = 64;
+
+	// -- constructor --
+
+	private PlaneTransforms() {
+		// utility class
+	}
+
+	// -- public interface --
+
+	/**
+	 * Flips the region (oX,oY,width,height) of every XY plane of an image
+	 * horizontally in place. The region is clipped to the plane. Returns false
+	 * if the image's planes cannot be accessed as primitive arrays.
+	 */
+	public static boolean flipHorizontally(final Img<? extends RealType<?>> img,
+		final long oX, final long oY, final long width, final long height)
+	{
+		final PlaneAccess access = PlaneAccess.create(img);
+		if (access == null) return false;
+		final int w = access.getPlaneWidth();
+		final int x0 = (int) Math.max(oX, 0);
+		final int x1 = (int) Math.min(oX + width, w);
+		final int y0 = (int) Math.max(oY, 0);
+		final int y1 = (int) Math.min(oY + height, access.getPlaneHeight());
+		if (x1 - x0 < 2 || y1 <= y0) return true;
+		final int bands = (y1 - y0 + ROWS_PER_UNIT - 1) / ROWS_PER_UNIT;
+		final int n = x1 - x0;
+		final int units = access.getPlaneCount() * bands;
+		ParallelLoop.run(units, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				final RealArray plane = access.getPlane(i / bands);
+				final int yStart = y0 + (i % bands) * ROWS_PER_UNIT;
+				final int yEnd = Math.min(yStart + ROWS_PER_UNIT, y1);
+				final double[] row = new double[n];
+				for (int y = yStart; y < yEnd; y++) {
+					final int index = y * w + x0;
+					plane.get(index, row, 0, n);
+					for (int a = 0, b = n - 1; a < b; a++, b--) {
+						final double tmp = row[a];
+						row[a] = row[b];
+						row[b] = tmp;
+					}
+					plane.set(index, row, 0, n);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Flips the region (oX,oY,width,height) of every XY plane of an image
+	 * vertically in place. The region is clipped to the plane. Returns false if
+	 * the image's planes cannot be accessed as primitive arrays.
+	 */
+	public static boolean flipVertically(final Img<? extends RealType<?>> img,
+		final long oX, final long oY, final long width, final long height)
+	{
+		final PlaneAccess access = PlaneAccess.create(img);
+		if (access == null) return false;
+		final int w = access.getPlaneWidth();
+		final int x0 = (int) Math.max(oX, 0);
+		final int x1 = (int) Math.min(oX + width, w);
+		final int y0 = (int) Math.max(oY, 0);
+		final int y1 = (int) Math.min(oY + height, access.getPlaneHeight());
+		if (x1 <= x0 || y1 - y0 < 2) return true;
+		// each unit swaps a band of rows of the top half with their mirrors
+		final int pairs = (y1 - y0) / 2;
+		final int bands = (pairs + ROWS_PER_UNIT - 1) / ROWS_PER_UNIT;
+		final int n = x1 - x0;
+		final int units = access.getPlaneCount() * bands;
+		ParallelLoop.run(units, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				final RealArray plane = access.getPlane(i / bands);
+				final int pStart = (i % bands) * ROWS_PER_UNIT;
+				final int pEnd = Math.min(pStart + ROWS_PER_UNIT, pairs);
+				final double[] top = new double[n];
+				final double[] bottom = new double[n];
+				for (int p = pStart; p < pEnd; p++) {
+					final int topIndex = (y0 + p) * w + x0;
+					final int bottomIndex = (y1 - 1 - p) * w + x0;
+					plane.get(topIndex, top, 0, n);
+					plane.get(bottomIndex, bottom, 0, n);
+					plane.set(topIndex, bottom, 0, n);
+					plane.set(bottomIndex, top, 0, n);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Rotates every XY plane of an input image by 90 degrees into an output
+	 * image whose X and Y dimensions are those of the input swapped and whose
+	 * other dimensions match the input. Rotates clockwise when clockwise is
+	 * true and counterclockwise otherwise. Returns false if the planes of
+	 * either image cannot be accessed as primitive arrays.
+	 */
+	public static boolean rotate(final Img<? extends RealType<?>> input,
+		final Img<? extends RealType<?>> output, final boolean clockwise)
+	{
+		final PlaneAccess in = PlaneAccess.create(input);
+		if (in == null) return false;
+		final PlaneAccess out = PlaneAccess.create(output);
+		if (out == null) return false;
+		final int w = in.getPlaneWidth();
+		final int h = in.getPlaneHeight();
+		if (out.getPlaneWidth() != h || out.getPlaneHeight() != w ||
+			out.getPlaneCount() != in.getPlaneCount())
+		{
+			throw new IllegalArgumentException(
+				"output planes must be the input planes turned on their side");
+		}
+		// each unit copies one band of tiles spanning the input's width
+		final int bands = (h + TILE - 1) / TILE;
+		ParallelLoop.run(in.getPlaneCount() * bands, new ParallelLoop.Body() {
+
+			@Override
+			public void run(final int i) {
+				final RealArray src = in.getPlane(i / bands);
+				final RealArray dst = out.getPlane(i / bands);
+				final int y0 = (i % bands) * TILE;
+				final int th = Math.min(TILE, h - y0);
+				final double[] tile = new double[TILE * TILE];
+				final double[] row = new double[TILE];
+				for (int x0 = 0; x0 < w; x0 += TILE) {
+					final int tw = Math.min(TILE, w - x0);
+					for (int ty = 0; ty < th; ty++)
+						src.get((y0 + ty) * w + x0, tile, ty * TILE, tw);
+					for (int tx = 0; tx < tw; tx++) {
+						final int x = x0 + tx;
+						if (clockwise) {
+							// (x,y) -> (h-1-y, x)
+							for (int k = 0; k < th; k++)
+								row[k] = tile[(th - 1 - k) * TILE + tx];
+							dst.set(x * h + h - y0 - th, row, 0, th);
+						}
+						else {
+							// (x,y) -> (y, w-1-x)
+							for (int k = 0; k < th; k++)
+								row[k] = tile[k * TILE + tx];
+							dst.set((w - 1 - x) * h + y0, row, 0, th);
+						}
+					}
+				}
+			}
+		});
+		return true;
+	}
+
+}
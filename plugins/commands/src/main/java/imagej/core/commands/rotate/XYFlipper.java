@@ -98,6 +98,14 @@ void calcOutputPosition(long[] inputDimensions, long[] inputPosition,
 		 * Returns if this transformation does not reorder X & Y axes
 		 */
 		boolean isShapePreserving();
+
+		/**
+		 * Returns the number of clockwise quarter turns (1 or 3) this
+		 * transformation rotates XY planes by, or 0 if it is not a plain 90 degree
+		 * rotation. Rotations are done plane by plane with tiled copies when the
+		 * image has primitive planes.
+		 */
+		int getQuarterTurns();
 	}
 
 	// -- constructor --
@@ -149,6 +157,13 @@ public String getErrorMessage() {
 	public boolean process() {
 		final Img<? extends RealType<?>> inputImage = dataset.getImgPlus();
 
+		final int turns = flipper.getQuarterTurns();
+		if ((turns == 1 || turns == 3) &&
+			PlaneTransforms.rotate(inputImage, outputImage, turns == 1))
+		{
+			return true;
+		}
+
 		inputAccessor = inputImage.randomAccess();
 		outputAccessor = outputImage.randomAccess();
 
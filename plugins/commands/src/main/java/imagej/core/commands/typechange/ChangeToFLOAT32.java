@@ -53,7 +53,7 @@
 			mnemonic = MenuConstants.IMAGE_MNEMONIC),
 		@Menu(label = "Type", mnemonic = 't'),
 		@Menu(label = "Float 32-bit", weight = 206) }, headless = true,
-		initializer = "maybeAddChannelInput")
+		initializer = "initInputs")
 public class ChangeToFLOAT32 extends TypeChanger {
 
 	@Override
@@ -53,7 +53,7 @@
 			mnemonic = MenuConstants.IMAGE_MNEMONIC),
 		@Menu(label = "Type", mnemonic = 't'),
 		@Menu(label = "Float 64-bit", weight = 207) }, headless = true,
-		initializer = "maybeAddChannelInput")
+		initializer = "initInputs")
 public class ChangeToFLOAT64 extends TypeChanger {
 
 	@Override
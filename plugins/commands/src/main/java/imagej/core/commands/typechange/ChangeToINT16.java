@@ -54,7 +54,7 @@
 			mnemonic = MenuConstants.IMAGE_MNEMONIC),
 		@Menu(label = "Type", mnemonic = 't'),
 		@Menu(label = "Signed 16-bit", weight = 209) }, headless = true,
-		initializer = "maybeAddChannelInput")
+		initializer = "initInputs")
 public class ChangeToINT16 extends TypeChanger {
 
 	@Override
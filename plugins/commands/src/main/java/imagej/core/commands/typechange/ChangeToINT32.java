@@ -54,7 +54,7 @@
 			mnemonic = MenuConstants.IMAGE_MNEMONIC),
 		@Menu(label = "Type", mnemonic = 't'),
 		@Menu(label = "Signed 32-bit", weight = 210) }, headless = true,
-		initializer = "maybeAddChannelInput")
+		initializer = "initInputs")
 public class ChangeToINT32 extends TypeChanger {
 
 	@Override
@@ -54,7 +54,7 @@
 			mnemonic = MenuConstants.IMAGE_MNEMONIC),
 		@Menu(label = "Type", mnemonic = 't'),
 		@Menu(label = "Signed 64-bit", weight = 211) }, headless = true,
-		initializer = "maybeAddChannelInput")
+		initializer = "initInputs")
 public class ChangeToINT64 extends TypeChanger {
 
 	@Override
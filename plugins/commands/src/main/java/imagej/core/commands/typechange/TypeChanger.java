@@ -37,24 +37,21 @@
 
 import imagej.command.DynamicCommand;
 import imagej.data.Dataset;
+import imagej.data.access.TypeConverter;
+import imagej.data.access.TypeConverter.Scaling;
+import imagej.data.display.DatasetView;
+import imagej.data.display.ImageDisplayService;
 import imagej.module.DefaultModuleItem;
 import imagej.util.Prefs;
-import net.imglib2.Cursor;
-import net.imglib2.RandomAccess;
+
+import java.util.Arrays;
+
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.img.ImgPlus;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
-import net.imglib2.ops.function.Function;
-import net.imglib2.ops.function.real.RealArithmeticMeanFunction;
-import net.imglib2.ops.function.real.RealImageFunction;
-import net.imglib2.ops.input.InputIterator;
-import net.imglib2.ops.input.PointSetInputIteratorFactory;
-import net.imglib2.ops.pointset.HyperVolumePointSet;
-import net.imglib2.ops.pointset.PointSet;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.ItemIO;
 import org.scijava.plugin.Parameter;
@@ -63,6 +60,8 @@
  * Transforms a {@link Dataset} (and linked {@link ImgPlus}) between types.
  * <p>
  * Although ImgLib does not do any range clamping of values we will do so here.
+ * Values can optionally be rescaled from the data range or the display range
+ * to the full range of the new type (see {@link TypeConverter}).
  * </p>
  * 
  * @author Barry DeZonia
@@ -73,6 +72,12 @@ public abstract class TypeChanger extends DynamicCommand {
 	// -- constants --
 	
 	private static final String FIELDNAME = "imagej.type.change.make.composite";
+
+	private static final String SCALING_FIELD = "imagej.type.change.scaling";
+
+	private static final String CLAMP = "Clamp";
+	private static final String RESCALE_FULL = "Rescale data range";
+	private static final String RESCALE_DISPLAY = "Rescale display range";
 	
 	// -- Parameters --
 	
@@ -83,7 +88,28 @@ public abstract class TypeChanger extends DynamicCommand {
 	@Parameter(type = ItemIO.BOTH)
 	private Dataset data;
 
+	@Parameter(required = false)
+	private ImageDisplayService imageDisplayService;
+
 	// -- protected methods --
+
+	protected void initInputs() {
+		maybeAddChannelInput();
+		addScalingInput();
+	}
+
+	protected void addScalingInput() {
+		DefaultModuleItem<String> scalingItem =
+			new DefaultModuleItem<String>(this, SCALING_FIELD, String.class);
+		scalingItem.setLabel("Scaling");
+		scalingItem.setDescription(
+			"How values are mapped into the range of the new type");
+		scalingItem.setChoices(
+			Arrays.asList(CLAMP, RESCALE_FULL, RESCALE_DISPLAY));
+		scalingItem.setPersisted(false);
+		scalingItem.setValue(this, Prefs.get(SCALING_FIELD, CLAMP));
+		addInput(scalingItem);
+	}
 	
 	protected void maybeAddChannelInput() {
 		int axisIndex = data.getAxisIndex(Axes.CHANNEL);
@@ -103,7 +129,9 @@ protected <T extends RealType<T>> void changeType(final T newType) {
 		Boolean b = (Boolean) getInput(FIELDNAME);
 		if (b != null) Prefs.put(FIELDNAME,b);
 		boolean compositeMode = (b == null) ? false : b;
-		changeType(data, newType, compositeMode);
+		String scaling = (String) getInput(SCALING_FIELD);
+		if (scaling != null) Prefs.put(SCALING_FIELD, scaling);
+		changeType(data, newType, compositeMode, converter(scaling));
 		// TODO
 		//menuService.setSelected(this, true);
 	}
@@ -122,9 +150,19 @@ public Dataset getDataset() {
 	 * Changes the given {@link Dataset}'s underlying {@link Img} data to the
 	 * specified type.
 	 */
-	@SuppressWarnings({"unchecked","rawtypes"})
 	public static <T extends RealType<T>> void changeType(final Dataset dataset,
 		final T newType, boolean compositeMode)
+	{
+		changeType(dataset, newType, compositeMode, new TypeConverter());
+	}
+
+	/**
+	 * Changes the given {@link Dataset}'s underlying {@link Img} data to the
+	 * specified type, mapping values with the given {@link TypeConverter}.
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	public static <T extends RealType<T>> void changeType(final Dataset dataset,
+		final T newType, boolean compositeMode, final TypeConverter converter)
 	{
 		// see if input dataset is already typed correctly
 		if (dataset.isRGBMerged()) {
@@ -139,10 +177,11 @@ else if (dataset.getType().getClass() == newType.getClass()) {
 		final ImgPlus<? extends RealType<?>> inputImg = dataset.getImgPlus();
 		final ImgPlus<? extends RealType<?>> imgPlus;
 		if (compositeMode) {
-			imgPlus = copyToCompositeGrayscale((ImgPlus) inputImg, newType);
+			imgPlus = copyToCompositeGrayscale((ImgPlus) inputImg, newType,
+				converter);
 		}
 		else {
-			imgPlus = copyToType(inputImg, newType);
+			imgPlus = copyToType(inputImg, newType, converter);
 		}
 		dataset.setRGBMerged(false);  // event order requires this before setImgPlus()
 		dataset.setImgPlus(imgPlus);
@@ -156,11 +195,23 @@ else if (dataset.getType().getClass() == newType.getClass()) {
 	 */
 	public static <T extends RealType<T>> ImgPlus<? extends RealType<?>>
 		copyToType(final ImgPlus<? extends RealType<?>> inputImg, final T newType)
+	{
+		return copyToType(inputImg, newType, new TypeConverter());
+	}
+
+	/**
+	 * Creates a planar ImgLib {@link Img} of the given type. It populates the
+	 * output {@link Img}'s data from the input {@link Img} (which is likely of a
+	 * different data type) using the given {@link TypeConverter}.
+	 */
+	public static <T extends RealType<T>> ImgPlus<? extends RealType<?>>
+		copyToType(final ImgPlus<? extends RealType<?>> inputImg,
+			final T newType, final TypeConverter converter)
 	{
 		final ImgFactory<? extends RealType<?>> factory = inputImg.factory();
 		@SuppressWarnings("unchecked")
 		final ImgFactory<T> typedFactory = (ImgFactory<T>) factory;
-		return copyToType(inputImg, newType, typedFactory);
+		return copyToType(inputImg, newType, typedFactory, converter);
 	}
 
 	/**
@@ -172,31 +223,24 @@ else if (dataset.getType().getClass() == newType.getClass()) {
 	public static <T extends RealType<T>> ImgPlus<T> copyToType(
 		final ImgPlus<? extends RealType<?>> inputImg, final T newType,
 		final ImgFactory<T> imgFactory)
+	{
+		return copyToType(inputImg, newType, imgFactory, new TypeConverter());
+	}
+
+	/**
+	 * Creates an ImgLib {@link Img} of the given type using the specified
+	 * {@link ImgFactory}. It populates the output {@link Img}'s data from the
+	 * input {@link Img} (which is likely of a different data type) using the
+	 * given {@link TypeConverter}.
+	 */
+	public static <T extends RealType<T>> ImgPlus<T> copyToType(
+		final ImgPlus<? extends RealType<?>> inputImg, final T newType,
+		final ImgFactory<T> imgFactory, final TypeConverter converter)
 	{
 		final long[] dims = new long[inputImg.numDimensions()];
 		inputImg.dimensions(dims);
 		final Img<T> outputImg = imgFactory.create(dims, newType);
-
-		final Cursor<? extends RealType<?>> in = inputImg.localizingCursor();
-		final RandomAccess<T> out = outputImg.randomAccess();
-
-		final double outTypeMin = out.get().getMinValue();
-		final double outTypeMax = out.get().getMaxValue();
-
-		final boolean inputIs1Bit = in.get().getBitsPerPixel() == 1;
-
-		final long[] pos = new long[dims.length];
-		while (in.hasNext()) {
-			in.fwd();
-			in.localize(pos);
-			out.setPosition(pos);
-			double value = in.get().getRealDouble();
-			if (value < outTypeMin) value = outTypeMin;
-			if (value > outTypeMax) value = outTypeMax;
-			if (inputIs1Bit && value > 0) value = outTypeMax;
-			out.get().setReal(value);
-		}
-
+		converter.convert(inputImg, outputImg);
 		return new ImgPlus<T>(outputImg, inputImg);
 	}
 
@@ -209,7 +253,8 @@ public static <T extends RealType<T>> ImgPlus<T> copyToType(
 	 * channel values of an input {@link ImgPlus}.
 	 */
 	private static <I extends RealType<I>, O extends RealType<O>> ImgPlus<O>
-		copyToCompositeGrayscale(final ImgPlus<I> inputImg, final O newType)
+		copyToCompositeGrayscale(final ImgPlus<I> inputImg, final O newType,
+			final TypeConverter converter)
 	{
 		// determine the attributes of the output image
 		final String name = inputImg.getName();
@@ -234,59 +279,44 @@ public static <T extends RealType<T>> ImgPlus<T> copyToType(
 		// so instead of color just average the channel intensities
 		// and we could do a special case for rgb that uses formula later
 
-		// determine channel space
 		final int chIndex = inputImg.getAxisIndex(Axes.CHANNEL);
-		final int numInputDims = inputImg.numDimensions();
-		final long[] minChanPt = new long[numInputDims];
-		final long[] maxChanPt = new long[numInputDims];
-		if (chIndex >= 0) maxChanPt[chIndex] = inputImg.dimension(chIndex) - 1;
-		final PointSet channelColumn =
-			new HyperVolumePointSet(minChanPt, maxChanPt);
-
-		// determine data space without channels
-		final long[] minDimPt = new long[numInputDims];
-		final long[] maxDimPt = new long[numInputDims];
-		for (int i = 0; i < numInputDims; i++) {
-			if (i != chIndex) maxDimPt[i] = inputImg.dimension(i) - 1;
-		}
-		final PointSet allOtherDims = new HyperVolumePointSet(minDimPt, maxDimPt);
-
-		// setup neighborhood iterator
-		final PointSetInputIteratorFactory inputFactory =
-			new PointSetInputIteratorFactory(channelColumn);
-		final InputIterator<PointSet> iter =
-			inputFactory.createInputIterator(allOtherDims);
-
-		// build averaging function
-		final Function<long[], DoubleType> valFunc =
-			new RealImageFunction<I, DoubleType>(inputImg, new DoubleType());
-		final Function<PointSet, DoubleType> avgFunc =
-			new RealArithmeticMeanFunction<DoubleType>(valFunc);
-
-		// do the iteration and copy the data
-		final RandomAccess<? extends RealType<?>> out = outputImg.randomAccess();
-		final boolean inputIs1Bit = inputImg.firstElement().getBitsPerPixel() == 1;
-		final double outTypeMin = out.get().getMinValue();
-		final double outTypeMax = out.get().getMaxValue();
-		PointSet inputPointset = null;
-		final long[] outputCoord = new long[outputImg.numDimensions()];
-		final DoubleType avg = new DoubleType();
-		while (iter.hasNext()) {
-			inputPointset = iter.next(inputPointset);
-			avgFunc.compute(inputPointset, avg);
-			double value = avg.getRealDouble();
-			if (value < outTypeMin) value = outTypeMin;
-			if (value > outTypeMax) value = outTypeMax;
-			if (inputIs1Bit && value > 0) value = outTypeMax;
-			determineOutputCoordinate(chIndex, inputPointset.getOrigin(), outputCoord);
-			out.setPosition(outputCoord);
-			out.get().setReal(value);
-		}
+		converter.convertAverage(inputImg, chIndex, outputImg);
 
 		// return the result
 		return new ImgPlus<O>(outputImg, name, axes, cal);
 	}
 
+	/** Creates a converter for the given scaling choice. */
+	private TypeConverter converter(final String scaling) {
+		if (RESCALE_FULL.equals(scaling)) {
+			return new TypeConverter(Scaling.RESCALE_FULL);
+		}
+		if (!RESCALE_DISPLAY.equals(scaling)) return new TypeConverter();
+		final TypeConverter converter =
+			new TypeConverter(Scaling.RESCALE_DISPLAY);
+		final DatasetView view = datasetView();
+		if (view != null) {
+			// the union of the channels' display ranges
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int c = 0; c < view.getChannelCount(); c++) {
+				min = Math.min(min, view.getChannelMin(c));
+				max = Math.max(max, view.getChannelMax(c));
+			}
+			converter.setDisplayRange(min, max);
+		}
+		// else the converter falls back to the data range
+		return converter;
+	}
+
+	/** Finds the active view of the data being converted, if any. */
+	private DatasetView datasetView() {
+		if (imageDisplayService == null) return null;
+		final DatasetView view = imageDisplayService.getActiveDatasetView();
+		if (view == null || view.getData() != data) return null;
+		return view;
+	}
+
 	/** Determines the axes of the output image ignoring channels if necessary. */
 	private static AxisType[] outputAxes(final ImgPlus<?> inputImg) {
 		final int inputAxisCount = inputImg.numDimensions();
@@ -338,17 +368,4 @@ private static double[] outputCalibration(final ImgPlus<?> inputImg) {
 		return outputCal;
 	}
 
-	/**
-	 * Determines an output coordinate from an input coordinate ignoring the
-	 * channel axis if necessary.
-	 */
-	private static void determineOutputCoordinate(final int chIndex,
-		final long[] inputPt, final long[] outputPt)
-	{
-		int p = 0;
-		for (int i = 0; i < inputPt.length; i++) {
-			if (i != chIndex) outputPt[p++] = inputPt[i];
-		}
-	}
-
 }
@@ -0,0 +1,107 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.assign;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link EquationCompiler}.
+ * 
+ * @author Barry DeZonia
+ */
+public class EquationCompilerTest {
+
+	@Test
+	public void testCurrentValue() {
+		final double[] values = { 1, 2, 3 };
+		run("img * 2 + 40", 2, new long[] { 0, 0 }, values);
+		assertArrayEquals(new double[] { 42, 44, 46 }, values, 0);
+	}
+
+	@Test
+	public void testPositions() {
+		final double[] values = new double[4];
+		run("[x,y,z], x^2 + 10*y - z", 3, new long[] { 1, 2, 5 }, values);
+		assertArrayEquals(new double[] { 16, 19, 24, 31 }, values, 0);
+	}
+
+	@Test
+	public void testFunctionsAndConstants() {
+		final double[] values = new double[2];
+		run("[x,y], cos(x*PI) + sqr(y) - -E", 2, new long[] { 0, 3 }, values);
+		assertArrayEquals(new double[] { 1 + 9 + Math.E, -1 + 9 + Math.E },
+			values, 1e-12);
+	}
+
+	@Test
+	public void testUnsupported() {
+		final EquationCompiler compiler = new EquationCompiler();
+		assertNull(compiler.compile("-img^2", 2, 0));
+		assertNull(compiler.compile("2^3^2", 2, 0));
+		assertNull(compiler.compile("img + random(1)", 2, 0));
+		assertNull(compiler.compile("[x], x + 1", 2, 0));
+		assertNull(compiler.compile("img + 1e3", 2, 0));
+	}
+
+	@Test
+	public void testManyEquations() {
+		// more equations than the compiled classes kept; evicted equations are
+		// compiled again
+		for (int n = 0; n < 2; n++) {
+			for (int i = 0; i < 100; i++) {
+				final double[] values = { 1 };
+				run("img + " + i, 1, new long[1], values);
+				assertArrayEquals(new double[] { 1 + i }, values, 0);
+			}
+		}
+	}
+
+	// -- private helpers --
+
+	private static void run(final String equation, final int numDims,
+		final long[] position, final double[] values)
+	{
+		final InplaceUnaryTransform.PositionKernel kernel =
+			new EquationCompiler().compile(equation, numDims, 0);
+		assertNotNull(kernel);
+		kernel.compute(position, 0, values, values.length);
+	}
+
+}
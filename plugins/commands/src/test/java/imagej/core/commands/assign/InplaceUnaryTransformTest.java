@@ -0,0 +1,291 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+
+package imagej.core.commands.assign;
+
+import static org.junit.Assert.assertEquals;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.overlay.EllipseOverlay;
+import imagej.data.overlay.Overlay;
+import net.imglib2.RandomAccess;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.ops.operation.complex.unary.ComplexUnaryOperation;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link InplaceUnaryTransform} and the kernels of the math commands:
+ * transforming through a kernel and through the operation must both give
+ * what applying the operation pixel by pixel gives.
+ */
+public class InplaceUnaryTransformTest {
+
+	private static final long[] DIMS = { 13, 9, 3 };
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	private static final String PLANAR = "planar", CELLS = "cells",
+			FLOAT = "float", BITS = "bits";
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testPlanar() {
+		for (final MathCommand<?, DoubleType> command : commands()) {
+			assertTransform(PLANAR, command, null);
+			assertTransform(PLANAR, command, createEllipse());
+		}
+	}
+
+	@Test
+	public void testCells() {
+		for (final MathCommand<?, DoubleType> command : commands()) {
+			assertTransform(CELLS, command, null);
+			assertTransform(CELLS, command, createEllipse());
+		}
+	}
+
+	@Test
+	public void testFloat() {
+		for (final MathCommand<?, DoubleType> command : commands()) {
+			assertTransform(FLOAT, command, createEllipse());
+		}
+	}
+
+	@Test
+	public void testBits() {
+		final SetDataValues<DoubleType> set = new SetDataValues<DoubleType>();
+		set.setValue(1);
+		final MultiplyDataValuesBy<DoubleType> clear =
+			new MultiplyDataValuesBy<DoubleType>();
+		clear.setValue(0);
+		assertTransform(BITS, set, createEllipse());
+		assertTransform(BITS, clear, createEllipse());
+		assertTransform(BITS, clear, null);
+	}
+
+	@Test
+	public void testPositionKernel() {
+		final InplaceUnaryTransform.PositionKernel kernel =
+			new InplaceUnaryTransform.PositionKernel() {
+
+				@Override
+				public void compute(final long[] position, final int axis,
+					final double[] values, final int count)
+				{
+					assertEquals(0, axis);
+					for (int i = 0; i < count; i++)
+						values[i] = position[0] + i + 100 * position[1];
+				}
+			};
+		for (final String kind : new String[] { PLANAR, CELLS }) {
+			final Overlay overlay = createEllipse();
+			final Dataset ds = createDataset(kind);
+			final double[] before = samples(ds);
+			final InplaceUnaryTransform<DoubleType, DoubleType> xform =
+				new InplaceUnaryTransform<DoubleType, DoubleType>(null,
+					new DoubleType(), ds, overlay);
+			xform.setKernel(kernel);
+			xform.run();
+			final double[] after = samples(ds);
+			for (int i = 0; i < after.length; i++) {
+				final long x = i % DIMS[0], y = i / DIMS[0] % DIMS[1];
+				final boolean inside = contains(xform, overlay, x, y);
+				final double expected = inside ? x + 100 * y : before[i];
+				assertEquals(kind, expected, after[i], 0);
+			}
+		}
+	}
+
+	// -- helper methods --
+
+	private MathCommand<?, DoubleType>[] commands() {
+		final AddToDataValues<DoubleType> add =
+			new AddToDataValues<DoubleType>();
+		add.setValue(7.4);
+		final SubtractFromDataValues<DoubleType> subtract =
+			new SubtractFromDataValues<DoubleType>();
+		subtract.setValue(3.6);
+		final MultiplyDataValuesBy<DoubleType> multiply =
+			new MultiplyDataValuesBy<DoubleType>();
+		multiply.setValue(1.5);
+		final SetDataValues<DoubleType> set = new SetDataValues<DoubleType>();
+		set.setValue(42);
+		@SuppressWarnings("unchecked")
+		final MathCommand<?, DoubleType>[] commands =
+			new MathCommand[] { add, subtract, multiply, set };
+		return commands;
+	}
+
+	/**
+	 * Transforms two copies of a Dataset, one with the command's kernel and one
+	 * with its operation alone, and compares both with the operation applied to
+	 * each pixel of the region.
+	 */
+	private void assertTransform(final String kind,
+		final MathCommand<?, DoubleType> command, final Overlay overlay)
+	{
+		final String message = kind + " " + command.getClass().getSimpleName();
+		final Dataset withKernel = createDataset(kind);
+		final Dataset withOperation = createDataset(kind);
+		final double[] before = samples(withKernel);
+
+		final InplaceUnaryTransform<DoubleType, DoubleType> xform =
+			new InplaceUnaryTransform<DoubleType, DoubleType>(command
+				.getOperation(), new DoubleType(), withKernel, overlay);
+		xform.setKernel(command.getKernel());
+		xform.run();
+		new InplaceUnaryTransform<DoubleType, DoubleType>(command
+			.getOperation(), new DoubleType(), withOperation, overlay).run();
+
+		final ComplexUnaryOperation<DoubleType, DoubleType> op =
+			command.getOperation();
+		final DoubleType in = new DoubleType(), out = new DoubleType();
+		final RealType<?> sample = withKernel.getType().createVariable();
+		final double[] kernelResult = samples(withKernel);
+		final double[] operationResult = samples(withOperation);
+		for (int i = 0; i < before.length; i++) {
+			final long x = i % DIMS[0], y = i / DIMS[0] % DIMS[1];
+			double expected = before[i];
+			if (contains(xform, overlay, x, y)) {
+				in.setReal(before[i]);
+				op.compute(in, out);
+				sample.setReal(out.getRealDouble());
+				expected = sample.getRealDouble();
+			}
+			assertEquals(message, expected, kernelResult[i], 0);
+			assertEquals(message, expected, operationResult[i], 0);
+		}
+	}
+
+	/** Whether the transform's region includes the given XY position. */
+	private boolean contains(final InplaceUnaryTransform<?, ?> xform,
+		final Overlay overlay, final long x, final long y)
+	{
+		final long[] origin = xform.getRegionOrigin();
+		final long[] span = xform.getRegionSpan();
+		if (x < origin[0] || x >= origin[0] + span[0]) return false;
+		if (y < origin[1] || y >= origin[1] + span[1]) return false;
+		if (overlay == null) return true;
+		final RealRandomAccess<BitType> ra =
+			overlay.getRegionOfInterest().realRandomAccess();
+		ra.setPosition(x, 0);
+		ra.setPosition(y, 1);
+		return ra.get().get();
+	}
+
+	private Overlay createEllipse() {
+		final EllipseOverlay overlay = new EllipseOverlay();
+		overlay.setOrigin(6.3, 0);
+		overlay.setOrigin(4.5, 1);
+		overlay.setRadius(4.2, 0);
+		overlay.setRadius(3, 1);
+		return overlay;
+	}
+
+	private Dataset createDataset(final String kind) {
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		final Dataset ds;
+		if (CELLS.equals(kind)) {
+			ds =
+				datasetService.create(new CellImgFactory<UnsignedShortType>(5),
+					new UnsignedShortType(), DIMS, kind, AXES);
+		}
+		else if (FLOAT.equals(kind)) {
+			ds = datasetService.create(DIMS, kind, AXES, 32, true, true);
+		}
+		else if (BITS.equals(kind)) {
+			ds = datasetService.create(DIMS, kind, AXES, 1, false, false);
+		}
+		else ds = datasetService.create(DIMS, kind, AXES, 16, false, false);
+		final int modulus = BITS.equals(kind) ? 2 : 100;
+		final RandomAccess<? extends RealType<?>> ra =
+			ds.getImgPlus().randomAccess();
+		final long[] pos = new long[3];
+		for (pos[2] = 0; pos[2] < DIMS[2]; pos[2]++) {
+			for (pos[1] = 0; pos[1] < DIMS[1]; pos[1]++) {
+				for (pos[0] = 0; pos[0] < DIMS[0]; pos[0]++) {
+					ra.setPosition(pos);
+					final long value = 7 * pos[0] + 3 * pos[1] + 11 * pos[2];
+					ra.get().setReal(value % modulus);
+				}
+			}
+		}
+		return ds;
+	}
+
+	/** Gets the samples of a Dataset in raster order. */
+	private double[] samples(final Dataset ds) {
+		final double[] samples =
+			new double[(int) (DIMS[0] * DIMS[1] * DIMS[2])];
+		final RandomAccess<? extends RealType<?>> ra =
+			ds.getImgPlus().randomAccess();
+		final long[] pos = new long[3];
+		int i = 0;
+		for (pos[2] = 0; pos[2] < DIMS[2]; pos[2]++) {
+			for (pos[1] = 0; pos[1] < DIMS[1]; pos[1]++) {
+				for (pos[0] = 0; pos[0] < DIMS[0]; pos[0]++) {
+					ra.setPosition(pos);
+					samples[i++] = ra.get().getRealDouble();
+				}
+			}
+		}
+		return samples;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.assign.noisereduce;
+
+import static org.junit.Assert.assertEquals;
+import imagej.core.commands.assign.noisereduce.SlidingHistogramFilter.Statistic;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.ops.function.Function;
+import net.imglib2.ops.function.real.RealArithmeticMeanFunction;
+import net.imglib2.ops.function.real.RealImageFunction;
+import net.imglib2.ops.function.real.RealMedianFunction;
+import net.imglib2.ops.pointset.PointSet;
+import net.imglib2.outofbounds.OutOfBoundsMirrorFactory;
+import net.imglib2.outofbounds.OutOfBoundsMirrorFactory.Boundary;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link Reducer}: reducing an image in parallel must give exactly the
+ * same result as reducing it serially.
+ */
+public class ReducerTest {
+
+	private static final long[] DIMS = { 37, 29, 5 };
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(DatasetService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testMean() {
+		final Dataset ds = createDataset(32, true);
+		assertSerialMatchesParallel(ds, new RadialNeigh(3, 2), false, null);
+	}
+
+	@Test
+	public void testMedian() {
+		final Dataset ds = createDataset(16, false);
+		assertSerialMatchesParallel(ds, new RadialNeigh(3, 2), true, null);
+	}
+
+	@Test
+	public void testSlidingMedian() {
+		final Dataset ds = createDataset(16, false);
+		final long[] offsets = { 2, 1, 1 };
+		final RectangularNeigh neigh = new RectangularNeigh(offsets, offsets);
+		assertSerialMatchesParallel(ds, neigh, true, Statistic.MEDIAN);
+		assertSerialMatchesParallel(ds, new RadialNeigh(3, 2), true,
+			Statistic.MEDIAN);
+	}
+
+	// -- helper methods --
+
+	private Dataset createDataset(final int bits, final boolean floating) {
+		final Dataset ds =
+			context.getService(DatasetService.class).create(DIMS, "test", AXES,
+				bits, !floating, floating);
+		final Random random = new Random(1234);
+		for (final RealType<?> t : ds.getImgPlus()) {
+			t.setReal(random.nextInt(1000));
+		}
+		return ds;
+	}
+
+	private void assertSerialMatchesParallel(final Dataset ds,
+		final Neighborhood neigh, final boolean median,
+		final Statistic statistic)
+	{
+		final Dataset serial = reduce(ds, neigh, median, statistic, 1);
+		final Dataset parallel = reduce(ds, neigh, median, statistic, 4);
+		final Cursor<? extends RealType<?>> expected =
+			serial.getImgPlus().cursor();
+		final Cursor<? extends RealType<?>> actual =
+			parallel.getImgPlus().cursor();
+		while (expected.hasNext()) {
+			final double e = expected.next().getRealDouble();
+			final double a = actual.next().getRealDouble();
+			final long bits = Double.doubleToLongBits(a);
+			assertEquals(Double.doubleToLongBits(e), bits);
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Dataset reduce(final Dataset ds, final Neighborhood neigh,
+		final boolean median, final Statistic statistic, final int threads)
+	{
+		final ImgPlus img = ds.getImgPlus();
+		final Function<long[], DoubleType> otherFunc =
+			new RealImageFunction(img, new OutOfBoundsMirrorFactory(
+				Boundary.DOUBLE), new DoubleType());
+		final Function<PointSet, DoubleType> func =
+			median ? new RealMedianFunction<DoubleType>(otherFunc)
+				: new RealArithmeticMeanFunction<DoubleType>(otherFunc);
+		final Reducer reducer =
+			new Reducer(context, img, func, neigh.getPoints());
+		reducer.setStatistic(statistic);
+		reducer.setThreadCount(threads);
+		return reducer.reduceNoise(neigh.getDescription());
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.restructure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import imagej.data.Dataset;
+import imagej.data.DatasetService;
+import imagej.data.access.SharedPlanes;
+
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link ChannelSplitter}.
+ * 
+ * @author Barry DeZonia
+ */
+public class ChannelSplitterTest {
+
+	private static final long[] DIMS = { 4, 3, 2, 3 };
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z,
+		Axes.CHANNEL };
+
+	@Test
+	public void testPlanarSplitAndMerge() {
+		final DatasetService datasetService = datasetService();
+		final Dataset input =
+			create(datasetService, new PlanarImgFactory<UnsignedByteType>());
+		final List<Dataset> channels =
+			ChannelSplitter.split(datasetService, input);
+		assertEquals(3, channels.size());
+		checkChannels(channels);
+		// planes are shared rather than copied
+		assertTrue(SharedPlanes.isShared(channels.get(1).getImgPlus(), 0));
+		// writing to one channel leaves the input alone
+		final RandomAccess<? extends RealType<?>> ra =
+			channels.get(1).getImgPlus().randomAccess();
+		ra.setPosition(new long[] { 0, 0, 0 });
+		ra.get().setReal(255);
+		assertEquals(value(0, 0, 0, 1), get(input, 0, 0, 0, 1), 0);
+
+		final Dataset merged =
+			ChannelSplitter.merge(datasetService, channels, "merged");
+		assertArrayEquals(new long[] { 4, 3, 3, 2 }, merged.getDims());
+		assertEquals(Axes.CHANNEL, merged.axis(2));
+		assertEquals(255, get(merged, 0, 0, 1, 0), 0);
+		assertEquals(value(3, 2, 1, 2), get(merged, 3, 2, 2, 1), 0);
+	}
+
+	@Test
+	public void testSplitAfterLegacyEdit() {
+		final DatasetService datasetService = datasetService();
+		final Dataset input =
+			create(datasetService, new PlanarImgFactory<UnsignedByteType>());
+		// the legacy layer holds the raw plane of z = 1, c = 2
+		final byte[] legacyPlane = (byte[]) input.getPlane(5, false);
+		final List<Dataset> channels =
+			ChannelSplitter.split(datasetService, input);
+		assertFalse(SharedPlanes.isShared(channels.get(2).getImgPlus(), 1));
+		assertTrue(SharedPlanes.isShared(channels.get(2).getImgPlus(), 0));
+		legacyPlane[0] = 7;
+		assertEquals(7, get(input, 0, 0, 1, 2), 0);
+		assertEquals(value(0, 0, 1, 2), get(channels.get(2), 0, 0, 1), 0);
+	}
+
+	@Test
+	public void testCellSplit() {
+		final DatasetService datasetService = datasetService();
+		final Dataset input =
+			create(datasetService, new CellImgFactory<UnsignedByteType>(2));
+		checkChannels(ChannelSplitter.split(datasetService, input));
+	}
+
+	// -- helper methods --
+
+	private void checkChannels(final List<Dataset> channels) {
+		for (int c = 0; c < channels.size(); c++) {
+			final Dataset channel = channels.get(c);
+			assertArrayEquals(new long[] { 4, 3, 2 }, channel.getDims());
+			for (long z = 0; z < DIMS[2]; z++) {
+				for (long y = 0; y < DIMS[1]; y++) {
+					for (long x = 0; x < DIMS[0]; x++) {
+						final double expected = value(x, y, z, c);
+						assertEquals(expected, get(channel, x, y, z), 0);
+					}
+				}
+			}
+		}
+	}
+
+	private DatasetService datasetService() {
+		final Context context = new Context(DatasetService.class);
+		return context.getService(DatasetService.class);
+	}
+
+	private Dataset create(final DatasetService datasetService,
+		final ImgFactory<UnsignedByteType> factory)
+	{
+		final Img<UnsignedByteType> img =
+			factory.create(DIMS, new UnsignedByteType());
+		final RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		final long[] pos = new long[DIMS.length];
+		for (pos[3] = 0; pos[3] < DIMS[3]; pos[3]++)
+			for (pos[2] = 0; pos[2] < DIMS[2]; pos[2]++)
+				for (pos[1] = 0; pos[1] < DIMS[1]; pos[1]++)
+					for (pos[0] = 0; pos[0] < DIMS[0]; pos[0]++) {
+						ra.setPosition(pos);
+						ra.get().setReal(value(pos[0], pos[1], pos[2], pos[3]));
+					}
+		SharedPlanes.makeShareable(img);
+		return datasetService.create(new ImgPlus<UnsignedByteType>(img, "test",
+			AXES));
+	}
+
+	private double value(final long x, final long y, final long z,
+		final long c)
+	{
+		return c * 60 + z * 20 + y * 4 + x;
+	}
+
+	private double get(final Dataset ds, final long... pos) {
+		final RandomAccess<? extends RealType<?>> ra =
+			ds.getImgPlus().randomAccess();
+		ra.setPosition(pos);
+		return ra.get().getRealDouble();
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.restructure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import imagej.data.access.EmptyPlanarImgFactory;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.ImgPlus;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.meta.Axes;
+import net.imglib2.meta.AxisType;
+import net.imglib2.type.numeric.integer.ShortType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link RestructureUtils}.
+ * 
+ * @author Barry DeZonia
+ */
+public class RestructureUtilsTest {
+
+	private static final long[] DIMS = { 6, 5, 4 };
+
+	private static final AxisType[] AXES = { Axes.X, Axes.Y, Axes.Z };
+
+	@Test
+	public void testInsertPlanar() {
+		final ImgPlus<ShortType> src =
+			create(new PlanarImgFactory<ShortType>(), DIMS, true);
+		final ImgPlus<ShortType> dst = insertTwoPlanes(src);
+		final PlanarImg<?, ?> srcImg = (PlanarImg<?, ?>) src.getImg();
+		final PlanarImg<?, ?> dstImg = (PlanarImg<?, ?>) dst.getImg();
+		// planes that move are shared rather than copied
+		assertSame(srcImg.getPlane(0), dstImg.getPlane(0));
+		assertSame(srcImg.getPlane(3), dstImg.getPlane(5));
+	}
+
+	@Test
+	public void testInsertEmptyPlanar() {
+		final ImgPlus<ShortType> src =
+			create(new PlanarImgFactory<ShortType>(), DIMS, true);
+		final ImgPlus<ShortType> dst =
+			insertTwoPlanes(src, new EmptyPlanarImgFactory<ShortType>());
+		final PlanarImg<?, ?> srcImg = (PlanarImg<?, ?>) src.getImg();
+		final PlanarImg<?, ?> dstImg = (PlanarImg<?, ?>) dst.getImg();
+		// existing planes are moved over; only inserted ones are allocated
+		assertSame(srcImg.getPlane(1), dstImg.getPlane(1));
+		assertSame(srcImg.getPlane(2), dstImg.getPlane(4));
+		assertNotNull(dstImg.getPlane(2));
+		assertNotSame(dstImg.getPlane(2), dstImg.getPlane(3));
+	}
+
+	@Test
+	public void testInsertArray() {
+		insertTwoPlanes(create(new ArrayImgFactory<ShortType>(), DIMS, true));
+	}
+
+	@Test
+	public void testInsertCell() {
+		insertTwoPlanes(create(new CellImgFactory<ShortType>(2), DIMS, true));
+	}
+
+	@Test
+	public void testCopyPlanesUnsupported() {
+		final ImgPlus<ShortType> src =
+			create(new CellImgFactory<ShortType>(2), DIMS, true);
+		final ImgPlus<ShortType> dst =
+			create(new PlanarImgFactory<ShortType>(), DIMS, false);
+		assertFalse(RestructureUtils.copyPlanes(src, dst,
+			new int[] { 0, 1, 2, 3 }, true));
+	}
+
+	@Test
+	public void testCopyPlanesWithoutSharing() {
+		final ImgPlus<ShortType> src =
+			create(new PlanarImgFactory<ShortType>(), DIMS, true);
+		final ImgPlus<ShortType> dst =
+			create(new PlanarImgFactory<ShortType>(), DIMS, false);
+		assertTrue(RestructureUtils.copyPlanes(src, dst,
+			new int[] { 3, 2, -1, 0 }, false));
+		final RandomAccess<ShortType> ra = dst.randomAccess();
+		assertEquals(value(4, 1, 3), get(ra, 4, 1, 0));
+		assertEquals(value(4, 1, 2), get(ra, 4, 1, 1));
+		assertEquals(0, get(ra, 4, 1, 2));
+		assertEquals(value(4, 1, 0), get(ra, 4, 1, 3));
+		final PlanarImg<?, ?> srcImg = (PlanarImg<?, ?>) src.getImg();
+		final PlanarImg<?, ?> dstImg = (PlanarImg<?, ?>) dst.getImg();
+		assertFalse(srcImg.getPlane(0) == dstImg.getPlane(3));
+	}
+
+	// -- helper methods --
+
+	/**
+	 * Inserts two empty planes before Z plane 2 the way AddData does and checks
+	 * the result.
+	 */
+	private ImgPlus<ShortType> insertTwoPlanes(final ImgPlus<ShortType> src) {
+		return insertTwoPlanes(src, src.factory());
+	}
+
+	/**
+	 * Inserts two empty planes before Z plane 2 into an image made by the given
+	 * factory and checks the result.
+	 */
+	private ImgPlus<ShortType> insertTwoPlanes(final ImgPlus<ShortType> src,
+		final ImgFactory<ShortType> factory)
+	{
+		final long[] dims = { DIMS[0], DIMS[1], DIMS[2] + 2 };
+		final ImgPlus<ShortType> dst = create(factory, dims, false);
+		RestructureUtils.copyData(src, dst, Axes.Z, 0, 0, 2);
+		RestructureUtils.copyData(src, dst, Axes.Z, 2, 4, 2);
+		EmptyPlanarImgFactory.allocateMissingPlanes(dst);
+		final RandomAccess<ShortType> ra = dst.randomAccess();
+		for (long z = 0; z < dims[2]; z++) {
+			for (long y = 0; y < dims[1]; y++) {
+				for (long x = 0; x < dims[0]; x++) {
+					long expected = 0;
+					if (z < 2) expected = value(x, y, z);
+					else if (z >= 4) expected = value(x, y, z - 2);
+					assertEquals(expected, get(ra, x, y, z));
+				}
+			}
+		}
+		return dst;
+	}
+
+	private ImgPlus<ShortType> create(final ImgFactory<ShortType> factory,
+		final long[] dims, final boolean fill)
+	{
+		final Img<ShortType> img = factory.create(dims, new ShortType());
+		if (fill) {
+			final RandomAccess<ShortType> ra = img.randomAccess();
+			final long[] pos = new long[3];
+			for (pos[2] = 0; pos[2] < dims[2]; pos[2]++) {
+				for (pos[1] = 0; pos[1] < dims[1]; pos[1]++) {
+					for (pos[0] = 0; pos[0] < dims[0]; pos[0]++) {
+						ra.setPosition(pos);
+						ra.get().setInteger(value(pos[0], pos[1], pos[2]));
+					}
+				}
+			}
+		}
+		return new ImgPlus<ShortType>(img, "test", AXES);
+	}
+
+	private long value(final long x, final long y, final long z) {
+		return 1 + (z * DIMS[1] + y) * DIMS[0] + x;
+	}
+
+	private long get(final RandomAccess<ShortType> ra, final long x,
+		final long y, final long z)
+	{
+		ra.setPosition(new long[] { x, y, z });
+		return ra.get().getIntegerLong();
+	}
+
+}
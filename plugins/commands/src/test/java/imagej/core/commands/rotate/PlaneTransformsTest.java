@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImageJ software for multidimensional image processing and analysis.
+ * %%
+ * Copyright (C) 2009 - 2013 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, and Max Planck
+ * Institute of Molecular Cell Biology and Genetics.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package imagej.core.commands.rotate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PlaneTransforms}.
+ * 
+ * @author Barry DeZonia
+ */
+public class PlaneTransformsTest {
+
+	// NB - wider and taller than a tile so partial tiles are exercised
+	private static final long[] DIMS = { 131, 70, 3 };
+
+	@Test
+	public void testFlipHorizontally() {
+		final Img<UnsignedShortType> img = createImage(DIMS);
+		assertTrue(PlaneTransforms.flipHorizontally(img, 10, 5, 50, 40));
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		for (long z = 0; z < DIMS[2]; z++) {
+			for (long y = 0; y < DIMS[1]; y++) {
+				for (long x = 0; x < DIMS[0]; x++) {
+					long srcX = x;
+					if (x >= 10 && x < 60 && y >= 5 && y < 45) srcX = 69 - x;
+					assertEquals(value(srcX, y, z), get(ra, x, y, z));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFlipVertically() {
+		final Img<UnsignedShortType> img = createImage(DIMS);
+		assertTrue(PlaneTransforms.flipVertically(img, 0, 0, DIMS[0],
+			DIMS[1]));
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		for (long z = 0; z < DIMS[2]; z++) {
+			for (long y = 0; y < DIMS[1]; y++) {
+				for (long x = 0; x < DIMS[0]; x++) {
+					final long srcY = DIMS[1] - 1 - y;
+					assertEquals(value(x, srcY, z), get(ra, x, y, z));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRotate() {
+		final Img<UnsignedShortType> img = createImage(DIMS);
+		final long[] rotatedDims = { DIMS[1], DIMS[0], DIMS[2] };
+		final Img<UnsignedShortType> right =
+			img.factory().create(rotatedDims, new UnsignedShortType());
+		final Img<UnsignedShortType> left =
+			img.factory().create(rotatedDims, new UnsignedShortType());
+		assertTrue(PlaneTransforms.rotate(img, right, true));
+		assertTrue(PlaneTransforms.rotate(img, left, false));
+		final RandomAccess<UnsignedShortType> rightRA = right.randomAccess();
+		final RandomAccess<UnsignedShortType> leftRA = left.randomAccess();
+		for (long z = 0; z < DIMS[2]; z++) {
+			for (long y = 0; y < DIMS[1]; y++) {
+				for (long x = 0; x < DIMS[0]; x++) {
+					final long v = value(x, y, z);
+					assertEquals(v, get(rightRA, DIMS[1] - 1 - y, x, z));
+					assertEquals(v, get(leftRA, y, DIMS[0] - 1 - x, z));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testArrayImg() {
+		final Img<UnsignedShortType> img =
+			new ArrayImgFactory<UnsignedShortType>().create(DIMS,
+				new UnsignedShortType());
+		fill(img);
+		assertTrue(PlaneTransforms.flipHorizontally(img, 0, 0, DIMS[0],
+			DIMS[1]));
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		assertEquals(value(DIMS[0] - 1, 3, 2), get(ra, 0, 3, 2));
+	}
+
+	@Test
+	public void testUnsupported() {
+		final Img<UnsignedShortType> img =
+			new CellImgFactory<UnsignedShortType>(16).create(DIMS,
+				new UnsignedShortType());
+		assertFalse(PlaneTransforms.flipVertically(img, 0, 0, DIMS[0],
+			DIMS[1]));
+	}
+
+	// -- helper methods --
+
+	private Img<UnsignedShortType> createImage(final long[] dims) {
+		final Img<UnsignedShortType> img =
+			new PlanarImgFactory<UnsignedShortType>().create(dims,
+				new UnsignedShortType());
+		fill(img);
+		return img;
+	}
+
+	private void fill(final Img<UnsignedShortType> img) {
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		final long[] pos = new long[3];
+		for (pos[2] = 0; pos[2] < DIMS[2]; pos[2]++) {
+			for (pos[1] = 0; pos[1] < DIMS[1]; pos[1]++) {
+				for (pos[0] = 0; pos[0] < DIMS[0]; pos[0]++) {
+					ra.setPosition(pos);
+					ra.get().setInteger(value(pos[0], pos[1], pos[2]));
+				}
+			}
+		}
+	}
+
+	private long value(final long x, final long y, final long z) {
+		return (z * DIMS[1] + y) * DIMS[0] + x;
+	}
+
+	private long get(final RandomAccess<UnsignedShortType> ra, final long x,
+		final long y, final long z)
+	{
+		ra.setPosition(new long[] { x, y, z });
+		return ra.get().getIntegerLong();
+	}
+
+}
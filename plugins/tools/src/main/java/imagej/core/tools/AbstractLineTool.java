@@ -119,7 +119,7 @@ public void onMouseDrag(final MsDraggedEvent evt) {
 		long modelX = realCoords.getLongX();
 		long modelY = realCoords.getLongY();
 		drawingTool.lineTo(modelX, modelY);
-		evt.getDisplay().update();
+		drawingTool.update();
 		evt.consume();
 	}
 
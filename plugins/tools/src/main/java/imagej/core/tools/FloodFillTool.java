@@ -49,6 +49,8 @@
 import imagej.tool.AbstractTool;
 import imagej.tool.Tool;
 
+import net.imglib2.meta.Axes;
+
 import org.scijava.plugin.Plugin;
 
 /**
@@ -66,19 +68,22 @@ public class FloodFillTool extends AbstractTool {
 	public static final double PRIORITY = -304;
 
 	enum Connectivity {
-		EIGHT, FOUR
+		EIGHT, FOUR, TWENTY_SIX
 	}
 
 	private Connectivity connectivity = Connectivity.EIGHT;
 
 	// -- public interface --
 
-	/** Specify whether this flood fill operation should be 4 or 8 connected. */
+	/**
+	 * Specify whether this flood fill operation should be 4 or 8 connected or
+	 * 26 connected through the Z planes of the image.
+	 */
 	public void setConnectivity(final Connectivity c) {
 		connectivity = c;
 	}
 
-	/** Gets this flood fill's current connectivity (4 or 8 connected). */
+	/** Gets this flood fill's current connectivity (4, 8 or 26 connected). */
 	public Connectivity getConnectivity() {
 		return connectivity;
 	}
@@ -105,7 +110,7 @@ public void onMouseClick(final MsClickedEvent evt) {
 								evt.getContext().getService(RenderingService.class));
 					final long[] currPos = getCurrPosition(imageDisplay);
 					floodFill(recorder.getCX(), recorder.getCY(), currPos, connectivity, drawingTool);
-					evt.getDisplay().update();
+					drawingTool.update();
 				}
 			}
 			evt.consume();
@@ -157,7 +162,11 @@ private void floodFill(final long u, final long v, final long[] position,
 	{
 		dTool.setPosition(position);
 		final FloodFiller filler = new FloodFiller(dTool);
+		final int zAxis = dTool.getDataset().getAxisIndex(Axes.Z);
 		if (c == Connectivity.FOUR) filler.fill4(u, v, position);
+		else if (c == Connectivity.TWENTY_SIX && zAxis >= 2) {
+			filler.fill26(u, v, position, zAxis);
+		}
 		else filler.fill8(u, v, position);
 	}
 
@@ -53,6 +53,7 @@ public class FloodFillToolConfig implements Command {
 
 	private static final String FOUR = "4-connected";
 	private static final String EIGHT = "8-connected";
+	private static final String TWENTY_SIX = "26-connected (3D)";
 
 	// -- Parameters --
 
@@ -64,7 +65,7 @@ public class FloodFillToolConfig implements Command {
 	// does not equal the tool's initial value which is confusing. Tools need to
 	// be able to persist some values to get around this.
 
-	@Parameter(label = "Flood Type:", choices = { EIGHT, FOUR },
+	@Parameter(label = "Flood Type:", choices = { EIGHT, FOUR, TWENTY_SIX },
 		initializer = "init", persist = false)
 	private String connectivity;
 
@@ -75,6 +76,8 @@ public class FloodFillToolConfig implements Command {
 	public void run() {
 		if (connectivity.equals(FOUR))
 			tool.setConnectivity(FloodFillTool.Connectivity.FOUR);
+		else if (connectivity.equals(TWENTY_SIX))
+			tool.setConnectivity(FloodFillTool.Connectivity.TWENTY_SIX);
 		else tool.setConnectivity(FloodFillTool.Connectivity.EIGHT);
 	}
 
@@ -83,6 +86,9 @@ public void run() {
 	protected void init() {
 		final FloodFillTool.Connectivity neighCount = tool.getConnectivity();
 		if (neighCount.equals(FloodFillTool.Connectivity.FOUR)) connectivity = FOUR;
+		else if (neighCount.equals(FloodFillTool.Connectivity.TWENTY_SIX)) {
+			connectivity = TWENTY_SIX;
+		}
 		else connectivity = EIGHT;
 	}
 
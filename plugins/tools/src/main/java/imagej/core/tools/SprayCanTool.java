@@ -148,7 +148,7 @@ private void doOneSpray(MsEvent evt) {
 		IntCoords panelCoords = new IntCoords(evt.getX(), evt.getY());
 		RealCoords realCoords = canv.panelToDataCoords(panelCoords);
 		drawPixels(realCoords.getLongX(), realCoords.getLongY());
-		evt.getDisplay().update();
+		drawingTool.update();
 	}
 	
 	// NB: adapted from IJ1's SprayCanTool.txt macro courtesy Wayne Rasband
@@ -37,7 +37,12 @@
 
 import imagej.data.Dataset;
 import imagej.data.display.DatasetView;
+import imagej.data.display.ImageCanvas;
 import imagej.data.display.event.DataViewUpdatedEvent;
+import imagej.data.display.event.PanZoomEvent;
+import imagej.data.display.event.ViewportResizeEvent;
+import imagej.util.IntCoords;
+import imagej.util.RealCoords;
 import imagej.util.awt.AWTImageTools;
 
 import java.awt.Image;
@@ -45,6 +50,10 @@
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.display.ARGBScreenImage;
+
 import org.jhotdraw.draw.Drawing;
 import org.jhotdraw.draw.ImageFigure;
 import org.scijava.AbstractContextual;
@@ -53,7 +62,10 @@
 
 /**
  * A figure view that links an ImageJ {@link DatasetView} to a JHotDraw
- * {@link ImageFigure}.
+ * {@link ImageFigure}. When the canvas is zoomed out the figure shows a reduced
+ * resolution rendering of the view, stretched over the full image bounds. The
+ * view is told which part of the image is on screen, so that at full resolution
+ * only that part is projected.
  * 
  * @author Curtis Rueden
  * @author Lee Kamentsky
@@ -61,6 +73,7 @@
 public class DatasetFigureView extends AbstractContextual implements FigureView
 {
 
+	private final SwingImageDisplayViewer displayViewer;
 	private final DatasetView datasetView;
 	private final ImageFigure figure;
 
@@ -68,6 +81,7 @@ public DatasetFigureView(final SwingImageDisplayViewer displayViewer,
 		final DatasetView datasetView)
 	{
 		setContext(datasetView.getContext());
+		this.displayViewer = displayViewer;
 		this.datasetView = datasetView;
 		final JHotDrawImageCanvas canvas = displayViewer.getCanvas();
 		final Drawing drawing = canvas.getDrawing();
@@ -89,14 +103,38 @@ protected void onDataViewUpdatedEvent(final DataViewUpdatedEvent event) {
 		if (event.getView() == datasetView) update();
 	}
 
+	@EventHandler
+	protected void onEvent(final PanZoomEvent event) {
+		final ImageCanvas canvas = event.getCanvas();
+		if (canvas != displayViewer.getDisplay().getCanvas()) return;
+		final int level =
+			datasetView.getResolutionLevel(canvas.getZoomFactor());
+		// NB - set the viewport first, so a change of level projects only it
+		boolean changed = datasetView.setViewport(getViewport(canvas));
+		if (level != datasetView.getResolutionLevel()) {
+			datasetView.setResolutionLevel(level);
+			changed = true;
+		}
+		if (changed) update();
+	}
+
+	@EventHandler
+	protected void onEvent(final ViewportResizeEvent event) {
+		final ImageCanvas canvas = event.getCanvas();
+		if (canvas != displayViewer.getDisplay().getCanvas()) return;
+		if (datasetView.setViewport(getViewport(canvas))) update();
+	}
+
 	@Override
 	public void update() {
 		final LogService log = getContext().getService(LogService.class);
 		log.debug("Updating image figure: " + this);
-		final Image image = datasetView.getScreenImage().image();
+		final ARGBScreenImage displayImage = datasetView.getDisplayImage();
+		final Image image = displayImage.image();
 		final BufferedImage bufImage = AWTImageTools.makeBuffered(image);
-		figure.setBounds(new Rectangle2D.Double(0, 0, bufImage.getWidth(),
-			bufImage.getHeight()));
+		// NB - a reduced image is stretched over the full size of the view
+		figure.setBounds(new Rectangle2D.Double(0, 0, datasetView
+			.getPreferredWidth(), datasetView.getPreferredHeight()));
 		figure.setBufferedImage(bufImage);
 	}
 
@@ -117,4 +155,21 @@ public void dispose() {
 		getFigure().requestRemove();
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Gets the region of the data shown by the given canvas, or null if the
+	 * canvas has not been laid out yet.
+	 */
+	private Interval getViewport(final ImageCanvas canvas) {
+		final int w = canvas.getViewportWidth();
+		final int h = canvas.getViewportHeight();
+		if (w <= 0 || h <= 0) return null;
+		final RealCoords min = canvas.panelToDataCoords(new IntCoords(0, 0));
+		final RealCoords max = canvas.panelToDataCoords(new IntCoords(w, h));
+		return new FinalInterval(new long[] { (long) Math.floor(min.x),
+			(long) Math.floor(min.y) }, new long[] { (long) Math.ceil(max.x),
+			(long) Math.ceil(max.y) });
+	}
+
 }
@@ -37,6 +37,7 @@
 
 import imagej.data.Dataset;
 import imagej.data.DatasetService;
+import imagej.data.ImageGrabber;
 import imagej.data.display.DataView;
 import imagej.data.display.DatasetView;
 import imagej.data.display.ImageCanvas;
@@ -82,11 +83,9 @@
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
-import net.imglib2.RandomAccess;
 import net.imglib2.display.ARGBScreenImage;
 import net.imglib2.meta.Axes;
 import net.imglib2.meta.AxisType;
-import net.imglib2.type.numeric.RealType;
 
 import org.jhotdraw.draw.DefaultDrawing;
 import org.jhotdraw.draw.DefaultDrawingEditor;
@@ -236,24 +235,8 @@ public Dataset capture() {
 			datasetService.create(new long[] { w, h, 3 }, "Captured view",
 				new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL }, 8, false, false);
 		dataset.setRGBMerged(true);
-		final RandomAccess<? extends RealType<?>> accessor =
-			dataset.getImgPlus().randomAccess();
-		for (int x = 0; x < w; x++) {
-			accessor.setPosition(x, 0);
-			for (int y = 0; y < h; y++) {
-				accessor.setPosition(y, 1);
-				final int rgb = outputImage.getRGB(x, y);
-				final int r = (rgb >> 16) & 0xff;
-				final int g = (rgb >> 8) & 0xff;
-				final int b = (rgb >> 0) & 0xff;
-				accessor.setPosition(0, 2);
-				accessor.get().setReal(r);
-				accessor.setPosition(1, 2);
-				accessor.get().setReal(g);
-				accessor.setPosition(2, 2);
-				accessor.get().setReal(b);
-			}
-		}
+		final int[] argbPixels = outputImage.getRGB(0, 0, w, h, null, 0, w);
+		ImageGrabber.setRGB(dataset, argbPixels);
 		return dataset;
 	}
 
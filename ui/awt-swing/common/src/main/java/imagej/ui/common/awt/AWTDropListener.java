@@ -260,6 +260,7 @@ private boolean isKnownImageType(final String filename) {
 		private void loadImage(final File f) {
 			final Map<String, Object> params = new HashMap<String, Object>();
 			params.put("inputFile", f);
+			params.put("background", true);
 			uiService.getCommandService().run(OpenImage.class, params);
 		}
 
@@ -43,6 +43,9 @@
 import imagej.data.display.OverlayService;
 import imagej.data.event.DatasetRestructuredEvent;
 import imagej.data.event.DatasetUpdatedEvent;
+import imagej.data.histogram.Histogram;
+import imagej.data.histogram.HistogramBinning;
+import imagej.data.histogram.HistogramService;
 import imagej.ui.UIService;
 
 import java.awt.BasicStroke;
@@ -59,7 +62,6 @@
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
 
-import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.meta.Axes;
 import net.imglib2.ops.pointset.HyperVolumePointSet;
@@ -125,6 +127,9 @@ public class HistogramPlot extends ContextCommand implements ActionListener {
 	@Parameter
 	private OverlayService overlayService;
 
+	@Parameter
+	private HistogramService histogramService;
+
 	@Parameter
 	private ImageDisplay display;
 
@@ -426,15 +431,10 @@ private static final void setBackgroundDefault(final JFreeChart chart) {
 	}
 
 	private void calcBinInfo() {
-		// calc the data ranges - 1st pass thru data
-		dataMin = Double.POSITIVE_INFINITY;
-		dataMax = Double.NEGATIVE_INFINITY;
-		Cursor<? extends RealType<?>> cursor = dataset.getImgPlus().cursor();
-		while (cursor.hasNext()) {
-			double val = cursor.next().getRealDouble();
-			if (val < dataMin) dataMin = val;
-			if (val > dataMax) dataMax = val;
-		}
+		// calc the data ranges
+		double[] range = histogramService.getDataRange(dataset);
+		dataMin = range[0];
+		dataMax = range[1];
 		if (dataMin > dataMax) {
 			dataMin = 0;
 			dataMax = 0;
@@ -462,8 +462,6 @@ private void allocateDataStructures() {
 		int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
 		channels = (chIndex < 0) ? 1 : dataset.dimension(chIndex);
 		histograms = new long[(int) channels + 1][]; // add one for chan compos
-		for (int i = 0; i < histograms.length; i++)
-			histograms[i] = new long[binCount];
 		means = new double[histograms.length];
 		stdDevs = new double[histograms.length];
 		sum1s = new double[histograms.length];
@@ -477,36 +475,58 @@ private void allocateDataStructures() {
 	}
 
 	private void computeStats() {
-		// calc stats - 2nd pass thru data
+		// channel histograms and stats are cached by the histogram service
+		HistogramBinning binning =
+			HistogramBinning.fixedWidth(dataMin, binWidth, binCount);
+		int composH = histograms.length - 1;
+		sampleCount = 0;
+		for (int c = 0; c < channels; c++) {
+			Histogram hist =
+				histogramService.getChannelHistogram(dataset, c, binning);
+			histograms[c] = hist.getCounts();
+			sum1s[c] = hist.getSum();
+			sum2s[c] = hist.getSumOfSquares();
+			mins[c] = hist.getMin();
+			maxes[c] = hist.getMax();
+			sampleCount += hist.getSampleCount();
+		}
+		if (channels == 1) {
+			// the composite of a single channel is the channel itself
+			histograms[composH] = histograms[0];
+			sum1s[composH] = sum1s[0];
+			sum2s[composH] = sum2s[0];
+			mins[composH] = mins[0];
+			maxes[composH] = maxes[0];
+		}
+		else computeCompositeStats();
+		// calc means etc.
+		long pixels = sampleCount / channels;
+		for (int i = 0; i < histograms.length; i++) {
+			means[i] = sum1s[i] / pixels;
+			stdDevs[i] =
+				Math.sqrt((sum2s[i] - ((sum1s[i] * sum1s[i]) / pixels)) / (pixels - 1));
+		}
+	}
+
+	private void computeCompositeStats() {
+		// calc composite stats - another pass thru data
 		int chIndex = dataset.getAxisIndex(Axes.CHANNEL);
 		int composH = histograms.length - 1;
+		histograms[composH] = new long[binCount];
 		RandomAccess<? extends RealType<?>> accessor =
 			dataset.getImgPlus().randomAccess();
 		long[] span = dataset.getDims();
 		if (chIndex >= 0) span[chIndex] = 1; // iterate channels elsewhere
 		HyperVolumePointSet pixelSpace = new HyperVolumePointSet(span);
 		PointSetIterator pixelSpaceIter = pixelSpace.iterator();
-		sampleCount = 0;
 		while (pixelSpaceIter.hasNext()) {
 			long[] pos = pixelSpaceIter.next();
 			accessor.setPosition(pos);
-			// count values by channel. also determine composite pixel value (by
-			// channel averaging)
+			// determine composite pixel value (by channel averaging)
 			double composVal = 0;
 			for (long chan = 0; chan < channels; chan++) {
 				if (chIndex >= 0) accessor.setPosition(chan, chIndex);
-				double val = accessor.get().getRealDouble();
-				composVal += val;
-				int index = (int) ((val - dataMin) / binWidth);
-				// NB in float case the max data point overflows the index range
-				if (index >= binCount) index = binCount - 1;
-				int c = (int) chan;
-				histograms[c][index]++;
-				sum1s[c] += val;
-				sum2s[c] += val * val;
-				if (val < mins[c]) mins[c] = val;
-				if (val > maxes[c]) maxes[c] = val;
-				sampleCount++;
+				composVal += accessor.get().getRealDouble();
 			}
 			composVal /= channels;
 			int index = (int) ((composVal - dataMin) / binWidth);
@@ -518,13 +538,6 @@ private void computeStats() {
 			if (composVal < mins[composH]) mins[composH] = composVal;
 			if (composVal > maxes[composH]) maxes[composH] = composVal;
 		}
-		// calc means etc.
-		long pixels = sampleCount / channels;
-		for (int i = 0; i < histograms.length; i++) {
-			means[i] = sum1s[i] / pixels;
-			stdDevs[i] =
-				Math.sqrt((sum2s[i] - ((sum1s[i] * sum1s[i]) / pixels)) / (pixels - 1));
-		}
 	}
 
 	private void build() {
@@ -536,6 +549,8 @@ private void build() {
 	private void liveUpdate(Dataset ds) {
 		if (!liveUpdates) return;
 		if (ds != dataset) return;
+		// NB - the service may not have seen this event yet
+		histogramService.invalidate(ds);
 		build();
 		display(currHistNum);
 	}